@@ -0,0 +1,24 @@
+package com.lanshare.bench;
+
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 所有基准的公共参数（JMH 注解可继承）
+ *
+ * 吞吐量模式，单位 ops/s；命令行的 -wi / -i / -f 等参数仍可覆盖。
+ * 分配速率由 LanShareBenchmarks 默认挂上的 GC 分析器给出（gc.alloc.rate.norm 即每次操作分配的字节数）。
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms512m", "-Xmx512m", "-Djava.util.logging.config.file=/dev/null"})
+public abstract class BenchmarkDefaults {
+}
@@ -0,0 +1,93 @@
+package com.lanshare.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Random;
+import java.util.zip.CRC32;
+
+/**
+ * 校验和开销
+ *
+ * - CRC32：每个分片一次，对应 ChunkHeader.calculateCRC32 的数组和缓冲区两条路径
+ *   （发送端从缓冲池取的是堆缓冲区，直接缓冲区用于对比）
+ * - MD5：整文件一次，按 readBuffer 分段喂给 MessageDigest，
+ *   对比 TransferRequest（1KB）与 ReceiveEngine（64KB）使用的读缓冲大小
+ */
+@State(Scope.Thread)
+public class ChecksumBenchmark extends BenchmarkDefaults {
+
+    @Param({"4096", "65536", "1048576"})
+    public int chunkSize;
+
+    private byte[] data;
+    private ByteBuffer heapBuffer;
+    private ByteBuffer directBuffer;
+    private final CRC32 crc = new CRC32();
+
+    /**
+     * MD5 的读缓冲大小单独放在一个状态里，避免 CRC32 基准也按它展开
+     */
+    @State(Scope.Thread)
+    public static class Md5State {
+        @Param({"1024", "65536"})
+        public int readBuffer;
+
+        MessageDigest md5;
+
+        @Setup
+        public void setup() throws NoSuchAlgorithmException {
+            md5 = MessageDigest.getInstance("MD5");
+        }
+    }
+
+    @Setup
+    public void setup() {
+        data = new byte[chunkSize];
+        new Random(42).nextBytes(data);
+        heapBuffer = ByteBuffer.wrap(data);
+        directBuffer = ByteBuffer.allocateDirect(chunkSize);
+        directBuffer.put(data).flip();
+    }
+
+    @Benchmark
+    public long crc32Array() {
+        crc.reset();
+        crc.update(data);
+        return crc.getValue();
+    }
+
+    @Benchmark
+    public long crc32HeapBuffer() {
+        crc.reset();
+        crc.update(heapBuffer.duplicate());
+        return crc.getValue();
+    }
+
+    @Benchmark
+    public long crc32DirectBuffer() {
+        crc.reset();
+        crc.update(directBuffer.duplicate());
+        return crc.getValue();
+    }
+
+    /**
+     * 以 readBuffer 为单位流式计算一个分片的 MD5（ops/s × chunkSize 即 MD5 吞吐量）
+     */
+    @Benchmark
+    public byte[] md5Streaming(Md5State state) {
+        MessageDigest md5 = state.md5;
+        int step = state.readBuffer;
+        md5.reset();
+        for (int offset = 0; offset < data.length; offset += step) {
+            md5.update(data, offset, Math.min(step, data.length - offset));
+        }
+        return md5.digest();
+    }
+}
@@ -0,0 +1,84 @@
+package com.lanshare.bench;
+
+import com.lanshare.network.protocol.ChunkHeader;
+import com.lanshare.network.protocol.FileChunk;
+import com.lanshare.network.protocol.ProtocolException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+/**
+ * 分片头部与分片的序列化 / 反序列化
+ *
+ * 头部基准衡量每帧固定开销（v1 固定 64 字节，v2 varint 变长）；
+ * 分片基准是旧的按数组拼接路径（toBytes / fromBytes 各复制一次数据，fromBytes 还做 CRC32 校验）。
+ */
+@State(Scope.Thread)
+public class ChunkCodecBenchmark extends BenchmarkDefaults {
+
+    private static final String TASK_ID = "3f2b6c1e-8a4d-4e59-9a77-0c2f5e1d7b90";
+
+    @Param({"1", "2"})
+    public int headerVersion;
+
+    @Param({"4096", "65536", "1048576"})
+    public int chunkSize;
+
+    private ChunkHeader header;
+    private byte[] headerBytes;
+    private ByteBuffer headerBuffer;
+    private FileChunk chunk;
+    private byte[] chunkBytes;
+
+    @Setup
+    public void setup() {
+        byte[] data = new byte[chunkSize];
+        new Random(42).nextBytes(data);
+
+        header = new ChunkHeader(1234, chunkSize, TASK_ID);
+        header.setVersion(headerVersion);
+        header.setOffset(1234L * chunkSize);
+        header.calculateCRC32(data);
+        headerBytes = header.toBytes();
+        headerBuffer = ByteBuffer.allocate(ChunkHeader.MAX_HEADER_SIZE);
+
+        chunk = new FileChunk(1234, data, TASK_ID);
+        chunk.getHeader().setVersion(headerVersion);
+        chunkBytes = chunk.toBytes();
+    }
+
+    @Benchmark
+    public byte[] headerToBytes() {
+        return header.toBytes();
+    }
+
+    /**
+     * 编码进复用缓冲区（ProtocolHandler.sendChunk 的路径，不分配）
+     */
+    @Benchmark
+    public ByteBuffer headerEncodeTo() {
+        headerBuffer.clear();
+        header.encodeTo(headerBuffer);
+        return headerBuffer;
+    }
+
+    @Benchmark
+    public ChunkHeader headerFromBytes() throws ProtocolException {
+        return ChunkHeader.fromBytes(headerBytes);
+    }
+
+    @Benchmark
+    public byte[] chunkToBytes() {
+        return chunk.toBytes();
+    }
+
+    @Benchmark
+    public FileChunk chunkFromBytes() throws ProtocolException {
+        return FileChunk.fromBytes(chunkBytes);
+    }
+}
@@ -0,0 +1,66 @@
+package com.lanshare.bench;
+
+import com.lanshare.network.protocol.ControlCodec;
+import com.lanshare.network.protocol.ProtocolException;
+import com.lanshare.network.protocol.TransferRequest;
+import com.lanshare.network.protocol.TransferResponse;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 握手消息编解码：Gson JSON（旧版本兼容路径）与 ControlCodec 二进制编码
+ *
+ * JSON 基准包含 UTF-8 转换，与 ProtocolHandler.sendJson / receiveControl 实际做的工作一致；
+ * 二进制编码写入复用的 Writer，解码从字节数组直接读。
+ */
+@State(Scope.Thread)
+public class HandshakeCodecBenchmark extends BenchmarkDefaults {
+
+    @Param({"REQUEST", "RESPONSE"})
+    public String message;
+
+    private Object payload;
+    private byte[] json;
+    private byte[] binary;
+    private final ControlCodec.Writer writer = new ControlCodec.Writer(256);
+
+    @Setup
+    public void setup() throws ProtocolException {
+        String taskId = "3f2b6c1e-8a4d-4e59-9a77-0c2f5e1d7b90";
+        if ("REQUEST".equals(message)) {
+            payload = new TransferRequest(taskId, "项目资料-2024-最终版.zip", 4_831_838_208L,
+                    "9e107d9d372bb6826bd81d3542a419d6", 4608, 1024 * 1024);
+        } else {
+            payload = TransferResponse.accept(taskId, "/home/user/Downloads/LanShare", 268_435_456L);
+        }
+        json = ControlCodec.GSON.toJson(payload).getBytes(StandardCharsets.UTF_8);
+        binary = ControlCodec.encode(payload);
+    }
+
+    @Benchmark
+    public byte[] jsonEncode() {
+        return ControlCodec.GSON.toJson(payload).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public Object jsonDecode() throws ProtocolException {
+        return ControlCodec.fromJson(new String(json, StandardCharsets.UTF_8));
+    }
+
+    @Benchmark
+    public int binaryEncode() throws ProtocolException {
+        writer.reset();
+        ControlCodec.encode(payload, writer);
+        return writer.size();
+    }
+
+    @Benchmark
+    public Object binaryDecode() throws ProtocolException {
+        return ControlCodec.decode(binary, 0, binary.length);
+    }
+}
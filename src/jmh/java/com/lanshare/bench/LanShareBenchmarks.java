@@ -0,0 +1,44 @@
+package com.lanshare.bench;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * 基准入口
+ *
+ * 接受 JMH 的全部命令行参数，在此基础上：
+ * - 未指定基准名时运行 com.lanshare.bench 下的全部基准
+ * - 默认挂上 GC 分析器，结果中的 gc.alloc.rate（MB/s）和 gc.alloc.rate.norm（B/op）即分配速率
+ *
+ * 用法：
+ * <pre>
+ * java -cp ... com.lanshare.bench.LanShareBenchmarks                       # 全部
+ * java -cp ... com.lanshare.bench.LanShareBenchmarks Checksum -p chunkSize=65536
+ * java -cp ... com.lanshare.bench.LanShareBenchmarks -rf json -rff result.json
+ * </pre>
+ */
+public final class LanShareBenchmarks {
+
+    private LanShareBenchmarks() {
+    }
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        CommandLineOptions cmd = new CommandLineOptions(args);
+        ChainedOptionsBuilder builder = new OptionsBuilder().parent(cmd);
+        if (cmd.getIncludes().isEmpty()) {
+            builder.include(LanShareBenchmarks.class.getPackage().getName() + ".");
+        }
+        boolean gcRequested = cmd.getProfilers().stream()
+                .anyMatch(p -> p.getKlass().equals(GCProfiler.class.getName())
+                        || "gc".equals(p.getKlass()));
+        if (!gcRequested) {
+            builder.addProfiler(GCProfiler.class);
+        }
+        new Runner(builder.build()).run();
+    }
+}
@@ -0,0 +1,101 @@
+package com.lanshare.bench;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+
+/**
+ * 内存中的“已连接” Socket：ProtocolHandler 的输入输出换成给定的流，没有通道（走流式路径）
+ *
+ * 只用于基准测试，测的是协议层的编解码和拷贝开销，不含内核和网卡。
+ */
+final class MemorySocket extends Socket {
+    private final InputStream in;
+    private final OutputStream out;
+
+    MemorySocket(InputStream in, OutputStream out) {
+        this.in = in;
+        this.out = out;
+    }
+
+    @Override
+    public boolean isConnected() {
+        return true;
+    }
+
+    @Override
+    public InputStream getInputStream() {
+        return in;
+    }
+
+    @Override
+    public OutputStream getOutputStream() {
+        return out;
+    }
+
+    @Override
+    public InetAddress getInetAddress() {
+        return InetAddress.getLoopbackAddress();
+    }
+
+    @Override
+    public int getPort() {
+        return 0;
+    }
+
+    /**
+     * 丢弃写入的数据，只计数
+     */
+    static final class NullOutputStream extends OutputStream {
+        long written;
+
+        @Override
+        public void write(int b) {
+            written++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            written += len;
+        }
+    }
+
+    /**
+     * 循环重放同一段字节（例如一个编码好的帧），读不完
+     */
+    static final class RepeatingInputStream extends InputStream {
+        private final byte[] data;
+        private int position;
+
+        RepeatingInputStream(byte[] data) {
+            this.data = data;
+        }
+
+        @Override
+        public int read() {
+            int b = data[position] & 0xFF;
+            position = (position + 1) % data.length;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            int n = Math.min(len, data.length - position);
+            System.arraycopy(data, position, b, off, n);
+            position = (position + n) % data.length;
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return data.length - position;
+        }
+
+        @Override
+        public void close() throws IOException {
+            // 重放流没有底层资源
+        }
+    }
+}
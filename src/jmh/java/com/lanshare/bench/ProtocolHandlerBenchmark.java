@@ -0,0 +1,108 @@
+package com.lanshare.bench;
+
+import com.lanshare.network.config.TransportProfile;
+import com.lanshare.network.protocol.BufferPool;
+import com.lanshare.network.protocol.ChunkFrame;
+import com.lanshare.network.protocol.ChunkHeader;
+import com.lanshare.network.protocol.FileChunk;
+import com.lanshare.network.protocol.FrameDecoder;
+import com.lanshare.network.protocol.ProtocolException;
+import com.lanshare.network.protocol.ProtocolHandler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+/**
+ * ProtocolHandler 的分片收发（内存流，不经过内核）
+ *
+ * 发送端写入只计数的输出流，接收端从循环重放同一帧的输入流读取，
+ * 因此结果只包含协议层的成本：帧头编码、CRC32 校验、流缓冲拷贝和对象分配。
+ * MemorySocket 没有通道，sendChunk 走的是流式路径（ServerSocket 接受的连接也是这条路径）。
+ *
+ * - sendChunk：旧接口，从 FileChunk 取数据
+ * - sendChunkBuffer：缓冲区接口（TransferEngine 使用），头部编码进复用缓冲区
+ * - receiveChunk：旧接口，每帧分配数组并构造 FileChunk
+ * - receiveFrame：零拷贝接口（ReceiveEngine 使用），数据读入缓冲池
+ */
+@State(Scope.Thread)
+public class ProtocolHandlerBenchmark extends BenchmarkDefaults {
+
+    private static final String TASK_ID = "3f2b6c1e-8a4d-4e59-9a77-0c2f5e1d7b90";
+
+    @Param({"65536", "1048576"})
+    public int chunkSize;
+
+    @Param({"DEFAULT", "GIGABIT_WIRED"})
+    public TransportProfile profile;
+
+    private ProtocolHandler sender;
+    private ProtocolHandler receiver;
+    private FrameDecoder decoder;
+
+    private FileChunk chunk;
+    private ByteBuffer payload;
+
+    @Setup
+    public void setup() throws IOException, ProtocolException {
+        byte[] data = new byte[chunkSize];
+        new Random(42).nextBytes(data);
+        chunk = new FileChunk(7, data, TASK_ID);
+        payload = ByteBuffer.wrap(data);
+
+        sender = new ProtocolHandler(new MemorySocket(InputStream.nullInputStream(),
+                new MemorySocket.NullOutputStream()), profile);
+
+        // 用 ProtocolHandler 自己编码一帧，保证重放的字节与线上格式完全一致
+        ByteArrayOutputStream encoded = new ByteArrayOutputStream(chunkSize + 128);
+        ProtocolHandler encoder = new ProtocolHandler(new MemorySocket(InputStream.nullInputStream(), encoded),
+                TransportProfile.DEFAULT);
+        encoder.sendChunk(chunk);
+        encoder.close();
+
+        receiver = new ProtocolHandler(new MemorySocket(
+                new MemorySocket.RepeatingInputStream(encoded.toByteArray()),
+                new MemorySocket.NullOutputStream()), profile);
+        decoder = new FrameDecoder(new BufferPool(chunkSize, 4));
+        decoder.setTaskId(TASK_ID);
+    }
+
+    @TearDown
+    public void tearDown() {
+        sender.close();
+        receiver.close();
+    }
+
+    @Benchmark
+    public void sendChunk() throws ProtocolException {
+        sender.sendChunk(chunk);
+    }
+
+    @Benchmark
+    public void sendChunkBuffer() throws ProtocolException {
+        ChunkHeader header = chunk.getHeader();
+        payload.clear();
+        sender.sendChunk(header, payload);
+    }
+
+    @Benchmark
+    public FileChunk receiveChunk() throws ProtocolException {
+        return receiver.receiveChunk();
+    }
+
+    @Benchmark
+    public int receiveFrame() throws ProtocolException {
+        ChunkFrame frame = receiver.receiveFrame(decoder);
+        int index = frame.getChunkIndex();
+        frame.release();
+        return index;
+    }
+}
@@ -0,0 +1,489 @@
+package com.lanshare.cli;
+
+import com.lanshare.metrics.Metrics;
+import com.lanshare.metrics.MetricsHttpServer;
+import com.lanshare.network.config.DeviceNicknameManager;
+import com.lanshare.network.config.NetworkConfig;
+import com.lanshare.network.discovery.DeviceDiscovery;
+import com.lanshare.network.model.DeviceInfo;
+import com.lanshare.network.protocol.TransferRequest;
+import com.lanshare.network.transfer.AcceptancePolicy;
+import com.lanshare.network.transfer.ReceiveEngine;
+import com.lanshare.network.transfer.ReceiveServer;
+import com.lanshare.network.transfer.SpaceReservationManager;
+import com.lanshare.network.transfer.TransferEngine;
+import com.lanshare.network.transfer.TransferTask;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * 无界面命令行入口（服务器、构建机）
+ *
+ * 整个启动路径不引用任何 JavaFX 类，classpath 中没有 JavaFX 也能运行。
+ * 只在需要时才启动对应的组件：按 IP 发送时不启动设备发现，只列设备时不启动接收服务。
+ *
+ * 用法：
+ *
+ * <pre>
+ * lanshare send &lt;文件&gt; --to &lt;设备ID|设备名|昵称|IP[:端口]&gt; [--wait 秒]
+ * lanshare daemon [--dir 保存目录] [--port 端口] [--accept-all] [--no-discovery] [--metrics-port 端口]
+ * lanshare devices [--wait 秒]
+ * lanshare bench [选项]   （本机回环吞吐量测试，见 LoopbackBenchmark）
+ * </pre>
+ *
+ * 守护进程的保存目录、信任设备等来自 acceptance-policy.json，--dir / --accept-all 只覆盖本次运行。
+ * --metrics-port 在 127.0.0.1 上提供 Prometheus 格式的 /metrics（默认取 metrics.http.port，0 为关闭）。
+ * 没有规则匹配的请求在无界面模式下直接拒绝（不会等待一个不存在的对话框）。
+ *
+ * 低内存运行建议：java -Xmx64m -Xss256k -XX:+UseSerialGC -XX:TieredStopAtLevel=1 ...
+ */
+public final class LanShareCli {
+
+    /** 退出码 */
+    public static final int EXIT_OK = 0;
+    public static final int EXIT_FAILED = 1;
+    public static final int EXIT_USAGE = 2;
+
+    private static final int DEFAULT_WAIT_SECONDS = 5;
+    /** devices 只等询问的回复（启动时询问一次，500ms 后重发），不必等对方的下一个信标 */
+    private static final int DEFAULT_DEVICES_WAIT_SECONDS = 1;
+    private static final long PROGRESS_INTERVAL_MS = 500;
+
+    private static final PrintStream out = System.out;
+    private static final PrintStream err = System.err;
+
+    private LanShareCli() {
+    }
+
+    public static void main(String[] args) {
+        System.exit(run(args));
+    }
+
+    /**
+     * 执行一条命令（daemon 会阻塞直到进程收到退出信号）
+     *
+     * @return 退出码
+     */
+    public static int run(String[] args) {
+        if (args.length == 0) {
+            usage();
+            return EXIT_USAGE;
+        }
+        if ("bench".equals(args[0])) {
+            return LoopbackBenchmark.run(java.util.Arrays.copyOfRange(args, 1, args.length));
+        }
+        Options options;
+        try {
+            options = Options.parse(args);
+        } catch (IllegalArgumentException e) {
+            err.println("参数错误: " + e.getMessage());
+            usage();
+            return EXIT_USAGE;
+        }
+        configureLogging(options.verbose);
+
+        try {
+            switch (options.command) {
+                case "send":
+                    return send(options);
+                case "daemon":
+                    return daemon(options);
+                case "devices":
+                    return devices(options);
+                case "help":
+                    usage();
+                    return EXIT_OK;
+                default:
+                    err.println("未知命令: " + options.command);
+                    usage();
+                    return EXIT_USAGE;
+            }
+        } catch (Exception e) {
+            err.println("执行失败: " + e.getMessage());
+            return EXIT_FAILED;
+        }
+    }
+
+    // ==================== send ====================
+
+    private static int send(Options options) throws Exception {
+        if (options.file == null || options.to == null) {
+            err.println("send 需要 <文件> 和 --to");
+            return EXIT_USAGE;
+        }
+        File file = new File(options.file);
+        if (!file.isFile()) {
+            err.println("文件不存在: " + file);
+            return EXIT_FAILED;
+        }
+
+        DeviceDiscovery discovery = new DeviceDiscovery();
+        discovery.initialize(); // 只生成本机设备信息（带上设备ID，对方可按信任设备自动接收），不绑定端口
+        try {
+            Target target = Target.parse(options.to);
+            if (target == null) {
+                int wait = options.wait(DEFAULT_WAIT_SECONDS);
+                target = discover(discovery, options.to, wait);
+                if (target == null) {
+                    err.println(wait + " 秒内没有发现设备: " + options.to);
+                    return EXIT_FAILED;
+                }
+            }
+            return sendTo(file, target, discovery.getLocalDevice());
+        } finally {
+            discovery.stop();
+        }
+    }
+
+    private static int sendTo(File file, Target target, DeviceInfo localDevice) throws Exception {
+        TransferRequest request = TransferRequest.fromFile(file);
+        if (localDevice != null) {
+            request.setSenderDeviceId(localDevice.getDeviceId());
+        }
+        out.println("发送 " + file.getName() + "（" + formatSize(file.length()) + "）到 " + target);
+
+        long start = System.currentTimeMillis();
+        long[] lastPrint = { 0 };
+        TransferTask task = new TransferTask(request.getTaskId(), file.getAbsolutePath(), target.host, target.port,
+                TransferTask.TransferType.SEND, request, (taskId, bytes, total) -> {
+                    long now = System.currentTimeMillis();
+                    if (now - lastPrint[0] >= PROGRESS_INTERVAL_MS || bytes >= total) {
+                        lastPrint[0] = now;
+                        printProgress(bytes, total, now - start);
+                    }
+                });
+
+        TransferEngine engine = new TransferEngine(1);
+        try {
+            engine.submitTask(task).get();
+            long elapsed = Math.max(1, System.currentTimeMillis() - start);
+            out.printf("%n完成：%s，用时 %.1f 秒，平均 %s/s%n", file.getName(), elapsed / 1000.0,
+                    formatSize(file.length() * 1000 / elapsed));
+            return EXIT_OK;
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause() != null ? e.getCause() : e;
+            err.println();
+            err.println("发送失败: " + cause.getMessage());
+            return EXIT_FAILED;
+        } finally {
+            engine.shutdown();
+        }
+    }
+
+    /**
+     * 通过设备发现按 设备ID / 设备名 / 昵称 查找目标
+     */
+    private static Target discover(DeviceDiscovery discovery, String name, int waitSeconds) throws IOException {
+        startDiscovery(discovery);
+        long deadline = System.currentTimeMillis() + waitSeconds * 1000L;
+        DeviceNicknameManager nicknames = DeviceNicknameManager.getInstance();
+        while (true) {
+            for (DeviceInfo device : discovery.getDeviceList()) {
+                if (device.getDeviceId().equals(name) || device.getDeviceId().startsWith(name)
+                        || name.equalsIgnoreCase(device.getDeviceName())
+                        || name.equals(nicknames.getNickname(device.getIpAddress()))) {
+                    return new Target(device.getIpAddress(), device.getPort(), device.getDeviceName());
+                }
+            }
+            if (System.currentTimeMillis() >= deadline) {
+                return null;
+            }
+            sleep(100);
+        }
+    }
+
+    // ==================== daemon ====================
+
+    private static int daemon(Options options) throws Exception {
+        AcceptancePolicy policy = AcceptancePolicy.getInstance();
+        if (options.dir != null) {
+            policy.setSaveDirectory(new File(options.dir).getAbsolutePath());
+        }
+        if (options.acceptAll) {
+            policy.setDefaultAction(AcceptancePolicy.Action.ACCEPT);
+        }
+
+        ReceiveEngine engine = new ReceiveEngine(policy, SpaceReservationManager.getInstance());
+        engine.addListener(new ConsoleListener());
+        int port = options.port >= 0 ? options.port : NetworkConfig.getTcpPort();
+        int boundPort = engine.start(new ReceiveServer(NetworkConfig.getTransportProfile(), port,
+                NetworkConfig.getMaxConnections(), engine::handleConnection));
+
+        int metricsPort = options.metricsPort >= 0 ? options.metricsPort : NetworkConfig.getMetricsHttpPort();
+        Metrics.startExporters(NetworkConfig.isMetricsJmxEnabled(), metricsPort);
+
+        DeviceDiscovery discovery = null;
+        if (options.discovery) {
+            discovery = new DeviceDiscovery();
+            discovery.initialize();
+            discovery.updateLocalPort(boundPort);
+            startDiscovery(discovery);
+        }
+
+        CountDownLatch stopped = new CountDownLatch(1);
+        DeviceDiscovery finalDiscovery = discovery;
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            out.println("正在停止...");
+            if (finalDiscovery != null) {
+                finalDiscovery.stop();
+            }
+            engine.stop();
+            Metrics.stopExporters();
+            stopped.countDown();
+        }, "lanshare-shutdown"));
+
+        out.println("接收守护进程已启动，端口 " + boundPort + "，默认动作 " + policy.getDefaultAction()
+                + (discovery != null ? "，本机设备ID " + discovery.getLocalDevice().getDeviceId() : "，未启用设备发现"));
+        MetricsHttpServer metrics = Metrics.getHttpServer();
+        if (metrics != null) {
+            out.println("指标: http://127.0.0.1:" + metrics.getPort() + MetricsHttpServer.PATH);
+        }
+        stopped.await();
+        return EXIT_OK;
+    }
+
+    /**
+     * 守护进程的事件输出（每个传输开始、结束各一行，进度每 10% 一行）
+     */
+    private static final class ConsoleListener implements ReceiveEngine.ReceiveListener {
+        private final java.util.Map<String, Integer> lastDecile = new java.util.concurrent.ConcurrentHashMap<>();
+
+        @Override
+        public void onReceiveRejected(TransferRequest request, String remoteIp, String reason) {
+            out.println("拒绝 " + request.getFileName() + " 来自 " + remoteIp + ": " + reason);
+        }
+
+        @Override
+        public void onReceiveStarted(TransferTask task, long resumeOffset, boolean autoAccepted) {
+            out.println("开始接收 " + task.getRequest().getFileName() + "（" + formatSize(task.getRequest().getFileSize()) + "）来自 "
+                    + task.getTargetIp() + " → " + task.getFilePath()
+                    + (resumeOffset > 0 ? "，从 " + formatSize(resumeOffset) + " 处续传" : ""));
+        }
+
+        @Override
+        public void onReceiveProgress(TransferTask task, long received, long total, double bytesPerSecond) {
+            int decile = total > 0 ? (int) (received * 10 / total) : 10;
+            Integer last = lastDecile.put(task.getTaskId(), decile);
+            if (last == null || decile > last) {
+                out.printf("  %s %d%% %s/s%n", task.getRequest().getFileName(), decile * 10,
+                        formatSize((long) bytesPerSecond));
+            }
+        }
+
+        @Override
+        public void onReceiveCompleted(TransferTask task, File file, boolean md5Matched) {
+            lastDecile.remove(task.getTaskId());
+            out.println((md5Matched ? "接收完成 " : "接收完成但 MD5 不一致 ") + file);
+        }
+
+        @Override
+        public void onReceiveFailed(TransferTask task, String reason, boolean canceled) {
+            lastDecile.remove(task.getTaskId());
+            out.println("接收失败 " + task.getRequest().getFileName() + ": " + reason);
+        }
+    }
+
+    // ==================== devices ====================
+
+    private static int devices(Options options) throws Exception {
+        DeviceDiscovery discovery = new DeviceDiscovery();
+        discovery.initialize();
+        try {
+            startDiscovery(discovery);
+            sleep(options.wait(DEFAULT_DEVICES_WAIT_SECONDS) * 1000L);
+            List<DeviceInfo> devices = discovery.getDeviceList();
+            DeviceNicknameManager nicknames = DeviceNicknameManager.getInstance();
+            out.printf("%-36s  %-20s  %-21s  %s%n", "设备ID", "名称", "地址", "状态");
+            for (DeviceInfo d : devices) {
+                out.printf("%-36s  %-20s  %-21s  %s%n", d.getDeviceId(),
+                        nicknames.getDisplayName(d.getIpAddress(), d.getDeviceName()),
+                        d.getIpAddress() + ":" + d.getPort(), d.getStatus());
+            }
+            out.println("共 " + devices.size() + " 个设备");
+            return EXIT_OK;
+        } finally {
+            discovery.stop();
+        }
+    }
+
+    // ==================== 工具方法 ====================
+
+    private static void startDiscovery(DeviceDiscovery discovery) throws IOException {
+        try {
+            discovery.start();
+        } catch (IOException e) {
+            throw new IOException("设备发现启动失败（UDP 端口 " + NetworkConfig.getUdpPort()
+                    + " 可能被本机的守护进程占用，可以直接用 IP[:端口] 指定目标）: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 默认只输出警告，命令行本身的输出走 stdout；-v 打开 INFO 日志
+     */
+    private static void configureLogging(boolean verbose) {
+        Level level = verbose ? Level.INFO : Level.WARNING;
+        Logger root = Logger.getLogger("");
+        root.setLevel(level);
+        for (java.util.logging.Handler h : root.getHandlers()) {
+            h.setLevel(level);
+        }
+    }
+
+    private static void printProgress(long bytes, long total, long elapsedMs) {
+        int percent = total > 0 ? (int) (bytes * 100 / total) : 100;
+        long rate = elapsedMs > 0 ? bytes * 1000 / elapsedMs : 0;
+        out.printf("\r  %3d%%  %s / %s  %s/s   ", percent, formatSize(bytes), formatSize(total), formatSize(rate));
+        out.flush();
+    }
+
+    private static String formatSize(long bytes) {
+        if (bytes < 1024) {
+            return bytes + " B";
+        } else if (bytes < 1024 * 1024) {
+            return String.format("%.1f KB", bytes / 1024.0);
+        } else if (bytes < 1024L * 1024 * 1024) {
+            return String.format("%.1f MB", bytes / (1024.0 * 1024));
+        }
+        return String.format("%.2f GB", bytes / (1024.0 * 1024 * 1024));
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void usage() {
+        out.println("用法:");
+        out.println("  lanshare send <文件> --to <设备ID|设备名|昵称|IP[:端口]> [--wait 秒]");
+        out.println("  lanshare daemon [--dir 保存目录] [--port 端口] [--accept-all] [--no-discovery] [--metrics-port 端口]");
+        out.println("  lanshare devices [--wait 秒]");
+        out.println("  lanshare bench [--dataset huge|small|all] [--content random|compressible|both] ...（bench --help 查看全部选项）");
+        out.println("通用选项: -v 输出详细日志");
+    }
+
+    // ==================== 参数 ====================
+
+    /**
+     * 发送目标（IP 与端口）
+     */
+    private static final class Target {
+        final String host;
+        final int port;
+        final String name;
+
+        Target(String host, int port, String name) {
+            this.host = host;
+            this.port = port;
+            this.name = name;
+        }
+
+        /**
+         * 直接写出的地址：IPv4 字面量（可带 :端口）；其他形式返回 null，交给设备发现
+         */
+        static Target parse(String to) {
+            String host = to;
+            int port = NetworkConfig.getTcpPort();
+            int colon = to.lastIndexOf(':');
+            if (colon > 0) {
+                host = to.substring(0, colon);
+                try {
+                    port = Integer.parseInt(to.substring(colon + 1));
+                } catch (NumberFormatException e) {
+                    return null;
+                }
+            }
+            if (!host.matches("\\d{1,3}(\\.\\d{1,3}){3}") && !host.equalsIgnoreCase("localhost")) {
+                return null;
+            }
+            return new Target(host, port, null);
+        }
+
+        @Override
+        public String toString() {
+            return (name != null ? name + " " : "") + host + ":" + port;
+        }
+    }
+
+    private static final class Options {
+        String command;
+        String file;
+        String to;
+        String dir;
+        int port = -1;
+        int metricsPort = -1;
+        int waitSeconds = -1;
+        boolean acceptAll;
+        boolean discovery = true;
+        boolean verbose;
+
+        int wait(int defaultSeconds) {
+            return waitSeconds >= 0 ? waitSeconds : defaultSeconds;
+        }
+
+        static Options parse(String[] args) {
+            Options o = new Options();
+            o.command = args[0];
+            for (int i = 1; i < args.length; i++) {
+                String a = args[i];
+                switch (a) {
+                    case "--to":
+                        o.to = value(args, ++i, a);
+                        break;
+                    case "--dir":
+                        o.dir = value(args, ++i, a);
+                        break;
+                    case "--port":
+                        o.port = number(value(args, ++i, a), a);
+                        break;
+                    case "--metrics-port":
+                        o.metricsPort = number(value(args, ++i, a), a);
+                        break;
+                    case "--wait":
+                        o.waitSeconds = number(value(args, ++i, a), a);
+                        break;
+                    case "--accept-all":
+                        o.acceptAll = true;
+                        break;
+                    case "--no-discovery":
+                        o.discovery = false;
+                        break;
+                    case "-v":
+                    case "--verbose":
+                        o.verbose = true;
+                        break;
+                    default:
+                        if (a.startsWith("-") || o.file != null) {
+                            throw new IllegalArgumentException("无法识别 " + a);
+                        }
+                        o.file = a;
+                }
+            }
+            return o;
+        }
+
+        private static String value(String[] args, int i, String option) {
+            if (i >= args.length) {
+                throw new IllegalArgumentException(option + " 缺少参数");
+            }
+            return args[i];
+        }
+
+        private static int number(String value, String option) {
+            try {
+                return Integer.parseInt(value);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException(option + " 需要数字: " + value);
+            }
+        }
+    }
+}
@@ -0,0 +1,679 @@
+package com.lanshare.cli;
+
+import com.lanshare.network.config.NetworkConfig;
+import com.lanshare.network.config.TransportProfile;
+import com.lanshare.network.protocol.TransferRequest;
+import com.lanshare.network.transfer.AcceptancePolicy;
+import com.lanshare.network.transfer.ReceiveEngine;
+import com.lanshare.network.transfer.ReceiveServer;
+import com.lanshare.network.transfer.SpaceReservationManager;
+import com.lanshare.network.transfer.TransferEngine;
+import com.lanshare.network.transfer.TransferTask;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.RandomAccessFile;
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * 本机回环端到端吞吐量测试
+ *
+ * 在同一个进程里启动无界面的 ReceiveEngine 和 TransferEngine，经 127.0.0.1 传输生成的数据集，
+ * 每轮输出：MB/s、文件/s、首字节时间、CPU 时间、GC 时间、内存峰值。
+ * 用同一台机器、同一组参数分别跑改动前后的版本，即可得到可比较的数字（--csv / --label 便于汇总）。
+ *
+ * 用法：
+ *
+ * <pre>
+ * lanshare bench [--dataset huge|small|all] [--content random|compressible|both]
+ *                [--size MB] [--files 个数] [--file-size KB] [--threads 发送线程]
+ *                [--runs 轮数] [--warmup 轮数] [--profile 传输配置档]
+ *                [--dir 工作目录] [--csv 文件] [--label 标签] [-v]
+ * </pre>
+ *
+ * 说明：
+ * - 计时从提交第一个任务开始，到接收端全部完成（含写盘与 MD5 校验）为止；
+ *   发送端计算 MD5（TransferRequest.fromFile）在计时之外，单独输出为“准备”
+ * - 首字节时间：从提交到接收端收到第一个数据块，包含建连与握手
+ * - 收发双方在同一进程，CPU / GC / 内存是两端之和；内存峰值为每 10ms 采样的堆与直接缓冲区用量
+ * - 数据集刚生成或刚读过，通常在页缓存中，测到的主要是协议与拷贝路径而不是磁盘
+ * - 引擎目前不压缩，compressible 与 random 的差别用于验证以后的压缩改动
+ * - 不指定 --dir 时数据集生成在临时目录、结束后删除；指定时保留并在下次复用
+ */
+public final class LoopbackBenchmark {
+
+    private static final PrintStream out = System.out;
+    private static final PrintStream err = System.err;
+
+    private static final long MB = 1024 * 1024;
+    private static final long SAMPLE_INTERVAL_MS = 10;
+    private static final long RUN_TIMEOUT_MINUTES = 10;
+
+    private LoopbackBenchmark() {
+    }
+
+    public static void main(String[] args) {
+        System.exit(run(args));
+    }
+
+    /**
+     * 执行测试
+     *
+     * @return 退出码（与 LanShareCli 相同）
+     */
+    public static int run(String[] args) {
+        Options options;
+        try {
+            options = Options.parse(args);
+        } catch (IllegalArgumentException e) {
+            err.println("参数错误: " + e.getMessage());
+            usage();
+            return LanShareCli.EXIT_USAGE;
+        }
+        if (options.help) {
+            usage();
+            return LanShareCli.EXIT_OK;
+        }
+        configureLogging(options.verbose);
+        if (options.profile == null) {
+            options.profile = NetworkConfig.getTransportProfile();
+        }
+
+        boolean tempDir = options.dir == null;
+        File workDir;
+        try {
+            workDir = tempDir ? java.nio.file.Files.createTempDirectory("lanshare-bench").toFile()
+                    : new File(options.dir).getAbsoluteFile();
+        } catch (IOException e) {
+            err.println("无法创建工作目录: " + e.getMessage());
+            return LanShareCli.EXIT_FAILED;
+        }
+
+        out.printf("回环吞吐量测试：配置档 %s，发送线程 %d，每组 %d 轮（另有 %d 轮预热），工作目录 %s%n",
+                options.profile.name(), options.threads, options.runs, options.warmup, workDir);
+        out.println(pad("数据集", -22) + pad("轮次", 5) + pad("文件数", 8) + pad("总大小MB", 10)
+                + pad("准备s", 9) + pad("用时s", 10) + pad("MB/s", 9) + pad("文件/s", 10) + pad("首字节ms", 9)
+                + pad("CPU s", 7) + pad("GC ms/次", 13) + pad("堆峰值MB", 10) + pad("直接MB", 10));
+
+        boolean ok = true;
+        try (PrintWriter csv = openCsv(options.csv)) {
+            for (String dataset : options.datasets()) {
+                for (String content : options.contents()) {
+                    List<File> files = prepareDataset(workDir, dataset, content, options);
+                    String name = dataset + "/" + content;
+                    List<Result> results = new ArrayList<>();
+                    for (int i = 0; i < options.warmup + options.runs; i++) {
+                        Result r = runOnce(workDir, files, options);
+                        if (!r.failures.isEmpty()) {
+                            ok = false;
+                            err.println(name + " 第 " + (i + 1) + " 轮失败: " + r.failures.peek()
+                                    + "（共 " + r.failures.size() + " 个）");
+                            break;
+                        }
+                        if (i < options.warmup) {
+                            continue;
+                        }
+                        results.add(r);
+                        print(name, String.valueOf(results.size()), r);
+                        if (csv != null) {
+                            writeCsv(csv, options, name, results.size(), r);
+                        }
+                    }
+                    if (results.size() > 1) {
+                        print(name, "中位", median(results));
+                    }
+                }
+            }
+        } catch (Exception e) {
+            err.println("测试失败: " + e.getMessage());
+            ok = false;
+        } finally {
+            if (tempDir) {
+                deleteRecursively(workDir);
+            }
+        }
+        return ok ? LanShareCli.EXIT_OK : LanShareCli.EXIT_FAILED;
+    }
+
+    // ==================== 单轮测试 ====================
+
+    /**
+     * 一轮测试的结果
+     */
+    private static final class Result {
+        int files;
+        long bytes;
+        long prepareNanos;
+        long elapsedNanos;
+        long firstByteNanos = -1;
+        long cpuNanos = -1;
+        long gcMillis;
+        long gcCount;
+        long peakHeap;
+        long peakDirect;
+        final Queue<String> failures = new ConcurrentLinkedQueue<>();
+
+        double seconds() {
+            return elapsedNanos / 1e9;
+        }
+
+        double mbPerSecond() {
+            return bytes / (double) MB / seconds();
+        }
+
+        double filesPerSecond() {
+            return files / seconds();
+        }
+    }
+
+    private static Result runOnce(File workDir, List<File> files, Options options) throws Exception {
+        File recvDir = new File(workDir, "recv");
+        deleteRecursively(recvDir);
+        if (!recvDir.mkdirs()) {
+            throw new IOException("无法创建接收目录: " + recvDir);
+        }
+
+        Result result = new Result();
+        result.files = files.size();
+        CountDownLatch done = new CountDownLatch(files.size());
+        Set<String> finished = ConcurrentHashMap.newKeySet();
+        AtomicLong firstByte = new AtomicLong();
+
+        AcceptancePolicy policy = new AcceptancePolicy(null);
+        policy.setDefaultAction(AcceptancePolicy.Action.ACCEPT);
+        policy.setSaveDirectory(recvDir.getAbsolutePath());
+        ReceiveEngine receiver = new ReceiveEngine(policy, SpaceReservationManager.getInstance());
+        receiver.addListener(new ReceiveEngine.ReceiveListener() {
+            @Override
+            public void onReceiveProgress(TransferTask task, long received, long total, double bytesPerSecond) {
+                firstByte.compareAndSet(0, System.nanoTime());
+            }
+
+            @Override
+            public void onReceiveCompleted(TransferTask task, File file, boolean md5Matched) {
+                if (!md5Matched) {
+                    result.failures.add("MD5 不一致: " + file.getName());
+                }
+                if (finished.add(task.getTaskId())) {
+                    done.countDown();
+                }
+            }
+
+            @Override
+            public void onReceiveFailed(TransferTask task, String reason, boolean canceled) {
+                result.failures.add(task.getRequest().getFileName() + ": " + reason);
+                if (finished.add(task.getTaskId())) {
+                    done.countDown();
+                }
+            }
+
+            @Override
+            public void onReceiveRejected(TransferRequest request, String remoteIp, String reason) {
+                result.failures.add(request.getFileName() + " 被拒绝: " + reason);
+                if (finished.add(request.getTaskId())) {
+                    done.countDown();
+                }
+            }
+        });
+
+        // 引擎的进度输出写 System.out，测试期间屏蔽，避免控制台成为瓶颈
+        PrintStream stdout = System.out;
+        if (!options.verbose) {
+            System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        }
+        TransferEngine sender = null;
+        MemorySampler sampler = null;
+        try {
+            // 连接上限放宽到文件数：发送端已开始下一个文件时，接收端可能还在做上一个文件的 MD5 校验，
+            // 测的是传输路径，不应被接收服务器的准入限制打断
+            int port = receiver.start(new ReceiveServer(options.profile, 0,
+                    Math.max(NetworkConfig.getMaxConnections(), files.size() + options.threads),
+                    receiver::handleConnection));
+            sender = new TransferEngine(options.threads);
+
+            // 发送端的 MD5 在计时之外
+            long prepareStart = System.nanoTime();
+            List<TransferTask> tasks = new ArrayList<>(files.size());
+            for (File file : files) {
+                TransferRequest request = TransferRequest.fromFile(file);
+                result.bytes += file.length();
+                tasks.add(new TransferTask(request.getTaskId(), file.getAbsolutePath(), "127.0.0.1", port,
+                        TransferTask.TransferType.SEND, request));
+            }
+            result.prepareNanos = System.nanoTime() - prepareStart;
+
+            System.gc();
+            long cpuStart = processCpuTime();
+            long gcTimeStart = gcTime();
+            long gcCountStart = gcCount();
+            sampler = new MemorySampler();
+            sampler.start();
+
+            long start = System.nanoTime();
+            List<CompletableFuture<Void>> futures = new ArrayList<>(tasks.size());
+            for (TransferTask task : tasks) {
+                CompletableFuture<Void> future = sender.submitTask(task);
+                // 连接没能建立时接收端不会有任何回调，由发送端计数
+                future.whenComplete((v, e) -> {
+                    if (e != null && finished.add(task.getTaskId())) {
+                        result.failures.add(task.getRequest().getFileName() + " 发送失败: " + e.getMessage());
+                        done.countDown();
+                    }
+                });
+                futures.add(future);
+            }
+            if (!done.await(RUN_TIMEOUT_MINUTES, TimeUnit.MINUTES)) {
+                result.failures.add(RUN_TIMEOUT_MINUTES + " 分钟内未完成，剩余 " + done.getCount() + " 个文件");
+            }
+            result.elapsedNanos = System.nanoTime() - start;
+
+            long cpuEnd = processCpuTime();
+            result.cpuNanos = cpuStart >= 0 && cpuEnd >= 0 ? cpuEnd - cpuStart : -1;
+            result.gcMillis = gcTime() - gcTimeStart;
+            result.gcCount = gcCount() - gcCountStart;
+            sampler.finish();
+            result.peakHeap = sampler.peakHeap;
+            result.peakDirect = sampler.peakDirect;
+            if (firstByte.get() != 0) {
+                result.firstByteNanos = firstByte.get() - start;
+            }
+
+            for (CompletableFuture<Void> future : futures) {
+                try {
+                    future.get(1, TimeUnit.MINUTES);
+                } catch (ExecutionException e) {
+                    // 已在 whenComplete 中记录
+                }
+            }
+        } finally {
+            if (sampler != null) {
+                sampler.finish();
+            }
+            if (sender != null) {
+                sender.shutdown();
+            }
+            receiver.stop();
+            System.setOut(stdout);
+        }
+        deleteRecursively(recvDir);
+        return result;
+    }
+
+    /**
+     * 内存采样线程（堆用量与直接缓冲区用量的最大值）
+     */
+    private static final class MemorySampler extends Thread {
+        private final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        private final BufferPoolMXBean direct = ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class)
+                .stream().filter(p -> "direct".equals(p.getName())).findFirst().orElse(null);
+        private volatile boolean running = true;
+        volatile long peakHeap;
+        volatile long peakDirect;
+
+        MemorySampler() {
+            super("lanshare-bench-sampler");
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            while (running) {
+                sample();
+                try {
+                    Thread.sleep(SAMPLE_INTERVAL_MS);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+
+        private void sample() {
+            peakHeap = Math.max(peakHeap, memory.getHeapMemoryUsage().getUsed());
+            if (direct != null) {
+                peakDirect = Math.max(peakDirect, direct.getMemoryUsed());
+            }
+        }
+
+        void finish() throws InterruptedException {
+            if (running) {
+                running = false;
+                interrupt();
+                join();
+                sample();
+            }
+        }
+    }
+
+    private static long processCpuTime() {
+        java.lang.management.OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+        if (os instanceof com.sun.management.OperatingSystemMXBean) {
+            return ((com.sun.management.OperatingSystemMXBean) os).getProcessCpuTime();
+        }
+        return -1;
+    }
+
+    private static long gcTime() {
+        long total = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            total += Math.max(0, gc.getCollectionTime());
+        }
+        return total;
+    }
+
+    private static long gcCount() {
+        long total = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            total += Math.max(0, gc.getCollectionCount());
+        }
+        return total;
+    }
+
+    // ==================== 数据集 ====================
+
+    /**
+     * 生成（或复用）数据集
+     *
+     * huge：一个 --size MB 的文件；small：--files 个 --file-size KB 的文件
+     */
+    private static List<File> prepareDataset(File workDir, String dataset, String content, Options options)
+            throws IOException {
+        List<File> files = new ArrayList<>();
+        if ("huge".equals(dataset)) {
+            File file = new File(new File(workDir, "data"), "huge-" + content + "-" + options.sizeMb + "m.bin");
+            ensureFile(file, options.sizeMb * MB, content, 1);
+            files.add(file);
+        } else {
+            File dir = new File(new File(workDir, "data"),
+                    "small-" + content + "-" + options.files + "x" + options.fileSizeKb + "k");
+            for (int i = 0; i < options.files; i++) {
+                File file = new File(dir, String.format("file-%05d.bin", i));
+                ensureFile(file, options.fileSizeKb * 1024L, content, i + 1);
+                files.add(file);
+            }
+        }
+        return files;
+    }
+
+    private static void ensureFile(File file, long size, String content, long seed) throws IOException {
+        if (file.isFile() && file.length() == size) {
+            return;
+        }
+        File parent = file.getParentFile();
+        if (!parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("无法创建目录: " + parent);
+        }
+        Random random = new Random(seed);
+        byte[] block = new byte[(int) Math.min(MB, size)];
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(0);
+            for (long written = 0; written < size; written += block.length) {
+                if ("random".equals(content)) {
+                    random.nextBytes(block);
+                } else {
+                    fillText(block, random);
+                }
+                raf.write(block, 0, (int) Math.min(block.length, size - written));
+            }
+        }
+    }
+
+    private static final String[] WORDS = { "INFO", "DEBUG", "WARN", "chunk", "written", "offset", "crc",
+            "worker", "transfer", "session", "accepted", "bytes", "queue", "flush" };
+
+    /**
+     * 可压缩内容：类似日志的文本行（gzip 约可压缩到 1/5 以下）
+     */
+    private static void fillText(byte[] block, Random random) {
+        StringBuilder sb = new StringBuilder(block.length + 128);
+        while (sb.length() < block.length) {
+            sb.append("2024-05-01 12:").append(10 + random.nextInt(50)).append(':')
+                    .append(10 + random.nextInt(50)).append(' ');
+            for (int i = 0; i < 6; i++) {
+                sb.append(WORDS[random.nextInt(WORDS.length)]).append(' ');
+            }
+            sb.append(random.nextInt(100000)).append('\n');
+        }
+        byte[] text = sb.toString().getBytes(StandardCharsets.US_ASCII);
+        System.arraycopy(text, 0, block, 0, block.length);
+    }
+
+    // ==================== 输出 ====================
+
+    private static void print(String name, String run, Result r) {
+        out.printf("%-22s%s %7d %9.1f %8.2f %9.2f %8.1f %9.1f %8s %6s %12s %9.1f %9.1f%n",
+                name, pad(run, 5), r.files, r.bytes / (double) MB, r.prepareNanos / 1e9, r.seconds(),
+                r.mbPerSecond(), r.filesPerSecond(),
+                r.firstByteNanos >= 0 ? String.format("%.1f", r.firstByteNanos / 1e6) : "-",
+                r.cpuNanos >= 0 ? String.format("%.2f", r.cpuNanos / 1e9) : "-",
+                r.gcMillis + "/" + r.gcCount, r.peakHeap / (double) MB, r.peakDirect / (double) MB);
+    }
+
+    /**
+     * 各项分别取中位数（按用时排序取中间一轮的吞吐量，其余指标各自取中位数）
+     */
+    private static Result median(List<Result> results) {
+        Result m = new Result();
+        m.files = results.get(0).files;
+        m.bytes = results.get(0).bytes;
+        m.prepareNanos = medianOf(results, r -> r.prepareNanos);
+        m.elapsedNanos = medianOf(results, r -> r.elapsedNanos);
+        m.firstByteNanos = medianOf(results, r -> r.firstByteNanos);
+        m.cpuNanos = medianOf(results, r -> r.cpuNanos);
+        m.gcMillis = medianOf(results, r -> r.gcMillis);
+        m.gcCount = medianOf(results, r -> r.gcCount);
+        m.peakHeap = medianOf(results, r -> r.peakHeap);
+        m.peakDirect = medianOf(results, r -> r.peakDirect);
+        return m;
+    }
+
+    private static long medianOf(List<Result> results, java.util.function.ToLongFunction<Result> field) {
+        long[] values = results.stream().mapToLong(field).sorted().toArray();
+        return values[values.length / 2];
+    }
+
+    private static PrintWriter openCsv(String path) throws IOException {
+        if (path == null) {
+            return null;
+        }
+        File file = new File(path);
+        boolean header = !file.exists() || file.length() == 0;
+        PrintWriter csv = new PrintWriter(new FileWriter(file, StandardCharsets.UTF_8, true), true);
+        if (header) {
+            csv.println("label,dataset,run,profile,threads,files,bytes,prepare_s,seconds,mb_per_s,files_per_s,"
+                    + "ttfb_ms,cpu_s,gc_ms,gc_count,peak_heap_mb,peak_direct_mb");
+        }
+        return csv;
+    }
+
+    private static void writeCsv(PrintWriter csv, Options options, String name, int run, Result r) {
+        csv.printf(java.util.Locale.ROOT, "%s,%s,%d,%s,%d,%d,%d,%.3f,%.3f,%.2f,%.2f,%.2f,%.3f,%d,%d,%.1f,%.1f%n",
+                options.label, name, run, options.profile.name(), options.threads, r.files, r.bytes,
+                r.prepareNanos / 1e9, r.seconds(), r.mbPerSecond(), r.filesPerSecond(),
+                r.firstByteNanos / 1e6, r.cpuNanos / 1e9, r.gcMillis, r.gcCount,
+                r.peakHeap / (double) MB, r.peakDirect / (double) MB);
+    }
+
+    // ==================== 工具方法 ====================
+
+    /**
+     * 按显示宽度补齐（中文字符占两列），width 为负数时左对齐
+     */
+    private static String pad(String text, int width) {
+        int display = 0;
+        for (char c : text.toCharArray()) {
+            display += c >= 0x2E80 ? 2 : 1;
+        }
+        String spaces = " ".repeat(Math.max(0, Math.abs(width) - display));
+        return width < 0 ? text + spaces : spaces + text;
+    }
+
+    private static void configureLogging(boolean verbose) {
+        Level level = verbose ? Level.INFO : Level.WARNING;
+        Logger root = Logger.getLogger("");
+        root.setLevel(level);
+        for (java.util.logging.Handler h : root.getHandlers()) {
+            h.setLevel(level);
+        }
+    }
+
+    private static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        file.delete();
+    }
+
+    private static void usage() {
+        out.println("用法:");
+        out.println("  lanshare bench [--dataset huge|small|all] [--content random|compressible|both]");
+        out.println("                 [--size MB] [--files 个数] [--file-size KB] [--threads 发送线程]");
+        out.println("                 [--runs 轮数] [--warmup 轮数] [--profile 传输配置档]");
+        out.println("                 [--dir 工作目录] [--csv 文件] [--label 标签] [-v]");
+        out.println("默认: --dataset all --content both --size 512 --files 1000 --file-size 64 --threads 4 --runs 3 --warmup 1");
+    }
+
+    // ==================== 参数 ====================
+
+    private static final class Options {
+        String dataset = "all";
+        String content = "both";
+        long sizeMb = 512;
+        int files = 1000;
+        int fileSizeKb = 64;
+        int threads = 4;
+        int runs = 3;
+        int warmup = 1;
+        TransportProfile profile; // null 表示使用配置文件中的 transport.profile
+        String dir;
+        String csv;
+        String label = "";
+        boolean verbose;
+        boolean help;
+
+        List<String> datasets() {
+            return "all".equals(dataset) ? Arrays.asList("huge", "small") : Arrays.asList(dataset);
+        }
+
+        List<String> contents() {
+            return "both".equals(content) ? Arrays.asList("random", "compressible") : Arrays.asList(content);
+        }
+
+        static Options parse(String[] args) {
+            Options o = new Options();
+            for (int i = 0; i < args.length; i++) {
+                String a = args[i];
+                switch (a) {
+                    case "--dataset":
+                        o.dataset = choice(value(args, ++i, a), a, "huge", "small", "all");
+                        break;
+                    case "--content":
+                        o.content = choice(value(args, ++i, a), a, "random", "compressible", "both");
+                        break;
+                    case "--size":
+                        o.sizeMb = positive(value(args, ++i, a), a);
+                        break;
+                    case "--files":
+                        o.files = positive(value(args, ++i, a), a);
+                        break;
+                    case "--file-size":
+                        o.fileSizeKb = positive(value(args, ++i, a), a);
+                        break;
+                    case "--threads":
+                        o.threads = positive(value(args, ++i, a), a);
+                        break;
+                    case "--runs":
+                        o.runs = positive(value(args, ++i, a), a);
+                        break;
+                    case "--warmup":
+                        o.warmup = Math.max(0, number(value(args, ++i, a), a));
+                        break;
+                    case "--profile":
+                        String p = value(args, ++i, a);
+                        o.profile = TransportProfile.parse(p);
+                        if (o.profile == null) {
+                            throw new IllegalArgumentException("未知的传输配置档: " + p);
+                        }
+                        break;
+                    case "--dir":
+                        o.dir = value(args, ++i, a);
+                        break;
+                    case "--csv":
+                        o.csv = value(args, ++i, a);
+                        break;
+                    case "--label":
+                        o.label = value(args, ++i, a);
+                        break;
+                    case "-v":
+                    case "--verbose":
+                        o.verbose = true;
+                        break;
+                    case "-h":
+                    case "--help":
+                        o.help = true;
+                        break;
+                    default:
+                        throw new IllegalArgumentException("无法识别 " + a);
+                }
+            }
+            return o;
+        }
+
+        private static String value(String[] args, int i, String option) {
+            if (i >= args.length) {
+                throw new IllegalArgumentException(option + " 缺少参数");
+            }
+            return args[i];
+        }
+
+        private static int number(String value, String option) {
+            try {
+                return Integer.parseInt(value);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException(option + " 需要数字: " + value);
+            }
+        }
+
+        private static int positive(String value, String option) {
+            int n = number(value, option);
+            if (n <= 0) {
+                throw new IllegalArgumentException(option + " 需要正数: " + value);
+            }
+            return n;
+        }
+
+        private static String choice(String value, String option, String... allowed) {
+            for (String c : allowed) {
+                if (c.equalsIgnoreCase(value)) {
+                    return c;
+                }
+            }
+            throw new IllegalArgumentException(option + " 只能是 " + String.join(" / ", allowed) + ": " + value);
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package com.lanshare.metrics;
+
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 只增不减的计数器（字节数、报文数、重试次数）
+ *
+ * 基于 LongAdder：多个线程同时累加时没有 CAS 争用，热路径上每次只是一次分段加法。
+ */
+public final class Counter extends Metric {
+
+    private final LongAdder value = new LongAdder();
+
+    Counter(String name, String help) {
+        super(name, help);
+    }
+
+    public void inc() {
+        value.increment();
+    }
+
+    public void add(long n) {
+        value.add(n);
+    }
+
+    public long getCount() {
+        return value.sum();
+    }
+
+    @Override
+    String type() {
+        return "counter";
+    }
+
+    @Override
+    void writeSamples(StringBuilder out) {
+        out.append(getName()).append(' ').append(getCount()).append('\n');
+    }
+
+    @Override
+    Map<String, Object> attributes() {
+        return Map.of("Count", getCount());
+    }
+}
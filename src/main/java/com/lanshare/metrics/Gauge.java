@@ -0,0 +1,63 @@
+package com.lanshare.metrics;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * 可增可减的当前值（队列深度、活动会话数）
+ *
+ * 两种用法：调用方用 inc / dec / set 维护；或者用 {@link #bind} 绑定一个取值函数，读取时再计算。
+ */
+public final class Gauge extends Metric {
+
+    private final AtomicLong value = new AtomicLong();
+    private volatile LongSupplier supplier;
+
+    Gauge(String name, String help) {
+        super(name, help);
+    }
+
+    public void inc() {
+        value.incrementAndGet();
+    }
+
+    public void dec() {
+        value.decrementAndGet();
+    }
+
+    public void add(long delta) {
+        value.addAndGet(delta);
+    }
+
+    public void set(long v) {
+        value.set(v);
+    }
+
+    /**
+     * 绑定取值函数（null 表示解除绑定，回到 inc / dec 维护的值）
+     */
+    public void bind(LongSupplier supplier) {
+        this.supplier = supplier;
+    }
+
+    public long getValue() {
+        LongSupplier s = supplier;
+        return s != null ? s.getAsLong() : value.get();
+    }
+
+    @Override
+    String type() {
+        return "gauge";
+    }
+
+    @Override
+    void writeSamples(StringBuilder out) {
+        out.append(getName()).append(' ').append(getValue()).append('\n');
+    }
+
+    @Override
+    Map<String, Object> attributes() {
+        return Map.of("Value", getValue());
+    }
+}
@@ -0,0 +1,176 @@
+package com.lanshare.metrics;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 耗时分布（纳秒），HDR 风格的对数线性分桶
+ *
+ * 每个 2 的幂区间再等分成 32 个子桶：任何数值的相对误差不超过 1/32（约 3%），
+ * 覆盖 0 到 Long.MAX_VALUE 纳秒只需要约 1900 个桶，固定内存、记录时不分配、不加锁。
+ * 分位数取所在桶的上界（与 HdrHistogram 的 highestEquivalentValue 一致，宁可偏大）。
+ *
+ * 计数从启动开始累计，不做时间衰减；需要某段时间内的分布时用两次快照相减，或 {@link #reset}。
+ */
+public final class Histogram extends Metric {
+
+    private static final int SUB_BITS = 5;
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+    private static final int BUCKETS = (64 - SUB_BITS) * SUB_COUNT;
+
+    /** Prometheus 导出的分位数 */
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    Histogram(String name, String help) {
+        super(name, help);
+    }
+
+    /**
+     * 记录一个耗时（纳秒，负数按 0 计）
+     */
+    public void record(long nanos) {
+        long v = Math.max(0, nanos);
+        counts.incrementAndGet(bucketOf(v));
+        count.increment();
+        sum.add(v);
+        if (v > max.get()) {
+            max.accumulateAndGet(v, Math::max);
+        }
+    }
+
+    /**
+     * 记录从 startNanos（System.nanoTime）到现在的耗时
+     */
+    public void recordSince(long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * 耗时总和（纳秒）
+     */
+    public long getSum() {
+        return sum.sum();
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    public double getMean() {
+        long n = getCount();
+        return n == 0 ? 0 : (double) getSum() / n;
+    }
+
+    /**
+     * 分位数（纳秒），q 在 0 到 1 之间；没有样本时返回 0
+     */
+    public long percentile(double q) {
+        return percentiles(q)[0];
+    }
+
+    /**
+     * 一次遍历计算多个分位数（纳秒）
+     */
+    public long[] percentiles(double... qs) {
+        long[] snapshot = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+        }
+        long[] result = new long[qs.length];
+        if (total == 0) {
+            return result;
+        }
+        long highest = getMax();
+        for (int k = 0; k < qs.length; k++) {
+            long rank = Math.max(1, (long) Math.ceil(Math.min(1, Math.max(0, qs[k])) * total));
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += snapshot[i];
+                if (seen >= rank) {
+                    result[k] = Math.min(upperBound(i), highest);
+                    break;
+                }
+            }
+        }
+        return result;
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+        count.reset();
+        sum.reset();
+        max.set(0);
+    }
+
+    // ==================== 分桶 ====================
+
+    static int bucketOf(long v) {
+        if (v < SUB_COUNT) {
+            return (int) v;
+        }
+        int msb = 63 - Long.numberOfLeadingZeros(v);
+        int shift = msb - SUB_BITS;
+        int mantissa = (int) (v >>> shift); // [SUB_COUNT, 2 * SUB_COUNT)
+        return (shift + 1) * SUB_COUNT + (mantissa - SUB_COUNT);
+    }
+
+    static long upperBound(int bucket) {
+        if (bucket < 2 * SUB_COUNT) {
+            return bucket;
+        }
+        int shift = bucket / SUB_COUNT - 1;
+        long mantissa = bucket % SUB_COUNT + SUB_COUNT;
+        return ((mantissa + 1) << shift) - 1;
+    }
+
+    // ==================== 导出 ====================
+
+    @Override
+    String type() {
+        return "summary";
+    }
+
+    @Override
+    void writeSamples(StringBuilder out) {
+        long[] values = percentiles(QUANTILES);
+        for (int i = 0; i < QUANTILES.length; i++) {
+            out.append(getName()).append("{quantile=\"").append(QUANTILES[i]).append("\"} ");
+            appendValue(out, values[i] / 1e9);
+            out.append('\n');
+        }
+        out.append(getName()).append("_sum ");
+        appendValue(out, getSum() / 1e9);
+        out.append('\n');
+        out.append(getName()).append("_count ").append(getCount()).append('\n');
+    }
+
+    @Override
+    Map<String, Object> attributes() {
+        long[] values = percentiles(QUANTILES);
+        Map<String, Object> attrs = new LinkedHashMap<>();
+        attrs.put("Count", getCount());
+        attrs.put("MeanMicros", getMean() / 1000);
+        attrs.put("MaxMicros", getMax() / 1000.0);
+        attrs.put("P50Micros", values[0] / 1000.0);
+        attrs.put("P90Micros", values[1] / 1000.0);
+        attrs.put("P99Micros", values[2] / 1000.0);
+        attrs.put("P999Micros", values[3] / 1000.0);
+        return attrs;
+    }
+}
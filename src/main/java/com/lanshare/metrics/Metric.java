@@ -0,0 +1,53 @@
+package com.lanshare.metrics;
+
+import java.util.Map;
+
+/**
+ * 指标基类：名称（Prometheus 命名规范，例如 lanshare_bytes_sent_total）和说明
+ *
+ * 子类只负责记录和导出自己的数值；注册、JMX 和 HTTP 导出由 {@link MetricsRegistry} 完成。
+ */
+public abstract class Metric {
+
+    private final String name;
+    private final String help;
+
+    Metric(String name, String help) {
+        if (name == null || !name.matches("[a-zA-Z_:][a-zA-Z0-9_:]*")) {
+            throw new IllegalArgumentException("指标名称不合法: " + name);
+        }
+        this.name = name;
+        this.help = help;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getHelp() {
+        return help;
+    }
+
+    /**
+     * Prometheus 类型：counter / gauge / summary
+     */
+    abstract String type();
+
+    /**
+     * 以 Prometheus 文本格式输出样本行（不含 HELP / TYPE）
+     */
+    abstract void writeSamples(StringBuilder out);
+
+    /**
+     * JMX 属性（属性名 → 当前值）
+     */
+    abstract Map<String, Object> attributes();
+
+    static void appendValue(StringBuilder out, double value) {
+        if (value == (long) value) {
+            out.append((long) value);
+        } else {
+            out.append(value);
+        }
+    }
+}
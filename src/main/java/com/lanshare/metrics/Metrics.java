@@ -0,0 +1,110 @@
+package com.lanshare.metrics;
+
+import java.io.IOException;
+import java.util.logging.Logger;
+
+/**
+ * 内置指标目录
+ *
+ * 热路径直接使用这里的静态字段（一次 LongAdder 累加或一次分桶计数），不做名称查找，也不判断是否启用：
+ * 指标总是在记录，导出器（JMX / HTTP）只决定能不能被外部读到。
+ *
+ * 耗时类指标统一以纳秒记录，Prometheus 导出时换算为秒（名称以 _seconds 结尾），JMX 中以微秒展示。
+ */
+public final class Metrics {
+    private static final Logger logger = Logger.getLogger(Metrics.class.getName());
+
+    private static final MetricsRegistry REGISTRY = MetricsRegistry.getInstance();
+
+    // ==================== 传输 ====================
+
+    public static final Counter BYTES_SENT = REGISTRY.counter(
+            "lanshare_bytes_sent_total", "已发送的文件数据字节数");
+    public static final Counter BYTES_RECEIVED = REGISTRY.counter(
+            "lanshare_bytes_received_total", "已接收的文件数据字节数");
+    public static final Counter CHUNKS_SENT = REGISTRY.counter(
+            "lanshare_chunks_sent_total", "已发送的数据块数");
+    public static final Counter CHUNKS_RECEIVED = REGISTRY.counter(
+            "lanshare_chunks_received_total", "已接收的数据块数");
+    public static final Histogram CHUNK_SEND_LATENCY = REGISTRY.histogram(
+            "lanshare_chunk_send_seconds", "单个数据块写入连接的耗时");
+    public static final Histogram CHUNK_RECEIVE_LATENCY = REGISTRY.histogram(
+            "lanshare_chunk_receive_seconds", "单个数据块从连接读出并交给写盘队列的耗时");
+    public static final Counter RETRIES = REGISTRY.counter(
+            "lanshare_transfer_retries_total", "传输失败后的重试次数");
+    public static final Gauge ACTIVE_SEND_SESSIONS = REGISTRY.gauge(
+            "lanshare_active_send_sessions", "正在发送的任务数");
+    public static final Gauge ACTIVE_RECEIVE_SESSIONS = REGISTRY.gauge(
+            "lanshare_active_receive_sessions", "正在接收的任务数");
+
+    // ==================== 协议编解码 ====================
+
+    public static final Histogram FRAME_ENCODE = REGISTRY.histogram(
+            "lanshare_frame_encode_seconds", "构造数据帧头（含 CRC32）的耗时");
+    public static final Histogram FRAME_DECODE = REGISTRY.histogram(
+            "lanshare_frame_decode_seconds", "解析数据帧头与 CRC32 校验的耗时（不含网络读取）");
+
+    // ==================== 磁盘 ====================
+
+    public static final Histogram DISK_READ = REGISTRY.histogram(
+            "lanshare_disk_read_seconds", "读取一个数据块的磁盘耗时");
+    public static final Histogram DISK_WRITE = REGISTRY.histogram(
+            "lanshare_disk_write_seconds", "写入一个数据块的磁盘耗时");
+    public static final Gauge DISK_WRITE_QUEUE = REGISTRY.gauge(
+            "lanshare_disk_write_queue_depth", "等待写盘的数据块数");
+
+    // ==================== 发现 ====================
+
+    public static final Counter DISCOVERY_RECEIVED = REGISTRY.counter(
+            "lanshare_discovery_packets_received_total", "收到的发现报文数");
+    public static final Counter DISCOVERY_SENT = REGISTRY.counter(
+            "lanshare_discovery_packets_sent_total", "发出的发现报文数");
+    public static final Counter DISCOVERY_DROPPED = REGISTRY.counter(
+            "lanshare_discovery_packets_dropped_total", "处理队列满时丢弃的发现报文数");
+    public static final Gauge DISCOVERY_QUEUE = REGISTRY.gauge(
+            "lanshare_discovery_queue_depth", "等待处理的发现报文数");
+
+    private static MetricsHttpServer httpServer;
+
+    private Metrics() {
+    }
+
+    /**
+     * 启动导出器
+     *
+     * @param jmx      是否注册 JMX MBean
+     * @param httpPort HTTP /metrics 端口，0 或负数表示不启动
+     */
+    public static synchronized void startExporters(boolean jmx, int httpPort) {
+        if (jmx) {
+            REGISTRY.enableJmx();
+        }
+        if (httpPort > 0 && httpServer == null) {
+            MetricsHttpServer server = new MetricsHttpServer(REGISTRY, httpPort);
+            try {
+                server.start();
+                httpServer = server;
+            } catch (IOException e) {
+                // 端口被占用不影响传输功能
+                logger.warning("指标端点启动失败（端口 " + httpPort + "）: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 停止 HTTP 端点（JMX MBean 保留到进程退出）
+     */
+    public static synchronized void stopExporters() {
+        if (httpServer != null) {
+            httpServer.stop();
+            httpServer = null;
+        }
+    }
+
+    /**
+     * 当前的 HTTP 端点（未启动时为 null）
+     */
+    public static synchronized MetricsHttpServer getHttpServer() {
+        return httpServer;
+    }
+}
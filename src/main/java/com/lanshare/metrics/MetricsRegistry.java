@@ -0,0 +1,200 @@
+package com.lanshare.metrics;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.Function;
+import java.util.logging.Logger;
+
+/**
+ * 指标注册表（单例）
+ *
+ * 指标按名称注册，同名重复注册返回已有的实例（类型不同时抛出异常），所以各模块可以各自声明需要的指标。
+ * 常用指标集中定义在 {@link Metrics} 中，热路径直接引用静态字段，不查表。
+ *
+ * 导出方式：
+ * - JMX：{@link #enableJmx()} 之后每个指标注册为 com.lanshare:type=Metrics,name=指标名 的 MBean
+ *   （jconsole / VisualVM / JMX exporter 都能读取），之后新注册的指标也会自动注册
+ * - Prometheus 文本格式：{@link #scrape()}，由 {@link MetricsHttpServer} 通过 /metrics 提供
+ */
+public final class MetricsRegistry {
+    private static final Logger logger = Logger.getLogger(MetricsRegistry.class.getName());
+
+    private static final String JMX_DOMAIN = "com.lanshare";
+
+    private static final MetricsRegistry INSTANCE = new MetricsRegistry();
+
+    private final Map<String, Metric> metrics = new ConcurrentSkipListMap<>();
+    private volatile MBeanServer mbeanServer;
+
+    public static MetricsRegistry getInstance() {
+        return INSTANCE;
+    }
+
+    MetricsRegistry() {
+    }
+
+    // ==================== 注册 ====================
+
+    public Counter counter(String name, String help) {
+        return register(name, Counter.class, n -> new Counter(n, help));
+    }
+
+    public Gauge gauge(String name, String help) {
+        return register(name, Gauge.class, n -> new Gauge(n, help));
+    }
+
+    public Histogram histogram(String name, String help) {
+        return register(name, Histogram.class, n -> new Histogram(n, help));
+    }
+
+    private <T extends Metric> T register(String name, Class<T> type, Function<String, T> factory) {
+        Metric metric = metrics.computeIfAbsent(name, factory);
+        if (!type.isInstance(metric)) {
+            throw new IllegalArgumentException("指标 " + name + " 已注册为 " + metric.type());
+        }
+        MBeanServer server = mbeanServer;
+        if (server != null) {
+            registerMBean(server, metric);
+        }
+        return type.cast(metric);
+    }
+
+    public Metric get(String name) {
+        return metrics.get(name);
+    }
+
+    /**
+     * 所有指标（按名称排序）
+     */
+    public List<Metric> getMetrics() {
+        return new ArrayList<>(metrics.values());
+    }
+
+    // ==================== JMX ====================
+
+    /**
+     * 把所有指标注册到平台 MBeanServer（重复调用是安全的）
+     */
+    public synchronized void enableJmx() {
+        if (mbeanServer != null) {
+            return;
+        }
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        mbeanServer = server;
+        for (Metric metric : metrics.values()) {
+            registerMBean(server, metric);
+        }
+        logger.info("指标已注册到 JMX（" + JMX_DOMAIN + ":type=Metrics），共 " + metrics.size() + " 个");
+    }
+
+    public boolean isJmxEnabled() {
+        return mbeanServer != null;
+    }
+
+    static ObjectName objectName(String metricName) throws JMException {
+        return new ObjectName(JMX_DOMAIN + ":type=Metrics,name=" + metricName);
+    }
+
+    private static void registerMBean(MBeanServer server, Metric metric) {
+        try {
+            ObjectName name = objectName(metric.getName());
+            if (!server.isRegistered(name)) {
+                server.registerMBean(new MetricMBean(metric), name);
+            }
+        } catch (JMException e) {
+            logger.fine("注册 MBean 失败 " + metric.getName() + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * 把一个指标适配为只读的 DynamicMBean（属性来自 Metric.attributes）
+     */
+    private static final class MetricMBean implements DynamicMBean {
+        private final Metric metric;
+        private final MBeanInfo info;
+
+        MetricMBean(Metric metric) {
+            this.metric = metric;
+            Map<String, Object> attrs = metric.attributes();
+            MBeanAttributeInfo[] infos = new MBeanAttributeInfo[attrs.size()];
+            int i = 0;
+            for (Map.Entry<String, Object> e : attrs.entrySet()) {
+                infos[i++] = new MBeanAttributeInfo(e.getKey(), e.getValue().getClass().getName(),
+                        metric.getHelp(), true, false, false);
+            }
+            this.info = new MBeanInfo(Metric.class.getName(), metric.getHelp(), infos, null, null, null);
+        }
+
+        @Override
+        public Object getAttribute(String attribute) throws AttributeNotFoundException {
+            Object value = metric.attributes().get(attribute);
+            if (value == null) {
+                throw new AttributeNotFoundException(attribute);
+            }
+            return value;
+        }
+
+        @Override
+        public AttributeList getAttributes(String[] attributes) {
+            Map<String, Object> attrs = metric.attributes(); // 一次取值，分位数只计算一遍
+            AttributeList list = new AttributeList();
+            for (String a : attributes) {
+                Object value = attrs.get(a);
+                if (value != null) {
+                    list.add(new Attribute(a, value));
+                }
+            }
+            return list;
+        }
+
+        @Override
+        public void setAttribute(Attribute attribute) {
+            throw new UnsupportedOperationException("指标是只读的");
+        }
+
+        @Override
+        public AttributeList setAttributes(AttributeList attributes) {
+            return new AttributeList();
+        }
+
+        @Override
+        public Object invoke(String actionName, Object[] params, String[] signature) {
+            throw new UnsupportedOperationException(actionName);
+        }
+
+        @Override
+        public MBeanInfo getMBeanInfo() {
+            return info;
+        }
+    }
+
+    // ==================== Prometheus ====================
+
+    /**
+     * 以 Prometheus 文本格式（0.0.4）输出所有指标
+     */
+    public String scrape() {
+        StringBuilder out = new StringBuilder(4096);
+        for (Metric metric : metrics.values()) {
+            if (metric.getHelp() != null) {
+                out.append("# HELP ").append(metric.getName()).append(' ')
+                        .append(metric.getHelp().replace("\\", "\\\\").replace("\n", "\\n")).append('\n');
+            }
+            out.append("# TYPE ").append(metric.getName()).append(' ').append(metric.type()).append('\n');
+            metric.writeSamples(out);
+        }
+        return out.toString();
+    }
+}
@@ -0,0 +1,38 @@
+package com.lanshare.metrics.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * 在传输线程上同步执行的监听器回调
+ *
+ * 回调慢会直接拖慢收包：界面更新应该切到界面线程，不能在回调里做重活。
+ */
+@Name("com.lanshare.Callback")
+@Label("监听器回调")
+@Category({"LanShare", "传输"})
+@Description("在传输线程上执行的监听器回调（界面更新等）")
+@Threshold("5 ms")
+@StackTrace(false)
+public final class CallbackEvent extends Event {
+
+    @Label("任务ID")
+    private String taskId;
+
+    @Label("回调")
+    private String callback;
+
+    public void record(String taskId, String callback) {
+        end();
+        if (shouldCommit()) {
+            this.taskId = taskId;
+            this.callback = callback;
+            commit();
+        }
+    }
+}
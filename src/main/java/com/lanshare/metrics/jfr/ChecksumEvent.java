@@ -0,0 +1,48 @@
+package com.lanshare.metrics.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * 计算校验值：分片的 CRC32（两端各一次）和整个文件的 MD5（发送前、接收后各一次）
+ *
+ * chunkIndex 为 -1 表示整个文件。
+ */
+@Name("com.lanshare.Checksum")
+@Label("校验")
+@Category({"LanShare", "传输"})
+@Description("计算分片 CRC32 或整个文件的 MD5")
+@Threshold("5 ms")
+@StackTrace(false)
+public final class ChecksumEvent extends Event {
+
+    @Label("任务ID")
+    private String taskId;
+
+    @Label("算法")
+    private String algorithm;
+
+    @Label("分片序号")
+    private int chunkIndex;
+
+    @Label("字节数")
+    @DataAmount
+    private long bytes;
+
+    public void record(String taskId, String algorithm, int chunkIndex, long bytes) {
+        end();
+        if (shouldCommit()) {
+            this.taskId = taskId;
+            this.algorithm = algorithm;
+            this.chunkIndex = chunkIndex;
+            this.bytes = bytes;
+            commit();
+        }
+    }
+}
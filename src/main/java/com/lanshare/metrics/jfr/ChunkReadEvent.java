@@ -0,0 +1,46 @@
+package com.lanshare.metrics.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * 发送端读取一个分片（ChunkSource.next，包括等待缓冲池）
+ */
+@Name("com.lanshare.ChunkRead")
+@Label("读取分片")
+@Category({"LanShare", "传输"})
+@Description("发送端从磁盘读取一个分片")
+@Threshold("10 ms")
+@StackTrace(false)
+public final class ChunkReadEvent extends Event {
+
+    @Label("任务ID")
+    private String taskId;
+
+    @Label("分片序号")
+    private int chunkIndex;
+
+    @Label("文件偏移")
+    private long offset;
+
+    @Label("字节数")
+    @DataAmount
+    private int bytes;
+
+    public void record(String taskId, int chunkIndex, long offset, int bytes) {
+        end();
+        if (shouldCommit()) {
+            this.taskId = taskId;
+            this.chunkIndex = chunkIndex;
+            this.offset = offset;
+            this.bytes = bytes;
+            commit();
+        }
+    }
+}
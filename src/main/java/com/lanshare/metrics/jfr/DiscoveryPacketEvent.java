@@ -0,0 +1,40 @@
+package com.lanshare.metrics.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+import java.net.InetAddress;
+
+/**
+ * 发现工作线程处理一个报文（解码、更新设备注册表、回调界面）
+ */
+@Name("com.lanshare.DiscoveryPacket")
+@Label("处理发现报文")
+@Category({"LanShare", "发现"})
+@Description("工作线程解码并处理一个发现报文")
+@Threshold("1 ms")
+@StackTrace(false)
+public final class DiscoveryPacketEvent extends Event {
+
+    @Label("来源地址")
+    private String source;
+
+    @Label("字节数")
+    @DataAmount
+    private int bytes;
+
+    public void record(InetAddress source, int bytes) {
+        end();
+        if (shouldCommit()) {
+            this.source = source.getHostAddress(); // 只在提交时转换，不录制时不分配
+            this.bytes = bytes;
+            commit();
+        }
+    }
+}
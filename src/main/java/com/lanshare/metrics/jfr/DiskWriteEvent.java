@@ -0,0 +1,48 @@
+package com.lanshare.metrics.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * 接收端写线程把一个分片写入文件（ChunkWriter）
+ *
+ * queueDepth 是开始写时还在排队的分片数：持续等于队列容量说明磁盘是瓶颈。
+ */
+@Name("com.lanshare.DiskWrite")
+@Label("写入磁盘")
+@Category({"LanShare", "传输"})
+@Description("写线程把一个分片写入文件")
+@Threshold("10 ms")
+@StackTrace(false)
+public final class DiskWriteEvent extends Event {
+
+    @Label("任务ID")
+    private String taskId;
+
+    @Label("文件偏移")
+    private long offset;
+
+    @Label("字节数")
+    @DataAmount
+    private int bytes;
+
+    @Label("排队分片数")
+    private int queueDepth;
+
+    public void record(String taskId, long offset, int bytes, int queueDepth) {
+        end();
+        if (shouldCommit()) {
+            this.taskId = taskId;
+            this.offset = offset;
+            this.bytes = bytes;
+            this.queueDepth = queueDepth;
+            commit();
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package com.lanshare.metrics.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * 接收端从连接读出一个数据帧
+ *
+ * 耗时包括等待下一帧到达的时间：和发送端的 ChunkRead / FrameSend 对照，才能判断慢在哪一端。
+ */
+@Name("com.lanshare.FrameReceive")
+@Label("接收数据帧")
+@Category({"LanShare", "传输"})
+@Description("从连接读出一个数据帧（包括等待发送端的时间）")
+@Threshold("10 ms")
+@StackTrace(false)
+public final class FrameReceiveEvent extends Event {
+
+    @Label("任务ID")
+    private String taskId;
+
+    @Label("分片序号")
+    private int chunkIndex;
+
+    @Label("字节数")
+    @DataAmount
+    private int bytes;
+
+    public void record(String taskId, int chunkIndex, int bytes) {
+        end();
+        if (shouldCommit()) {
+            this.taskId = taskId;
+            this.chunkIndex = chunkIndex;
+            this.bytes = bytes;
+            commit();
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package com.lanshare.metrics.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * 发送端把一个数据帧写入连接
+ *
+ * 耗时长说明 socket 发送缓冲区满了：网络带宽不够，或者接收端读得慢（TCP 背压）。
+ */
+@Name("com.lanshare.FrameSend")
+@Label("发送数据帧")
+@Category({"LanShare", "传输"})
+@Description("把一个数据帧写入连接（慢说明网络或接收端跟不上）")
+@Threshold("10 ms")
+@StackTrace(false)
+public final class FrameSendEvent extends Event {
+
+    @Label("任务ID")
+    private String taskId;
+
+    @Label("分片序号")
+    private int chunkIndex;
+
+    @Label("字节数")
+    @DataAmount
+    private int bytes;
+
+    public void record(String taskId, int chunkIndex, int bytes) {
+        end();
+        if (shouldCommit()) {
+            this.taskId = taskId;
+            this.chunkIndex = chunkIndex;
+            this.bytes = bytes;
+            commit();
+        }
+    }
+}
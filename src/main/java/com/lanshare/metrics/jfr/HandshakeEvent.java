@@ -0,0 +1,62 @@
+package com.lanshare.metrics.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * 传输握手
+ *
+ * 发送端：从发送请求到收到响应；接收端：从收到请求到发出接受响应（包括等待用户确认和预分配磁盘空间）。
+ */
+@Name("com.lanshare.Handshake")
+@Label("握手")
+@Category({"LanShare", "传输"})
+@Description("发送传输请求到收到响应（发送端），或收到请求到发出接受响应（接收端）")
+@Threshold("0 ms")
+@StackTrace(false)
+public final class HandshakeEvent extends Event {
+
+    @Label("任务ID")
+    private String taskId;
+
+    @Label("对端")
+    private String peer;
+
+    @Label("方向")
+    private String direction;
+
+    @Label("文件大小")
+    @DataAmount
+    private long fileSize;
+
+    @Label("续传偏移")
+    @DataAmount
+    private long resumeOffset;
+
+    @Label("已接受")
+    private boolean accepted;
+
+    @Label("二进制控制消息")
+    private boolean binaryControl;
+
+    public void record(String taskId, String peer, String direction, long fileSize, long resumeOffset,
+            boolean accepted, boolean binaryControl) {
+        end();
+        if (shouldCommit()) {
+            this.taskId = taskId;
+            this.peer = peer;
+            this.direction = direction;
+            this.fileSize = fileSize;
+            this.resumeOffset = resumeOffset;
+            this.accepted = accepted;
+            this.binaryControl = binaryControl;
+            commit();
+        }
+    }
+}
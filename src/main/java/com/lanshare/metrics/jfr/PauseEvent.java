@@ -0,0 +1,42 @@
+package com.lanshare.metrics.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * 任务暂停的时间段（从暂停到恢复或取消）
+ *
+ * remote 为 true 表示对端发来的暂停（接收端收到发送方的 PAUSE 帧），否则是本地任务等待恢复。
+ */
+@Name("com.lanshare.Pause")
+@Label("暂停")
+@Category({"LanShare", "传输"})
+@Description("任务从暂停到恢复的时间段")
+@Threshold("0 ms")
+@StackTrace(false)
+public final class PauseEvent extends Event {
+
+    @Label("任务ID")
+    private String taskId;
+
+    @Label("方向")
+    private String direction;
+
+    @Label("对端暂停")
+    private boolean remote;
+
+    public void record(String taskId, String direction, boolean remote) {
+        end();
+        if (shouldCommit()) {
+            this.taskId = taskId;
+            this.direction = direction;
+            this.remote = remote;
+            commit();
+        }
+    }
+}
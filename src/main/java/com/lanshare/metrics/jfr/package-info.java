@@ -0,0 +1,28 @@
+/**
+ * JDK Flight Recorder 事件：传输和发现热路径上每一步的耗时
+ *
+ * 用法（事件都以 begin / record 成对出现，record 结束计时并在需要时提交）：
+ *
+ * <pre>
+ * ChunkReadEvent event = new ChunkReadEvent();
+ * event.begin();
+ * ChunkSource.Chunk chunk = source.next();
+ * event.record(taskId, chunk.getIndex(), chunk.getOffset(), chunk.getSize());
+ * </pre>
+ *
+ * 没有录制时 shouldCommit 直接返回 false，事件对象会被逃逸分析消除，稳态开销可以忽略；
+ * 录制时也只提交超过阈值（@Threshold）的事件，例如分片级事件默认只记录 10ms 以上的。
+ *
+ * 排查一次慢传输时叠加 lanshare.jfc（src/main/resources，全部事件阈值为 0）：
+ *
+ * <pre>
+ * java -XX:StartFlightRecording:settings=default,settings=lanshare.jfc,filename=lanshare.jfr ...
+ * jfr print --categories LanShare lanshare.jfr
+ * </pre>
+ *
+ * 单独调整某个事件：-XX:StartFlightRecording:+com.lanshare.ChunkRead#threshold=1ms
+ *
+ * 对照 ChunkRead（磁盘读）、Checksum（CPU）、FrameSend / FrameReceive（网络）、DiskWrite（磁盘写）
+ * 和 Callback（界面回调）的耗时分布，就能看出瓶颈在哪一步。聚合的计数和分布见 {@link com.lanshare.metrics.Metrics}。
+ */
+package com.lanshare.metrics.jfr;
@@ -10,10 +10,16 @@ public class NetworkConfig {
     //网络端口号
     public static final int UDP_PORT=8888;
 
-    //广播间隔时间
+    //广播间隔时间（旧版本的固定间隔；现在由自适应信标控制，见 BEACON_*）
     public static final int BROADCAST_INTERVAL=5000;
-    //UDP接收缓冲区
-    public static final int UDP_BUFFER_SIZE=1024;
+    //单个UDP报文的最大长度（接收用的直接缓冲区大小，超过 1024 字节的报文不再被截断）
+    public static final int UDP_BUFFER_SIZE=65507;
+    //UDP Socket 接收缓冲区（字节），广播风暴时由内核先缓存，工作线程来不及处理也不会马上丢包
+    public static final int UDP_RECEIVE_BUFFER=1024*1024;
+    //解码和处理发现报文的工作线程数
+    public static final int UDP_WORKER_THREADS=2;
+    //等待工作线程处理的报文数上限，超过后丢弃并计入溢出数
+    public static final int UDP_RECEIVE_QUEUE=1024;
 
     //-----------------------TCP配置------------------------
     //TCP文件传输端口
@@ -24,6 +30,8 @@ public class NetworkConfig {
     public static final int SOCKET_READ_TIMEOUT=60000;
     //TCP接收缓冲区大小(字节）
     public static final int TCP_BUFFER_SIZE=8192;
+    //默认传输配置档（见 TransportProfile）
+    public static final String TRANSPORT_PROFILE="DEFAULT";
 
     //------心跳配置-------------------------------
     //心跳间隔
@@ -38,8 +46,28 @@ public class NetworkConfig {
     public static final int DEVICE_TIMEOUT=30000;
     //设备清理时间，2分钟后彻底删除离线设备
     public static final int DEVICE_CLEANUP_TIME=120000;
-    //设备状态检查,10s检查一次设备状态
+    //本机网络变化检查,10s检查一次
     public static final int DEVICE_CHECK_INTERVAL=10000;
+    //设备超时时间轮每格的时长：设备在超时/清理时间之后这么久之内被处理
+    public static final int DEVICE_EXPIRY_TICK=100;
+    //设备列表变化事件的合并窗口，窗口内的多次变化合并成一批通知
+    public static final int DEVICE_EVENT_COALESCE_MS=100;
+    //发现报文格式：JSON（默认，与旧版本互通）或 BINARY（紧凑二进制，心跳 12 字节，旧版本无法解析）；接收时两种都能识别
+    public static final String DISCOVERY_FORMAT="JSON";
+    //自适应信标最短间隔：启动、网络变化、发现新设备后从这里开始，每个间隔翻倍
+    public static final int BEACON_MIN_INTERVAL=500;
+    //自适应信标最长间隔：成员稳定后的信标（兼作心跳）间隔，必须明显小于 DEVICE_TIMEOUT
+    public static final int BEACON_MAX_INTERVAL=10000;
+    //稳定状态下每隔多久带一次完整的上线信息（其余信标只是 12 字节的心跳）
+    public static final int BEACON_ANNOUNCE_INTERVAL=60000;
+    //快速阶段一个间隔内听到这么多其他设备的信标后，抑制本机的冗余广播
+    public static final int BEACON_REDUNDANCY=3;
+    //收到 QUERY 后单播回复的最大随机延迟，许多设备同时回复时错开
+    public static final int QUERY_RESPONSE_JITTER=50;
+    //同一个询问方在这段时间内重复的 QUERY（多网卡收到多份、重传）只回复一次
+    public static final int QUERY_RESPONSE_MIN_GAP=1000;
+    //启动时的 QUERY 在这个延迟后重发一次，弥补丢包
+    public static final int QUERY_RETRY_DELAY=500;
 
     //----------------连接池配置--------------------
     //最大连接数，最多同时保持10个TCP连接
@@ -59,6 +87,34 @@ public class NetworkConfig {
     //文档分片最大10GB
     public static final long MAX_FILE_SIZE=10L*1024*1024*1024;
 
+    //------------------链路探测配置------------------------
+    //后台探测间隔：每个间隔最多探测一个设备（0 表示关闭后台探测，只按需探测）
+    public static final int LINK_PROBE_INTERVAL=10000;
+    //同一个设备的画像在这段时间内不会被后台探测刷新
+    public static final int LINK_PROBE_MAX_AGE=300000;
+    //每次探测的 RTT 往返次数
+    public static final int LINK_PROBE_PINGS=5;
+    //每次探测的突发数据量（字节），0 表示只测 RTT
+    public static final int LINK_PROBE_BURST=256*1024;
+    //单次探测的连接和读取超时
+    public static final int LINK_PROBE_TIMEOUT=2000;
+    //接收端允许的最大突发数据量，超过时断开
+    public static final int LINK_PROBE_MAX_BURST=16*1024*1024;
+
+    //------------------指标导出配置------------------------
+    //本机 HTTP /metrics 端口（只绑定 127.0.0.1），0 表示不启动
+    public static final int METRICS_HTTP_PORT=0;
+    //是否把指标注册为 JMX MBean
+    public static final boolean METRICS_JMX=true;
+
+    //------------------磁盘写入配置------------------------
+    //异步落盘队列长度（分片个数），内存占用约为 队列长度*分片大小
+    public static final int WRITE_QUEUE_SIZE=8;
+    //落盘策略：NEVER / PERIODIC / ON_COMPLETE
+    public static final String DISK_FORCE_POLICY="ON_COMPLETE";
+    //PERIODIC 策略下的 force 间隔
+    public static final long DISK_FORCE_INTERVAL=1000;
+
 
     //--------线程池配置---------------------
     //核心线程池大小
@@ -69,10 +125,12 @@ public class NetworkConfig {
     public static final int THREAD_KEEP_ALIVE_TIME=60;
 
 //-----------------------广播地址配置
-    //IPV4多播地址
+    //IPV4受限广播地址（没有可用网卡时的回退）
     public static final String BROADCAST_ADDRESS_IPV4="255.255.255.255";
-    //IPV6多播地址
-    public static final String MULTICAST_ADDRESS_IPV6="0.0.0.0";
+    //IPV4组播地址（管理范围 239.255/16，"LS" = 76.83）
+    public static final String MULTICAST_ADDRESS_IPV4="239.255.76.83";
+    //IPV6组播地址（链路本地范围 ff02::）
+    public static final String MULTICAST_ADDRESS_IPV6="ff02::4c53";
 
     //-----------------------------协议版本--------------------
     //协议版本号
@@ -89,6 +147,32 @@ public class NetworkConfig {
     private static Integer customTcpPort=null;
     //是否启用IPV6
     private static Boolean enableIPv6=false;
+    //异步落盘队列长度
+    private static Integer customWriteQueueSize=null;
+    //落盘策略
+    private static String customDiskForcePolicy=null;
+    //传输配置档
+    private static TransportProfile customTransportProfile=null;
+    //接收端最大并发连接数
+    private static Integer customMaxConnections=null;
+    //发现报文格式
+    private static String customDiscoveryFormat=null;
+    //是否同时发送子网定向广播
+    private static Boolean customDiscoveryBroadcast=null;
+    //UDP 接收缓冲区
+    private static Integer customUdpReceiveBuffer=null;
+    //UDP 工作线程数
+    private static Integer customUdpWorkers=null;
+    //UDP 接收队列长度
+    private static Integer customUdpReceiveQueue=null;
+    //后台链路探测间隔
+    private static Integer customLinkProbeInterval=null;
+    //链路探测突发数据量
+    private static Integer customLinkProbeBurst=null;
+    //指标 HTTP 端口
+    private static Integer customMetricsHttpPort=null;
+    //是否启用 JMX 指标
+    private static Boolean customMetricsJmx=null;
 
     static{
         loadConfig();
@@ -114,11 +198,80 @@ public class NetworkConfig {
                 customTcpPort=Integer.valueOf(tcpPort);
                 logger.info("使用自定义TCP端口"+customTcpPort);
             }
-            String ipv6=properties.getProperty("ipv6.Port");
+            String ipv6=properties.getProperty("enable.ipv6",properties.getProperty("ipv6.Port"));
             if(ipv6!=null){
                 enableIPv6=Boolean.valueOf(ipv6);
                 logger.info("IPV6支持:"+enableIPv6);
             }
+            String writeQueue=properties.getProperty("disk.write.queue");
+            if(writeQueue!=null){
+                customWriteQueueSize=Integer.valueOf(writeQueue.trim());
+                logger.info("异步落盘队列长度:"+customWriteQueueSize);
+            }
+            String forcePolicy=properties.getProperty("disk.force.policy");
+            if(forcePolicy!=null){
+                customDiskForcePolicy=forcePolicy.trim();
+                logger.info("落盘策略:"+customDiskForcePolicy);
+            }
+            String maxConnections=properties.getProperty("max.connections");
+            if(maxConnections!=null){
+                customMaxConnections=Integer.valueOf(maxConnections.trim());
+                logger.info("最大并发连接数:"+customMaxConnections);
+            }
+            String discoveryFormat=properties.getProperty("discovery.format");
+            if(discoveryFormat!=null){
+                customDiscoveryFormat=discoveryFormat.trim().toUpperCase();
+                logger.info("发现报文格式:"+customDiscoveryFormat);
+            }
+            String discoveryBroadcast=properties.getProperty("discovery.broadcast");
+            if(discoveryBroadcast!=null){
+                customDiscoveryBroadcast=Boolean.valueOf(discoveryBroadcast.trim());
+                logger.info("子网定向广播:"+customDiscoveryBroadcast);
+            }
+            String receiveBuffer=properties.getProperty("udp.receive.buffer");
+            if(receiveBuffer!=null){
+                customUdpReceiveBuffer=Integer.valueOf(receiveBuffer.trim());
+                logger.info("UDP接收缓冲区:"+customUdpReceiveBuffer);
+            }
+            String udpWorkers=properties.getProperty("udp.workers");
+            if(udpWorkers!=null){
+                customUdpWorkers=Integer.valueOf(udpWorkers.trim());
+                logger.info("UDP工作线程数:"+customUdpWorkers);
+            }
+            String receiveQueue=properties.getProperty("udp.receive.queue");
+            if(receiveQueue!=null){
+                customUdpReceiveQueue=Integer.valueOf(receiveQueue.trim());
+                logger.info("UDP接收队列:"+customUdpReceiveQueue);
+            }
+            String probeInterval=properties.getProperty("link.probe.interval");
+            if(probeInterval!=null){
+                customLinkProbeInterval=Integer.valueOf(probeInterval.trim());
+                logger.info("链路探测间隔:"+customLinkProbeInterval);
+            }
+            String probeBurst=properties.getProperty("link.probe.burst");
+            if(probeBurst!=null){
+                customLinkProbeBurst=Integer.valueOf(probeBurst.trim());
+                logger.info("链路探测突发数据量:"+customLinkProbeBurst);
+            }
+            String metricsPort=properties.getProperty("metrics.http.port");
+            if(metricsPort!=null){
+                customMetricsHttpPort=Integer.valueOf(metricsPort.trim());
+                logger.info("指标端口:"+customMetricsHttpPort);
+            }
+            String metricsJmx=properties.getProperty("metrics.jmx");
+            if(metricsJmx!=null){
+                customMetricsJmx=Boolean.valueOf(metricsJmx.trim());
+                logger.info("JMX指标:"+customMetricsJmx);
+            }
+            String profile=properties.getProperty("transport.profile");
+            if(profile!=null){
+                customTransportProfile=TransportProfile.parse(profile);
+                if(customTransportProfile==null){
+                    logger.warning("未知的传输配置档:"+profile+"，使用默认配置档");
+                }else{
+                    logger.info("传输配置档:"+customTransportProfile);
+                }
+            }
             logger.info("配置文件加载完成");
 
         }catch(IOException e){
@@ -132,7 +285,16 @@ public class NetworkConfig {
      * 保存配置到文件
      */
     public static void saveConfig() {
-        try (FileOutputStream fos = new FileOutputStream(CONFIG_FILE)) {
+        saveConfig(new File(CONFIG_FILE));
+    }
+
+    /**
+     * 保存配置到指定文件
+     *
+     * @param file 目标文件
+     */
+    public static void saveConfig(File file) {
+        try (FileOutputStream fos = new FileOutputStream(file)) {
 
             // 设置注释
             properties.store(fos, "LanShare Network Configuration");
@@ -145,16 +307,38 @@ public class NetworkConfig {
     }
 
     /**
-     * 创建默认配置文件
+     * 创建默认配置文件（工作目录下的 lansshare.properties）
      */
     public static void createDefaultConfig() {
+        createDefaultConfig(new File(CONFIG_FILE));
+    }
+
+    /**
+     * 创建默认配置文件
+     *
+     * @param file 目标文件
+     */
+    public static void createDefaultConfig(File file) {
         properties.setProperty("udp.port", String.valueOf(UDP_PORT));
         properties.setProperty("tcp.port", String.valueOf(TCP_PORT));
         properties.setProperty("enable.ipv6", "false");
         properties.setProperty("max.connections", String.valueOf(MAX_CONNECTIONS));
         properties.setProperty("transfer.threads", String.valueOf(DEFAULT_TRANSFER_THREADS));
-
-        saveConfig();
+        properties.setProperty("disk.write.queue", String.valueOf(WRITE_QUEUE_SIZE));
+        properties.setProperty("disk.force.policy", DISK_FORCE_POLICY);
+        properties.setProperty("transport.profile", TRANSPORT_PROFILE);
+        properties.setProperty("discovery.format", DISCOVERY_FORMAT);
+        // discovery.broadcast 不写入：默认值随 discovery.format 变化（JSON 时发广播），写死会让改格式后默认值失效
+        properties.remove("discovery.broadcast");
+        properties.setProperty("udp.receive.buffer", String.valueOf(UDP_RECEIVE_BUFFER));
+        properties.setProperty("udp.workers", String.valueOf(UDP_WORKER_THREADS));
+        properties.setProperty("udp.receive.queue", String.valueOf(UDP_RECEIVE_QUEUE));
+        properties.setProperty("link.probe.interval", String.valueOf(LINK_PROBE_INTERVAL));
+        properties.setProperty("link.probe.burst", String.valueOf(LINK_PROBE_BURST));
+        properties.setProperty("metrics.http.port", String.valueOf(METRICS_HTTP_PORT));
+        properties.setProperty("metrics.jmx", String.valueOf(METRICS_JMX));
+
+        saveConfig(file);
     }
 
    //---------------------getter方法---------------------------
@@ -174,8 +358,97 @@ public class NetworkConfig {
     }
 
 
+    public static int getWriteQueueSize() {
+        return customWriteQueueSize != null && customWriteQueueSize > 0 ? customWriteQueueSize : WRITE_QUEUE_SIZE;
+    }
+
+
+    public static String getDiskForcePolicy() {
+        return customDiskForcePolicy != null ? customDiskForcePolicy : DISK_FORCE_POLICY;
+    }
+
+
+    public static int getMaxConnections() {
+        return customMaxConnections != null && customMaxConnections > 0 ? customMaxConnections : MAX_CONNECTIONS;
+    }
+
+
+    public static TransportProfile getTransportProfile() {
+        return customTransportProfile != null ? customTransportProfile : TransportProfile.valueOf(TRANSPORT_PROFILE);
+    }
+
+
+    /**
+     * 是否用二进制格式发送发现报文
+     * 发现报文是广播 / 组播，无法按对端协商，旧版本收到二进制报文只会丢弃（而且默认只收广播），
+     * 所以默认发送 JSON；确认局域网内都是新版本后再设置 discovery.format=BINARY。
+     */
+    public static boolean isBinaryDiscovery() {
+        String format = customDiscoveryFormat != null ? customDiscoveryFormat : DISCOVERY_FORMAT;
+        return !"JSON".equals(format);
+    }
+
+
+    /**
+     * UDP Socket 接收缓冲区大小（操作系统可能把它限制在更小的上限，例如 Linux 的 net.core.rmem_max）
+     */
+    public static int getUdpReceiveBuffer() {
+        return customUdpReceiveBuffer != null && customUdpReceiveBuffer > 0 ? customUdpReceiveBuffer : UDP_RECEIVE_BUFFER;
+    }
+
+
+    public static int getUdpWorkerThreads() {
+        return customUdpWorkers != null && customUdpWorkers > 0 ? customUdpWorkers : UDP_WORKER_THREADS;
+    }
+
+
+    public static int getUdpReceiveQueue() {
+        return customUdpReceiveQueue != null && customUdpReceiveQueue > 0 ? customUdpReceiveQueue : UDP_RECEIVE_QUEUE;
+    }
+
+
+    /**
+     * 后台链路探测间隔（毫秒），0 表示关闭后台探测
+     */
+    public static int getLinkProbeInterval() {
+        return customLinkProbeInterval != null && customLinkProbeInterval >= 0 ? customLinkProbeInterval : LINK_PROBE_INTERVAL;
+    }
+
+
+    public static int getLinkProbeBurst() {
+        return customLinkProbeBurst != null && customLinkProbeBurst >= 0
+                ? Math.min(customLinkProbeBurst, LINK_PROBE_MAX_BURST) : LINK_PROBE_BURST;
+    }
+
+
+    /**
+     * 本机指标端点端口，0 表示不启动
+     */
+    public static int getMetricsHttpPort() {
+        return customMetricsHttpPort != null && customMetricsHttpPort > 0 && customMetricsHttpPort <= 65535
+                ? customMetricsHttpPort : METRICS_HTTP_PORT;
+    }
+
+
+    public static boolean isMetricsJmxEnabled() {
+        return customMetricsJmx != null ? customMetricsJmx : METRICS_JMX;
+    }
+
+
+    /**
+     * 受限广播地址（没有可用网卡时的回退；按接口发送见 UdpBrodcaster）
+     */
     public static String getBroadcastAddress() {
-        return enableIPv6 ? MULTICAST_ADDRESS_IPV6 : BROADCAST_ADDRESS_IPV4;
+        return BROADCAST_ADDRESS_IPV4;
+    }
+
+    /**
+     * 发现报文是否同时发送子网定向广播
+     * 组播只有新版本设备加入；旧版本设备只收广播，而且只认 JSON，所以默认在 JSON 格式下才发广播。
+     * 过滤组播的网络（部分无线 AP）可以设置 discovery.broadcast=true。
+     */
+    public static boolean isDirectedBroadcastEnabled() {
+        return customDiscoveryBroadcast != null ? customDiscoveryBroadcast : !isBinaryDiscovery();
     }
 //------------------------------setter方法---------------------------------------------
     //设置自定义UDP端口
@@ -194,6 +467,11 @@ public class NetworkConfig {
         properties.setProperty("tcp.Port",String.valueOf(port));
     }
 
+    public static void setTransportProfile(TransportProfile profile) {
+        customTransportProfile=profile;
+        properties.setProperty("transport.profile",profile.name());
+    }
+
     public static void setIPv6Enabled(boolean enable) {
         enableIPv6=enable;
         properties.setProperty("enable.ipv6",String.valueOf(enable));
@@ -218,12 +496,21 @@ public class NetworkConfig {
         System.out.println("========== LanShare 网络配置 ==========");
         System.out.println("UDP端口: " + getUdpPort());
         System.out.println("TCP端口: " + getTcpPort());
-        System.out.println("广播间隔: " + BROADCAST_INTERVAL + "ms");
-        System.out.println("心跳间隔: " + HEARTBEAT_INTERVAL + "ms");
+        System.out.println("UDP接收: 缓冲区 " + getUdpReceiveBuffer() + " 字节, " + getUdpWorkerThreads()
+                + " 个工作线程, 队列 " + getUdpReceiveQueue());
+        System.out.println("信标间隔: " + BEACON_MIN_INTERVAL + "-" + BEACON_MAX_INTERVAL + "ms（自适应）");
         System.out.println("设备超时: " + DEVICE_TIMEOUT + "ms");
-        System.out.println("最大连接数: " + MAX_CONNECTIONS);
+        System.out.println("最大连接数: " + getMaxConnections());
         System.out.println("传输线程数: " + DEFAULT_TRANSFER_THREADS);
         System.out.println("分片大小: " + CHUNK_SIZE + " bytes");
+        System.out.println("落盘队列: " + getWriteQueueSize() + " 片, 策略: " + getDiskForcePolicy());
+        System.out.println("传输配置档: " + getTransportProfile());
+        System.out.println("链路探测: 间隔 " + getLinkProbeInterval() + "ms, 突发 " + getLinkProbeBurst() + " 字节");
+        System.out.println("指标导出: JMX " + isMetricsJmxEnabled() + ", HTTP "
+                + (getMetricsHttpPort() > 0 ? "127.0.0.1:" + getMetricsHttpPort() + "/metrics" : "关闭"));
+        System.out.println("发现报文格式: " + (isBinaryDiscovery() ? "BINARY" : "JSON"));
+        System.out.println("发现组播: " + MULTICAST_ADDRESS_IPV4 + (enableIPv6 ? ", " + MULTICAST_ADDRESS_IPV6 : "")
+                + "，子网定向广播: " + isDirectedBroadcastEnabled());
         System.out.println("IPv6支持: " + enableIPv6);
         System.out.println("协议版本: " + PROTOCOL_VERSION);
         System.out.println("======================================");
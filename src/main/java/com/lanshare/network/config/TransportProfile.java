@@ -0,0 +1,219 @@
+package com.lanshare.network.config;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.channels.SocketChannel;
+import java.util.logging.Logger;
+
+/**
+ * 传输配置档（Socket 调优参数）
+ *
+ * 不同网络环境的最佳参数差别很大：千兆有线需要足够大的内核缓冲区填满带宽时延积，
+ * 万兆还要更大的用户态缓冲区减少系统调用，而 Wi-Fi 丢包重传多、缓冲过大只会增加排队延迟。
+ * 通过工作目录下 lansshare.properties 中的 transport.profile 选择（没有配置时使用 DEFAULT）：
+ *
+ * <pre>
+ * transport.profile=GIGABIT_WIRED   # 也可写 gigabit / 10gbe / wifi / default
+ * </pre>
+ *
+ * 每个配置档包含：
+ * - 内核缓冲区：SO_SNDBUF / SO_RCVBUF（0 表示交给操作系统自动调整）
+ * - 用户态缓冲区：ProtocolHandler 输入输出流的缓冲区大小。接收端的分片经输入流读取，受它影响；
+ *   发送端的数据帧走 SocketChannel 聚集写，不经过输出流（输出流只承载控制消息和没有通道时的回退路径）
+ * - 连接超时
+ * - 流量类别（IP_TOS，-1 表示不设置）
+ *
+ * LanShare 创建的所有 TCP Socket 都应通过 openSocket / openServerSocket 创建，
+ * 保证 SO_RCVBUF 在连接建立之前设置（TCP 窗口缩放因子只在握手时协商）。
+ */
+public enum TransportProfile {
+
+    /**
+     * 兼容旧行为：8KB 流缓冲、内核缓冲区由系统决定
+     */
+    DEFAULT(0, 0, NetworkConfig.TCP_BUFFER_SIZE, NetworkConfig.SOCKET_TIMEOUT, -1),
+
+    /**
+     * 千兆有线：带宽时延积约 1Gbps × 1ms ≈ 128KB，留足余量取 2MB
+     */
+    GIGABIT_WIRED(2 * 1024 * 1024, 2 * 1024 * 1024, 64 * 1024, 5000, TrafficClass.THROUGHPUT),
+
+    /**
+     * 万兆有线：更大的内核与用户态缓冲区，减少系统调用次数
+     */
+    TEN_GIGABIT(8 * 1024 * 1024, 8 * 1024 * 1024, 256 * 1024, 3000, TrafficClass.THROUGHPUT),
+
+    /**
+     * 无线：缓冲区适中，避免排队延迟；连接超时放宽
+     */
+    WIFI(512 * 1024, 512 * 1024, 32 * 1024, 10000, -1);
+
+    /**
+     * 常用的 IP_TOS 值（RFC 1349）
+     */
+    public static final class TrafficClass {
+        public static final int LOW_DELAY = 0x10;
+        public static final int THROUGHPUT = 0x08;
+        public static final int RELIABILITY = 0x04;
+
+        private TrafficClass() {
+        }
+    }
+
+    private static final Logger logger = Logger.getLogger(TransportProfile.class.getName());
+
+    private final int sendBufferSize;
+    private final int receiveBufferSize;
+    private final int streamBufferSize;
+    private final int connectTimeout;
+    private final int trafficClass;
+
+    TransportProfile(int sendBufferSize, int receiveBufferSize, int streamBufferSize,
+            int connectTimeout, int trafficClass) {
+        this.sendBufferSize = sendBufferSize;
+        this.receiveBufferSize = receiveBufferSize;
+        this.streamBufferSize = streamBufferSize;
+        this.connectTimeout = connectTimeout;
+        this.trafficClass = trafficClass;
+    }
+
+    /**
+     * 从配置字符串解析（忽略大小写，支持 gigabit / 10gbe / wifi 等别名），无法识别时返回 null
+     */
+    public static TransportProfile parse(String value) {
+        if (value == null) {
+            return null;
+        }
+        String v = value.trim().toUpperCase().replace('-', '_').replace(' ', '_');
+        switch (v) {
+            case "GIGABIT":
+            case "1GBE":
+            case "WIRED":
+                return GIGABIT_WIRED;
+            case "10GBE":
+            case "10G":
+            case "TEN_GBE":
+                return TEN_GIGABIT;
+            case "WLAN":
+            case "WIRELESS":
+                return WIFI;
+            default:
+                for (TransportProfile p : values()) {
+                    if (p.name().equals(v)) {
+                        return p;
+                    }
+                }
+                return null;
+        }
+    }
+
+    // ==================== Socket 创建与配置 ====================
+
+    /**
+     * 创建并连接 Socket（基于 SocketChannel，支持聚集写）
+     *
+     * 内核缓冲区和流量类别在连接之前设置，连接使用配置档的超时时间。
+     *
+     * @param host 目标地址
+     * @param port 目标端口
+     * @return 已连接的 Socket
+     * @throws IOException 连接失败或超时
+     */
+    public Socket openSocket(String host, int port) throws IOException {
+        SocketChannel channel = SocketChannel.open();
+        try {
+            Socket socket = channel.socket();
+            applyTo(socket);
+            socket.connect(new InetSocketAddress(host, port), connectTimeout);
+            return socket;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * 创建并绑定监听 Socket
+     *
+     * SO_RCVBUF 在 bind 之前设置，accept 出来的连接会继承它。
+     * 不设置 SO_REUSEADDR：JDK 在 Unix 上默认已开启（重启时不受 TIME_WAIT 影响），
+     * 在 Windows 上开启它会取消独占绑定，另一个实例可以绑定同一端口抢走连接。
+     *
+     * @param port 监听端口（0 表示随机端口）
+     * @return 已绑定的 ServerSocket
+     * @throws IOException 绑定失败
+     */
+    public ServerSocket openServerSocket(int port) throws IOException {
+        ServerSocket server = new ServerSocket();
+        try {
+            if (receiveBufferSize > 0) {
+                server.setReceiveBufferSize(receiveBufferSize);
+            }
+            server.bind(new InetSocketAddress(port));
+            return server;
+        } catch (IOException | RuntimeException e) {
+            server.close();
+            throw e;
+        }
+    }
+
+    /**
+     * 把配置档应用到 Socket（已连接的 Socket 也可以调用，重复调用是安全的）
+     *
+     * 部分平台不允许修改某些选项（例如 Windows 上的 IP_TOS），这类失败只记录日志。
+     *
+     * @param socket Socket
+     */
+    public void applyTo(Socket socket) {
+        try {
+            socket.setTcpNoDelay(true); // 每帧都是完整的一次写入，不依赖 Nagle 合并
+            if (sendBufferSize > 0) {
+                socket.setSendBufferSize(sendBufferSize);
+            }
+            if (receiveBufferSize > 0) {
+                socket.setReceiveBufferSize(receiveBufferSize);
+            }
+        } catch (SocketException e) {
+            logger.warning("设置 Socket 缓冲区失败: " + e.getMessage());
+        }
+        if (trafficClass >= 0) {
+            try {
+                socket.setTrafficClass(trafficClass);
+            } catch (SocketException e) {
+                logger.fine("设置流量类别失败: " + e.getMessage());
+            }
+        }
+    }
+
+    // ==================== Getter 方法 ====================
+
+    public int getSendBufferSize() {
+        return sendBufferSize;
+    }
+
+    public int getReceiveBufferSize() {
+        return receiveBufferSize;
+    }
+
+    public int getStreamBufferSize() {
+        return streamBufferSize;
+    }
+
+    public int getConnectTimeout() {
+        return connectTimeout;
+    }
+
+    public int getTrafficClass() {
+        return trafficClass;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s{sndbuf=%d, rcvbuf=%d, stream=%d, connectTimeout=%dms, tos=%d}",
+                name(), sendBufferSize, receiveBufferSize, streamBufferSize,
+                connectTimeout, trafficClass);
+    }
+}
@@ -0,0 +1,186 @@
+package com.lanshare.network.discovery;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+/**
+ * 自适应发现信标（参考 Trickle 算法）
+ *
+ * 原来每台设备每 5 秒发一次 PRESENCE、再发一次几乎相同的 HEARTBEAT，而且同时开机的设备相位对齐。
+ * 现在合并成一个信标：
+ *
+ * - 间隔从 minInterval 开始，每过一个间隔翻倍，直到 maxInterval（成员稳定时流量很低）
+ * - 每个间隔内在 [I/2, I) 中随机选一个时刻发送，同时启动的设备不会同时广播
+ * - 启动、网络变化、本机信息变化、发现新设备时 {@link #reset()} 回到最短间隔，尽快让对方发现
+ * - 短间隔内如果已经听到 redundancy 个其他设备的信标，并且重置后已经上线广播过一次，
+ *   本次就不再发送（大网络里新设备加入时，不需要每台设备都反复回应）
+ * - 最长间隔的信标总是发送，它同时承担心跳的作用，必须小于设备超时时间
+ *
+ * 发送的内容由 {@link Sender} 决定：announce 为 true 时发完整的 PRESENCE，否则发心跳。
+ * 重置后的第一个信标、快速阶段的信标，以及距上次 PRESENCE 超过 announceInterval 的信标都是 PRESENCE。
+ */
+public class AdaptiveBeacon {
+
+    private static final Logger logger = Logger.getLogger(AdaptiveBeacon.class.getName());
+
+    /**
+     * 信标发送回调
+     */
+    public interface Sender {
+        /**
+         * @param announce true 发送完整的上线广播（PRESENCE），false 发送心跳
+         */
+        void send(boolean announce);
+    }
+
+    private final ScheduledExecutorService scheduler;
+    private final long minInterval;
+    private final long maxInterval;
+    private final long announceInterval;
+    private final int redundancy;
+    private final Sender sender;
+
+    /** 本间隔内听到的其他设备信标数 */
+    private final AtomicInteger heard = new AtomicInteger();
+
+    private long interval;
+    private boolean announcePending;
+    private long lastAnnounce;
+    private ScheduledFuture<?> pending;
+    /** 每开始一个间隔加一；已取消但正在等锁的旧任务据此放弃 */
+    private long generation;
+    private boolean running;
+
+    private long sent;
+    private long suppressed;
+
+    public AdaptiveBeacon(ScheduledExecutorService scheduler, long minInterval, long maxInterval,
+                          long announceInterval, int redundancy, Sender sender) {
+        if (minInterval <= 0 || maxInterval < minInterval) {
+            throw new IllegalArgumentException("信标间隔不合法: " + minInterval + " - " + maxInterval);
+        }
+        this.scheduler = scheduler;
+        this.minInterval = minInterval;
+        this.maxInterval = maxInterval;
+        this.announceInterval = announceInterval;
+        this.redundancy = redundancy;
+        this.sender = sender;
+    }
+
+    /**
+     * 启动：从最短间隔开始
+     */
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        interval = minInterval;
+        announcePending = true;
+        beginInterval();
+    }
+
+    public synchronized void stop() {
+        running = false;
+        if (pending != null) {
+            pending.cancel(false);
+            pending = null;
+        }
+    }
+
+    /**
+     * 回到最短间隔（启动后、网络变化、本机信息变化、发现新设备时调用）
+     * 已经处于最短间隔时只标记需要上线广播，不重新开始间隔，避免连续的重置把发送一直推后
+     */
+    public synchronized void reset() {
+        if (!running) {
+            return;
+        }
+        announcePending = true;
+        if (interval > minInterval) {
+            interval = minInterval;
+            if (pending != null) {
+                pending.cancel(false);
+            }
+            beginInterval();
+        }
+    }
+
+    /**
+     * 听到其他设备的信标（用于抑制快速阶段的冗余广播）
+     */
+    public void heard() {
+        heard.incrementAndGet();
+    }
+
+    private void beginInterval() {
+        heard.set(0);
+        long gen = ++generation;
+        long half = interval / 2;
+        long fireAt = half + ThreadLocalRandom.current().nextLong(Math.max(1, interval - half));
+        pending = scheduler.schedule(() -> fire(gen, fireAt), fireAt, TimeUnit.MILLISECONDS);
+    }
+
+    private void fire(long gen, long fireAt) {
+        boolean announce;
+        synchronized (this) {
+            if (!running || gen != generation) {
+                return;
+            }
+            pending = scheduler.schedule(() -> endInterval(gen), interval - fireAt, TimeUnit.MILLISECONDS);
+            boolean fast = interval < maxInterval;
+            if (fast && !announcePending && heard.get() >= redundancy) {
+                suppressed++;
+                logger.finest("信标被抑制（本间隔已听到 " + heard.get() + " 个信标）");
+                return;
+            }
+            long now = System.currentTimeMillis();
+            announce = announcePending || fast || now - lastAnnounce >= announceInterval;
+            if (announce) {
+                announcePending = false;
+                lastAnnounce = now;
+            }
+            sent++;
+        }
+        try {
+            sender.send(announce);
+        } catch (Exception e) {
+            logger.warning("发送信标失败: " + e.getMessage());
+        }
+    }
+
+    private synchronized void endInterval(long gen) {
+        if (!running || gen != generation) {
+            return;
+        }
+        interval = Math.min(interval * 2, maxInterval);
+        beginInterval();
+    }
+
+    // ==================== 统计 ====================
+
+    /**
+     * 当前间隔（毫秒）
+     */
+    public synchronized long getInterval() {
+        return interval;
+    }
+
+    /**
+     * 已发送的信标数
+     */
+    public synchronized long getSentCount() {
+        return sent;
+    }
+
+    /**
+     * 被抑制的信标数
+     */
+    public synchronized long getSuppressedCount() {
+        return suppressed;
+    }
+}
@@ -2,51 +2,105 @@ package com.lanshare.network.discovery;
 import com.lanshare.network.config.NetworkConfig;
 import com.lanshare.network.model.DeviceInfo;
 import com.lanshare.network.model.DeviceStatus;
+import com.lanshare.network.protocol.DiscoveryCodec;
 import com.lanshare.network.protocol.DiscoveryMessage;
-import com.lanshare.network.discovery.UdpBrodcaster;
-import javafx.collections.FXCollections;
-import javafx.collections.ObservableList;
 
 import java.io.IOException;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 //设备发现服务-总指挥
 
 /**
- * 1.定期广播自己的存在
+ * 1.通过自适应信标广播自己的存在（见 AdaptiveBeacon）
  * 2.监听其他设备的广播
  * 3.维护设备列表
- * 4.检测设备超时
+ * 4.检测设备超时（见 DeviceExpiry）与本机网络变化
+ *
+ * 多网卡：每个网卡分别收发（见 UdpBrodcaster），上线消息中带本机所有可用地址，
+ * 收到对方的地址后由 {@link LocalInterfaces#selectAddress} 选出与本机同子网的连接地址。
+ *
+ * 主动询问：启动和手动刷新时发送 QUERY，收到的设备在随机延迟后单播回复 PRESENCE，
+ * 不必等对方的下一个信标；收到未知设备的心跳时也单播询问它。
+ *
+ * 收发通道和调度器都可以由外部提供：规模模拟时上千个实例共用一个调度器，
+ * 通过内存中的虚拟网络收发（见 com.lanshare.network.discovery.sim）。
  */
 
 
 public class DeviceDiscovery {
     private static final Logger logger = Logger.getLogger(DeviceDiscovery.class.getName());
-    private UdpBrodcaster udpBroadcaster;//广播器
+    private final DiscoveryTransport transport;//收发通道（默认 UDP）
     private DeviceRegistry deviceRegistry;//注册表
     private DeviceInfo localDevice;//本机设备信息
-    private ScheduledExecutorService scheduler;//定时任务调度器
+    private volatile LocalInterfaces localInterfaces=LocalInterfaces.of(List.of());//本机网卡与子网
+    private volatile long localKey;//本机设备键（忽略自己的二进制心跳）
+    private volatile byte[] heartbeatPacket;//二进制心跳只与设备ID有关，编码一次后复用
+    private ScheduledExecutorService scheduler;//定时任务调度器（信标 + 超时检查，单线程足够）
+    private final boolean sharedScheduler;//调度器由外部提供时，停止时不关闭它
+    private ScheduledFuture<?> checkTask;//网络变化检查任务
+    private DeviceExpiry expiry;//设备超时，start 时创建
+    private volatile AdaptiveBeacon beacon;//自适应信标，start 时创建
     private volatile boolean running=false;
+    private final Map<String,Long> lastQueryReply=new ConcurrentHashMap<>();//询问方 → 上次回复时间（去重）
+    private final Map<String,Long> lastQuerySent=new ConcurrentHashMap<>();//单播询问过的地址 → 时间（限速）
     public DeviceDiscovery(){
-        this.udpBroadcaster=new UdpBrodcaster();
-        this.deviceRegistry=new DeviceRegistry();
+        this(new DeviceRegistry());
+    }
+
+    /**
+     * 使用外部注册表（与 FileTransferService 等共享同一份设备列表）
+     */
+    public DeviceDiscovery(DeviceRegistry deviceRegistry){
+        this(deviceRegistry,new UdpBrodcaster(),null);
+    }
+
+    /**
+     * 使用指定的收发通道和调度器
+     *
+     * @param scheduler 共用的调度器（为 null 时启动时自己创建一个单线程调度器）；
+     *                  外部调度器在 stop 时不会被关闭
+     */
+    public DeviceDiscovery(DeviceRegistry deviceRegistry,DiscoveryTransport transport,ScheduledExecutorService scheduler){
+        this.transport=transport;
+        this.deviceRegistry=deviceRegistry;
+        this.scheduler=scheduler;
+        this.sharedScheduler=scheduler!=null;
 
         logger.info("DeviceDiscovery created");
     }
 
     public void initialize() throws IOException {
+        initialize(generateStableDeviceId(),getComputerName());
+    }
+
+    /**
+     * 使用指定的设备 ID 和名称初始化（模拟网络中每个节点需要不同的身份）
+     */
+    public void initialize(String deviceId,String deviceName) throws IOException {
         logger.info("DeviceDiscovery initialized.....");
-        createLocalDevice();
-        udpBroadcaster.setMessageListener(new UdpBrodcaster.UdpMessageListener(){
+        createLocalDevice(deviceId,deviceName);
+        transport.setMessageListener(new UdpBrodcaster.UdpMessageListener(){
             @Override
                     public void onMessage(String message,InetAddress senderAddress){
-                handleDiscoveryMessage(message,senderAddress);
+                handleDiscoveryMessage(message,senderAddress,NetworkConfig.getUdpPort());
+            }
+
+            @Override
+            public void onPacket(byte[] data,int length,InetAddress senderAddress,int senderPort){
+                handlePacket(data,length,senderAddress,senderPort);
             }
         });
         logger.info("DeviceDiscovery 初始化完成");
@@ -60,17 +114,20 @@ public class DeviceDiscovery {
         }
         logger.info("正在启动 DeviceDiscovery");
 
-        if (scheduler == null || scheduler.isShutdown()) {
-            scheduler = Executors.newScheduledThreadPool(3);
+        if (!sharedScheduler && (scheduler == null || scheduler.isShutdown())) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "lanshare-discovery");
+                t.setDaemon(true);
+                return t;
+            });
         }
 
 
-        udpBroadcaster.start();
+        transport.start();
 
-        startScheduleTasks();
         running=true;
+        startScheduleTasks();
         logger.info("DeviceDiscovery 已启动");
-        broadcastPresence();
     }
 
     /**
@@ -90,7 +147,16 @@ public class DeviceDiscovery {
         broadcastGoodbye();
 
         // 2. 停止定时任务
-        if (scheduler != null && !scheduler.isShutdown()) {
+        if (beacon != null) {
+            beacon.stop();
+        }
+        if (checkTask != null) {
+            checkTask.cancel(false);
+        }
+        if (expiry != null) {
+            expiry.stop();
+        }
+        if (!sharedScheduler && scheduler != null && !scheduler.isShutdown()) {
             scheduler.shutdown();
             try {
                 if (!scheduler.awaitTermination(2, TimeUnit.SECONDS)) {
@@ -102,8 +168,8 @@ public class DeviceDiscovery {
             logger.info("定时任务调度器已停止");
         }
 
-        // 3. 停止 UDP 广播器
-        udpBroadcaster.stop();
+        // 3. 停止收发通道
+        transport.stop();
 
         // 4. 清空设备列表
         deviceRegistry.clear();
@@ -114,30 +180,40 @@ public class DeviceDiscovery {
 
     //启动所有定时任务
     private void startScheduleTasks(){
-        //1.定期广播自己的存在
-        scheduler.scheduleAtFixedRate(
-                this::broadcastPresence,
-                0,
-                NetworkConfig.BROADCAST_INTERVAL,
-                TimeUnit.MILLISECONDS
-        );
-        logger.info("已启动定期广播(间隔："+NetworkConfig.BROADCAST_INTERVAL+"ms");
-        //2.发送心跳
-        scheduler.scheduleAtFixedRate(
-                this::sendHeartbeat,
-                NetworkConfig.HEARTBEAT_INTERVAL,  // 初始延迟5秒
-                NetworkConfig.HEARTBEAT_INTERVAL,
-                TimeUnit.MILLISECONDS
+        //1.自适应信标：上线广播与心跳合并，启动后快速发送，成员稳定后逐步退避
+        beacon = new AdaptiveBeacon(
+                scheduler,
+                NetworkConfig.BEACON_MIN_INTERVAL,
+                NetworkConfig.BEACON_MAX_INTERVAL,
+                NetworkConfig.BEACON_ANNOUNCE_INTERVAL,
+                NetworkConfig.BEACON_REDUNDANCY,
+                announce -> {
+                    if (announce) {
+                        broadcastPresence();
+                    } else {
+                        sendHeartbeat();
+                    }
+                }
         );
-        logger.info("已启动心跳任务（间隔: " + NetworkConfig.HEARTBEAT_INTERVAL + "ms）");
-        // 任务3：检查设备超时（每10秒）
-        scheduler.scheduleAtFixedRate(
-                this::checkDeviceTimeout,
+        beacon.start();
+        // 询问所有设备，设备列表在毫秒级填充；稍后重发一次弥补丢包
+        sendQuery();
+        scheduler.schedule(this::sendQuery, NetworkConfig.QUERY_RETRY_DELAY, TimeUnit.MILLISECONDS);
+        logger.info("已启动自适应信标（间隔: " + NetworkConfig.BEACON_MIN_INTERVAL + "-"
+                + NetworkConfig.BEACON_MAX_INTERVAL + "ms）");
+        // 任务2：设备超时（时间轮，到期精度 DEVICE_EXPIRY_TICK）
+        expiry = new DeviceExpiry(deviceRegistry, NetworkConfig.DEVICE_TIMEOUT, NetworkConfig.DEVICE_CLEANUP_TIME,
+                NetworkConfig.DEVICE_EXPIRY_TICK);
+        expiry.start(scheduler);
+        // 任务3：检查网络变化（每10秒）
+        checkTask = scheduler.scheduleAtFixedRate(
+                this::periodicCheck,
                 NetworkConfig.DEVICE_CHECK_INTERVAL,  // 初始延迟10秒
                 NetworkConfig.DEVICE_CHECK_INTERVAL,
                 TimeUnit.MILLISECONDS
         );
-        logger.info("已启动设备超时检查任务（间隔: " + NetworkConfig.DEVICE_CHECK_INTERVAL + "ms）");
+        logger.info("已启动设备超时与网络检查（超时 " + NetworkConfig.DEVICE_TIMEOUT + "ms，网络检查间隔 "
+                + NetworkConfig.DEVICE_CHECK_INTERVAL + "ms）");
     }
 // ==================== 广播相关 ====================
 
@@ -146,12 +222,10 @@ public class DeviceDiscovery {
      */
     private void broadcastPresence() {
         try {
-            DiscoveryMessage message = new DiscoveryMessage(
+            send(new DiscoveryMessage(
                     DiscoveryMessage.MessageType.PRESENCE,
                     localDevice
-            );
-            String json = message.toJson();
-            udpBroadcaster.sendBroadcast(json);
+            ));
             logger.fine("已发送上线广播");
         } catch (Exception e) {
             logger.warning("发送上线广播失败: " + e.getMessage());
@@ -163,12 +237,11 @@ public class DeviceDiscovery {
      */
     private void sendHeartbeat() {
         try {
-            DiscoveryMessage message = new DiscoveryMessage(
-                    DiscoveryMessage.MessageType.HEARTBEAT,
-                    localDevice
-            );
-            String json = message.toJson();
-            udpBroadcaster.sendBroadcast(json);
+            if (NetworkConfig.isBinaryDiscovery()) {
+                transport.sendBroadcast(heartbeatPacket);
+            } else {
+                send(new DiscoveryMessage(DiscoveryMessage.MessageType.HEARTBEAT, localDevice));
+            }
             logger.fine("已发送心跳");
         } catch (Exception e) {
             logger.warning("发送心跳失败: " + e.getMessage());
@@ -180,16 +253,11 @@ public class DeviceDiscovery {
      */
     private void broadcastGoodbye() {
         try {
-            DiscoveryMessage message = new DiscoveryMessage(
+            send(new DiscoveryMessage(
                     DiscoveryMessage.MessageType.GOODBYE,
                     localDevice
-            );
-            String json = message.toJson();
-            udpBroadcaster.sendBroadcast(json);
-            logger.info("已发送下线广播");
-
-            // 等待消息发送完成
-            Thread.sleep(500);
+            ));
+            logger.info("已发送下线广播"); // send 返回时报文已交给网络，不需要等待
         } catch (Exception e) {
             logger.warning("发送下线广播失败: " + e.getMessage());
         }
@@ -199,49 +267,202 @@ public class DeviceDiscovery {
 
 
 
+    /**
+     * 广播询问：所有设备单播回复自己的上线信息（询问本身也带本机信息）
+     */
+    private void sendQuery() {
+        if (!running) {
+            return;
+        }
+        try {
+            send(new DiscoveryMessage(DiscoveryMessage.MessageType.QUERY, localDevice));
+            logger.fine("已发送询问");
+        } catch (Exception e) {
+            logger.warning("发送询问失败: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 按配置的格式广播一条发现消息
+     */
+    private void send(DiscoveryMessage message) {
+        transport.sendBroadcast(encode(message));
+    }
+
+    private static byte[] encode(DiscoveryMessage message) {
+        if (NetworkConfig.isBinaryDiscovery()) {
+            return DiscoveryCodec.encode(message);
+        }
+        return message.toJson().getBytes(StandardCharsets.UTF_8);
+    }
+
 //---------------------------消息处理
-    private void handleDiscoveryMessage(String json,InetAddress senderAddress){
-        try{
-            DiscoveryMessage message=DiscoveryMessage.fromJson(json);//解析消息
-            if(message.getDeviceId().equals(localDevice.getDeviceId())){
 
-                logger.finest("忽略自己的消息");
+    /**
+     * 处理收到的原始报文（data 只在调用期间有效）
+     *
+     * 二进制心跳：读头部、按设备键刷新已知设备，不创建任何对象；
+     * 二进制 PRESENCE / GOODBYE / QUERY：解码后与 JSON 走同一套处理；
+     * 其他报文按旧版本的 JSON 处理。
+     */
+    public void handlePacket(byte[] data,int length,InetAddress senderAddress){
+        handlePacket(data,length,senderAddress,NetworkConfig.getUdpPort());
+    }
+
+    /**
+     * @param senderPort 对方的源端口，QUERY 的单播回复发到这里
+     */
+    public void handlePacket(byte[] data,int length,InetAddress senderAddress,int senderPort){
+        if(!DiscoveryCodec.isBinary(data,length)){
+            handleDiscoveryMessage(new String(data,0,length,StandardCharsets.UTF_8),senderAddress,senderPort);
+            return;
+        }
+        DiscoveryMessage.MessageType type=DiscoveryCodec.peekType(data,length);
+        if(type==null){
+            logger.fine("忽略无法识别的二进制发现报文");
+            return;
+        }
+        if(type==DiscoveryMessage.MessageType.HEARTBEAT){
+            long key=DiscoveryCodec.peekDeviceKey(data);
+            if(key==localKey){
                 return;
             }
-            // 使用实际报文来源地址覆盖消息中的IP，避免对方携带错误IP导致发送到自己
-            String realIp = senderAddress != null ? senderAddress.getHostAddress() : message.getIpAddress();
-            DeviceInfo device = new DeviceInfo(
-                    message.getDeviceId(),
-                    message.getDeviceName(),
-                    message.getUserName(),
-                    realIp,
-                    message.getPort()
-            );
-            switch(message.getType()){
-                case PRESENCE:
-                    handlePresence(device);
-                    break;
-                case HEARTBEAT:
-                    handleHeartbeat(device);
-                    break;
-                case GOODBYE:
-                    handleGoodbye(device);
-                    break;
-                default:
-                    logger.warning("未知的消息类型"+message.getType());
-
+            heard();
+            if(!deviceRegistry.touch(key)){
+                queryUnknown(senderAddress,senderPort);
             }
+            return;
+        }
+        try{
+            handleMessage(DiscoveryCodec.decode(data,length),senderAddress,senderPort);
+        }catch(Exception e){
+            logger.warning("处理发现消息失败"+e.getMessage());
+        }
+    }
+
+    private void handleDiscoveryMessage(String json,InetAddress senderAddress,int senderPort){
+        try{
+            handleMessage(DiscoveryMessage.fromJson(json),senderAddress,senderPort);//解析消息
         }catch(Exception e){
             logger.warning("处理发现消息失败"+e.getMessage());
             logger.fine("无效的消息内容:"+json);
         }
     }
+
+    private void handleMessage(DiscoveryMessage message,InetAddress senderAddress,int senderPort){
+        if(message.getDeviceId().equals(localDevice.getDeviceId())){
+
+            logger.finest("忽略自己的消息");
+            return;
+        }
+        heard();
+        // 从对方通告的地址中选一个与本机同子网的；旧版本消息没有地址列表，使用实际报文来源地址，
+        // 避免对方携带错误IP导致发送到自己
+        String observed = senderAddress != null ? senderAddress.getHostAddress() : null;
+        String realIp = localInterfaces.selectAddress(message.getAddresses(), observed);
+        if (realIp == null) {
+            realIp = message.getIpAddress();
+        }
+        DeviceInfo device = new DeviceInfo(
+                message.getDeviceId(),
+                message.getDeviceName(),
+                message.getUserName(),
+                realIp,
+                message.getPort(),
+                message.getAddresses()
+        );
+        switch(message.getType()){
+            case PRESENCE:
+                handlePresence(device);
+                break;
+            case HEARTBEAT:
+                handleHeartbeat(device);
+                break;
+            case GOODBYE:
+                handleGoodbye(device);
+                break;
+            case QUERY:
+                handleQuery(device,senderAddress,senderPort);
+                break;
+            default:
+                logger.warning("未知的消息类型"+message.getType());
+
+        }
+    }
     /**
      * 处理设备上线消息
      */
     private void handlePresence(DeviceInfo device) {
-        logger.info("发现新设备: " + device);
+        boolean isNew = deviceRegistry.findDevice(device.getDeviceId()) == null;
         deviceRegistry.registerOrUpdate(device);
+        if (isNew) {
+            logger.info("发现新设备: " + device);
+            // 新设备还不认识我们：回到快速阶段回应它（随机延迟，设备多时由信标抑制冗余回应）
+            AdaptiveBeacon b = beacon;
+            if (b != null) {
+                b.reset();
+            }
+        }
+    }
+
+    /**
+     * 处理询问：登记询问方，在随机延迟后单播回复本机的上线信息
+     * 单播回复不会引起广播风暴；随机延迟让许多设备的回复错开到达；
+     * 同一询问方短时间内的重复询问（多网卡、重传）只回复一次
+     */
+    private void handleQuery(DeviceInfo device, InetAddress senderAddress, int senderPort) {
+        deviceRegistry.registerOrUpdate(device); // 询问方马上就会收到我们的回复，不需要重置信标
+        ScheduledExecutorService s = scheduler;
+        if (senderAddress == null || s == null || s.isShutdown()) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        Long last = lastQueryReply.get(device.getDeviceId());
+        if (last != null && now - last < NetworkConfig.QUERY_RESPONSE_MIN_GAP) {
+            return;
+        }
+        lastQueryReply.put(device.getDeviceId(), now);
+        long delay = ThreadLocalRandom.current().nextLong(NetworkConfig.QUERY_RESPONSE_JITTER + 1);
+        try {
+            s.schedule(() -> {
+                byte[] reply = encode(new DiscoveryMessage(DiscoveryMessage.MessageType.PRESENCE, localDevice));
+                transport.sendTo(reply, senderAddress, senderPort);
+                logger.fine("已回复询问: " + device.getDeviceId() + "（延迟 " + delay + "ms）");
+            }, delay, TimeUnit.MILLISECONDS);
+        } catch (java.util.concurrent.RejectedExecutionException e) {
+            // 正在停止
+        }
+    }
+
+    /**
+     * 收到未知设备的心跳（错过了它的上线信息）：单播询问它，同一地址限速
+     */
+    private void queryUnknown(InetAddress senderAddress, int senderPort) {
+        if (senderAddress == null || !running) {
+            return;
+        }
+        String ip = senderAddress.getHostAddress();
+        long now = System.currentTimeMillis();
+        Long last = lastQuerySent.get(ip);
+        if (last != null && now - last < NetworkConfig.QUERY_RESPONSE_MIN_GAP) {
+            return;
+        }
+        lastQuerySent.put(ip, now);
+        if (logger.isLoggable(Level.FINE)) {
+            logger.fine("收到未知设备的心跳，单播询问: " + ip);
+        }
+        transport.sendTo(encode(new DiscoveryMessage(DiscoveryMessage.MessageType.QUERY, localDevice)),
+                senderAddress, senderPort);
+    }
+
+    /**
+     * 听到其他设备的信标
+     */
+    private void heard() {
+        AdaptiveBeacon b = beacon;
+        if (b != null) {
+            b.heard();
+        }
     }
 
     /**
@@ -260,53 +481,61 @@ public class DeviceDiscovery {
         deviceRegistry.removeDevice(device.getDeviceId());
     }
     /**
-    * 检查设备是否超时
-     * 超时的设备标记为离线，长时间离线的设备会被删除
+     * 定期检查：本机网络变化，清理过期的询问记录
+     * （设备超时由 DeviceExpiry 在截止时间处理，不再扫描所有设备）
+     */
+    private void periodicCheck() {
+        checkNetworkChange();
+        long expired = System.currentTimeMillis() - NetworkConfig.QUERY_RESPONSE_MIN_GAP;
+        lastQueryReply.values().removeIf(t -> t < expired);
+        lastQuerySent.values().removeIf(t -> t < expired);
+    }
+    /**
+     * 本机网卡或地址变化（换网络、插拔网线、连上 VPN、DHCP 续约到新地址）时更新
      */
-    private void checkDeviceTimeout() {
+    private void checkNetworkChange() {
         try {
-            logger.fine("正在检查设备超时...");
-
-            ObservableList<DeviceInfo> devices = deviceRegistry.getAllDevices();
-            int timeoutCount = 0;
-            int removedCount = 0;
-
-            for (DeviceInfo device : devices) {
-                // 检查是否超时（30秒无响应）
-                if (device.isTimeout(NetworkConfig.DEVICE_TIMEOUT)) {
-                    if (device.getStatus() == DeviceStatus.ONLINE) {
-                        // 标记为离线
-                        device.setStatus(DeviceStatus.OFFLINE);
-                        timeoutCount++;
-                        logger.warning("设备超时: " + device.getDeviceId());
-                    }
-
-                    // 检查是否需要删除（2分钟无响应）
-                    if (device.isTimeout(NetworkConfig.DEVICE_CLEANUP_TIME)) {
-                        deviceRegistry.removeDevice(device.getDeviceId());
-                        removedCount++;
-                        logger.info("删除长时间离线的设备: " + device.getDeviceId());
-                    }
-                }
+            LocalInterfaces scanned = transport.scanInterfaces();
+            if (!scanned.equals(localInterfaces)) {
+                logger.info("本机网络变化: " + localInterfaces + " -> " + scanned);
+                setLocalInterfaces(scanned);
             }
-
-            if (timeoutCount > 0 || removedCount > 0) {
-                logger.info(String.format("超时检查完成: %d 个设备离线, %d 个设备被删除",
-                        timeoutCount, removedCount));
-            }
-
         } catch (Exception e) {
-            logger.warning("检查设备超时时出错: " + e.getMessage());
+            logger.fine("检查本机网络失败: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 使用新的网卡信息：更新本机通告的地址、收发使用的网卡，并让信标回到快速阶段
+     */
+    public void setLocalInterfaces(LocalInterfaces interfaces) {
+        localInterfaces = interfaces;
+        transport.setInterfaces(interfaces);
+        if (localDevice != null) {
+            localDevice = new DeviceInfo(
+                    localDevice.getDeviceId(),
+                    localDevice.getDeviceName(),
+                    localDevice.getUserName(),
+                    interfaces.getPrimaryAddress(),
+                    localDevice.getPort(),
+                    interfaces.getAdvertisedAddresses()
+            );
+        }
+        AdaptiveBeacon b = beacon;
+        if (b != null) {
+            b.reset();
         }
     }
 //-----------------------本地设备管理---------------------
-    private void createLocalDevice() throws IOException {
-        String deviceId = generateStableDeviceId();
-        String deviceName = getComputerName();
+    private void createLocalDevice(String deviceId, String deviceName) throws IOException {
         String userName = System.getProperty("user.name","Unknown");
-        String ipAddress = getLocalIpAddress();
+        localInterfaces = transport.scanInterfaces();
+        transport.setInterfaces(localInterfaces);
         int port = NetworkConfig.getTcpPort();
-        localDevice = new DeviceInfo(deviceId, deviceName, userName, ipAddress, port);
+        localDevice = new DeviceInfo(deviceId, deviceName, userName, localInterfaces.getPrimaryAddress(), port,
+                localInterfaces.getAdvertisedAddresses());
+        localKey = DiscoveryCodec.deviceKey(deviceId);
+        heartbeatPacket = DiscoveryCodec.encode(new DiscoveryMessage(DiscoveryMessage.MessageType.HEARTBEAT, localDevice));
         logger.info("本机设备已生成");
     }
 
@@ -377,11 +606,11 @@ public class DeviceDiscovery {
 
     /**
      * 手动刷新设备列表
-     * 立即发送一次广播，让其他设备响应
+     * 发送一次询问，其他设备立即单播回复（询问本身也带本机信息）
      */
     public void refreshDevices() {
         logger.info("手动刷新设备列表");
-        broadcastPresence();
+        sendQuery();
     }
 
     /**
@@ -411,23 +640,39 @@ public class DeviceDiscovery {
                 localDevice.getDeviceName(),
                 localDevice.getUserName(),
                 localDevice.getIpAddress(),
-                port
+                port,
+                localDevice.getAddresses()
             );
             logger.info("本机设备端口更新为: " + port);
-            if (running) {
-                broadcastPresence();
+            AdaptiveBeacon b = beacon;
+            if (running && b != null) {
+                b.reset();
             }
         }
     }
 
     /**
-     * 获取设备列表
-     * 返回的是 ObservableList，可以直接绑定到 JavaFX UI
+     * 获取设备列表快照
+     * 需要跟随变化的界面请通过 {@link #getDeviceRegistry()} 订阅
      */
-    public ObservableList<DeviceInfo> getDeviceList() {
+    public List<DeviceInfo> getDeviceList() {
         return deviceRegistry.getAllDevices();
     }
 
+    /**
+     * 设备超时（运行时才有）
+     */
+    public DeviceExpiry getExpiry() {
+        return expiry;
+    }
+
+    /**
+     * 获取设备注册表
+     */
+    public DeviceRegistry getDeviceRegistry() {
+        return deviceRegistry;
+    }
+
     /**
      * 根据 ID 查找设备
      */
@@ -435,6 +680,13 @@ public class DeviceDiscovery {
         return deviceRegistry.findDevice(deviceId);
     }
 
+    /**
+     * 根据 IP 查找设备
+     */
+    public DeviceInfo findDeviceByIp(String ipAddress) {
+        return deviceRegistry.findDeviceByIp(ipAddress);
+    }
+
     /**
      * 获取在线设备数量
      */
@@ -464,6 +716,20 @@ public class DeviceDiscovery {
         }
     }
 
+    /**
+     * 获取本机网卡信息
+     */
+    public LocalInterfaces getLocalInterfaces() {
+        return localInterfaces;
+    }
+
+    /**
+     * 获取自适应信标（未启动时为 null）
+     */
+    public AdaptiveBeacon getBeacon() {
+        return beacon;
+    }
+
     /**
      * 检查服务是否正在运行
      */
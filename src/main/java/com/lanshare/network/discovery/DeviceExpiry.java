@@ -0,0 +1,207 @@
+package com.lanshare.network.discovery;
+
+import com.lanshare.network.model.DeviceInfo;
+import com.lanshare.network.model.DeviceStatus;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * 设备超时：到时间的设备标记为离线，离线太久的删除
+ *
+ * 原来每 10 秒遍历一遍所有设备，用墙上时间判断：设备最晚要 timeout + 10 秒才离线，
+ * 而且没有设备超时时也要扫描全部设备；调整系统时间还会让设备集体超时或永不超时。
+ *
+ * 现在每个设备在 {@link TimerWheel} 里有一个条目，时间基于 System.nanoTime：
+ * - 新设备加入注册表时（注册表事件）按它的最后在线时间 + timeout 添加条目
+ * - 心跳只更新设备的时间戳，不碰时间轮（O(1)、不分配内存）
+ * - 条目到期时检查设备的实际空闲时间：还没超时就按新的截止时间重新添加；
+ *   超时就标记离线，并在 lastSeen + cleanup 时再检查；离线太久就删除
+ * - 离线的设备恢复在线时（注册表事件）添加更早的条目，旧条目到期时被忽略
+ *
+ * 离线和删除在截止时间之后一格（tick）之内发生。
+ */
+public class DeviceExpiry {
+
+    private static final Logger logger = Logger.getLogger(DeviceExpiry.class.getName());
+
+    /** 时间轮格数：默认 100ms 一格时转一圈约 51 秒 */
+    private static final int WHEEL_SIZE = 512;
+
+    /**
+     * 一个设备的待检查条目；设备当前有效的条目记录在 pending 中，其他的都已过时
+     */
+    private static final class Entry {
+        final String deviceId;
+        final long deadline;
+
+        Entry(String deviceId, long deadline) {
+            this.deviceId = deviceId;
+            this.deadline = deadline;
+        }
+    }
+
+    private final DeviceRegistry registry;
+    private final long timeoutNanos;
+    private final long cleanupNanos;
+    private final TimerWheel<Entry> wheel;
+    private final Map<String, Entry> pending = new ConcurrentHashMap<>();
+    private final DeviceRegistry.DeviceListener listener = this::onDevicesChanged;
+    private ScheduledFuture<?> task;
+
+    private final AtomicLong offlineCount = new AtomicLong();
+    private final AtomicLong removedCount = new AtomicLong();
+
+    /**
+     * @param timeoutMillis 多久没有消息标记为离线
+     * @param cleanupMillis 多久没有消息删除
+     * @param tickMillis    时间轮每格的时长（超时的精度）
+     */
+    public DeviceExpiry(DeviceRegistry registry, long timeoutMillis, long cleanupMillis, long tickMillis) {
+        if (cleanupMillis < timeoutMillis) {
+            throw new IllegalArgumentException("删除时间不能早于超时时间: " + cleanupMillis + " < " + timeoutMillis);
+        }
+        this.registry = registry;
+        this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        this.cleanupNanos = TimeUnit.MILLISECONDS.toNanos(cleanupMillis);
+        this.wheel = new TimerWheel<>(TimeUnit.MILLISECONDS.toNanos(tickMillis), WHEEL_SIZE);
+    }
+
+    /**
+     * 开始跟踪注册表中的设备，每格推进一次时间轮
+     */
+    public synchronized void start(ScheduledExecutorService scheduler) {
+        if (task != null) {
+            return;
+        }
+        registry.addListener(listener);
+        for (DeviceInfo device : registry.getAllDevices()) {
+            track(device);
+        }
+        long tick = wheel.getTickNanos();
+        task = scheduler.scheduleAtFixedRate(this::advance, tick, tick, TimeUnit.NANOSECONDS);
+    }
+
+    public synchronized void stop() {
+        if (task == null) {
+            return;
+        }
+        task.cancel(false);
+        task = null;
+        registry.removeListener(listener);
+        wheel.clear();
+        pending.clear();
+    }
+
+    /**
+     * 推进时间轮，处理到期的条目
+     */
+    public void advance() {
+        try {
+            wheel.advance(System.nanoTime(), this::expire);
+        } catch (RuntimeException e) {
+            logger.warning("检查设备超时时出错: " + e.getMessage());
+        }
+    }
+
+    private void onDevicesChanged(DeviceRegistry.ChangeBatch batch) {
+        for (DeviceInfo device : batch.getAdded()) {
+            track(device);
+        }
+        for (DeviceInfo device : batch.getStatusChanged()) {
+            if (device.getStatus() == DeviceStatus.ONLINE) {
+                track(device); // 恢复在线：下一次检查提前到 lastSeen + timeout
+            }
+        }
+    }
+
+    /**
+     * 按设备当前状态添加条目；已有更早的条目时不重复添加
+     */
+    private void track(DeviceInfo device) {
+        long deadline = device.getLastSeenNanos()
+                + (device.getStatus() == DeviceStatus.OFFLINE ? cleanupNanos : timeoutNanos);
+        Entry entry = new Entry(device.getDeviceId(), deadline);
+        Entry merged = pending.merge(device.getDeviceId(), entry,
+                (old, e) -> e.deadline - old.deadline < 0 ? e : old);
+        if (merged == entry) {
+            wheel.schedule(entry, deadline);
+        }
+    }
+
+    private void expire(Entry entry) {
+        String id = entry.deviceId;
+        if (pending.get(id) != entry) {
+            return; // 已被更早的条目取代
+        }
+        DeviceInfo device = registry.findDevice(id);
+        if (device == null) {
+            pending.remove(id, entry);
+            retrack(id);
+            return;
+        }
+        long lastSeen = device.getLastSeenNanos();
+        long idle = System.nanoTime() - lastSeen;
+        if (idle >= cleanupNanos) {
+            pending.remove(id, entry);
+            if (registry.removeDevice(id)) {
+                removedCount.incrementAndGet();
+                logger.info("删除长时间离线的设备: " + id);
+            }
+            retrack(id);
+        } else if (idle >= timeoutNanos) {
+            if (registry.updateStatus(id, DeviceStatus.OFFLINE)) {
+                offlineCount.incrementAndGet();
+                logger.warning("设备超时: " + id);
+            }
+            reschedule(id, entry, lastSeen + cleanupNanos);
+        } else {
+            reschedule(id, entry, lastSeen + timeoutNanos); // 期间收到过消息
+        }
+    }
+
+    private void reschedule(String id, Entry current, long deadline) {
+        Entry next = new Entry(id, deadline);
+        if (pending.replace(id, current, next)) {
+            wheel.schedule(next, deadline);
+        }
+    }
+
+    /**
+     * 删除条目后设备又被注册（删除与重新上线同时发生）时重新跟踪
+     */
+    private void retrack(String id) {
+        DeviceInfo again = registry.findDevice(id);
+        if (again != null) {
+            track(again);
+        }
+    }
+
+    // ==================== 统计 ====================
+
+    /**
+     * 正在跟踪的设备数
+     */
+    public int getTrackedCount() {
+        return pending.size();
+    }
+
+    /**
+     * 因超时被标记为离线的次数
+     */
+    public long getOfflineCount() {
+        return offlineCount.get();
+    }
+
+    /**
+     * 因离线太久被删除的设备数
+     */
+    public long getRemovedCount() {
+        return removedCount.get();
+    }
+}
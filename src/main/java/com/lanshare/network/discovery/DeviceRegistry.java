@@ -1,11 +1,23 @@
 package com.lanshare.network.discovery;
 
+import com.lanshare.network.config.NetworkConfig;
 import com.lanshare.network.model.DeviceInfo;
-import javafx.application.Platform;
-import javafx.collections.FXCollections;
-import javafx.collections.ObservableList;
-
-import java.util.concurrent.ConcurrentHashMap;
+import com.lanshare.network.model.DeviceStatus;
+import com.lanshare.network.model.LinkProfile;
+import com.lanshare.network.protocol.DiscoveryCodec;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.logging.Logger;
 
 /**
@@ -17,41 +29,229 @@ import java.util.logging.Logger;
  * 2. 更新设备信息
  * 3. 删除离线设备
  * 4. 查询设备
+ * 5. 保存链路画像（LinkProber 探测得到），按链路质量排序
+ *
+ * 数据结构：不可变快照（设备列表 + ID 索引 + IP 索引），通过 AtomicReference 整体替换
+ * - 读（查询、遍历、心跳）不加锁，按 ID / IP 查找都是 O(1)
+ * - 心跳只刷新设备的最后在线时间，不复制快照、不产生事件
+ * - 只有新增、删除（以及同 IP 替换）才复制一次快照，用 CAS 提交
+ * - 另有按设备键（{@link DiscoveryCodec#deviceKey}）的开放寻址索引，二进制心跳用它定位设备，不分配内存
  *
- * 线程安全：使用 ConcurrentHashMap 保证多线程安全
+ * 变化通知：注册表不依赖任何界面框架。变化先只标记为“有变化”，合并窗口结束时
+ * 对比上一次发布的状态与当前快照，生成一批 {@link ChangeBatch}（新增、删除、状态变化）
+ * 一次性通知所有 {@link DeviceListener}。窗口内先加后删的设备不会出现在批次里。
+ * JavaFX 界面通过适配器消费批次，每批只切换一次 FX 线程。
  *
  * @author 主人
- * @version 1.0
+ * @version 2.0
  */
 public class DeviceRegistry {
     private static final Logger logger = Logger.getLogger(DeviceRegistry.class.getName());
 
+    /**
+     * 所有注册表共用的事件线程（守护线程，只做合并与分发）
+     */
+    private static final class EventThread {
+        static final ScheduledExecutorService EXECUTOR = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "lanshare-registry-events");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    // ==================== 快照 ====================
+
+    /**
+     * 不可变的设备快照
+     * 设备列表按注册顺序排列；DeviceInfo 的在线时间、状态仍然会被心跳和超时检查更新
+     */
+    public static final class Snapshot {
+        static final Snapshot EMPTY = new Snapshot(Collections.emptyList());
+
+        private final List<DeviceInfo> devices;
+        private final Map<String, DeviceInfo> byId;
+        private final Map<String, DeviceInfo> byIp;
+        /** 设备键索引：线性探测，容量为 2 的幂，键 0 表示空位 */
+        private final long[] keys;
+        private final DeviceInfo[] keyed;
+
+        private Snapshot(List<DeviceInfo> devices) {
+            this.devices = Collections.unmodifiableList(devices);
+            Map<String, DeviceInfo> ids = new HashMap<>(devices.size() * 2);
+            Map<String, DeviceInfo> ips = new HashMap<>(devices.size() * 2);
+            int capacity = Integer.highestOneBit(Math.max(4, devices.size() * 2 - 1)) << 1;
+            this.keys = new long[capacity];
+            this.keyed = new DeviceInfo[capacity];
+            for (DeviceInfo d : devices) {
+                ids.put(d.getDeviceId(), d);
+                ips.put(d.getIpAddress(), d);
+                long key = DiscoveryCodec.deviceKey(d.getDeviceId());
+                int slot = slot(key);
+                while (keys[slot] != 0) {
+                    slot = (slot + 1) & (capacity - 1);
+                }
+                keys[slot] = key;
+                keyed[slot] = d;
+            }
+            for (DeviceInfo d : devices) { // 其他通告地址也能找到设备，但不覆盖任何设备的首选地址
+                for (String address : d.getAddresses()) {
+                    ips.putIfAbsent(address, d);
+                }
+            }
+            this.byId = ids;
+            this.byIp = ips;
+        }
+
+        private int slot(long key) {
+            return (int) (key ^ (key >>> 32)) & (keys.length - 1);
+        }
+
+        /**
+         * 去掉 removed 中的设备（元素可以为 null）并追加 added（可以为 null）后的新快照
+         */
+        private Snapshot replace(DeviceInfo added, DeviceInfo... removed) {
+            List<DeviceInfo> next = new ArrayList<>(devices.size() + 1);
+            outer:
+            for (DeviceInfo d : devices) {
+                for (DeviceInfo r : removed) {
+                    if (d == r) {
+                        continue outer;
+                    }
+                }
+                next.add(d);
+            }
+            if (added != null) {
+                next.add(added);
+            }
+            return new Snapshot(next);
+        }
+
+        public List<DeviceInfo> getDevices() {
+            return devices;
+        }
+
+        public DeviceInfo findById(String deviceId) {
+            return byId.get(deviceId);
+        }
+
+        public DeviceInfo findByIp(String ipAddress) {
+            return byIp.get(ipAddress);
+        }
+
+        /**
+         * 按设备键查找（不分配内存）
+         */
+        public DeviceInfo findByKey(long key) {
+            int slot = slot(key);
+            long k;
+            while ((k = keys[slot]) != 0) {
+                if (k == key) {
+                    return keyed[slot];
+                }
+                slot = (slot + 1) & (keys.length - 1);
+            }
+            return null;
+        }
+
+        public int size() {
+            return devices.size();
+        }
+    }
+
+    /**
+     * 一批合并后的变化
+     * 消费方按 删除 → 新增 → 状态变化 的顺序应用即可与 {@link #getSnapshot()} 保持一致
+     * （同一设备被替换时，旧对象在删除列表、新对象在新增列表）
+     */
+    public static final class ChangeBatch {
+        private final List<DeviceInfo> added;
+        private final List<DeviceInfo> removed;
+        private final List<DeviceInfo> statusChanged;
+        private final Snapshot snapshot;
+
+        ChangeBatch(List<DeviceInfo> added, List<DeviceInfo> removed, List<DeviceInfo> statusChanged,
+                Snapshot snapshot) {
+            this.added = Collections.unmodifiableList(added);
+            this.removed = Collections.unmodifiableList(removed);
+            this.statusChanged = Collections.unmodifiableList(statusChanged);
+            this.snapshot = snapshot;
+        }
+
+        public List<DeviceInfo> getAdded() {
+            return added;
+        }
+
+        public List<DeviceInfo> getRemoved() {
+            return removed;
+        }
+
+        public List<DeviceInfo> getStatusChanged() {
+            return statusChanged;
+        }
+
+        /**
+         * 生成这批变化时的快照
+         */
+        public Snapshot getSnapshot() {
+            return snapshot;
+        }
+
+        public boolean isEmpty() {
+            return added.isEmpty() && removed.isEmpty() && statusChanged.isEmpty();
+        }
+
+        @Override
+        public String toString() {
+            return "ChangeBatch{+" + added.size() + ", -" + removed.size() + ", ~" + statusChanged.size() + "}";
+        }
+    }
+
+    /**
+     * 设备变化监听器（在事件线程中回调；合并窗口为 0 时在修改注册表的线程中回调）
+     */
+    public interface DeviceListener {
+        void onDevicesChanged(ChangeBatch batch);
+    }
+
     // ==================== 数据存储 ====================
 
     /**
-     * 设备映射表
-     * Key: deviceId (设备唯一标识)
-     * Value: DeviceInfo (设备信息)
-     *
-     * 使用 ConcurrentHashMap 保证线程安全
+     * 当前快照（读取无锁）
      */
-    private final ConcurrentHashMap<String, DeviceInfo> deviceMap;
+    private final AtomicReference<Snapshot> current = new AtomicReference<>(Snapshot.EMPTY);
 
     /**
-     * 可观察的设备列表
-     * 用于 JavaFX UI 绑定，列表变化时自动更新界面
+     * 是否有尚未发布的变化（同时表示已经安排了一次发布）
      */
-    private final ObservableList<DeviceInfo> deviceList;
+    private final AtomicBoolean dirty = new AtomicBoolean();
+
+    /**
+     * 上一次发布时的设备与状态（只在 flush 中访问）
+     */
+    private Map<String, DeviceInfo> publishedDevices = new HashMap<>();
+    private Map<String, DeviceStatus> publishedStatus = new HashMap<>();
+
+    private final List<DeviceListener> listeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * 合并窗口（毫秒），0 表示每次变化立即同步通知
+     */
+    private final long coalesceMillis;
 
     // ==================== 构造函数 ====================
 
     /**
-     * 构造函数 - 初始化数据结构
+     * 使用默认合并窗口 {@link NetworkConfig#DEVICE_EVENT_COALESCE_MS}
      */
     public DeviceRegistry() {
-        this.deviceMap = new ConcurrentHashMap<>();
-        this.deviceList = FXCollections.observableArrayList();
+        this(NetworkConfig.DEVICE_EVENT_COALESCE_MS);
+    }
 
+    /**
+     * @param coalesceMillis 合并窗口（毫秒），0 表示不合并、在调用方线程中立即通知
+     */
+    public DeviceRegistry(long coalesceMillis) {
+        this.coalesceMillis = Math.max(0, coalesceMillis);
         logger.info("DeviceRegistry 已创建");
     }
 
@@ -60,8 +260,9 @@ public class DeviceRegistry {
     /**
      * 注册或更新设备
      *
-     * 如果设备已存在，更新其信息（主要是最后在线时间）
-     * 如果设备不存在，添加到列表
+     * 如果设备已存在，更新其最后在线时间（不复制快照，只有从离线恢复时才产生状态变化）
+     * 如果设备不存在，添加到列表；同一 IP 上的旧设备（例如重装后换了设备ID）被替换
+     * 如果设备已存在但地址、端口或名称变了，用新信息替换
      *
      * @param device 设备信息
      */
@@ -72,58 +273,122 @@ public class DeviceRegistry {
         }
 
         String deviceId = device.getDeviceId();
+        while (true) {
+            Snapshot snapshot = current.get();
+            DeviceInfo existing = snapshot.findById(deviceId);
+
+            if (existing != null && sameEndpoint(existing, device)) {
+                // 心跳：快路径
+                DeviceStatus before = existing.getStatus();
+                existing.updateLastSeen();
+                if (before != DeviceStatus.ONLINE) {
+                    changed();
+                }
+                logger.fine("更新设备: " + deviceId);
+                return;
+            }
 
-        // 检查设备是否已存在
-        DeviceInfo existing = deviceMap.get(deviceId);
-
-        if (existing != null) {
-            // 设备已存在，更新信息
-            updateExistingDevice(existing);
-            logger.fine("更新设备: " + deviceId);
-        } else {
-            // 新设备，检查是否存在同IP的旧设备
-            DeviceInfo sameIp = null;
-            for (DeviceInfo d : deviceMap.values()) {
-                if (d.getIpAddress().equals(device.getIpAddress())) { sameIp = d; break; }
+            // 新设备，或者已有设备换了地址：同时替换同 IP 上的旧设备（只比较首选地址）
+            DeviceInfo sameIp = snapshot.findByIp(device.getIpAddress());
+            if (sameIp != null && !device.getIpAddress().equals(sameIp.getIpAddress())) {
+                sameIp = null;
             }
-            if (sameIp != null) {
-                removeDevice(sameIp.getDeviceId());
+            if (current.compareAndSet(snapshot, snapshot.replace(device, existing, sameIp))) {
+                carryLinkProfile(existing, device);
+                changed();
+                if (existing != null) {
+                    logger.info("设备信息变化: " + device);
+                } else {
+                    logger.info("注册新设备: " + device);
+                }
+                return;
             }
-            addNewDevice(device);
-            logger.info("注册新设备: " + device);
+            // 被其他线程抢先修改，基于新快照重试
         }
     }
 
     /**
-     * 更新已存在的设备
-     * 主要更新最后在线时间和状态
+     * 二进制心跳的快路径：按设备键刷新已知设备的最后在线时间（不分配内存）
+     *
+     * @param key 设备键
+     * @return 设备已知时返回 true；未知设备返回 false（等它的 PRESENCE）
      */
-    private void updateExistingDevice(DeviceInfo device) {
-        device.updateLastSeen();
-        if (Platform.isFxApplicationThread()) {
-            int idx = deviceList.indexOf(device);
-            if (idx >= 0) { deviceList.set(idx, device); }
-        } else {
-            Platform.runLater(() -> {
-                int idx = deviceList.indexOf(device);
-                if (idx >= 0) { deviceList.set(idx, device); }
-            });
+    public boolean touch(long key) {
+        DeviceInfo existing = current.get().findByKey(key);
+        if (existing == null) {
+            return false;
+        }
+        DeviceStatus before = existing.getStatus();
+        existing.updateLastSeen();
+        if (before != DeviceStatus.ONLINE) {
+            changed();
         }
+        return true;
     }
 
     /**
-     * 添加新设备
+     * 设备信息变化（例如改名、多了一个地址）时保留探测得到的链路画像，前提是探测用的地址仍然有效
      */
-    private void addNewDevice(DeviceInfo device) {
-        // 1. 添加到 Map
-        deviceMap.put(device.getDeviceId(), device);
+    private static void carryLinkProfile(DeviceInfo existing, DeviceInfo device) {
+        LinkProfile profile = existing != null ? existing.getLinkProfile() : null;
+        if (profile != null && device.getLinkProfile() == null && device.getAddresses().contains(profile.getAddress())) {
+            device.setLinkProfile(profile);
+        }
+    }
 
-        // 2. 添加到 ObservableList（需要在 JavaFX 线程中执行）
-        if (Platform.isFxApplicationThread()) {
-            deviceList.add(device);
-        } else {
-            Platform.runLater(() -> deviceList.add(device));
+    private static boolean sameEndpoint(DeviceInfo a, DeviceInfo b) {
+        return a.getPort() == b.getPort()
+                && a.getIpAddress().equals(b.getIpAddress())
+                && a.getAddresses().equals(b.getAddresses())
+                && java.util.Objects.equals(a.getDeviceName(), b.getDeviceName());
+    }
+
+    /**
+     * 更新设备状态（例如超时检查把设备标记为离线）
+     *
+     * @return 状态确实发生变化时返回 true
+     */
+    public boolean updateStatus(String deviceId, DeviceStatus status) {
+        DeviceInfo device = current.get().findById(deviceId);
+        if (device == null || device.getStatus() == status) {
+            return false;
         }
+        device.setStatus(status);
+        changed();
+        return true;
+    }
+
+    /**
+     * 更新设备的链路画像（由 LinkProber 在每次探测后调用）
+     *
+     * 画像不产生注册表事件：界面刷新设备列表时读到的就是最新值。
+     *
+     * @return 设备存在时返回 true
+     */
+    public boolean updateLinkProfile(String deviceId, LinkProfile profile) {
+        DeviceInfo device = current.get().findById(deviceId);
+        if (device == null) {
+            return false;
+        }
+        device.setLinkProfile(profile);
+        return true;
+    }
+
+    /**
+     * 按链路质量排序的在线设备：能连通且速度快的在前，没有探测过的排在探测过的之后
+     *
+     * @return 新的列表（调用方可以修改）
+     */
+    public List<DeviceInfo> getDevicesByLinkQuality() {
+        List<DeviceInfo> online = new ArrayList<>();
+        for (DeviceInfo device : current.get().getDevices()) {
+            if (device.getStatus() == DeviceStatus.ONLINE) {
+                online.add(device);
+            }
+        }
+        online.sort(Comparator.comparing(DeviceInfo::getLinkProfile,
+                Comparator.nullsLast(LinkProfile.FASTEST)));
+        return online;
     }
 
     /**
@@ -138,22 +403,18 @@ public class DeviceRegistry {
             return false;
         }
 
-        // 1. 从 Map 中移除
-        DeviceInfo removed = deviceMap.remove(deviceId);
-
-        if (removed != null) {
-            // 2. 从 ObservableList 中移除（需要在 JavaFX 线程中执行）
-            if (Platform.isFxApplicationThread()) {
-                deviceList.remove(removed);
-            } else {
-                Platform.runLater(() -> deviceList.remove(removed));
+        while (true) {
+            Snapshot snapshot = current.get();
+            DeviceInfo removed = snapshot.findById(deviceId);
+            if (removed == null) {
+                logger.fine("设备不存在，无法移除: " + deviceId);
+                return false;
+            }
+            if (current.compareAndSet(snapshot, snapshot.replace(null, removed))) {
+                changed();
+                logger.info("移除设备: " + deviceId);
+                return true;
             }
-
-            logger.info("移除设备: " + deviceId);
-            return true;
-        } else {
-            logger.fine("设备不存在，无法移除: " + deviceId);
-            return false;
         }
     }
 
@@ -164,7 +425,17 @@ public class DeviceRegistry {
      * @return 设备信息，如果不存在返回 null
      */
     public DeviceInfo findDevice(String deviceId) {
-        return deviceMap.get(deviceId);
+        return current.get().findById(deviceId);
+    }
+
+    /**
+     * 按 IP 查找设备（首选地址或设备通告的任一地址）
+     *
+     * @param ipAddress IP 地址
+     * @return 设备信息，如果不存在返回 null
+     */
+    public DeviceInfo findDeviceByIp(String ipAddress) {
+        return current.get().findByIp(ipAddress);
     }
 
     /**
@@ -174,16 +445,23 @@ public class DeviceRegistry {
      * @return 如果设备存在返回 true，否则返回 false
      */
     public boolean contains(String deviceId) {
-        return deviceMap.containsKey(deviceId);
+        return current.get().findById(deviceId) != null;
     }
 
     /**
      * 获取所有设备
      *
-     * @return 可观察的设备列表（用于 UI 绑定）
+     * @return 当前快照中的设备列表（不可修改，之后的变化不会反映到返回的列表中）
      */
-    public ObservableList<DeviceInfo> getAllDevices() {
-        return deviceList;
+    public List<DeviceInfo> getAllDevices() {
+        return current.get().getDevices();
+    }
+
+    /**
+     * 获取当前快照
+     */
+    public Snapshot getSnapshot() {
+        return current.get();
     }
 
     /**
@@ -192,7 +470,7 @@ public class DeviceRegistry {
      * @return 当前注册的设备数量
      */
     public int getDeviceCount() {
-        return deviceMap.size();
+        return current.get().size();
     }
 
     /**
@@ -200,15 +478,8 @@ public class DeviceRegistry {
      */
     public void clear() {
         logger.info("清空设备注册表");
-
-        // 1. 清空 Map
-        deviceMap.clear();
-
-        // 2. 清空 ObservableList（需要在 JavaFX 线程中执行）
-        if (Platform.isFxApplicationThread()) {
-            deviceList.clear();
-        } else {
-            Platform.runLater(() -> deviceList.clear());
+        if (current.getAndSet(Snapshot.EMPTY).size() > 0) {
+            changed();
         }
     }
 
@@ -220,24 +491,100 @@ public class DeviceRegistry {
      * @return 被移除的设备数量
      */
     public int removeOfflineDevices() {
-        int count = 0;
-
-        // 遍历所有设备，移除离线的
-        for (DeviceInfo device : deviceList) {
-            if (device.getStatus() == com.lanshare.network.model.DeviceStatus.OFFLINE) {
-                if (removeDevice(device.getDeviceId())) {
-                    count++;
+        int count;
+        while (true) {
+            Snapshot snapshot = current.get();
+            List<DeviceInfo> online = new ArrayList<>(snapshot.size());
+            for (DeviceInfo device : snapshot.getDevices()) {
+                if (device.getStatus() != DeviceStatus.OFFLINE) {
+                    online.add(device);
                 }
             }
+            count = snapshot.size() - online.size();
+            if (count == 0 || current.compareAndSet(snapshot, new Snapshot(online))) {
+                break;
+            }
         }
 
         if (count > 0) {
+            changed();
             logger.info("移除了 " + count + " 个离线设备");
         }
 
         return count;
     }
 
+    // ==================== 变化通知 ====================
+
+    public void addListener(DeviceListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(DeviceListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * 标记有变化：窗口内第一次变化安排一次发布，后续变化只是搭车
+     */
+    private void changed() {
+        if (coalesceMillis == 0) {
+            flush();
+        } else if (dirty.compareAndSet(false, true)) {
+            EventThread.EXECUTOR.schedule(this::flush, coalesceMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * 立即发布尚未通知的变化（对比上一次发布的状态与当前快照）
+     */
+    public synchronized void flush() {
+        dirty.set(false); // 之后的变化会安排下一次发布
+        Snapshot snapshot = current.get();
+
+        List<DeviceInfo> added = new ArrayList<>();
+        List<DeviceInfo> removed = new ArrayList<>();
+        List<DeviceInfo> statusChanged = new ArrayList<>();
+        Map<String, DeviceInfo> devices = new HashMap<>(snapshot.size() * 2);
+        Map<String, DeviceStatus> status = new HashMap<>(snapshot.size() * 2);
+
+        for (DeviceInfo d : snapshot.getDevices()) {
+            String id = d.getDeviceId();
+            DeviceStatus s = d.getStatus();
+            devices.put(id, d);
+            status.put(id, s);
+            DeviceInfo before = publishedDevices.get(id);
+            if (before != d) {
+                if (before != null) {
+                    removed.add(before); // 同一ID被新对象替换
+                }
+                added.add(d);
+            } else if (publishedStatus.get(id) != s) {
+                statusChanged.add(d);
+            }
+        }
+        for (Map.Entry<String, DeviceInfo> e : publishedDevices.entrySet()) {
+            if (!devices.containsKey(e.getKey())) {
+                removed.add(e.getValue());
+            }
+        }
+
+        publishedDevices = devices;
+        publishedStatus = status;
+        if (added.isEmpty() && removed.isEmpty() && statusChanged.isEmpty()) {
+            return;
+        }
+        ChangeBatch batch = new ChangeBatch(added, removed, statusChanged, snapshot);
+        logger.fine("设备列表变化: " + batch);
+        for (DeviceListener l : listeners) {
+            try {
+                l.onDevicesChanged(batch);
+            } catch (RuntimeException e) {
+                logger.warning("设备变化监听器异常: " + e.getMessage());
+            }
+        }
+    }
+
     // ==================== 调试方法 ====================
 
     /**
@@ -247,10 +594,10 @@ public class DeviceRegistry {
         System.out.println("========== DeviceRegistry ==========");
         System.out.println("设备数量: " + getDeviceCount());
 
-        for (DeviceInfo device : deviceList) {
+        for (DeviceInfo device : getAllDevices()) {
             System.out.println("  " + device);
         }
 
         System.out.println("====================================");
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,44 @@
+package com.lanshare.network.discovery;
+
+import java.io.IOException;
+import java.net.InetAddress;
+
+/**
+ * 发现报文的收发通道
+ *
+ * DeviceDiscovery 只通过这个接口收发报文：实际运行时是 UDP（{@link UdpBrodcaster}），
+ * 规模模拟时是内存中的虚拟网络（见 com.lanshare.network.discovery.sim），同一个 JVM 里可以跑上千个节点。
+ */
+public interface DiscoveryTransport {
+
+    /**
+     * 设置报文监听器（收到的报文通过 onPacket 交给它）
+     */
+    void setMessageListener(UdpBrodcaster.UdpMessageListener listener);
+
+    void start() throws IOException;
+
+    void stop();
+
+    /**
+     * 本机网卡变化时更新收发使用的网卡
+     */
+    void setInterfaces(LocalInterfaces interfaces);
+
+    /**
+     * 扫描本机网卡（DeviceDiscovery 初始化和检查网络变化时调用）
+     */
+    default LocalInterfaces scanInterfaces() {
+        return LocalInterfaces.scan();
+    }
+
+    /**
+     * 向链路上所有设备发送一个报文
+     */
+    void sendBroadcast(byte[] data);
+
+    /**
+     * 单播发送一个报文
+     */
+    void sendTo(byte[] data, InetAddress address, int port);
+}
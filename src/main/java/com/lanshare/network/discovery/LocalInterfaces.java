@@ -0,0 +1,312 @@
+package com.lanshare.network.discovery;
+
+import java.net.Inet4Address;
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.net.InterfaceAddress;
+import java.net.NetworkInterface;
+import java.net.SocketException;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.logging.Logger;
+
+/**
+ * 本机网络接口快照
+ *
+ * 原来只取第一个站点本地 IPv4 地址，并且只向 255.255.255.255 广播：同时有有线、无线和 VPN 网卡时，
+ * 另一个网卡上的设备永远发现不了。这里列出所有可用的接口和子网，用于：
+ *
+ * - 发送：每个接口分别发组播，每个 IPv4 子网分别发定向广播（见 UdpBrodcaster）
+ * - 通告：本机所有可用地址都写进上线消息，按优先级排序（普通网卡在前、点对点/虚拟网卡在后，IPv4 在前）
+ * - 选路：连接方从对方通告的地址中选一个与本机同子网的地址（见 {@link #selectAddress}）
+ *
+ * 链路本地 IPv6 地址（fe80::）只在对方机器上带接口编号才有意义，不通告；这类设备仍然可以通过报文来源地址连接。
+ */
+public final class LocalInterfaces {
+
+    private static final Logger logger = Logger.getLogger(LocalInterfaces.class.getName());
+
+    /**
+     * 本机的一个子网（接口上的一个地址）
+     */
+    public static final class Subnet {
+        private final String interfaceName;
+        private final InetAddress address;
+        private final int prefixLength;
+        private final InetAddress broadcast;
+
+        public Subnet(String interfaceName, InetAddress address, int prefixLength, InetAddress broadcast) {
+            this.interfaceName = interfaceName;
+            this.address = address;
+            this.prefixLength = prefixLength;
+            this.broadcast = broadcast;
+        }
+
+        public String getInterfaceName() {
+            return interfaceName;
+        }
+
+        public InetAddress getAddress() {
+            return address;
+        }
+
+        public int getPrefixLength() {
+            return prefixLength;
+        }
+
+        /**
+         * 子网定向广播地址（IPv6 和点对点接口为 null）
+         */
+        public InetAddress getBroadcast() {
+            return broadcast;
+        }
+
+        /**
+         * 地址是否在这个子网中
+         */
+        public boolean contains(InetAddress other) {
+            byte[] a = address.getAddress();
+            byte[] b = other.getAddress();
+            if (a.length != b.length || prefixLength <= 0) {
+                return false;
+            }
+            int bits = Math.min(prefixLength, a.length * 8);
+            int full = bits / 8;
+            for (int i = 0; i < full; i++) {
+                if (a[i] != b[i]) {
+                    return false;
+                }
+            }
+            int rest = bits % 8;
+            if (rest == 0) {
+                return true;
+            }
+            int mask = 0xFF << (8 - rest) & 0xFF;
+            return (a[full] & mask) == (b[full] & mask);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Subnet)) return false;
+            Subnet that = (Subnet) o;
+            return prefixLength == that.prefixLength
+                    && interfaceName.equals(that.interfaceName)
+                    && address.equals(that.address);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(interfaceName, address, prefixLength);
+        }
+
+        @Override
+        public String toString() {
+            return interfaceName + ":" + literal(address) + "/" + prefixLength;
+        }
+    }
+
+    private final List<Subnet> subnets;
+    private final List<NetworkInterface> multicastInterfaces;
+    private final List<String> advertised;
+
+    private LocalInterfaces(List<Subnet> subnets, List<NetworkInterface> multicastInterfaces) {
+        this.subnets = Collections.unmodifiableList(subnets);
+        this.multicastInterfaces = Collections.unmodifiableList(multicastInterfaces);
+        List<String> addresses = new ArrayList<>();
+        for (Subnet s : subnets) {
+            addresses.add(literal(s.getAddress()));
+        }
+        this.advertised = Collections.unmodifiableList(addresses);
+    }
+
+    /**
+     * 扫描本机网络接口
+     */
+    public static LocalInterfaces scan() {
+        List<Subnet> subnets = new ArrayList<>();
+        Map<Subnet, Integer> rank = new LinkedHashMap<>();
+        List<NetworkInterface> multicast = new ArrayList<>();
+        try {
+            Enumeration<NetworkInterface> nics = NetworkInterface.getNetworkInterfaces();
+            while (nics != null && nics.hasMoreElements()) {
+                NetworkInterface nic = nics.nextElement();
+                if (!nic.isUp() || nic.isLoopback()) {
+                    continue;
+                }
+                boolean secondary = nic.isPointToPoint() || nic.isVirtual();
+                boolean usable = false;
+                for (InterfaceAddress ia : nic.getInterfaceAddresses()) {
+                    InetAddress addr = ia.getAddress();
+                    if (addr == null || addr.isLoopbackAddress() || addr.isLinkLocalAddress() && addr instanceof Inet6Address) {
+                        continue;
+                    }
+                    Subnet subnet = new Subnet(nic.getName(), addr, ia.getNetworkPrefixLength(), ia.getBroadcast());
+                    subnets.add(subnet);
+                    rank.put(subnet, (secondary ? 10 : 0) + addressRank(addr));
+                    usable = true;
+                }
+                if (usable && nic.supportsMulticast()) {
+                    multicast.add(nic);
+                }
+            }
+        } catch (SocketException e) {
+            logger.warning("枚举网络接口失败: " + e.getMessage());
+        }
+        subnets.sort(Comparator.comparingInt(rank::get)); // 稳定排序，同级保持系统枚举顺序
+        return new LocalInterfaces(subnets, multicast);
+    }
+
+    /**
+     * 用给定的子网构造（模拟网络环境，没有可发送组播的接口）
+     */
+    public static LocalInterfaces of(List<Subnet> subnets) {
+        return new LocalInterfaces(new ArrayList<>(subnets), new ArrayList<>());
+    }
+
+    private static int addressRank(InetAddress addr) {
+        if (addr instanceof Inet4Address) {
+            return addr.isSiteLocalAddress() ? 0 : 1;
+        }
+        return (addr.getAddress()[0] & 0xFE) == 0xFC ? 2 : 3; // IPv6 ULA（fc00::/7）优先于全局地址
+    }
+
+    // ==================== 查询 ====================
+
+    public List<Subnet> getSubnets() {
+        return subnets;
+    }
+
+    /**
+     * 可以发送组播的接口
+     */
+    public List<NetworkInterface> getMulticastInterfaces() {
+        return multicastInterfaces;
+    }
+
+    /**
+     * 写进上线消息的本机地址，按优先级排序
+     */
+    public List<String> getAdvertisedAddresses() {
+        return advertised;
+    }
+
+    /**
+     * 首选地址（没有可用接口时回退到 InetAddress.getLocalHost）
+     */
+    public String getPrimaryAddress() {
+        if (!advertised.isEmpty()) {
+            return advertised.get(0);
+        }
+        try {
+            return InetAddress.getLocalHost().getHostAddress();
+        } catch (UnknownHostException e) {
+            return "127.0.0.1";
+        }
+    }
+
+    public boolean isEmpty() {
+        return subnets.isEmpty();
+    }
+
+    /**
+     * 地址是否直接可达（与本机某个接口同子网）
+     */
+    public boolean isOnLink(InetAddress address) {
+        for (Subnet s : subnets) {
+            if (s.contains(address)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 是否为本机地址
+     */
+    public boolean isLocal(InetAddress address) {
+        for (Subnet s : subnets) {
+            if (s.getAddress().equals(address)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 从对方通告的地址中选择连接地址
+     *
+     * 1. 按对方的优先顺序，第一个与本机同子网的地址（结果只取决于双方的地址，不会随报文从哪个网卡到达而来回变化）
+     * 2. 报文来源地址（一定可达，旧版本设备只有这一个）
+     * 3. 对方的首选地址
+     *
+     * 对方通告的本机地址会被忽略，避免连接到自己。
+     *
+     * @param candidates 对方通告的地址（可以为空）
+     * @param observed   报文来源地址（可以为 null）
+     */
+    public String selectAddress(List<String> candidates, String observed) {
+        String fallback = null;
+        for (String candidate : candidates) {
+            InetAddress addr = parseLiteral(candidate);
+            if (addr == null || isLocal(addr)) {
+                continue;
+            }
+            if (isOnLink(addr)) {
+                return candidate;
+            }
+            if (fallback == null) {
+                fallback = candidate;
+            }
+        }
+        return observed != null ? observed : fallback;
+    }
+
+    /**
+     * 地址的文本形式，去掉 IPv6 的接口编号（%eth0 只在本机有意义）
+     */
+    static String literal(InetAddress address) {
+        String text = address.getHostAddress();
+        int scope = text.indexOf('%');
+        return scope >= 0 ? text.substring(0, scope) : text;
+    }
+
+    /**
+     * 解析 IP 字面量（不做 DNS 查询）
+     */
+    private static InetAddress parseLiteral(String address) {
+        if (address == null || address.isEmpty()
+                || address.indexOf(':') < 0 && !address.chars().allMatch(c -> c == '.' || c >= '0' && c <= '9')) {
+            return null;
+        }
+        try {
+            return InetAddress.getByName(address);
+        } catch (UnknownHostException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof LocalInterfaces)) return false;
+        return subnets.equals(((LocalInterfaces) o).subnets);
+    }
+
+    @Override
+    public int hashCode() {
+        return subnets.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return subnets.toString();
+    }
+}
@@ -0,0 +1,129 @@
+package com.lanshare.network.discovery;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * 哈希时间轮（单层，时间基于 System.nanoTime）
+ *
+ * wheelSize 个槽，每个槽代表 tick 纳秒；到期时间超过一圈的条目记录还要转几圈。
+ * 添加 O(1)；每推进一格只处理这一格里的条目，没有到期的条目时推进几乎没有开销。
+ * 到期时间的精度是一格：条目在到期后的下一次 {@link #advance} 中取出，最多晚 tick。
+ *
+ * 条目不支持取消：使用方在到期回调中检查条目是否仍然有效（例如设备在此期间又发了心跳），
+ * 无效的直接丢弃，需要时重新添加。这样心跳只需要更新时间戳，不需要碰时间轮。
+ */
+public final class TimerWheel<T> {
+
+    private static final class Node<T> {
+        final T item;
+        long rounds;
+        Node<T> next;
+
+        Node(T item, long rounds) {
+            this.item = item;
+            this.rounds = rounds;
+        }
+    }
+
+    private final long tickNanos;
+    private final Node<T>[] buckets;
+    private final int mask;
+    private final long origin;
+    /** 下一个要处理的格 */
+    private long tick;
+    private int size;
+
+    /**
+     * @param tickNanos 每格的时长（纳秒）
+     * @param wheelSize 格数（取整到 2 的幂）
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public TimerWheel(long tickNanos, int wheelSize) {
+        if (tickNanos <= 0 || wheelSize <= 0) {
+            throw new IllegalArgumentException("时间轮参数不合法: " + tickNanos + "ns x " + wheelSize);
+        }
+        int capacity = Integer.highestOneBit(Math.max(1, wheelSize - 1)) << 1;
+        this.tickNanos = tickNanos;
+        this.buckets = new Node[capacity];
+        this.mask = capacity - 1;
+        this.origin = System.nanoTime();
+    }
+
+    /**
+     * 添加一个条目，在 deadlineNanos（System.nanoTime 时间）之后到期；已经过去的时间在下一格到期
+     */
+    public synchronized void schedule(T item, long deadlineNanos) {
+        long due = Math.max(tick, ceilDiv(deadlineNanos - origin, tickNanos));
+        Node<T> node = new Node<>(item, (due - tick) / buckets.length);
+        int index = (int) (due & mask);
+        node.next = buckets[index];
+        buckets[index] = node;
+        size++;
+    }
+
+    /**
+     * 推进到 nowNanos，把到期的条目交给 handler（在锁外回调，回调中可以重新添加）
+     *
+     * @return 到期的条目数
+     */
+    public int advance(long nowNanos, Consumer<T> handler) {
+        List<T> due = null;
+        synchronized (this) {
+            long now = Math.floorDiv(nowNanos - origin, tickNanos);
+            while (tick <= now) {
+                int index = (int) (tick & mask);
+                Node<T> prev = null;
+                Node<T> node = buckets[index];
+                while (node != null) {
+                    Node<T> next = node.next;
+                    if (node.rounds == 0) {
+                        if (prev == null) {
+                            buckets[index] = next;
+                        } else {
+                            prev.next = next;
+                        }
+                        size--;
+                        if (due == null) {
+                            due = new ArrayList<>();
+                        }
+                        due.add(node.item);
+                    } else {
+                        node.rounds--;
+                        prev = node;
+                    }
+                    node = next;
+                }
+                tick++;
+            }
+        }
+        if (due == null) {
+            return 0;
+        }
+        for (T item : due) {
+            handler.accept(item);
+        }
+        return due.size();
+    }
+
+    /**
+     * 尚未到期的条目数
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    public synchronized void clear() {
+        java.util.Arrays.fill(buckets, null);
+        size = 0;
+    }
+
+    public long getTickNanos() {
+        return tickNanos;
+    }
+
+    private static long ceilDiv(long a, long b) {
+        return -Math.floorDiv(-a, b);
+    }
+}
@@ -1,133 +1,499 @@
 package com.lanshare.network.discovery;
+import com.lanshare.metrics.Metrics;
+import com.lanshare.metrics.jfr.DiscoveryPacketEvent;
 import com.lanshare.network.config.NetworkConfig;
 
 import java.io.IOException;
 import java.net.*;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.MembershipKey;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
 import java.util.logging.Logger;
-public class UdpBrodcaster {
+/**
+ * UDP 发现报文收发
+ *
+ * 一个绑定在通配地址上的 DatagramChannel，在每个可用网卡上加入 IPv4（以及启用时的 IPv6）发现组播组。
+ * 发送时每个网卡分别发一次组播，需要时再向每个 IPv4 子网发定向广播；没有可用网卡时回退到 255.255.255.255。
+ * 网卡变化时由 DeviceDiscovery 调用 {@link #setInterfaces} 更新加入的组和发送目标。
+ *
+ * 接收：
+ * - Socket 接收缓冲区可配置（udp.receive.buffer，默认 1MB），广播风暴时由内核先缓存
+ * - 接收线程被唤醒后一次读完所有已到达的报文（每批最多 {@link #BATCH} 个），读进同一个直接缓冲区，
+ *   复制到预先分配的报文槽后交给工作线程解码和处理，接收线程本身不做任何处理
+ * - 同一来源地址的报文总是交给同一个工作线程，保持先后顺序（PRESENCE 之后的 GOODBYE 不会被提前处理）
+ * - 报文槽用完（工作线程处理不过来）时丢弃新报文并计入溢出数，而不是让内核缓冲区被填满后无声丢包
+ */
+public class UdpBrodcaster implements DiscoveryTransport {
     private static final Logger logger=Logger.getLogger(UdpBrodcaster.class.getName());
-    private final int port=NetworkConfig.getUdpPort();
-    private final int bufferSize=NetworkConfig.UDP_BUFFER_SIZE;
+    /** 接收线程一次最多连续读取的报文数，之后重新检查是否停止 */
+    static final int BATCH=64;
+    /** 报文槽的初始大小，更大的报文到达时按需扩大 */
+    private static final int SLOT_SIZE=512;
 
-    private DatagramSocket socket;//UDP Socket
-    private InetAddress broadcastAddress;//广播地址
-    private ExecutorService listenerExecutor;//用于运行监听任务的单线程池
+    private final int port=NetworkConfig.getUdpPort();
+    private final ByteBuffer receiveBuffer=ByteBuffer.allocateDirect(NetworkConfig.UDP_BUFFER_SIZE);//复用的直接缓冲区
 
+    private DatagramChannel channel;//UDP 通道
+    private Selector selector;
+    private InetAddress broadcastAddress;//受限广播地址（回退）
+    private InetAddress groupV4;//IPv4 发现组播组
+    private InetAddress groupV6;//IPv6 发现组播组
+    private volatile LocalInterfaces interfaces=LocalInterfaces.of(List.of());
+    private final Map<String,List<MembershipKey>> joined=new HashMap<>();//已加入组播组的网卡
+    private volatile List<Target> targets=List.of();//每次发送的目标
+    private Thread receiver;//接收线程
+    private Thread[] workers;//解码和处理报文的工作线程
+    private BlockingQueue<Packet> free;//空闲的报文槽
+    private BlockingQueue<Packet>[] ready;//每个工作线程待处理的报文
 
     private volatile boolean running=false;
 
+    //统计
+    private final AtomicLong received=new AtomicLong();//收到的报文
+    private final AtomicLong processed=new AtomicLong();//处理完的报文
+    private final AtomicLong overflowed=new AtomicLong();//报文槽用完而丢弃的报文
+    private final AtomicLong failed=new AtomicLong();//处理时抛出异常的报文
+    private final AtomicLong sendDropped=new AtomicLong();//发送缓冲区满而没有发出的报文
+    private volatile double receiveRate;//最近一秒左右的接收速率（个/秒）
+
     public interface UdpMessageListener {
         void onMessage(String message,InetAddress senderAddress);//当收到消息时调用
+
+        /**
+         * 收到原始报文时调用（在工作线程上；data 在回调返回后会被下一个报文覆盖，不能保存引用）
+         * 默认按 UTF-8 解码后交给 onMessage；需要处理二进制报文的监听器覆盖此方法
+         *
+         * @param senderPort 对方的源端口（单播回复发到这里）
+         */
+        default void onPacket(byte[] data,int length,InetAddress senderAddress,int senderPort){
+            onMessage(new String(data,0,length,java.nio.charset.StandardCharsets.UTF_8),senderAddress);
+        }
     }
+    /**
+     * 一个发送目标：组播（指定出口网卡）或定向广播（nic 为 null，由路由表选择出口）
+     */
+    private static final class Target {
+        final NetworkInterface nic;
+        final InetSocketAddress address;
+
+        Target(NetworkInterface nic, InetAddress address, int port) {
+            this.nic = nic;
+            this.address = new InetSocketAddress(address, port);
+        }
+
+        @Override
+        public String toString() {
+            return (nic != null ? nic.getName() + "→" : "") + address.getAddress().getHostAddress();
+        }
+    }
+
+    /**
+     * 报文槽：接收线程填入，工作线程处理后放回空闲队列
+     */
+    private static final class Packet {
+        byte[] data=new byte[SLOT_SIZE];
+        int length;
+        InetAddress address;
+        int port;
+    }
+
     //把自己注册为监听器·
-    private UdpMessageListener udpMessageListener;
+    private volatile UdpMessageListener udpMessageListener;
+    @Override
     public void setMessageListener(UdpMessageListener udpMessageListener) {
         this.udpMessageListener = udpMessageListener;
     }
 
+    @Override
     public void start() throws IOException{
         if(running){
             logger.warning("UdpBrodcaster is already running");
             return;
         }
-        //初始化Socket，并绑定到指定端口
+        boolean ipv6=NetworkConfig.isIPv6Enabled();
+        //初始化通道，并绑定到指定端口
         try{
-            socket=new DatagramSocket(port);
-            socket.setReuseAddress(true);//允许端口重用
-            socket.setBroadcast(true);//允许发送广播
-            logger.info("UDP Socket 已在端口"+port+"启动并绑定");
+            channel=ipv6?DatagramChannel.open():DatagramChannel.open(StandardProtocolFamily.INET);
+            channel.setOption(StandardSocketOptions.SO_REUSEADDR,true);//允许端口重用（必须在绑定前设置）
+            channel.setOption(StandardSocketOptions.SO_RCVBUF,NetworkConfig.getUdpReceiveBuffer());
+            channel.bind(new InetSocketAddress(port));
+            channel.setOption(StandardSocketOptions.SO_BROADCAST,true);//允许发送广播
+            channel.setOption(StandardSocketOptions.IP_MULTICAST_TTL,1);//发现报文不出本地链路
+            channel.configureBlocking(false);
+            selector=Selector.open();
+            channel.register(selector,SelectionKey.OP_READ);
+            logger.info("UDP 通道已在端口"+port+"启动并绑定（接收缓冲区 "
+                    +channel.getOption(StandardSocketOptions.SO_RCVBUF)+" 字节）");
 
-        }catch(Exception e){
-            logger.severe("启动 UDP Socket 失败（端口 " + port + " 可能已被占用）：" + e.getMessage());
+        }catch(IOException e){
+            logger.severe("启动 UDP 通道失败（端口 " + port + " 可能已被占用）：" + e.getMessage());
+            closeChannel();
             throw e; // 向上抛出异常，通知上层启动失败
         }
         //获取广播地址
         try{
             broadcastAddress=InetAddress.getByName(NetworkConfig.getBroadcastAddress());
-            logger.info("使用广播地址"+broadcastAddress.getHostAddress());
+            groupV4=InetAddress.getByName(NetworkConfig.MULTICAST_ADDRESS_IPV4);
+            groupV6=InetAddress.getByName(NetworkConfig.MULTICAST_ADDRESS_IPV6);
+            logger.info("使用组播组"+groupV4.getHostAddress()+"（回退广播地址"+broadcastAddress.getHostAddress()+"）");
         }catch(UnknownHostException e){
             logger.severe("获取广播地址失败"+e.getMessage());
+            closeChannel();
             throw e;
         }
-        //创建并启动监听
-        listenerExecutor=Executors.newSingleThreadExecutor();
-        listenerExecutor.submit(this::listen);
-
         running=true;
+        setInterfaces(interfaces);
+        startWorkers();
+        receiver=new Thread(this::listen,"lanshare-udp-receiver");
+        receiver.setDaemon(true);
+        receiver.start();
+
         logger.info("UdpBrodcaster is started");
 
     }
 
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private void startWorkers(){
+        int count=NetworkConfig.getUdpWorkerThreads();
+        int slots=NetworkConfig.getUdpReceiveQueue();
+        free=new ArrayBlockingQueue<>(slots);
+        for(int i=0;i<slots;i++){
+            free.add(new Packet());
+        }
+        ready=new BlockingQueue[count];
+        workers=new Thread[count];
+        for(int i=0;i<count;i++){
+            BlockingQueue<Packet> queue=new ArrayBlockingQueue<>(slots);
+            ready[i]=queue;
+            workers[i]=new Thread(()->work(queue),"lanshare-udp-worker-"+i);
+            workers[i].setDaemon(true);
+            workers[i].start();
+        }
+    }
+
+    @Override
     public void stop(){
         if(!running){
             return;
         }
         running=false;
-        //关闭Socket
-        if(socket!=null&&!socket.isClosed()){
-            socket.close();
-            logger.info("UDP Socket已关闭");
+        //关闭通道（同时离开所有组播组）
+        synchronized(this){
+            closeChannel();
+            joined.clear();
+            targets=List.of();
         }
-        if(listenerExecutor!=null&&!listenerExecutor.isShutdown()){
-            listenerExecutor.shutdown();
-            logger.info("监听线程池已关闭");
+        if(receiver!=null){
+            receiver.interrupt();
         }
-        logger.info("UdpBrodcaster 服务已停止");
+        if(workers!=null){
+            for(Thread worker:workers){
+                worker.interrupt();
+            }
+        }
+        logger.info("UdpBrodcaster 服务已停止（收到 "+received.get()+" 个报文，溢出丢弃 "+overflowed.get()+" 个）");
 
     }
+
+    private void closeChannel(){
+        try{
+            if(selector!=null){
+                selector.close();
+            }
+            if(channel!=null&&channel.isOpen()){
+                channel.close();
+                logger.info("UDP 通道已关闭");
+            }
+        }catch(IOException e){
+            logger.fine("关闭 UDP 通道失败: "+e.getMessage());
+        }
+    }
+
     public void sendBroadcast(String message){
-        if(!running&&socket==null||socket.isClosed()){
-            logger.info(" 广播未运行，无法发送消息");
+        sendBroadcast(message.getBytes(java.nio.charset.StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 更新本机网卡：在新网卡上加入组播组，离开已消失的网卡，并重新计算发送目标
+     * 未启动时只记录下来，启动时生效
+     */
+    @Override
+    public synchronized void setInterfaces(LocalInterfaces interfaces){
+        this.interfaces=interfaces;
+        if(!running||channel==null){
             return;
         }
-        try{
-            byte[] data=message.getBytes("UTF-8");
-            //创建数据包
-            DatagramPacket packet=new DatagramPacket(data,data.length,broadcastAddress,port);
+        boolean ipv6=NetworkConfig.isIPv6Enabled();
+        Map<String,NetworkInterface> wanted=new HashMap<>();
+        for(NetworkInterface nic:interfaces.getMulticastInterfaces()){
+            wanted.put(nic.getName(),nic);
+        }
+        for(Map.Entry<String,List<MembershipKey>> e:new ArrayList<>(joined.entrySet())){
+            if(!wanted.containsKey(e.getKey())){
+                for(MembershipKey key:e.getValue()){
+                    key.drop();
+                }
+                joined.remove(e.getKey());
+            }
+        }
+        List<Target> next=new ArrayList<>();
+        for(NetworkInterface nic:wanted.values()){
+            boolean hasV4=hasAddress(interfaces,nic,false);
+            boolean hasV6=ipv6&&hasAddress(interfaces,nic,true);
+            if(!joined.containsKey(nic.getName())){
+                List<MembershipKey> keys=new ArrayList<>();
+                if(hasV4){
+                    join(nic,groupV4,keys);
+                }
+                if(hasV6){
+                    join(nic,groupV6,keys);
+                }
+                joined.put(nic.getName(),keys);
+            }
+            if(hasV4){
+                next.add(new Target(nic,groupV4,port));
+            }
+            if(hasV6){
+                next.add(new Target(nic,groupV6,port));
+            }
+        }
+        if(NetworkConfig.isDirectedBroadcastEnabled()){
+            for(LocalInterfaces.Subnet subnet:interfaces.getSubnets()){
+                if(subnet.getBroadcast()!=null){
+                    next.add(new Target(null,subnet.getBroadcast(),port));
+                }
+            }
+        }
+        if(next.isEmpty()){
+            next.add(new Target(null,broadcastAddress,port));
+        }
+        targets=next;
+        logger.info("发现报文发送目标: "+next);
+    }
+
+    private static boolean hasAddress(LocalInterfaces interfaces,NetworkInterface nic,boolean v6){
+        for(LocalInterfaces.Subnet subnet:interfaces.getSubnets()){
+            if(subnet.getInterfaceName().equals(nic.getName())
+                    &&(subnet.getAddress() instanceof Inet6Address)==v6){
+                return true;
+            }
+        }
+        return false;
+    }
 
-            socket.send(packet);
+    private void join(NetworkInterface nic,InetAddress group,List<MembershipKey> keys){
+        try{
+            keys.add(channel.join(group,nic));
+        }catch(IOException|UnsupportedOperationException e){
+            logger.warning("网卡"+nic.getName()+"加入组播组"+group.getHostAddress()+"失败: "+e.getMessage());
+        }
+    }
 
+    /**
+     * 向所有发送目标发送一个报文（每个网卡的组播 + 可选的子网定向广播）
+     */
+    @Override
+    public synchronized void sendBroadcast(byte[] data){
+        if(!running||channel==null||!channel.isOpen()){
+            logger.info(" 广播未运行，无法发送消息");
+            return;
+        }
+        ByteBuffer buffer=ByteBuffer.wrap(data);
+        for(Target target:targets){
+            try{
+                if(target.nic!=null){
+                    channel.setOption(StandardSocketOptions.IP_MULTICAST_IF,target.nic);//组播出口网卡
+                }
+                buffer.rewind();
+                if(channel.send(buffer,target.address)==0){
+                    sendDropped.incrementAndGet();
+                }else{
+                    Metrics.DISCOVERY_SENT.inc();
+                }
+            }catch(IOException e){
+                logger.warning("发送到"+target+"失败: "+e.getMessage());
+            }
+        }
+    }
+    /**
+     * 单播发送一个报文（回复 QUERY、向未知设备询问）
+     */
+    @Override
+    public synchronized void sendTo(byte[] data,InetAddress address,int targetPort){
+        if(!running||channel==null||!channel.isOpen()){
+            return;
+        }
+        try{
+            if(channel.send(ByteBuffer.wrap(data),new InetSocketAddress(address,targetPort))==0){
+                sendDropped.incrementAndGet();
+            }else{
+                Metrics.DISCOVERY_SENT.inc();
+            }
         }catch(IOException e){
-            logger.severe("发送广播失败"+e.getMessage());
+            logger.warning("发送到"+address.getHostAddress()+":"+targetPort+"失败: "+e.getMessage());
         }
     }
+
+    // ==================== 接收 ====================
+
+    /**
+     * 接收线程：等待通道可读，然后一次读完已到达的报文，分发给工作线程
+     */
     private void listen(){
-        logger.info("UDP监听线程已经启动");
-        byte[] buffer=new byte[bufferSize];
+        logger.info("UDP接收线程已经启动");
+        long windowStart=System.nanoTime();
+        long windowCount=0;
         while(running){
             try{
-                DatagramPacket packet=new DatagramPacket(buffer,buffer.length);
-                socket.receive(packet);
-
-                //解析数据包
-                String message = new String(
-                        packet.getData(),
-                        0,
-                        packet.getLength(),
-                        "UTF-8"
-                );
-                InetAddress address=packet.getAddress();
-                logger.info("收到来自"+address.getHostAddress()+"的消息");
-
-                if(udpMessageListener!=null){
-                    udpMessageListener.onMessage(message,address);
+                if(selector.select(1000)>0){
+                    selector.selectedKeys().clear();
+                    for(int i=0;i<BATCH;i++){
+                        receiveBuffer.clear();
+                        SocketAddress from=channel.receive(receiveBuffer);
+                        if(from==null){
+                            break;
+                        }
+                        received.incrementAndGet();
+                        Metrics.DISCOVERY_RECEIVED.inc();
+                        dispatch((InetSocketAddress)from);
+                    }
                 }
-            }catch(SocketException e){
-                if (!running) {
-                    // 这是预期的关闭
-                    logger.info("UDP 监听线程正常停止");
-                } else {
-                    // 非预期的异常
-                    logger.severe("Socket 异常: " + e.getMessage());
+                long now=System.nanoTime();
+                if(now-windowStart>=1_000_000_000L){
+                    long total=received.get();
+                    receiveRate=(total-windowCount)*1e9/(now-windowStart);
+                    windowStart=now;
+                    windowCount=total;
                 }
+            }catch(ClosedChannelException|java.nio.channels.ClosedSelectorException e){
+                break;
             }catch(IOException e){
                 if (running) {
-                    logger.warning("监听时发生 IO 异常: " + e.getMessage());
+                    logger.warning("接收时发生 IO 异常: " + e.getMessage());
                 }
             }
         }
+        logger.info("UDP 接收线程正常停止");
+    }
+
+    /**
+     * 把直接缓冲区里的报文复制到一个空闲槽，交给来源地址对应的工作线程
+     */
+    private void dispatch(InetSocketAddress from){
+        Packet packet=free.poll();
+        if(packet==null){
+            long dropped=overflowed.incrementAndGet();
+            Metrics.DISCOVERY_DROPPED.inc();
+            if((dropped&(dropped-1))==0){//1、2、4、8……次时记录，避免风暴时刷屏
+                logger.warning("发现报文处理不过来，已丢弃 "+dropped+" 个");
+            }
+            return;
+        }
+        receiveBuffer.flip();
+        int length=receiveBuffer.remaining();
+        if(packet.data.length<length){
+            packet.data=new byte[length];
+        }
+        receiveBuffer.get(packet.data,0,length);
+        packet.length=length;
+        packet.address=from.getAddress();
+        packet.port=from.getPort();
+        ready[(packet.address.hashCode()&0x7fffffff)%ready.length].offer(packet);//槽总数不超过队列容量，不会失败
+        Metrics.DISCOVERY_QUEUE.inc();
+    }
+
+    /**
+     * 工作线程：解码并处理报文，处理完把槽放回空闲队列
+     */
+    private void work(BlockingQueue<Packet> queue){
+        while(running){
+            Packet packet;
+            try{
+                packet=queue.take();
+            }catch(InterruptedException e){
+                break;
+            }
+            Metrics.DISCOVERY_QUEUE.dec();
+            try{
+                if(logger.isLoggable(Level.FINEST)){
+                    logger.finest("收到来自"+packet.address.getHostAddress()+"的消息");
+                }
+                UdpMessageListener listener=udpMessageListener;
+                if(listener!=null){
+                    DiscoveryPacketEvent event=new DiscoveryPacketEvent();
+                    event.begin();
+                    listener.onPacket(packet.data,packet.length,packet.address,packet.port);
+                    event.record(packet.address,packet.length);
+                }
+                processed.incrementAndGet();
+            }catch(RuntimeException e){
+                failed.incrementAndGet();
+                logger.warning("处理发现报文失败: "+e.getMessage());
+            }finally{
+                packet.address=null;
+                free.offer(packet);
+            }
+        }
+        //停止时丢弃未处理的报文，队列深度指标同步扣除
+        for(Packet left;(left=queue.poll())!=null;){
+            Metrics.DISCOVERY_QUEUE.dec();
+            free.offer(left);
+        }
+    }
+
+    // ==================== 统计 ====================
+
+    /**
+     * 收到的报文数
+     */
+    public long getReceivedCount(){
+        return received.get();
+    }
+
+    /**
+     * 处理完的报文数
+     */
+    public long getProcessedCount(){
+        return processed.get();
+    }
+
+    /**
+     * 工作线程处理不过来而丢弃的报文数
+     */
+    public long getOverflowCount(){
+        return overflowed.get();
+    }
+
+    /**
+     * 处理时出错的报文数
+     */
+    public long getFailedCount(){
+        return failed.get();
+    }
+
+    /**
+     * 发送缓冲区满而没有发出的报文数
+     */
+    public long getSendDroppedCount(){
+        return sendDropped.get();
+    }
+
+    /**
+     * 最近一秒左右的接收速率（个/秒）
+     */
+    public double getReceiveRate(){
+        return receiveRate;
     }
 
 }
@@ -0,0 +1,322 @@
+package com.lanshare.network.discovery.sim;
+
+import com.lanshare.network.config.NetworkConfig;
+import com.lanshare.network.discovery.DeviceDiscovery;
+import com.lanshare.network.discovery.DeviceRegistry;
+import com.lanshare.network.model.DeviceInfo;
+import com.lanshare.network.protocol.DiscoveryCodec;
+import com.lanshare.network.protocol.DiscoveryMessage;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * 发现协议规模模拟
+ *
+ * 在一个 JVM 里启动 nodeCount 个真实的 DeviceDiscovery（各自的 DeviceRegistry，共用一个调度线程），
+ * 通过 {@link SimulatedNetwork} 收发报文，测量：
+ *
+ * - 收敛时间：从启动到每个节点的注册表都包含其他所有节点
+ * - 报文数量：收敛阶段和稳定阶段的发送数、投递数、每秒报文数
+ * - 每节点 CPU 和内存分配（整个进程的增量除以节点数）
+ * - 每类报文的接收处理耗时，以及注册表在当前规模下插入一个新设备、刷新一个已知设备的耗时
+ *
+ * 修改 DeviceDiscovery、DeviceRegistry、发现报文格式后，用同样的参数前后各跑一次比较。
+ * 节点数上千时注册表总共有上百万条记录，需要加大堆内存（-Xmx2g 左右）。
+ */
+public class DiscoverySimulation {
+
+    private static final Logger logger = Logger.getLogger(DiscoverySimulation.class.getName());
+
+    private final int nodeCount;
+    private final double lossRate;
+    private final long minDelay;
+    private final long maxDelay;
+
+    /**
+     * @param nodeCount 节点数
+     * @param lossRate  丢包概率（0-1）
+     * @param minDelay  最小投递延迟（毫秒）
+     * @param maxDelay  最大投递延迟（毫秒）
+     */
+    public DiscoverySimulation(int nodeCount, double lossRate, long minDelay, long maxDelay) {
+        if (nodeCount < 2) {
+            throw new IllegalArgumentException("至少需要 2 个节点");
+        }
+        this.nodeCount = nodeCount;
+        this.lossRate = lossRate;
+        this.minDelay = minDelay;
+        this.maxDelay = maxDelay;
+    }
+
+    /**
+     * 运行一次模拟
+     *
+     * @param timeoutMillis 等待收敛的最长时间
+     * @param settleMillis  收敛后等待多久开始测量稳定阶段（信标退避到最长间隔需要十几秒）
+     * @param steadyMillis  稳定阶段的测量时长，0 表示不测量
+     */
+    public Report run(long timeoutMillis, long settleMillis, long steadyMillis) throws Exception {
+        Logger root = Logger.getLogger("com.lanshare");
+        Level previous = root.getLevel();
+        root.setLevel(Level.SEVERE); // 每个节点发现每个设备都会记一条日志；超时等变化由报告中的事件数体现
+
+        SimulatedNetwork network = new SimulatedNetwork(lossRate, minDelay, maxDelay, NetworkConfig.getUdpPort());
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "lanshare-sim-nodes");
+            t.setDaemon(true);
+            return t;
+        });
+        List<DeviceDiscovery> nodes = new ArrayList<>(nodeCount);
+        AtomicLong batches = new AtomicLong();
+        AtomicLong changes = new AtomicLong();
+        AtomicLong statusChanges = new AtomicLong();
+        Report report = new Report(nodeCount, lossRate, minDelay, maxDelay);
+        try {
+            // 先启动线程，避免计入收敛时间
+            scheduler.submit(() -> { }).get();
+            network.getFabric().submit(() -> { }).get();
+
+            for (int i = 0; i < nodeCount; i++) {
+                DeviceRegistry registry = new DeviceRegistry();
+                registry.addListener(batch -> {
+                    batches.incrementAndGet();
+                    changes.addAndGet(batch.getAdded().size() + batch.getRemoved().size());
+                    statusChanges.addAndGet(batch.getStatusChanged().size());
+                });
+                DeviceDiscovery node = new DeviceDiscovery(registry, network.createTransport(), scheduler);
+                node.initialize("sim-" + i, "sim-node-" + i);
+                nodes.add(node);
+            }
+
+            Meter start = Meter.now(network);
+            for (DeviceDiscovery node : nodes) {
+                node.start();
+            }
+            long target = (long) nodeCount * (nodeCount - 1);
+            long deadline = System.nanoTime() + timeoutMillis * 1_000_000;
+            while (known(nodes) < target && System.nanoTime() < deadline) {
+                Thread.sleep(5);
+            }
+            Meter converged = Meter.now(network);
+            report.converged = known(nodes) >= target;
+            report.knownRatio = (double) known(nodes) / target;
+            report.convergence = converged.minus(start);
+            Thread.sleep(NetworkConfig.DEVICE_EVENT_COALESCE_MS + 50); // 等最后一批事件发出
+            report.batchesPerNode = (double) batches.get() / nodeCount;
+            report.changesPerNode = (double) changes.get() / nodeCount;
+            report.statusChangesPerNode = (double) statusChanges.get() / nodeCount;
+
+            if (steadyMillis > 0) {
+                Thread.sleep(settleMillis);
+                Meter steadyStart = Meter.now(network);
+                Thread.sleep(steadyMillis);
+                report.steady = Meter.now(network).minus(steadyStart);
+            }
+            measureRegistry(report);
+        } finally {
+            network.shutdown();
+            for (DeviceDiscovery node : nodes) {
+                node.stop();
+            }
+            scheduler.shutdownNow();
+            root.setLevel(previous);
+        }
+        logger.info("模拟完成: " + nodeCount + " 个节点");
+        return report;
+    }
+
+    private static long known(List<DeviceDiscovery> nodes) {
+        long total = 0;
+        for (DeviceDiscovery node : nodes) {
+            total += node.getDeviceRegistry().getDeviceCount();
+        }
+        return total;
+    }
+
+    /**
+     * 注册表在 nodeCount 规模下的更新成本（单线程，不经过网络）
+     */
+    private void measureRegistry(Report report) {
+        List<DeviceInfo> devices = new ArrayList<>(nodeCount);
+        for (int i = 0; i < nodeCount; i++) {
+            devices.add(new DeviceInfo("reg-" + i, "n" + i, "u", "10.1." + (i >> 8) + "." + (i & 255), 9999));
+        }
+        DeviceRegistry registry = new DeviceRegistry(0);
+        long start = System.nanoTime();
+        for (DeviceInfo device : devices) {
+            registry.registerOrUpdate(device);
+        }
+        report.registryInsertNanos = (System.nanoTime() - start) / nodeCount;
+
+        long[] keys = new long[nodeCount];
+        for (int i = 0; i < nodeCount; i++) {
+            keys[i] = DiscoveryCodec.deviceKey(devices.get(i).getDeviceId());
+        }
+        int rounds = Math.max(1, 1_000_000 / nodeCount);
+        start = System.nanoTime();
+        for (int r = 0; r < rounds; r++) {
+            for (long key : keys) {
+                registry.touch(key);
+            }
+        }
+        report.registryTouchNanos = (double) (System.nanoTime() - start) / ((long) rounds * nodeCount);
+    }
+
+    // ==================== 测量 ====================
+
+    /**
+     * 某一时刻的进程 CPU、内存分配与网络计数
+     */
+    static final class Meter {
+        long wallNanos;
+        long cpuNanos;
+        long allocatedBytes;
+        long[][] stats = new long[SimulatedNetwork.KINDS][];
+
+        static Meter now(SimulatedNetwork network) {
+            Meter m = new Meter();
+            m.wallNanos = System.nanoTime();
+            java.lang.management.OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+            if (os instanceof com.sun.management.OperatingSystemMXBean) {
+                m.cpuNanos = ((com.sun.management.OperatingSystemMXBean) os).getProcessCpuTime();
+            }
+            java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+            if (threads instanceof com.sun.management.ThreadMXBean) {
+                for (long bytes : ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(threads.getAllThreadIds())) {
+                    m.allocatedBytes += Math.max(0, bytes);
+                }
+            }
+            DiscoveryMessage.MessageType[] types = DiscoveryMessage.MessageType.values();
+            for (int i = 0; i < SimulatedNetwork.KINDS; i++) {
+                m.stats[i] = network.getStats(i < types.length ? types[i] : null);
+            }
+            return m;
+        }
+
+        Meter minus(Meter before) {
+            Meter d = new Meter();
+            d.wallNanos = wallNanos - before.wallNanos;
+            d.cpuNanos = cpuNanos - before.cpuNanos;
+            d.allocatedBytes = allocatedBytes - before.allocatedBytes;
+            for (int i = 0; i < stats.length; i++) {
+                d.stats[i] = new long[stats[i].length];
+                for (int j = 0; j < stats[i].length; j++) {
+                    d.stats[i][j] = stats[i][j] - before.stats[i][j];
+                }
+            }
+            return d;
+        }
+
+        long total(int column) {
+            long sum = 0;
+            for (long[] s : stats) {
+                sum += s[column];
+            }
+            return sum;
+        }
+
+        double seconds() {
+            return wallNanos / 1e9;
+        }
+    }
+
+    /**
+     * 模拟结果
+     */
+    public static final class Report {
+        private final int nodeCount;
+        private final double lossRate;
+        private final long minDelay;
+        private final long maxDelay;
+        boolean converged;
+        double knownRatio;
+        Meter convergence;
+        Meter steady;
+        double batchesPerNode;
+        double changesPerNode;
+        double statusChangesPerNode;
+        long registryInsertNanos;
+        double registryTouchNanos;
+
+        Report(int nodeCount, double lossRate, long minDelay, long maxDelay) {
+            this.nodeCount = nodeCount;
+            this.lossRate = lossRate;
+            this.minDelay = minDelay;
+            this.maxDelay = maxDelay;
+        }
+
+        public boolean isConverged() {
+            return converged;
+        }
+
+        /**
+         * 收敛时间（毫秒）；没有收敛时为等待的时长
+         */
+        public long getConvergenceMillis() {
+            return convergence.wallNanos / 1_000_000;
+        }
+
+        /**
+         * 收敛阶段发送的报文数
+         */
+        public long getConvergencePackets() {
+            return convergence.total(0);
+        }
+
+        /**
+         * 稳定阶段每个节点每秒发送的报文数（没有测量稳定阶段时为 -1）
+         */
+        public double getSteadyPacketsPerNodeSecond() {
+            return steady == null ? -1 : steady.total(0) / steady.seconds() / nodeCount;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            sb.append(String.format("  %d 个节点，丢包 %.1f%%，延迟 %d-%d ms%n", nodeCount, lossRate * 100, minDelay, maxDelay));
+            if (converged) {
+                sb.append(String.format("  收敛时间: %d ms%n", getConvergenceMillis()));
+            } else {
+                sb.append(String.format("  %d ms 内没有收敛（已知 %.2f%% 的设备）%n", getConvergenceMillis(), knownRatio * 100));
+            }
+            phase(sb, "收敛阶段", convergence);
+            sb.append(String.format("    注册表事件: 每节点 %.1f 批，%.1f 个设备增删，%.1f 个状态变化%n",
+                    batchesPerNode, changesPerNode, statusChangesPerNode));
+            if (steady != null) {
+                phase(sb, "稳定阶段", steady);
+                sb.append(String.format("    每节点每秒发送 %.3f 个报文%n", getSteadyPacketsPerNodeSecond()));
+            }
+            sb.append(String.format("  注册表（%d 个设备）: 插入新设备 %.1f µs/次，刷新已知设备 %.0f ns/次%n",
+                    nodeCount, registryInsertNanos / 1000.0, registryTouchNanos));
+            return sb.toString();
+        }
+
+        private void phase(StringBuilder sb, String name, Meter m) {
+            double seconds = Math.max(m.seconds(), 1e-9);
+            sb.append(String.format("  %s（%.1f s）: 发送 %d 个报文（%.0f 个/秒），投递 %d 个（%.0f 个/秒），丢弃 %d 个（接收队列溢出 %d 个）%n",
+                    name, m.seconds(), m.total(0), m.total(0) / seconds, m.total(1), m.total(1) / seconds, m.total(2),
+                    m.total(4)));
+            sb.append(String.format("    每节点 CPU %.1f ms，内存分配 %.1f KB%n",
+                    m.cpuNanos / 1e6 / nodeCount, m.allocatedBytes / 1024.0 / nodeCount));
+            DiscoveryMessage.MessageType[] types = DiscoveryMessage.MessageType.values();
+            StringBuilder kinds = new StringBuilder();
+            for (int i = 0; i < m.stats.length; i++) {
+                long[] s = m.stats[i];
+                if (s[1] == 0) {
+                    continue;
+                }
+                kinds.append(String.format(" %s %d 个 %.1f µs", i < types.length ? types[i] : "JSON", s[1], s[3] / 1000.0 / s[1]));
+            }
+            if (kinds.length() > 0) {
+                sb.append("    接收处理:").append(kinds).append(System.lineSeparator());
+            }
+        }
+    }
+}
@@ -0,0 +1,226 @@
+package com.lanshare.network.discovery.sim;
+
+import com.lanshare.network.config.NetworkConfig;
+import com.lanshare.network.protocol.DiscoveryCodec;
+import com.lanshare.network.protocol.DiscoveryMessage;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.logging.Logger;
+
+/**
+ * 内存中的虚拟局域网
+ *
+ * 所有节点在 10.0.0.0/8 这一个子网中，每个节点一个虚拟地址。广播投递给除发送方以外的所有已启动节点，
+ * 单播按目标地址投递；每次投递按 lossRate 独立丢弃，并在 [minDelay, maxDelay] 毫秒内随机延迟。
+ *
+ * 投递在一个线程上串行执行（相当于所有节点共用一块 CPU 处理收到的报文），
+ * 收敛时间因此同时反映报文数量和每个报文的处理成本。
+ * 每个节点最多积压 udp.receive.queue 个未处理的报文，再收到的丢弃（与 UdpBrodcaster 的接收队列相同），
+ * 处理不过来时表现为丢包而不是内存无限增长。
+ *
+ * 统计按报文类型分别计数：发送数、投递数、丢弃数（其中接收队列溢出数），以及接收方处理报文
+ * （DeviceDiscovery.handlePacket，包括注册表更新）的累计耗时。
+ */
+public class SimulatedNetwork {
+
+    private static final Logger logger = Logger.getLogger(SimulatedNetwork.class.getName());
+
+    /** 统计类别：各发现消息类型，最后一类是 JSON 报文 */
+    static final int KINDS = DiscoveryMessage.MessageType.values().length + 1;
+    static final int JSON = KINDS - 1;
+
+    private final double lossRate;
+    private final long minDelay;
+    private final long maxDelay;
+    private final int port;
+    private final int receiveQueue = NetworkConfig.getUdpReceiveQueue();
+    private final ScheduledExecutorService fabric;
+    private final Map<InetAddress, SimulatedTransport> attached = new ConcurrentHashMap<>();
+    private final AtomicInteger nextHost = new AtomicInteger(1);
+    private volatile boolean closed;
+
+    private final AtomicLongArray sent = new AtomicLongArray(KINDS);
+    private final AtomicLongArray delivered = new AtomicLongArray(KINDS);
+    private final AtomicLongArray dropped = new AtomicLongArray(KINDS);
+    private final AtomicLongArray ingestNanos = new AtomicLongArray(KINDS);
+    private final AtomicLongArray overflowed = new AtomicLongArray(KINDS);
+
+    /**
+     * @param lossRate 每次投递的丢包概率（0-1）
+     * @param minDelay 最小投递延迟（毫秒）
+     * @param maxDelay 最大投递延迟（毫秒）
+     * @param port     所有节点使用的发现端口
+     */
+    public SimulatedNetwork(double lossRate, long minDelay, long maxDelay, int port) {
+        if (lossRate < 0 || lossRate >= 1 || minDelay < 0 || maxDelay < minDelay) {
+            throw new IllegalArgumentException("模拟网络参数不合法: 丢包 " + lossRate + "，延迟 " + minDelay + "-" + maxDelay);
+        }
+        this.lossRate = lossRate;
+        this.minDelay = minDelay;
+        this.maxDelay = maxDelay;
+        this.port = port;
+        this.fabric = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "lanshare-sim-fabric");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * 创建一个节点的收发通道（分配下一个虚拟地址，start 后才接入网络）
+     */
+    public SimulatedTransport createTransport() {
+        int host = nextHost.getAndIncrement();
+        if (host >= (1 << 24) - 1) {
+            throw new IllegalStateException("虚拟地址已用完");
+        }
+        try {
+            InetAddress address = InetAddress.getByAddress(new byte[]{10, (byte) (host >>> 16), (byte) (host >>> 8), (byte) host});
+            return new SimulatedTransport(this, address);
+        } catch (UnknownHostException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    /**
+     * 投递线程（用于统计它的 CPU 和内存分配）
+     */
+    public ScheduledExecutorService getFabric() {
+        return fabric;
+    }
+
+    /**
+     * 关闭网络：之后发送的报文直接丢弃（停止上千个节点时不再投递它们的下线广播）
+     */
+    public void shutdown() {
+        closed = true;
+        fabric.shutdownNow();
+    }
+
+    // ==================== 节点调用 ====================
+
+    void attach(SimulatedTransport transport) {
+        attached.put(transport.getAddress(), transport);
+    }
+
+    void detach(SimulatedTransport transport) {
+        attached.remove(transport.getAddress(), transport);
+    }
+
+    void broadcast(SimulatedTransport from, byte[] data) {
+        if (closed) {
+            return;
+        }
+        int kind = kind(data);
+        sent.incrementAndGet(kind);
+        for (SimulatedTransport to : attached.values()) {
+            if (to != from) {
+                deliver(kind, from, to, data);
+            }
+        }
+    }
+
+    void unicast(SimulatedTransport from, byte[] data, InetAddress address, int targetPort) {
+        if (closed) {
+            return;
+        }
+        int kind = kind(data);
+        sent.incrementAndGet(kind);
+        SimulatedTransport to = attached.get(address);
+        if (to == null || targetPort != port) {
+            dropped.incrementAndGet(kind);
+            return;
+        }
+        deliver(kind, from, to, data);
+    }
+
+    private void deliver(int kind, SimulatedTransport from, SimulatedTransport to, byte[] data) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        if (lossRate > 0 && random.nextDouble() < lossRate) {
+            dropped.incrementAndGet(kind);
+            return;
+        }
+        if (to.queued.incrementAndGet() > receiveQueue) {
+            to.queued.decrementAndGet();
+            dropped.incrementAndGet(kind);
+            overflowed.incrementAndGet(kind);
+            return;
+        }
+        long delay = maxDelay > minDelay ? minDelay + random.nextLong(maxDelay - minDelay + 1) : minDelay;
+        Runnable task = () -> {
+            to.queued.decrementAndGet();
+            long start = System.nanoTime();
+            if (to.receive(data, from.getAddress(), port)) { // 报文只读，所有接收方共用同一个数组
+                ingestNanos.addAndGet(kind, System.nanoTime() - start);
+                delivered.incrementAndGet(kind);
+            } else {
+                dropped.incrementAndGet(kind);
+            }
+        };
+        try {
+            if (delay == 0) {
+                fabric.execute(task);
+            } else {
+                fabric.schedule(task, delay, TimeUnit.MILLISECONDS);
+            }
+        } catch (RejectedExecutionException e) {
+            logger.fine("模拟网络已关闭，丢弃报文");
+        }
+    }
+
+    private static int kind(byte[] data) {
+        if (!DiscoveryCodec.isBinary(data, data.length)) {
+            return JSON;
+        }
+        DiscoveryMessage.MessageType type = DiscoveryCodec.peekType(data, data.length);
+        return type != null ? type.ordinal() : JSON;
+    }
+
+    // ==================== 统计 ====================
+
+    public long getSentCount() {
+        return sum(sent);
+    }
+
+    public long getDeliveredCount() {
+        return sum(delivered);
+    }
+
+    public long getDroppedCount() {
+        return sum(dropped);
+    }
+
+    /**
+     * 某类报文的统计
+     *
+     * @param type 消息类型，null 表示 JSON 报文
+     * @return {发送数, 投递数, 丢弃数, 接收方处理耗时（纳秒）, 接收队列溢出数}
+     */
+    public long[] getStats(DiscoveryMessage.MessageType type) {
+        int kind = type != null ? type.ordinal() : JSON;
+        return new long[]{sent.get(kind), delivered.get(kind), dropped.get(kind), ingestNanos.get(kind),
+                overflowed.get(kind)};
+    }
+
+    private static long sum(AtomicLongArray array) {
+        long total = 0;
+        for (int i = 0; i < array.length(); i++) {
+            total += array.get(i);
+        }
+        return total;
+    }
+}
@@ -0,0 +1,103 @@
+package com.lanshare.network.discovery.sim;
+
+import com.lanshare.network.discovery.DiscoveryTransport;
+import com.lanshare.network.discovery.LocalInterfaces;
+import com.lanshare.network.discovery.UdpBrodcaster;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+/**
+ * 虚拟网络上一个节点的收发通道
+ * 本机只有一个虚拟网卡 sim0（10.0.0.0/8），网卡不会变化
+ */
+public class SimulatedTransport implements DiscoveryTransport {
+
+    private static final Logger logger = Logger.getLogger(SimulatedTransport.class.getName());
+
+    private final SimulatedNetwork network;
+    private final InetAddress address;
+    private final LocalInterfaces interfaces;
+    private volatile UdpBrodcaster.UdpMessageListener listener;
+    private volatile boolean running;
+    /** 已投递但还没处理的报文数（由 SimulatedNetwork 维护） */
+    final AtomicInteger queued = new AtomicInteger();
+
+    SimulatedTransport(SimulatedNetwork network, InetAddress address) throws UnknownHostException {
+        this.network = network;
+        this.address = address;
+        InetAddress broadcast = InetAddress.getByAddress(new byte[]{10, (byte) 255, (byte) 255, (byte) 255});
+        this.interfaces = LocalInterfaces.of(List.of(new LocalInterfaces.Subnet("sim0", address, 8, broadcast)));
+    }
+
+    public InetAddress getAddress() {
+        return address;
+    }
+
+    @Override
+    public void setMessageListener(UdpBrodcaster.UdpMessageListener listener) {
+        this.listener = listener;
+    }
+
+    @Override
+    public void start() {
+        running = true;
+        network.attach(this);
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        network.detach(this);
+    }
+
+    @Override
+    public void setInterfaces(LocalInterfaces interfaces) {
+        // 虚拟网卡固定不变
+    }
+
+    @Override
+    public LocalInterfaces scanInterfaces() {
+        return interfaces;
+    }
+
+    @Override
+    public void sendBroadcast(byte[] data) {
+        if (running) {
+            network.broadcast(this, data);
+        }
+    }
+
+    @Override
+    public void sendTo(byte[] data, InetAddress target, int port) {
+        if (running) {
+            network.unicast(this, data, target, port);
+        }
+    }
+
+    /**
+     * 由投递线程调用
+     *
+     * @return 节点已停止时返回 false（报文算作丢弃）
+     */
+    boolean receive(byte[] data, InetAddress sender, int senderPort) {
+        UdpBrodcaster.UdpMessageListener l = listener;
+        if (!running || l == null) {
+            return false;
+        }
+        try {
+            l.onPacket(data, data.length, sender, senderPort);
+        } catch (RuntimeException e) {
+            logger.warning("节点 " + address.getHostAddress() + " 处理报文失败: " + e.getMessage());
+        }
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return "sim:" + address.getHostAddress();
+    }
+}
@@ -1,31 +1,50 @@
 package com.lanshare.network.model;
 
+import java.util.List;
 import java.util.Objects;
 public class DeviceInfo {
     private final String deviceId;//设备的唯一标识符
     private final String deviceName;//设备名称
     private final String userName;//用户名称
-    private final String ipAddress;//设备的ip地址
+    private final String ipAddress;//设备的ip地址（连接时使用，多个地址时为选出的最佳路径）
+    private final List<String> addresses;//设备通告的所有地址（按对方的优先顺序）
     private  final int port;//设备的TCP端口号
-    private volatile long lastSeen;//设备最后一次在线时间
+    private volatile long lastSeen;//设备最后一次在线时间（墙上时间，用于显示）
+    private volatile long lastSeenNanos;//设备最后一次在线时间（System.nanoTime，用于超时判断，不受调整系统时间影响）
     private volatile DeviceStatus status;//设备当前状态
+    private volatile LinkProfile linkProfile;//主动探测得到的链路画像（没有探测过时为 null）
 
     public DeviceInfo(String deviceId, String deviceName, String userName, String ipAddress, int port) {
+        this(deviceId, deviceName, userName, ipAddress, port, null);
+    }
+
+    /**
+     * @param addresses 设备通告的所有地址；为空时只有 ipAddress
+     */
+    public DeviceInfo(String deviceId, String deviceName, String userName, String ipAddress, int port,
+                      List<String> addresses) {
         this.deviceId = deviceId;
         this.deviceName = deviceName;
         this.userName = userName;
         this.ipAddress = ipAddress;
         this.port = port;
+        if (addresses != null && !addresses.isEmpty()) {
+            this.addresses = List.copyOf(addresses);
+        } else {
+            this.addresses = ipAddress != null ? List.of(ipAddress) : List.of();
+        }
         this.lastSeen = System.currentTimeMillis();//设置为当前时间
+        this.lastSeenNanos = System.nanoTime();
         this.status = DeviceStatus.ONLINE;
     }
     public void updateLastSeen(){
         this.lastSeen = System.currentTimeMillis();
+        this.lastSeenNanos = System.nanoTime();
         this.status=DeviceStatus.ONLINE;
     }
 
     public boolean isTimeout(long timeout){
-        return System.currentTimeMillis() - lastSeen > timeout;
+        return System.nanoTime() - lastSeenNanos > timeout * 1_000_000L;
     }
     public String getDeviceId() {
         return deviceId;
@@ -43,6 +62,13 @@ public class DeviceInfo {
         return ipAddress;
     }
 
+    /**
+     * 设备的所有地址（旧版本设备只有 ipAddress 一个）
+     */
+    public List<String> getAddresses() {
+        return addresses;
+    }
+
     public int getPort() {
         return port;
     }
@@ -51,8 +77,34 @@ public class DeviceInfo {
         return lastSeen;
     }
     public void setLastSeen(long lastSeen) {
+        this.lastSeenNanos += (lastSeen - this.lastSeen) * 1_000_000L; // 保持两个时间戳一致
         this.lastSeen = lastSeen;
     }
+
+    /**
+     * 最后一次在线的单调时间（System.nanoTime）
+     */
+    public long getLastSeenNanos() {
+        return lastSeenNanos;
+    }
+    /**
+     * 链路画像（RTT、抖动、吞吐量），没有探测过时返回 null
+     */
+    public LinkProfile getLinkProfile() {
+        return linkProfile;
+    }
+
+    public void setLinkProfile(LinkProfile linkProfile) {
+        this.linkProfile = linkProfile;
+    }
+
+    /**
+     * 连接时优先使用的地址：探测过且能连通时用探测选出的最佳地址，否则用 ipAddress
+     */
+    public String getPreferredAddress() {
+        LinkProfile profile = linkProfile;
+        return profile != null && profile.isReachable() ? profile.getAddress() : ipAddress;
+    }
     public DeviceStatus getStatus() {
         return status;
     }
@@ -0,0 +1,243 @@
+package com.lanshare.network.model;
+
+import com.lanshare.network.config.NetworkConfig;
+import com.lanshare.network.config.TransportProfile;
+
+import java.util.Comparator;
+
+/**
+ * 到某个设备的链路画像（由 LinkProber 主动探测得到，不可变，每次探测生成新对象）
+ *
+ * 包含：
+ * - 最佳地址：设备有多个地址时，往返时间最短的那个
+ * - 往返时间（RTT）：平滑值（新样本权重 1/8，同 TCP 的 SRTT）和最近一次探测的最小值
+ * - 抖动：相邻两次 RTT 之差的平滑值（新样本权重 1/4）
+ * - 吞吐量：短突发写入测得的单连接速度（新样本权重 1/2，探测次数少，需要更快跟上变化）
+ * - 连续失败次数：对方不支持探测、不可达或超时
+ *
+ * 传输开始前可以用它选择设备、地址、传输配置档、分片大小和并发连接数。
+ */
+public final class LinkProfile {
+
+    /**
+     * 排序：能连通的在前，测过吞吐量的在前，然后按发送一个分片的预计耗时从短到长
+     */
+    public static final Comparator<LinkProfile> FASTEST = Comparator
+            .comparing((LinkProfile p) -> !p.isReachable())
+            .thenComparing(p -> p.getThroughput() <= 0)
+            .thenComparingDouble(p -> p.estimateMillis(NetworkConfig.CHUNK_SIZE));
+
+    /** 抖动超过平滑 RTT 的一半、且 RTT 在 2ms 以上时视为无线等不稳定的链路 */
+    private static final long UNSTABLE_RTT_MICROS = 2000;
+
+    private static final int MIN_CHUNK_SIZE = 64 * 1024;
+    private static final int MAX_CHUNK_SIZE = 4 * 1024 * 1024;
+    /** 分片大小按大约 50ms 的发送量估算：太小时帧头和刷新开销占比高，太大时进度和暂停不及时 */
+    private static final double CHUNK_SECONDS = 0.05;
+
+    private final String address;
+    private final long rttMicros;
+    private final long minRttMicros;
+    private final long jitterMicros;
+    private final double throughput;
+    private final int samples;
+    private final int failures;
+    private final long updatedAt;
+    private final long updatedNanos;
+
+    private LinkProfile(String address, long rttMicros, long minRttMicros, long jitterMicros,
+                        double throughput, int samples, int failures) {
+        this.address = address;
+        this.rttMicros = rttMicros;
+        this.minRttMicros = minRttMicros;
+        this.jitterMicros = jitterMicros;
+        this.throughput = throughput;
+        this.samples = samples;
+        this.failures = failures;
+        this.updatedAt = System.currentTimeMillis();
+        this.updatedNanos = System.nanoTime();
+    }
+
+    /**
+     * 合并一次成功的探测
+     *
+     * @param previous     之前的画像（null 表示第一次探测）
+     * @param address      本次探测使用的地址
+     * @param rttMicros    本次探测的 RTT 中位数（微秒）
+     * @param minRttMicros 本次探测的最小 RTT（微秒）
+     * @param jitterMicros 本次探测的抖动（微秒）
+     * @param throughput   本次突发测得的吞吐量（字节/秒），0 表示没有测
+     */
+    public static LinkProfile record(LinkProfile previous, String address, long rttMicros, long minRttMicros,
+                                     long jitterMicros, double throughput) {
+        if (previous == null || previous.samples == 0 || !previous.address.equals(address)) {
+            return new LinkProfile(address, rttMicros, minRttMicros, jitterMicros, throughput, 1, 0);
+        }
+        long rtt = previous.rttMicros + (rttMicros - previous.rttMicros) / 8;
+        long jitter = previous.jitterMicros + (jitterMicros - previous.jitterMicros) / 4;
+        double rate = throughput <= 0 ? previous.throughput
+                : previous.throughput <= 0 ? throughput : (previous.throughput + throughput) / 2;
+        return new LinkProfile(address, rtt, minRttMicros, jitter, rate, previous.samples + 1, 0);
+    }
+
+    /**
+     * 记录一次失败的探测（保留之前测得的数值）
+     */
+    public static LinkProfile failure(LinkProfile previous, String address) {
+        if (previous == null) {
+            return new LinkProfile(address, 0, 0, 0, 0, 0, 1);
+        }
+        return new LinkProfile(previous.address, previous.rttMicros, previous.minRttMicros, previous.jitterMicros,
+                previous.throughput, previous.samples, previous.failures + 1);
+    }
+
+    // ==================== 传输前的建议 ====================
+
+    /**
+     * 预计发送 bytes 字节需要的时间（毫秒）；没有测过吞吐量时只算 RTT，不可达时为无穷大
+     */
+    public double estimateMillis(long bytes) {
+        if (!isReachable()) {
+            return Double.POSITIVE_INFINITY;
+        }
+        double millis = rttMicros / 1000.0;
+        if (throughput > 0) {
+            millis += bytes * 1000.0 / throughput;
+        }
+        return millis;
+    }
+
+    /**
+     * 建议的传输配置档：高速链路用大缓冲区，抖动大或较慢的链路用无线配置档避免排队延迟
+     */
+    public TransportProfile suggestTransportProfile() {
+        if (!isReachable() || throughput <= 0) {
+            return NetworkConfig.getTransportProfile();
+        }
+        if (isUnstable() || throughput < 20 * 1024 * 1024) {
+            return TransportProfile.WIFI;
+        }
+        if (throughput >= 400.0 * 1024 * 1024) {
+            return TransportProfile.TEN_GIGABIT;
+        }
+        return TransportProfile.GIGABIT_WIRED;
+    }
+
+    /**
+     * 建议的分片大小（2 的幂，64KB 到 4MB）；没有测过吞吐量时使用默认分片大小
+     */
+    public int suggestChunkSize() {
+        if (throughput <= 0) {
+            return NetworkConfig.CHUNK_SIZE;
+        }
+        long target = (long) (throughput * CHUNK_SECONDS);
+        int size = Integer.highestOneBit((int) Math.min(MAX_CHUNK_SIZE, Math.max(MIN_CHUNK_SIZE, target)));
+        return Math.max(MIN_CHUNK_SIZE, size);
+    }
+
+    /**
+     * 建议的并发连接数：单连接速度受窗口限制（约为发送缓冲区 / RTT），
+     * 带宽时延积超过一个窗口时用多个连接填满链路
+     */
+    public int suggestStreams() {
+        if (throughput <= 0 || rttMicros <= 0) {
+            return 1;
+        }
+        int window = suggestTransportProfile().getSendBufferSize();
+        if (window <= 0) {
+            window = 64 * 1024; // 系统自动调整，按保守的初始窗口估算
+        }
+        double bdp = throughput * rttMicros / 1_000_000.0;
+        int streams = (int) Math.ceil(bdp / window);
+        return Math.max(1, Math.min(NetworkConfig.MAX_TRANSFER_THREADS, streams));
+    }
+
+    // ==================== Getter 方法 ====================
+
+    /**
+     * 最近一次探测成功时是否能连通
+     */
+    public boolean isReachable() {
+        return samples > 0 && failures == 0;
+    }
+
+    /**
+     * 是否为抖动大的链路（通常是无线）
+     */
+    public boolean isUnstable() {
+        return rttMicros >= UNSTABLE_RTT_MICROS && jitterMicros * 2 > rttMicros;
+    }
+
+    /**
+     * 探测使用的地址（最佳路径）
+     */
+    public String getAddress() {
+        return address;
+    }
+
+    /**
+     * 平滑 RTT（微秒）
+     */
+    public long getRttMicros() {
+        return rttMicros;
+    }
+
+    /**
+     * 最近一次探测的最小 RTT（微秒）
+     */
+    public long getMinRttMicros() {
+        return minRttMicros;
+    }
+
+    /**
+     * 平滑抖动（微秒）
+     */
+    public long getJitterMicros() {
+        return jitterMicros;
+    }
+
+    /**
+     * 平滑吞吐量（字节/秒），0 表示没有测过
+     */
+    public double getThroughput() {
+        return throughput;
+    }
+
+    /**
+     * 成功探测的次数
+     */
+    public int getSamples() {
+        return samples;
+    }
+
+    /**
+     * 连续失败次数
+     */
+    public int getFailures() {
+        return failures;
+    }
+
+    /**
+     * 更新时间（墙上时间，用于显示）
+     */
+    public long getUpdatedAt() {
+        return updatedAt;
+    }
+
+    /**
+     * 画像的年龄（毫秒）
+     */
+    public long getAgeMillis() {
+        return (System.nanoTime() - updatedNanos) / 1_000_000;
+    }
+
+    @Override
+    public String toString() {
+        if (samples == 0) {
+            return String.format("LinkProfile{address=%s, unreachable, failures=%d}", address, failures);
+        }
+        return String.format("LinkProfile{address=%s, rtt=%.2fms, minRtt=%.2fms, jitter=%.2fms, throughput=%.1fMB/s, samples=%d, failures=%d}",
+                address, rttMicros / 1000.0, minRttMicros / 1000.0, jitterMicros / 1000.0,
+                throughput / 1024 / 1024, samples, failures);
+    }
+}
@@ -0,0 +1,404 @@
+package com.lanshare.network.probe;
+
+import com.lanshare.network.config.NetworkConfig;
+import com.lanshare.network.config.TransportProfile;
+import com.lanshare.network.discovery.DeviceRegistry;
+import com.lanshare.network.model.DeviceInfo;
+import com.lanshare.network.model.DeviceStatus;
+import com.lanshare.network.model.LinkProfile;
+import com.lanshare.network.protocol.ControlMessage;
+import com.lanshare.network.protocol.ProtocolException;
+import com.lanshare.network.protocol.ProtocolHandler;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+import java.util.logging.Logger;
+
+/**
+ * 链路探测：主动测量到每个设备的 RTT、抖动和短突发吞吐量，结果作为 {@link LinkProfile} 保存在设备上
+ *
+ * 设备信息原来只有地址、端口和在线/离线，发送前无法知道哪个设备、哪个地址更快，
+ * 也只能用固定的传输配置档和分片大小。探测走设备的 TCP 端口（与传输相同的路径）：
+ * - RTT：预热一次之后连续发送 pings 个 PROBE，对方立即应答；取中位数，抖动为相邻两次之差的平均值
+ * - 吞吐量：一个带 burstBytes 的 PROBE 之后紧跟填充数据，对方读完后应答；
+ *   耗时减去最小 RTT 即为发送时间
+ * - 设备有多个地址时先逐个测 RTT，在最快的地址上测吞吐量
+ * - 不支持探测的旧版本设备会直接断开，记为一次失败
+ *
+ * 两种用法：
+ * - 按需：传输开始前 {@link #probe} / {@link #probeAsync}
+ * - 后台：{@link #start} 之后每 LINK_PROBE_INTERVAL 最多探测一个画像过期的在线设备，
+ *   有传输进行时跳过（见 {@link #setBusyCheck}），占用的带宽和连接都很少
+ *
+ * 接收端的应答由 {@link #serve} 完成（ReceiveEngine 收到 PROBE 时调用）。
+ */
+public class LinkProber {
+    private static final Logger logger = Logger.getLogger(LinkProber.class.getName());
+
+    /** 多地址设备最多比较的地址数 */
+    private static final int MAX_ADDRESSES = 4;
+    /** 接收端一个连接最多应答的探测次数 */
+    private static final int MAX_ROUNDS = 64;
+
+    /**
+     * 探测完成的监听器（在探测线程中回调）
+     */
+    public interface ProbeListener {
+        void onProbed(DeviceInfo device, LinkProfile profile);
+    }
+
+    /**
+     * 一次连接的测量结果
+     */
+    private static final class Measurement {
+        final String address;
+        final long rttMicros;
+        final long minRttMicros;
+        final long jitterMicros;
+        final double throughput;
+
+        Measurement(String address, long rttMicros, long minRttMicros, long jitterMicros, double throughput) {
+            this.address = address;
+            this.rttMicros = rttMicros;
+            this.minRttMicros = minRttMicros;
+            this.jitterMicros = jitterMicros;
+            this.throughput = throughput;
+        }
+    }
+
+    private final DeviceRegistry registry;
+    private final TransportProfile profile;
+    private final int pings;
+    private final int burstBytes;
+    private final int timeoutMillis;
+    private final long intervalMillis;
+    private final long maxAgeMillis;
+    private final List<ProbeListener> listeners = new CopyOnWriteArrayList<>();
+    private volatile BooleanSupplier busyCheck = () -> false;
+    private ScheduledExecutorService executor;
+
+    private final AtomicLong probeCount = new AtomicLong();
+    private final AtomicLong failureCount = new AtomicLong();
+    private final AtomicLong burstBytesSent = new AtomicLong();
+
+    /**
+     * 使用全局配置创建
+     */
+    public LinkProber(DeviceRegistry registry) {
+        this(registry, NetworkConfig.getTransportProfile(), NetworkConfig.LINK_PROBE_PINGS,
+                NetworkConfig.getLinkProbeBurst(), NetworkConfig.LINK_PROBE_TIMEOUT,
+                NetworkConfig.getLinkProbeInterval(), NetworkConfig.LINK_PROBE_MAX_AGE);
+    }
+
+    /**
+     * @param profile        探测连接使用的传输配置档（与传输一致，测得的吞吐量才有参考价值）
+     * @param pings          每次探测的 RTT 往返次数
+     * @param burstBytes     每次探测的突发数据量，0 表示只测 RTT
+     * @param timeoutMillis  连接和读取超时
+     * @param intervalMillis 后台探测间隔，0 表示不在后台探测
+     * @param maxAgeMillis   画像在这段时间内不会被后台探测刷新
+     */
+    public LinkProber(DeviceRegistry registry, TransportProfile profile, int pings, int burstBytes,
+                      int timeoutMillis, long intervalMillis, long maxAgeMillis) {
+        if (pings <= 0) {
+            throw new IllegalArgumentException("探测次数必须大于0");
+        }
+        if (burstBytes < 0 || burstBytes > NetworkConfig.LINK_PROBE_MAX_BURST) {
+            throw new IllegalArgumentException("突发数据量不合法: " + burstBytes);
+        }
+        this.registry = registry;
+        this.profile = profile;
+        this.pings = pings;
+        this.burstBytes = burstBytes;
+        this.timeoutMillis = timeoutMillis;
+        this.intervalMillis = intervalMillis;
+        this.maxAgeMillis = maxAgeMillis;
+    }
+
+    // ==================== 生命周期 ====================
+
+    /**
+     * 启动探测线程；后台间隔大于 0 时开始后台探测
+     */
+    public synchronized void start() {
+        if (executor != null) {
+            return;
+        }
+        executor = newExecutor();
+        if (intervalMillis > 0) {
+            executor.scheduleWithFixedDelay(this::backgroundProbe, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+            logger.info("链路探测已启动，后台间隔 " + intervalMillis + "ms");
+        }
+    }
+
+    public synchronized void stop() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    /**
+     * 设置“正在传输”的判断：返回 true 时跳过后台探测，避免与传输争抢带宽、也避免测得的数值失真
+     */
+    public void setBusyCheck(BooleanSupplier busyCheck) {
+        this.busyCheck = busyCheck != null ? busyCheck : () -> false;
+    }
+
+    public void addListener(ProbeListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(ProbeListener listener) {
+        listeners.remove(listener);
+    }
+
+    // ==================== 探测 ====================
+
+    /**
+     * 在探测线程中异步探测（未启动时自动启动探测线程，但不开始后台探测）
+     */
+    public CompletableFuture<LinkProfile> probeAsync(DeviceInfo device) {
+        ScheduledExecutorService exec;
+        synchronized (this) {
+            if (executor == null) {
+                executor = newExecutor();
+            }
+            exec = executor;
+        }
+        return CompletableFuture.supplyAsync(() -> probe(device), exec);
+    }
+
+    /**
+     * 探测一个设备（阻塞），结果合并到设备的链路画像并写入注册表
+     *
+     * @return 新的链路画像（失败时 isReachable() 为 false）
+     */
+    public LinkProfile probe(DeviceInfo device) {
+        LinkProfile previous = device.getLinkProfile();
+        List<String> addresses = device.getAddresses();
+        String address = device.getIpAddress();
+        Measurement result = null;
+        try {
+            if (addresses.size() > 1) {
+                address = fastestAddress(addresses, device.getPort());
+            }
+            if (address != null) {
+                result = measure(address, device.getPort(), burstBytes);
+            }
+        } catch (IOException | ProtocolException e) {
+            logger.fine("链路探测失败 " + address + ":" + device.getPort() + ": " + e.getMessage());
+        }
+
+        LinkProfile updated;
+        probeCount.incrementAndGet();
+        if (result != null) {
+            updated = LinkProfile.record(previous, result.address, result.rttMicros, result.minRttMicros,
+                    result.jitterMicros, result.throughput);
+        } else {
+            failureCount.incrementAndGet();
+            updated = LinkProfile.failure(previous, address != null ? address : device.getIpAddress());
+        }
+        if (!registry.updateLinkProfile(device.getDeviceId(), updated)) {
+            device.setLinkProfile(updated); // 不在注册表中的设备（例如手动输入的地址）
+        }
+        logger.fine("链路画像 " + device.getDeviceId() + ": " + updated);
+        for (ProbeListener l : listeners) {
+            l.onProbed(device, updated);
+        }
+        return updated;
+    }
+
+    /**
+     * 逐个测量地址的 RTT（不发突发数据），返回最快的；都不通时返回 null
+     */
+    private String fastestAddress(List<String> addresses, int port) {
+        String best = null;
+        long bestRtt = Long.MAX_VALUE;
+        for (String address : addresses.subList(0, Math.min(MAX_ADDRESSES, addresses.size()))) {
+            try {
+                Measurement m = measure(address, port, 0);
+                if (m.rttMicros < bestRtt) {
+                    bestRtt = m.rttMicros;
+                    best = address;
+                }
+            } catch (IOException | ProtocolException e) {
+                logger.fine("地址不可达 " + address + ":" + port + ": " + e.getMessage());
+            }
+        }
+        return best;
+    }
+
+    /**
+     * 建立一个探测连接：pings 次往返，然后（burst 大于 0 时）一次突发
+     */
+    private Measurement measure(String address, int port, int burst) throws IOException, ProtocolException {
+        SocketChannel channel = SocketChannel.open();
+        ProtocolHandler handler;
+        try {
+            Socket socket = channel.socket();
+            profile.applyTo(socket);
+            socket.connect(new InetSocketAddress(address, port), timeoutMillis);
+            handler = new ProtocolHandler(socket, profile);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+
+        try (ProtocolHandler h = handler) {
+            h.setReadTimeout(timeoutMillis);
+            int seq = 0;
+            h.sendControl(ControlMessage.probe(++seq, 0), true); // 预热：对方的连接处理刚开始，第一次往返偏慢，不计入
+            expectReply(h, seq);
+
+            long[] rtts = new long[pings];
+            for (int i = 0; i < pings; i++) {
+                long start = System.nanoTime();
+                h.sendControl(ControlMessage.probe(++seq, 0), true);
+                expectReply(h, seq);
+                rtts[i] = (System.nanoTime() - start) / 1000;
+            }
+            long jitter = 0;
+            for (int i = 1; i < pings; i++) {
+                jitter += Math.abs(rtts[i] - rtts[i - 1]);
+            }
+            jitter = pings > 1 ? jitter / (pings - 1) : 0;
+            long[] sorted = rtts.clone();
+            Arrays.sort(sorted);
+            long median = sorted[pings / 2];
+            long min = sorted[0];
+
+            double throughput = 0;
+            if (burst > 0) {
+                long start = System.nanoTime();
+                h.sendControl(ControlMessage.probe(++seq, burst), true);
+                h.sendFiller(burst);
+                expectReply(h, seq);
+                long elapsed = System.nanoTime() - start;
+                long sending = Math.max(elapsed - min * 1000, elapsed / 10); // 扣除应答的往返时间
+                throughput = burst * 1_000_000_000.0 / sending;
+                burstBytesSent.addAndGet(burst);
+            }
+            return new Measurement(address, median, min, jitter, throughput);
+        }
+    }
+
+    private static void expectReply(ProtocolHandler handler, int seq) throws ProtocolException {
+        Object reply = handler.receiveControl();
+        if (!(reply instanceof ControlMessage)
+                || ((ControlMessage) reply).getType() != ControlMessage.Type.PROBE
+                || ((ControlMessage) reply).getProbeSeq() != seq) {
+            throw new ProtocolException("无效的探测应答: " + reply);
+        }
+    }
+
+    /**
+     * 后台探测：选一个画像最旧（或没有画像）且已过期的在线设备
+     */
+    private void backgroundProbe() {
+        try {
+            if (busyCheck.getAsBoolean()) {
+                return;
+            }
+            DeviceInfo target = null;
+            long oldest = -1;
+            for (DeviceInfo device : registry.getAllDevices()) {
+                if (device.getStatus() != DeviceStatus.ONLINE) {
+                    continue;
+                }
+                LinkProfile p = device.getLinkProfile();
+                long age = p == null ? Long.MAX_VALUE : p.getAgeMillis();
+                if (age >= maxAgeMillis && age > oldest) {
+                    oldest = age;
+                    target = device;
+                }
+            }
+            if (target != null) {
+                probe(target);
+            }
+        } catch (RuntimeException e) {
+            logger.warning("后台链路探测出错: " + e.getMessage());
+        }
+    }
+
+    // ==================== 接收端 ====================
+
+    /**
+     * 应答一个探测连接（ReceiveEngine 收到 PROBE 时调用），对方关闭连接或发来其他消息时返回
+     *
+     * @param first  已收到的第一个 PROBE
+     * @param binary 应答的编码（与请求一致）
+     * @throws ProtocolException 突发数据量超过上限，或读取突发数据失败
+     */
+    public static void serve(ControlMessage first, ProtocolHandler handler, boolean binary) throws ProtocolException {
+        handler.setReadTimeout(NetworkConfig.LINK_PROBE_TIMEOUT * 2);
+        ControlMessage message = first;
+        for (int round = 1; ; round++) {
+            int burst = message.getBurstBytes();
+            if (burst < 0 || burst > NetworkConfig.LINK_PROBE_MAX_BURST) {
+                throw new ProtocolException("探测突发数据量超过上限: " + burst);
+            }
+            if (burst > 0) {
+                handler.discard(burst);
+            }
+            handler.sendControl(ControlMessage.probe(message.getProbeSeq(), 0), binary);
+            if (round >= MAX_ROUNDS) {
+                return;
+            }
+
+            Object next;
+            try {
+                next = handler.receiveControl();
+            } catch (ProtocolException e) {
+                return; // 探测结束，对方关闭了连接
+            }
+            if (!(next instanceof ControlMessage) || ((ControlMessage) next).getType() != ControlMessage.Type.PROBE) {
+                logger.fine("探测连接上收到其他消息，结束: " + next);
+                return;
+            }
+            message = (ControlMessage) next;
+        }
+    }
+
+    // ==================== 统计 ====================
+
+    /**
+     * 探测次数（按设备计）
+     */
+    public long getProbeCount() {
+        return probeCount.get();
+    }
+
+    /**
+     * 失败的探测次数
+     */
+    public long getFailureCount() {
+        return failureCount.get();
+    }
+
+    /**
+     * 突发数据总量（字节），用于确认后台探测的开销
+     */
+    public long getBurstBytesSent() {
+        return burstBytesSent.get();
+    }
+
+    private static ScheduledExecutorService newExecutor() {
+        return Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "lanshare-link-probe");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+}
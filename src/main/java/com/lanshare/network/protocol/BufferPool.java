@@ -0,0 +1,106 @@
+package com.lanshare.network.protocol;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 分片缓冲池
+ *
+ * 预先约定缓冲区大小和数量上限，缓冲区在“网络读 → 落盘写”或“磁盘读 → 网络写”之间循环使用，
+ * 稳定状态下不再分配新的 byte[]，总内存占用 = 缓冲区大小 × 上限。
+ *
+ * - acquire：优先复用空闲缓冲区；未达上限时新建；达到上限后阻塞等待归还
+ * - release：归还缓冲区；大小不符的缓冲区（例如超大分片临时分配的）直接丢弃
+ *
+ * 默认使用堆内缓冲区（hasArray），便于直接配合 DataInputStream.readFully / CRC32.update 使用；
+ * 发送端可使用直接缓冲区，FileChannel 读入后直接写到 SocketChannel，省去 JDK 内部的临时拷贝。
+ */
+public class BufferPool {
+    private final int bufferSize;
+    private final int maxBuffers;
+    private final boolean direct;
+    private final ArrayBlockingQueue<ByteBuffer> free;
+    private final AtomicInteger created = new AtomicInteger();
+
+    /**
+     * 构造函数
+     *
+     * @param bufferSize 每个缓冲区的容量（字节）
+     * @param maxBuffers 缓冲区数量上限
+     */
+    public BufferPool(int bufferSize, int maxBuffers) {
+        this(bufferSize, maxBuffers, false);
+    }
+
+    /**
+     * 构造函数
+     *
+     * @param bufferSize 每个缓冲区的容量（字节）
+     * @param maxBuffers 缓冲区数量上限
+     * @param direct     是否使用直接缓冲区
+     */
+    public BufferPool(int bufferSize, int maxBuffers, boolean direct) {
+        if (bufferSize <= 0 || maxBuffers <= 0) {
+            throw new IllegalArgumentException("缓冲区大小和数量必须大于0");
+        }
+        this.bufferSize = bufferSize;
+        this.maxBuffers = maxBuffers;
+        this.direct = direct;
+        this.free = new ArrayBlockingQueue<>(maxBuffers);
+    }
+
+    /**
+     * 获取一个已清空的缓冲区
+     *
+     * @return 缓冲区（position=0, limit=capacity）
+     * @throws IOException 等待时被中断
+     */
+    public ByteBuffer acquire() throws IOException {
+        ByteBuffer buffer = free.poll();
+        if (buffer == null) {
+            if (created.incrementAndGet() <= maxBuffers) {
+                return direct ? ByteBuffer.allocateDirect(bufferSize) : ByteBuffer.allocate(bufferSize);
+            }
+            created.decrementAndGet();
+            try {
+                buffer = free.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("等待缓冲区时被中断");
+            }
+        }
+        buffer.clear();
+        return buffer;
+    }
+
+    /**
+     * 归还缓冲区（可为 null）
+     */
+    public void release(ByteBuffer buffer) {
+        if (buffer != null && buffer.capacity() == bufferSize && buffer.isDirect() == direct) {
+            free.offer(buffer);
+        }
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    public int getMaxBuffers() {
+        return maxBuffers;
+    }
+
+    public boolean isDirect() {
+        return direct;
+    }
+
+    /**
+     * 当前空闲的缓冲区个数
+     */
+    public int getAvailable() {
+        return free.size();
+    }
+}
@@ -0,0 +1,104 @@
+package com.lanshare.network.protocol;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 解码后的分片帧（可复用）
+ *
+ * 与 FileChunk 不同，ChunkFrame 不持有独立的 byte[]：
+ * 头部在 FrameDecoder 的复用缓冲区中原地解析，数据部分是缓冲池中的一个 ByteBuffer 视图。
+ * 同一个 FrameDecoder 每次返回的都是同一个 ChunkFrame 实例，下一次解码前必须处理完当前帧：
+ * - 交给写入器：detachPayload()，缓冲区的所有权随之转移
+ * - 不再需要：release()，缓冲区归还缓冲池
+ */
+public final class ChunkFrame {
+    private final ChunkHeader header = new ChunkHeader();
+    private final BufferPool pool;
+    private ByteBuffer payload;
+
+    ChunkFrame(BufferPool pool) {
+        this.pool = pool;
+    }
+
+    void attach(ByteBuffer payload) {
+        this.payload = payload;
+    }
+
+    ChunkHeader mutableHeader() {
+        return header;
+    }
+
+    /**
+     * 获取头部（属于本帧，下一次解码时会被覆盖）
+     */
+    public ChunkHeader getHeader() {
+        return header;
+    }
+
+    /**
+     * 获取数据视图（position=0, limit=数据长度）
+     */
+    public ByteBuffer getPayload() {
+        return payload;
+    }
+
+    public int getPayloadLength() {
+        return payload != null ? payload.remaining() : 0;
+    }
+
+    /**
+     * 取走数据缓冲区，调用方负责之后归还给缓冲池
+     */
+    public ByteBuffer detachPayload() {
+        ByteBuffer p = payload;
+        payload = null;
+        return p;
+    }
+
+    /**
+     * 归还数据缓冲区
+     */
+    public void release() {
+        if (payload != null) {
+            pool.release(payload);
+            payload = null;
+        }
+    }
+
+    public int getChunkIndex() {
+        return header.getChunkIndex();
+    }
+
+    /**
+     * 获取文件偏移（v2 帧携带；v1 帧返回 -1，由调用方按顺序累加）
+     */
+    public long getOffset() {
+        return header.getOffset();
+    }
+
+    public boolean isLastChunk() {
+        return header.isLastChunk();
+    }
+
+    public boolean isControlFrame() {
+        return header.getChunkIndex() == FileChunk.INDEX_CONTROL;
+    }
+
+    /**
+     * 获取控制命令（仅控制帧，会分配一个 String）
+     */
+    public String getControlCommand() {
+        if (!isControlFrame() || payload == null) {
+            return null;
+        }
+        return new String(payload.array(), payload.arrayOffset() + payload.position(),
+                payload.remaining(), StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("ChunkFrame{index=%d, dataSize=%d, last=%s}",
+                getChunkIndex(), getPayloadLength(), isLastChunk());
+    }
+}
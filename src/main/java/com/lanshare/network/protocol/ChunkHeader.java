@@ -1,14 +1,17 @@
 package com.lanshare.network.protocol;
+import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.zip.CRC32;
 
 /**
  * 文件分片头部
  * 
- * 二进制协议，固定64字节
- * 用于标识每个文件分片的元数据
+ * 二进制协议，用于标识每个文件分片的元数据
+ * v1 固定 64 字节；v2 为紧凑变长头部（最长 255 字节），两者前 6 字节相同
  * 
- * 结构：
+ * v1 结构：
  * [0-3] Magic Number: 0x4C414E53 ("LANS")
  * [4-5] Version: 0x0001
  * [6-9] Chunk Index: 分片索引
@@ -18,13 +21,36 @@ import java.util.zip.CRC32;
  * [26-29] Flags: 标志位
  * [30-63] Reserved: 保留字段
  * 
+ * v2（紧凑变长头部，握手协商后使用，见 TransferRequest.maxFrameVersion）：
+ * [0-3] Magic Number: 0x4C414E53
+ * [4-5] Version: 0x0002
+ * [6]   Header Length: 头部总长度（含以上 7 字节，最大 255）
+ * varint  Flags
+ * varint  Chunk Index（zigzag，控制分片为 -1）
+ * varlong File Offset（zigzag，分片数据在文件中的 64 位偏移）
+ * varint  Chunk Size
+ * [8]     Task ID Hash
+ * [4]     CRC32
+ * 扩展字段（可选，直到头部末尾）：[1 byte 类型][varint 长度][数据]，不认识的类型直接跳过
+ * 
+ * v2 典型头部约 30 字节；接收方按偏移写入，不再依赖固定分片大小和顺序，
+ * 支持乱序/并行写入和超过 int 索引范围的大文件。乱序到达时最后一片标志只表示该分片位于文件末尾，
+ * 接收方以收齐全部字节判断完成（见 ReceiveEngine）。
+ * 前 6 字节与 v1 相同，解码时按版本号自动识别，同一连接上可以混用。
+ * 
  * @author ZZZ
- * @version 1.0
+ * @version 2.0
  */
 public class ChunkHeader {
-    public static final int HEADER_SIZE = 64;
+    public static final int HEADER_SIZE = 64; // v1 固定头部大小
     private static final int MAGIC_NUMBER = 0x4C414E53;
-    private static final int VERSION = 0x0001;
+    public static final int VERSION_1 = 0x0001;
+    public static final int VERSION_2 = 0x0002;
+    public static final int CURRENT_VERSION = VERSION_2; // 本端支持的最高版本
+
+    public static final int PREFIX_SIZE = 7;       // 魔数 + 版本 + v2 头部长度，足以判断头部总长度
+    public static final int MIN_HEADER_SIZE = 23;  // v2 最短头部（各 varint 均为 1 字节、无扩展）
+    public static final int MAX_HEADER_SIZE = 255; // v2 头部长度字段为 1 字节
 
     public static final int FLAG_LAST_CHUNK = 0x0001;
     public static final int FLAG_RESERVED = 0x0002;
@@ -35,6 +61,9 @@ public class ChunkHeader {
     private long taskIdHash ;//任务哈希
     private int crc32;//效验值
     private int flags;//标志位
+    private int version = VERSION_1;//编码版本
+    private long offset = -1;//文件偏移（v2，v1 为 -1）
+    private Map<Integer, byte[]> extensions;//扩展字段（v2，没有时为 null）
 
     public ChunkHeader(int chunkIndex, int chunkSize, String taskId) {
         this.chunkIndex = chunkIndex;
@@ -49,41 +78,202 @@ public class ChunkHeader {
     }
     //================序列化为字节数组
     public byte[] toBytes() {
-        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE);
+        ByteBuffer buffer = ByteBuffer.allocate(getEncodedSize());
+        encodeTo(buffer);
+        return buffer.array();
+    }
+
+    //================编码到调用方的缓冲区（写入 getEncodedSize() 字节，供发送端复用帧头缓冲区）
+    public void encodeTo(ByteBuffer buffer) {
+        if (version == VERSION_2) {
+            encodeV2(buffer);
+            return;
+        }
         buffer.putInt(MAGIC_NUMBER);
-        buffer.putShort((short) VERSION);
+        buffer.putShort((short) VERSION_1);
         buffer.putInt(chunkIndex);
         buffer.putInt(chunkSize);
         buffer.putLong(taskIdHash);
         buffer.putInt(crc32);
         buffer.putInt(flags);
-        buffer.put(new byte[34]); // 保留字段
-        return buffer.array();
+        for (int i = 0; i < 34; i++) { // 保留字段（复用的缓冲区需显式清零）
+            buffer.put((byte) 0);
+        }
+    }
+
+    private void encodeV2(ByteBuffer buffer) {
+        int start = buffer.position();
+        buffer.putInt(MAGIC_NUMBER);
+        buffer.putShort((short) VERSION_2);
+        buffer.put((byte) 0); // 头部长度，最后回填
+        putVarLong(buffer, flags & 0xFFFFFFFFL);
+        putVarLong(buffer, zigzag(chunkIndex));
+        putVarLong(buffer, zigzag(offset));
+        putVarLong(buffer, chunkSize & 0xFFFFFFFFL);
+        buffer.putLong(taskIdHash);
+        buffer.putInt(crc32);
+        if (extensions != null) {
+            for (Map.Entry<Integer, byte[]> e : extensions.entrySet()) {
+                buffer.put((byte) (int) e.getKey());
+                putVarLong(buffer, e.getValue().length);
+                buffer.put(e.getValue());
+            }
+        }
+        int length = buffer.position() - start;
+        if (length > MAX_HEADER_SIZE) {
+            throw new IllegalStateException("头部超过" + MAX_HEADER_SIZE + "字节");
+        }
+        buffer.put(start + 6, (byte) length);
+    }
+
+    //================编码后的头部长度
+    public int getEncodedSize() {
+        if (version != VERSION_2) {
+            return HEADER_SIZE;
+        }
+        int size = PREFIX_SIZE
+                + varLongSize(flags & 0xFFFFFFFFL)
+                + varLongSize(zigzag(chunkIndex))
+                + varLongSize(zigzag(offset))
+                + varLongSize(chunkSize & 0xFFFFFFFFL)
+                + 8 + 4;
+        if (extensions != null) {
+            for (byte[] value : extensions.values()) {
+                size += 1 + varLongSize(value.length) + value.length;
+            }
+        }
+        return size;
     }
 
     //================从字节数组反序列化
     public static ChunkHeader fromBytes(byte[] data) throws ProtocolException {
-        if (data.length < HEADER_SIZE) {
-            throw new ProtocolException("数据太短，至少需要" + HEADER_SIZE + "字节");
+        if (data.length < PREFIX_SIZE) {
+            throw new ProtocolException("数据太短，至少需要" + PREFIX_SIZE + "字节");
         }
-        ByteBuffer buffer = ByteBuffer.wrap(data);
-        int magicNumber = buffer.getInt();
+        ChunkHeader chunkHeader = new ChunkHeader();
+        chunkHeader.decodeFrom(ByteBuffer.wrap(data));
+        return chunkHeader;
+    }
+
+    //================根据前 PREFIX_SIZE 字节判断头部总长度（供 FrameDecoder 分两段读取头部）
+    static int headerLength(byte[] prefix) throws ProtocolException {
+        int magicNumber = ((prefix[0] & 0xFF) << 24) | ((prefix[1] & 0xFF) << 16)
+                | ((prefix[2] & 0xFF) << 8) | (prefix[3] & 0xFF);
         if (magicNumber != MAGIC_NUMBER) {
             throw new ProtocolException("无效的魔数：" + Integer.toHexString(magicNumber));
         }
-        int version = buffer.getShort();
-        if (version != VERSION) {
-            throw new ProtocolException("无效的版本号：" + Integer.toHexString(version));
+        int version = ((prefix[4] & 0xFF) << 8) | (prefix[5] & 0xFF);
+        if (version == VERSION_1) {
+            return HEADER_SIZE;
         }
-        ChunkHeader chunkHeader = new ChunkHeader();
-        chunkHeader.chunkIndex = buffer.getInt();
-        chunkHeader.chunkSize = buffer.getInt();
-        chunkHeader.taskIdHash = buffer.getLong();
-        chunkHeader.crc32 = buffer.getInt();
-        chunkHeader.flags = buffer.getInt();
-        buffer.position(HEADER_SIZE); // 跳过保留字段
-        return chunkHeader;
+        if (version == VERSION_2) {
+            int length = prefix[6] & 0xFF;
+            if (length < MIN_HEADER_SIZE) {
+                throw new ProtocolException("无效的头部长度：" + length);
+            }
+            return length;
+        }
+        throw new ProtocolException("无效的版本号：" + Integer.toHexString(version));
+    }
+
+    //================从缓冲区原地解析（覆盖当前对象的字段，供 FrameDecoder 复用同一个头部对象）
+    void decodeFrom(ByteBuffer buffer) throws ProtocolException {
+        int start = buffer.position();
+        try {
+            int magicNumber = buffer.getInt();
+            if (magicNumber != MAGIC_NUMBER) {
+                throw new ProtocolException("无效的魔数：" + Integer.toHexString(magicNumber));
+            }
+            int version = buffer.getShort();
+            if (version == VERSION_1) {
+                if (buffer.limit() - start < HEADER_SIZE) {
+                    throw new ProtocolException("数据太短，至少需要" + HEADER_SIZE + "字节");
+                }
+                this.version = VERSION_1;
+                this.chunkIndex = buffer.getInt();
+                this.chunkSize = buffer.getInt();
+                this.taskIdHash = buffer.getLong();
+                this.crc32 = buffer.getInt();
+                this.flags = buffer.getInt();
+                this.offset = -1;
+                this.extensions = null;
+                buffer.position(start + HEADER_SIZE); // 跳过保留字段
+            } else if (version == VERSION_2) {
+                int end = start + (buffer.get() & 0xFF);
+                if (end - start < MIN_HEADER_SIZE || end > buffer.limit()) {
+                    throw new ProtocolException("无效的头部长度：" + (end - start));
+                }
+                this.version = VERSION_2;
+                this.flags = (int) getVarLong(buffer);
+                this.chunkIndex = (int) unzigzag(getVarLong(buffer));
+                this.offset = unzigzag(getVarLong(buffer));
+                this.chunkSize = (int) getVarLong(buffer);
+                this.taskIdHash = buffer.getLong();
+                this.crc32 = buffer.getInt();
+                this.extensions = null;
+                while (buffer.position() < end) {
+                    int type = buffer.get() & 0xFF;
+                    int length = (int) getVarLong(buffer);
+                    if (length < 0 || buffer.position() + length > end) {
+                        throw new ProtocolException("扩展字段越界：类型 " + type);
+                    }
+                    byte[] value = new byte[length];
+                    buffer.get(value);
+                    if (extensions == null) {
+                        extensions = new LinkedHashMap<>();
+                    }
+                    extensions.put(type, value);
+                }
+                if (buffer.position() != end) {
+                    throw new ProtocolException("头部长度与内容不一致");
+                }
+            } else {
+                throw new ProtocolException("无效的版本号：" + Integer.toHexString(version));
+            }
+        } catch (BufferUnderflowException e) {
+            throw new ProtocolException("头部数据不完整", e);
+        }
+    }
+
+    // ==================== varint 编解码 ====================
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static void putVarLong(ByteBuffer buffer, long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    private static long getVarLong(ByteBuffer buffer) throws ProtocolException {
+        long result = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = buffer.get();
+            result |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return result;
+            }
+        }
+        throw new ProtocolException("varint 过长");
+    }
+
+    private static int varLongSize(long value) {
+        int size = 1;
+        while ((value & ~0x7FL) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
     }
+
     //===============CRC32效验
     public void calculateCRC32(byte[] data) {
         CRC32 crc32 = new CRC32();
@@ -91,6 +281,15 @@ public class ChunkHeader {
         this.crc32 = (int) crc32.getValue();
     }
 
+    //===============CRC32效验（缓冲区版本，不改变缓冲区的 position）
+    public void calculateCRC32(ByteBuffer data) {
+        CRC32 crc32 = new CRC32();
+        int position = data.position();
+        crc32.update(data);
+        data.position(position);
+        this.crc32 = (int) crc32.getValue();
+    }
+
     public boolean verifyCRC32(byte[] data) {
         CRC32 crc32 = new CRC32();
         crc32.update(data);
@@ -156,6 +355,58 @@ public class ChunkHeader {
         return hasFlag(FLAG_RESERVED);
     }
     
+    // ==================== v2 字段 ====================
+
+    /**
+     * 设置编码版本（VERSION_1 或 VERSION_2，由握手协商决定）
+     */
+    public void setVersion(int version) {
+        if (version != VERSION_1 && version != VERSION_2) {
+            throw new IllegalArgumentException("不支持的版本号：" + version);
+        }
+        this.version = version;
+    }
+
+    /**
+     * 设置分片数据在文件中的偏移（仅 v2 会编码）
+     */
+    public void setOffset(long offset) {
+        this.offset = offset;
+    }
+
+    /**
+     * 添加扩展字段（仅 v2 会编码）
+     *
+     * @param type  扩展类型（0-255）
+     * @param value 扩展数据
+     */
+    public void putExtension(int type, byte[] value) {
+        if (type < 0 || type > 0xFF || value == null) {
+            throw new IllegalArgumentException("无效的扩展字段：" + type);
+        }
+        if (extensions == null) {
+            extensions = new LinkedHashMap<>();
+        }
+        byte[] previous = extensions.put(type, value);
+        if (version == VERSION_2 && getEncodedSize() > MAX_HEADER_SIZE) {
+            if (previous != null) {
+                extensions.put(type, previous);
+            } else {
+                extensions.remove(type);
+            }
+            throw new IllegalArgumentException("扩展字段过大，头部不能超过" + MAX_HEADER_SIZE + "字节");
+        }
+    }
+
+    /**
+     * 获取扩展字段
+     *
+     * @return 扩展数据，不存在时返回 null
+     */
+    public byte[] getExtension(int type) {
+        return extensions != null ? extensions.get(type) : null;
+    }
+
     // ==================== 工具方法 ====================
     
     /**
@@ -208,13 +459,26 @@ public class ChunkHeader {
         return flags;
     }
     
+    public int getVersion() {
+        return version;
+    }
+    
+    /**
+     * 获取文件偏移
+     * 
+     * @return v2 分片的文件偏移；v1 分片没有偏移，返回 -1
+     */
+    public long getOffset() {
+        return offset;
+    }
+    
     // ==================== toString ====================
     
     @Override
     public String toString() {
         return String.format(
-            "ChunkHeader{index=%d, size=%d, taskHash=0x%016X, crc32=0x%08X, flags=0x%08X}",
-            chunkIndex, chunkSize, taskIdHash, crc32, flags
+            "ChunkHeader{v%d, index=%d, offset=%d, size=%d, taskHash=0x%016X, crc32=0x%08X, flags=0x%08X}",
+            version, chunkIndex, offset, chunkSize, taskIdHash, crc32, flags
         );
     }
 }
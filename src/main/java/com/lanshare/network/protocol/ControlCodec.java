@@ -0,0 +1,359 @@
+package com.lanshare.network.protocol;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 控制消息二进制编解码器
+ *
+ * 握手和控制消息原来都是 Gson 美化输出的 JSON，每次握手都要反射解析几百字节。
+ * 发送大量小文件时握手成为瓶颈，因此增加手写的紧凑二进制编码（无反射）：
+ *
+ * <pre>
+ * [1 byte 魔数 0xB1][1 byte 编码版本][1 byte 消息类型]
+ * 字段：[varint 标签 = 字段编号 &lt;&lt; 3 | 线类型][值]
+ *   线类型 0：varint（整数、布尔）
+ *   线类型 2：varint 长度 + 字节（UTF-8 字符串）
+ * 不认识的字段按线类型跳过，新增字段不影响旧版本解析。
+ * </pre>
+ *
+ * 0xB1 不可能是 UTF-8 文本的首字节，接收方按首字节自动区分二进制和 JSON。
+ *
+ * 协商：
+ * - 首次与某个对端通信时一律发送 JSON，新版本的应答中带 binaryControl=true
+ * - 收到声明后记住该对端（按 IP），之后的握手直接使用二进制
+ * - 接收方总是用请求到达时的编码回复，旧版本对端始终只看到 JSON
+ */
+public final class ControlCodec {
+
+    public static final byte MAGIC = (byte) 0xB1;
+    public static final int CODEC_VERSION = 1;
+
+    // ==================== 消息类型 ====================
+    static final int TYPE_TRANSFER_REQUEST = 1;
+    static final int TYPE_TRANSFER_RESPONSE = 2;
+    static final int TYPE_CONTROL_BASE = 16; // 16 + ControlMessage.Type.ordinal()
+
+    private static final int WIRE_VARINT = 0;
+    private static final int WIRE_BYTES = 2;
+
+    /**
+     * JSON 回退路径使用的紧凑 Gson（无美化输出，线程安全，全局共享）
+     */
+    public static final Gson GSON = new Gson();
+
+    /**
+     * 已确认支持二进制控制消息的对端（IP）
+     */
+    private static final Set<String> binaryPeers = ConcurrentHashMap.newKeySet();
+
+    private ControlCodec() {
+    }
+
+    // ==================== 对端能力 ====================
+
+    public static boolean isBinaryPeer(String host) {
+        return host != null && binaryPeers.contains(host);
+    }
+
+    public static void rememberBinaryPeer(String host) {
+        if (host != null) {
+            binaryPeers.add(host);
+        }
+    }
+
+    /**
+     * 二进制握手失败时调用，之后回退到 JSON
+     */
+    public static void forgetBinaryPeer(String host) {
+        if (host != null) {
+            binaryPeers.remove(host);
+        }
+    }
+
+    // ==================== 编码 ====================
+
+    /**
+     * 判断一段数据是否为二进制控制消息
+     */
+    public static boolean isBinary(byte[] data, int length) {
+        return length >= 3 && data[0] == MAGIC;
+    }
+
+    /**
+     * 编码控制消息
+     *
+     * @param message TransferRequest、TransferResponse 或 ControlMessage
+     * @param w       输出（调用方负责 reset）
+     * @throws ProtocolException 不支持的消息类型
+     */
+    public static void encode(Object message, Writer w) throws ProtocolException {
+        w.writeByte(MAGIC);
+        w.writeByte(CODEC_VERSION);
+        if (message instanceof TransferRequest) {
+            w.writeByte(TYPE_TRANSFER_REQUEST);
+            ((TransferRequest) message).writeFields(w);
+        } else if (message instanceof TransferResponse) {
+            w.writeByte(TYPE_TRANSFER_RESPONSE);
+            ((TransferResponse) message).writeFields(w);
+        } else if (message instanceof ControlMessage) {
+            ControlMessage.Type type = ((ControlMessage) message).getType();
+            if (type == null) {
+                throw new ProtocolException("未知的控制消息类型");
+            }
+            w.writeByte(TYPE_CONTROL_BASE + type.ordinal());
+            ((ControlMessage) message).writeFields(w);
+        } else {
+            throw new ProtocolException("不支持二进制编码的消息: "
+                    + (message == null ? "null" : message.getClass().getSimpleName()));
+        }
+    }
+
+    /**
+     * 编码为独立的字节数组
+     */
+    public static byte[] encode(Object message) throws ProtocolException {
+        Writer w = new Writer(128);
+        encode(message, w);
+        return w.toByteArray();
+    }
+
+    // ==================== 解码 ====================
+
+    /**
+     * 解码二进制控制消息
+     *
+     * @return TransferRequest、TransferResponse 或 ControlMessage
+     * @throws ProtocolException 格式错误
+     */
+    public static Object decode(byte[] data, int offset, int length) throws ProtocolException {
+        Reader r = new Reader(data, offset, length);
+        if (r.readByte() != MAGIC) {
+            throw new ProtocolException("不是二进制控制消息");
+        }
+        int version = r.readByte() & 0xFF;
+        if (version != CODEC_VERSION) {
+            throw new ProtocolException("不支持的控制消息编码版本: " + version);
+        }
+        int type = r.readByte() & 0xFF;
+        if (type == TYPE_TRANSFER_REQUEST) {
+            return TransferRequest.readFields(r);
+        }
+        if (type == TYPE_TRANSFER_RESPONSE) {
+            return TransferResponse.readFields(r);
+        }
+        ControlMessage.Type[] types = ControlMessage.Type.values();
+        if (type >= TYPE_CONTROL_BASE && type < TYPE_CONTROL_BASE + types.length) {
+            return ControlMessage.readFields(types[type - TYPE_CONTROL_BASE], r);
+        }
+        throw new ProtocolException("未知的控制消息类型: " + type);
+    }
+
+    /**
+     * 解析 JSON 控制消息（兼容旧版本），按 type 字段分派
+     *
+     * @return TransferRequest、TransferResponse 或 ControlMessage
+     * @throws ProtocolException JSON 格式错误或缺少 type
+     */
+    public static Object fromJson(String json) throws ProtocolException {
+        try {
+            JsonObject obj = GSON.fromJson(json, JsonObject.class);
+            if (obj == null || !obj.has("type")) {
+                throw new ProtocolException("控制消息缺少 type 字段");
+            }
+            String type = obj.get("type").getAsString();
+            if ("TRANSFER_REQUEST".equals(type)) {
+                return GSON.fromJson(obj, TransferRequest.class);
+            }
+            if ("TRANSFER_RESPONSE".equals(type)) {
+                return GSON.fromJson(obj, TransferResponse.class);
+            }
+            return GSON.fromJson(obj, ControlMessage.class);
+        } catch (JsonParseException | IllegalStateException | UnsupportedOperationException e) {
+            throw new ProtocolException("JSON 控制消息解析失败: " + e.getMessage(), e);
+        }
+    }
+
+    // ==================== 字段读写 ====================
+
+    /**
+     * 可复用的输出缓冲区
+     */
+    public static final class Writer {
+        private byte[] buf;
+        private int size;
+
+        public Writer(int initialCapacity) {
+            this.buf = new byte[Math.max(16, initialCapacity)];
+        }
+
+        public void reset() {
+            size = 0;
+        }
+
+        public byte[] array() {
+            return buf;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public byte[] toByteArray() {
+            return Arrays.copyOf(buf, size);
+        }
+
+        void writeByte(int b) {
+            ensure(1);
+            buf[size++] = (byte) b;
+        }
+
+        void writeVarLong(long value) {
+            ensure(10);
+            while ((value & ~0x7FL) != 0) {
+                buf[size++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buf[size++] = (byte) value;
+        }
+
+        void writeLong(int field, long value) {
+            if (value != 0) { // 0 为默认值，省略
+                writeVarLong((long) field << 3 | WIRE_VARINT);
+                writeVarLong(value);
+            }
+        }
+
+        void writeInt(int field, int value) {
+            writeLong(field, value & 0xFFFFFFFFL);
+        }
+
+        void writeBoolean(int field, boolean value) {
+            writeVarLong((long) field << 3 | WIRE_VARINT);
+            writeVarLong(value ? 1 : 0);
+        }
+
+        void writeString(int field, String value) {
+            if (value == null) {
+                return;
+            }
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeVarLong((long) field << 3 | WIRE_BYTES);
+            writeVarLong(bytes.length);
+            ensure(bytes.length);
+            System.arraycopy(bytes, 0, buf, size, bytes.length);
+            size += bytes.length;
+        }
+
+        private void ensure(int extra) {
+            if (size + extra > buf.length) {
+                buf = Arrays.copyOf(buf, Math.max(buf.length * 2, size + extra));
+            }
+        }
+    }
+
+    /**
+     * 字段读取器
+     */
+    public static final class Reader {
+        private final byte[] buf;
+        private final int end;
+        private int pos;
+        private int wireType;
+
+        Reader(byte[] buf, int offset, int length) {
+            this.buf = buf;
+            this.pos = offset;
+            this.end = offset + length;
+        }
+
+        byte readByte() throws ProtocolException {
+            if (pos >= end) {
+                throw new ProtocolException("控制消息不完整");
+            }
+            return buf[pos++];
+        }
+
+        long readVarLong() throws ProtocolException {
+            long result = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                byte b = readByte();
+                result |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return result;
+                }
+            }
+            throw new ProtocolException("varint 过长");
+        }
+
+        /**
+         * 读取下一个字段编号
+         *
+         * @return 字段编号，消息结束时返回 0
+         */
+        int nextField() throws ProtocolException {
+            if (pos >= end) {
+                return 0;
+            }
+            long tag = readVarLong();
+            wireType = (int) (tag & 0x7);
+            int field = (int) (tag >>> 3);
+            if (field == 0) {
+                throw new ProtocolException("无效的字段编号");
+            }
+            return field;
+        }
+
+        long readLong() throws ProtocolException {
+            expect(WIRE_VARINT);
+            return readVarLong();
+        }
+
+        int readInt() throws ProtocolException {
+            return (int) readLong();
+        }
+
+        boolean readBoolean() throws ProtocolException {
+            return readLong() != 0;
+        }
+
+        String readString() throws ProtocolException {
+            expect(WIRE_BYTES);
+            int length = readLength();
+            String s = new String(buf, pos, length, StandardCharsets.UTF_8);
+            pos += length;
+            return s;
+        }
+
+        void skipField() throws ProtocolException {
+            if (wireType == WIRE_VARINT) {
+                readVarLong();
+            } else if (wireType == WIRE_BYTES) {
+                int length = readLength(); // 先读长度再移动位置，不能写成 pos += readLength()
+                pos += length;
+            } else {
+                throw new ProtocolException("未知的线类型: " + wireType);
+            }
+        }
+
+        private int readLength() throws ProtocolException {
+            long length = readVarLong();
+            if (length < 0 || length > end - pos) {
+                throw new ProtocolException("字段长度越界: " + length);
+            }
+            return (int) length;
+        }
+
+        private void expect(int expected) throws ProtocolException {
+            if (wireType != expected) {
+                throw new ProtocolException("字段类型不匹配: 期望 " + expected + ", 实际 " + wireType);
+            }
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package com.lanshare.network.protocol;
+
+/**
+ * 通用控制消息
+ *
+ * 覆盖握手之外的小消息：连接请求/应答、断开、暂停/恢复、链路探测。
+ * JSON 形式与旧版本手写的 {"type":"CONNECT","from":...} 完全兼容；
+ * 二进制形式由 ControlCodec 编码。
+ */
+public class ControlMessage {
+
+    /**
+     * 消息类型
+     */
+    public enum Type {
+        CONNECT, ACCEPT, REJECT, DISCONNECT, PAUSE, RESUME,
+        PROBE // 链路探测（见 LinkProber），只用二进制编码；只能追加，二进制编码按序号区分类型
+    }
+
+    private String type;// 消息类型（字符串形式，保持 JSON 兼容）
+    private String from;// 发送方IP
+    private String deviceName;// 发送方设备名
+    private String userName;// 发送方用户名
+    private String deviceId;// 发送方设备ID（接收策略按此匹配信任设备）
+    private Boolean binaryControl;// 本端是否支持二进制控制消息（null 表示未声明，JSON 中省略）
+    private Integer probeSeq;// 探测序号（PROBE，应答原样带回；其他消息为 null，JSON 中省略）
+    private Integer burstBytes;// 探测消息之后紧跟的突发数据长度（PROBE，0 表示只测 RTT）
+
+    // =========================构造方法
+    private ControlMessage() {
+
+    }// 供 Gson 反序列化
+
+    public ControlMessage(Type type) {
+        this.type = type.name();
+    }
+
+    // ===================静态工厂方法
+    public static ControlMessage connect(String from, String deviceName, String userName) {
+        ControlMessage message = new ControlMessage(Type.CONNECT);
+        message.from = from;
+        message.deviceName = deviceName;
+        message.userName = userName;
+        return message;
+    }
+
+    public static ControlMessage connect(String from, String deviceName, String userName, String deviceId) {
+        ControlMessage message = connect(from, deviceName, userName);
+        message.deviceId = deviceId;
+        return message;
+    }
+
+    public static ControlMessage accept() {
+        return new ControlMessage(Type.ACCEPT);
+    }
+
+    public static ControlMessage reject() {
+        return new ControlMessage(Type.REJECT);
+    }
+
+    public static ControlMessage disconnect(String from) {
+        ControlMessage message = new ControlMessage(Type.DISCONNECT);
+        message.from = from;
+        return message;
+    }
+
+    public static ControlMessage pause() {
+        return new ControlMessage(Type.PAUSE);
+    }
+
+    public static ControlMessage resume() {
+        return new ControlMessage(Type.RESUME);
+    }
+
+    /**
+     * 链路探测：burstBytes 为 0 时对方立即原样应答（测 RTT）；
+     * 否则消息之后紧跟 burstBytes 字节的填充数据，对方读完后应答（测吞吐量）
+     */
+    public static ControlMessage probe(int seq, int burstBytes) {
+        ControlMessage message = new ControlMessage(Type.PROBE);
+        message.probeSeq = seq;
+        message.burstBytes = burstBytes;
+        return message;
+    }
+
+    // =========================二进制编解码（字段编号一旦发布不能修改）
+    void writeFields(ControlCodec.Writer w) {
+        w.writeString(1, from);
+        w.writeString(2, deviceName);
+        w.writeString(3, userName);
+        if (binaryControl != null) {
+            w.writeBoolean(4, binaryControl);
+        }
+        w.writeString(5, deviceId);
+        if (probeSeq != null) {
+            w.writeInt(6, probeSeq);
+            w.writeInt(7, burstBytes);
+        }
+    }
+
+    static ControlMessage readFields(Type type, ControlCodec.Reader r) throws ProtocolException {
+        ControlMessage message = new ControlMessage(type);
+        int field;
+        while ((field = r.nextField()) != 0) {
+            switch (field) {
+                case 1: message.from = r.readString(); break;
+                case 2: message.deviceName = r.readString(); break;
+                case 3: message.userName = r.readString(); break;
+                case 4: message.binaryControl = r.readBoolean(); break;
+                case 5: message.deviceId = r.readString(); break;
+                case 6: message.probeSeq = r.readInt(); break;
+                case 7: message.burstBytes = r.readInt(); break;
+                default: r.skipField(); break;
+            }
+        }
+        return message;
+    }
+
+    // =========================Getter和Setter方法
+    /**
+     * 获取消息类型
+     *
+     * @return 类型，无法识别时返回 null
+     */
+    public Type getType() {
+        if (type == null) {
+            return null;
+        }
+        try {
+            return Type.valueOf(type);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    public String getFrom() {
+        return from;
+    }
+
+    public String getDeviceName() {
+        return deviceName;
+    }
+
+    public String getUserName() {
+        return userName;
+    }
+
+    public String getDeviceId() {
+        return deviceId;
+    }
+
+    public int getProbeSeq() {
+        return probeSeq != null ? probeSeq : 0;
+    }
+
+    public int getBurstBytes() {
+        return burstBytes != null ? burstBytes : 0;
+    }
+
+    public boolean isBinaryControl() {
+        return binaryControl != null && binaryControl;
+    }
+
+    public void setBinaryControl(boolean binaryControl) {
+        this.binaryControl = binaryControl;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("ControlMessage{type=%s, from=%s}", type, from);
+    }
+}
@@ -0,0 +1,129 @@
+package com.lanshare.network.protocol;
+
+/**
+ * 发现报文二进制编解码器
+ *
+ * 原来每 5 秒的 PRESENCE 和 HEARTBEAT 都是完整的 Gson JSON（约 200 字节），接收方对每个报文
+ * 都要解码字符串、反射解析 JSON、新建 DeviceInfo，即使发送方早已在设备列表中。
+ *
+ * 二进制格式：
+ *
+ * <pre>
+ * [2 byte 魔数 0xD5 0x1C][1 byte 版本][1 byte 类型][8 byte 设备键（大端）]   ← 固定 12 字节头部
+ * HEARTBEAT：只有头部
+ * PRESENCE / GOODBYE / QUERY：头部 + 身份字段（与 ControlCodec 相同的 标签-值 编码，不认识的字段跳过）
+ *   1 deviceId  2 deviceName  3 userName  4 ipAddress  5 port
+ * </pre>
+ *
+ * 设备键是设备ID的 64 位 FNV-1a 哈希，接收方用它在注册表中直接定位已知设备：
+ * 心跳的处理只需读头部、按键查表、刷新最后在线时间，不创建任何对象。
+ * 身份信息只在 PRESENCE 中携带，本机信息变化时立即发送一次 PRESENCE。
+ *
+ * 0xD5 后面跟 0x1C 不是合法的 UTF-8 序列，接收方按首字节区分二进制和旧版本的 JSON。
+ * 旧版本只认 JSON，所以发送端默认仍发 JSON，discovery.format=BINARY 时才使用本格式（见 NetworkConfig.isBinaryDiscovery）。
+ */
+public final class DiscoveryCodec {
+
+    public static final byte MAGIC_0 = (byte) 0xD5;
+    public static final byte MAGIC_1 = (byte) 0x1C;
+    public static final int VERSION = 1;
+    public static final int HEADER_LENGTH = 12;
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    /** values() 每次都复制数组，缓存一份供 peekType 使用 */
+    private static final DiscoveryMessage.MessageType[] TYPES = DiscoveryMessage.MessageType.values();
+
+    private DiscoveryCodec() {
+    }
+
+    // ==================== 设备键 ====================
+
+    /**
+     * 设备ID的 64 位键（FNV-1a，按字符计算，不分配内存；结果不为 0，0 在索引中表示空位）
+     */
+    public static long deviceKey(CharSequence deviceId) {
+        long h = FNV_OFFSET;
+        for (int i = 0; i < deviceId.length(); i++) {
+            h ^= deviceId.charAt(i);
+            h *= FNV_PRIME;
+        }
+        return h != 0 ? h : 1;
+    }
+
+    // ==================== 头部 ====================
+
+    /**
+     * 判断是否为二进制发现报文（否则按旧版本 JSON 处理）
+     */
+    public static boolean isBinary(byte[] data, int length) {
+        return length >= 2 && data[0] == MAGIC_0 && data[1] == MAGIC_1;
+    }
+
+    /**
+     * 读取报文类型（不分配内存）
+     *
+     * @return 消息类型；报文不完整、版本不支持或类型未知时返回 null
+     */
+    public static DiscoveryMessage.MessageType peekType(byte[] data, int length) {
+        if (length < HEADER_LENGTH || !isBinary(data, length) || data[2] != VERSION) {
+            return null;
+        }
+        int type = data[3] - 1;
+        return type >= 0 && type < TYPES.length ? TYPES[type] : null;
+    }
+
+    /**
+     * 读取设备键（调用前需确认 {@link #peekType} 不为 null）
+     */
+    public static long peekDeviceKey(byte[] data) {
+        long key = 0;
+        for (int i = 4; i < HEADER_LENGTH; i++) {
+            key = key << 8 | (data[i] & 0xFF);
+        }
+        return key;
+    }
+
+    // ==================== 编码 ====================
+
+    /**
+     * 编码发现消息：HEARTBEAT 只有头部，其他类型带身份字段
+     */
+    public static byte[] encode(DiscoveryMessage message) {
+        ControlCodec.Writer w = new ControlCodec.Writer(96);
+        w.writeByte(MAGIC_0);
+        w.writeByte(MAGIC_1);
+        w.writeByte(VERSION);
+        w.writeByte(message.getType().ordinal() + 1);
+        long key = deviceKey(message.getDeviceId());
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            w.writeByte((int) (key >>> shift));
+        }
+        if (message.getType() != DiscoveryMessage.MessageType.HEARTBEAT) {
+            message.writeFields(w);
+        }
+        return w.toByteArray();
+    }
+
+    /**
+     * 完整解码（慢路径：PRESENCE、GOODBYE、QUERY）
+     *
+     * @throws ProtocolException 报文不完整、版本不支持、字段错误，或者是没有身份信息的 HEARTBEAT
+     */
+    public static DiscoveryMessage decode(byte[] data, int length) throws ProtocolException {
+        DiscoveryMessage.MessageType type = peekType(data, length);
+        if (type == null) {
+            throw new ProtocolException("无效的发现报文（长度 " + length + "）");
+        }
+        if (type == DiscoveryMessage.MessageType.HEARTBEAT) {
+            throw new ProtocolException("心跳报文不带身份信息");
+        }
+        DiscoveryMessage message = DiscoveryMessage.readFields(type,
+                new ControlCodec.Reader(data, HEADER_LENGTH, length - HEADER_LENGTH));
+        if (message.getDeviceId() == null || deviceKey(message.getDeviceId()) != peekDeviceKey(data)) {
+            throw new ProtocolException("设备键与设备ID不一致");
+        }
+        return message;
+    }
+}
@@ -1,11 +1,14 @@
 package com.lanshare.network.protocol;
 import com.google.gson.Gson;
 import com.lanshare.network.model.DeviceInfo;
+
+import java.util.ArrayList;
+import java.util.List;
 /**
  * 设备发现消息
  * * 这是一个数据传输对象 (DTO)，用于在局域网中通过 UDP 广播。
  * 它封装了设备进行自我介绍（上线）、保持在线（心跳）或通知下线所需的所有信息。
- * * 它将被 Gson 序列化为 JSON 字符串进行传输。
+ * * 它将被 Gson 序列化为 JSON 字符串进行传输，或由 {@link DiscoveryCodec} 编码为紧凑的二进制报文。
  */
 public class DiscoveryMessage {
     public enum MessageType{
@@ -13,7 +16,9 @@ public class DiscoveryMessage {
 
         HEARTBEAT,//设备在线时发送
 
-        GOODBYE//设备下线
+        GOODBYE,//设备下线
+
+        QUERY//询问：收到的设备在随机延迟后单播回复 PRESENCE（消息本身也带询问方的身份）
 
     }
     private MessageType type;
@@ -22,6 +27,7 @@ public class DiscoveryMessage {
     private String UserName;
     private String ipAddress;
     private int port;
+    private List<String> addresses;//所有可用地址（首个与 ipAddress 相同；旧版本消息中没有）
     private long timestamp;//时间戳
 
     private DiscoveryMessage(){
@@ -34,6 +40,7 @@ public class DiscoveryMessage {
         this.UserName = deviceInfo.getUserName();
         this.ipAddress = deviceInfo.getIpAddress();
         this.port = deviceInfo.getPort();
+        this.addresses = deviceInfo.getAddresses();
         this.timestamp = System.currentTimeMillis();
     }
     private static final Gson gson = new Gson();
@@ -46,6 +53,68 @@ public class DiscoveryMessage {
         return gson.fromJson(json, DiscoveryMessage.class);
     }
 
+    // ==================== 二进制编码 ====================
+
+    private static final int FIELD_DEVICE_ID = 1;
+    private static final int FIELD_DEVICE_NAME = 2;
+    private static final int FIELD_USER_NAME = 3;
+    private static final int FIELD_IP_ADDRESS = 4;
+    private static final int FIELD_PORT = 5;
+    private static final int FIELD_ADDRESS = 6;//除 ipAddress 外的其他地址，可重复
+
+    void writeFields(ControlCodec.Writer w) {
+        w.writeString(FIELD_DEVICE_ID, deviceId);
+        w.writeString(FIELD_DEVICE_NAME, deviceName);
+        w.writeString(FIELD_USER_NAME, UserName);
+        w.writeString(FIELD_IP_ADDRESS, ipAddress);
+        w.writeInt(FIELD_PORT, port);
+        if (addresses != null) {
+            for (String address : addresses) {
+                if (!address.equals(ipAddress)) {
+                    w.writeString(FIELD_ADDRESS, address);
+                }
+            }
+        }
+    }
+
+    static DiscoveryMessage readFields(MessageType type, ControlCodec.Reader r) throws ProtocolException {
+        DiscoveryMessage m = new DiscoveryMessage();
+        m.type = type;
+        m.timestamp = System.currentTimeMillis();
+        int field;
+        while ((field = r.nextField()) != 0) {
+            switch (field) {
+                case FIELD_DEVICE_ID:
+                    m.deviceId = r.readString();
+                    break;
+                case FIELD_DEVICE_NAME:
+                    m.deviceName = r.readString();
+                    break;
+                case FIELD_USER_NAME:
+                    m.UserName = r.readString();
+                    break;
+                case FIELD_IP_ADDRESS:
+                    m.ipAddress = r.readString();
+                    break;
+                case FIELD_PORT:
+                    m.port = r.readInt();
+                    break;
+                case FIELD_ADDRESS:
+                    if (m.addresses == null) {
+                        m.addresses = new ArrayList<>();
+                    }
+                    m.addresses.add(r.readString());
+                    break;
+                default:
+                    r.skipField();
+            }
+        }
+        if (m.addresses != null && m.ipAddress != null) {
+            m.addresses.add(0, m.ipAddress);
+        }
+        return m;
+    }
+
     //将接收到的消息转换为 DeviceInfo 对象
     public DeviceInfo toDeviceInfo(){
         return new DeviceInfo(
@@ -53,7 +122,8 @@ public class DiscoveryMessage {
                 this.deviceName,
                 this.UserName,
                 this.ipAddress,
-                this.port
+                this.port,
+                getAddresses()
         );
     }//用来更新设备列表
     public MessageType getType() {
@@ -68,6 +138,13 @@ public class DiscoveryMessage {
     public String getUserName() {
         return UserName;
     }
+    /**
+     * 对方通告的所有地址（首选地址在前）；旧版本的消息没有这个字段，返回空列表
+     */
+    public List<String> getAddresses() {
+        return addresses != null ? addresses : List.of();
+    }
+
     public String getIpAddress() {
         return ipAddress;
     }
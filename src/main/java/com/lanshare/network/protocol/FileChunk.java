@@ -66,19 +66,20 @@ public class FileChunk {
 
     //从字节数组反序列化
     public static FileChunk fromBytes(byte[] bytes) throws ProtocolException {
-        if (bytes.length < ChunkHeader.HEADER_SIZE) {
+        if (bytes.length < ChunkHeader.MIN_HEADER_SIZE) {
             throw new ProtocolException("数据太短，无法解析分片");
         }
 
-        // 1. 解析头部
-        byte[] headerBytes = new byte[ChunkHeader.HEADER_SIZE];
-        System.arraycopy(bytes, 0, headerBytes, 0, ChunkHeader.HEADER_SIZE);
-        ChunkHeader header = ChunkHeader.fromBytes(headerBytes);
+        // 1. 解析头部（v1 固定 64 字节，v2 变长）
+        java.nio.ByteBuffer buffer = java.nio.ByteBuffer.wrap(bytes);
+        ChunkHeader header = new ChunkHeader();
+        header.decodeFrom(buffer);
+        int headerLength = buffer.position();
 
         // 2. 提取数据
-        int dataLength = bytes.length - ChunkHeader.HEADER_SIZE;
+        int dataLength = bytes.length - headerLength;
         byte[] data = new byte[dataLength];
-        System.arraycopy(bytes, ChunkHeader.HEADER_SIZE, data, 0, dataLength);
+        System.arraycopy(bytes, headerLength, data, 0, dataLength);
 
         // 3. 验证数据大小
         if (dataLength != header.getChunkSize()) {
@@ -115,7 +116,7 @@ public class FileChunk {
 
       //工具方法============================
       public int getTotalSize(){
-        return ChunkHeader.HEADER_SIZE+data.length;
+        return header.getEncodedSize()+data.length;
       }
 
       //标记为最后一片
@@ -130,7 +131,8 @@ public class FileChunk {
       }
 
        public String getFormattedSize() {
-        return String.format("Header: 64B, Data: %s, Total: %s",
+        return String.format("Header: %dB, Data: %s, Total: %s",
+            header.getEncodedSize(),
             formatBytes(data.length),
             formatBytes(getTotalSize())
         );
@@ -0,0 +1,109 @@
+package com.lanshare.network.protocol;
+
+import com.lanshare.metrics.Metrics;
+import com.lanshare.metrics.jfr.ChecksumEvent;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32;
+
+/**
+ * 零拷贝分片解码器
+ *
+ * 旧路径（receiveChunk）每个分片要复制三次：
+ * 读入 byte[length] → FileChunk.fromBytes 拆出头部/数据两个数组 → ChunkHeader.fromBytes 再包装一次。
+ *
+ * 新路径：
+ * 1. 头部读入解码器自带的复用缓冲区（先读 7 字节判断 v1/v2 头部长度），原地解析到复用的 ChunkHeader
+ * 2. 数据直接从流读入缓冲池中的缓冲区，CRC32 直接在该缓冲区上计算
+ * 3. 以 ByteBuffer 视图交给写入器，写完后归还缓冲池
+ *
+ * 稳定状态下每帧零分配（控制帧的命令字符串除外）。
+ * 非线程安全：每个连接使用一个解码器。
+ */
+public class FrameDecoder {
+    private final BufferPool pool;
+    private final byte[] headerBytes = new byte[ChunkHeader.MAX_HEADER_SIZE];
+    private final ByteBuffer headerView = ByteBuffer.wrap(headerBytes);
+    private final CRC32 crc32 = new CRC32();
+    private final ChunkFrame frame;
+    private String taskId; // 只用于诊断事件（帧头里只有任务ID的哈希）
+
+    public FrameDecoder(BufferPool pool) {
+        this.pool = pool;
+        this.frame = new ChunkFrame(pool);
+    }
+
+    /**
+     * 从流中解码一帧（长度前缀已由调用方读取）
+     *
+     * @param in          输入流
+     * @param frameLength 帧长度（头部 + 数据）
+     * @return 复用的帧对象
+     * @throws IOException       读取失败
+     * @throws ProtocolException 头部非法、长度不匹配或 CRC32 校验失败
+     */
+    public ChunkFrame decode(DataInputStream in, int frameLength) throws IOException, ProtocolException {
+        // 上一帧未被取走的数据先归还
+        frame.release();
+
+        if (frameLength < ChunkHeader.MIN_HEADER_SIZE) {
+            throw new ProtocolException("数据太短，无法解析分片");
+        }
+
+        // 1. 头部：先读前缀确定版本和头部长度，再读剩余部分，原地解析
+        in.readFully(headerBytes, 0, ChunkHeader.PREFIX_SIZE);
+        int headerLength = ChunkHeader.headerLength(headerBytes);
+        if (headerLength > frameLength) {
+            throw new ProtocolException("数据太短，无法解析分片");
+        }
+        in.readFully(headerBytes, ChunkHeader.PREFIX_SIZE, headerLength - ChunkHeader.PREFIX_SIZE);
+        headerView.clear().limit(headerLength);
+        ChunkHeader header = frame.mutableHeader();
+        long start = System.nanoTime();
+        header.decodeFrom(headerView);
+        long decodeNanos = System.nanoTime() - start; // 只计 CPU 部分，读 socket 的时间不算在内
+
+        int dataLength = frameLength - headerLength;
+        if (dataLength != header.getChunkSize()) {
+            throw new ProtocolException(
+                    String.format("数据大小不匹配: 期望 %d 字节, 实际 %d 字节",
+                            header.getChunkSize(), dataLength));
+        }
+
+        // 2. 数据：直接读入缓冲池中的缓冲区（超过池缓冲区大小的分片临时分配）
+        ByteBuffer payload = dataLength <= pool.getBufferSize()
+                ? pool.acquire()
+                : ByteBuffer.allocate(dataLength);
+        frame.attach(payload);
+        in.readFully(payload.array(), payload.arrayOffset(), dataLength);
+        payload.limit(dataLength);
+
+        // 3. CRC32：在原缓冲区上计算，不复制
+        ChecksumEvent crcEvent = new ChecksumEvent();
+        crcEvent.begin();
+        start = System.nanoTime();
+        crc32.reset();
+        crc32.update(payload.array(), payload.arrayOffset(), dataLength);
+        int crc = (int) crc32.getValue();
+        Metrics.FRAME_DECODE.record(decodeNanos + System.nanoTime() - start);
+        crcEvent.record(taskId, "CRC32", header.getChunkIndex(), dataLength);
+        if (crc != header.getCrc32()) {
+            frame.release();
+            throw new ProtocolException(
+                    String.format("CRC32 校验失败: 分片 #%d", header.getChunkIndex()));
+        }
+        return frame;
+    }
+
+    /**
+     * 设置所属任务（写入 JFR 事件）
+     */
+    public void setTaskId(String taskId) {
+        this.taskId = taskId;
+    }
+
+    public BufferPool getPool() {
+        return pool;
+    }
+}
@@ -1,40 +1,43 @@
 package com.lanshare.network.protocol;
 
 import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
 import com.lanshare.network.config.NetworkConfig;
+import com.lanshare.network.config.TransportProfile;
 
 import java.io.*;
 import java.net.Socket;
 import java.net.SocketException;
 import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
 import java.nio.charset.StandardCharsets;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
  * 协议处理器
  * 
  * 封装 TCP Socket 的消息收发，支持：
- * 1. JSON 控制消息（TransferRequest、TransferResponse等）
+ * 1. 控制消息（TransferRequest、TransferResponse、ControlMessage），JSON 或紧凑二进制（见 ControlCodec）
  * 2. 二进制分片数据（FileChunk）
  * 
  * 特点：
  * - 线程安全：所有方法都是同步的
  * - 长度前缀：每个消息前都有长度字段，解决粘包问题
- * - 自动flush：发送后自动刷新缓冲区
+ * - 自动flush：JSON 消息发送后立即刷新；分片每帧刷新（走通道聚集写时不经过输出流）
+ * - 聚集写：Socket 由 SocketChannel 创建时（见 connect），分片以“帧头 + 数据”两段一次写出，不再拼接
  * - 清晰简洁：去掉了不必要的CRC32（TCP已有校验）
  * 
  * 使用示例：
  * 
  * <pre>
  * // 客户端
- * Socket socket = new Socket("192.168.1.100", 9999);
- * ProtocolHandler handler = new ProtocolHandler(socket);
+ * ProtocolHandler handler = ProtocolHandler.connect("192.168.1.100", 9999);
  * handler.sendJson(request.toJson());
  * String responseJson = handler.receiveJson();
  * 
  * // 服务端
- * ServerSocket server = new ServerSocket(9999);
+ * ServerSocket server = NetworkConfig.getTransportProfile().openServerSocket(9999);
  * Socket client = server.accept();
  * ProtocolHandler handler = new ProtocolHandler(client);
  * </pre>
@@ -53,6 +56,11 @@ public class ProtocolHandler implements Closeable {
      */
     private final Socket socket;
 
+    /**
+     * 传输配置档（缓冲区大小、连接超时等）
+     */
+    private final TransportProfile profile;
+
     /**
      * 数据输入流（带缓冲）
      */
@@ -64,11 +72,39 @@ public class ProtocolHandler implements Closeable {
     private final DataOutputStream output;
 
     /**
-     * Gson 实例（用于 JSON 序列化）
+     * 聚集写通道（仅当 Socket 由 SocketChannel 创建时可用，否则为 null）
+     */
+    private final GatheringByteChannel channel;
+
+    /**
+     * 帧头缓冲区（长度前缀 4 字节 + 分片头部，v1 为 64 字节，v2 最长 255 字节），在 sendLock 内复用
+     */
+    private final ByteBuffer frameHead = ByteBuffer.allocate(4 + ChunkHeader.MAX_HEADER_SIZE);
+
+    /**
+     * 聚集写数组（帧头 + 数据），在 sendLock 内复用
+     */
+    private final ByteBuffer[] gather = new ByteBuffer[2];
+
+    /**
+     * Gson 实例（用于 JSON 序列化，紧凑输出）
      */
-    private static final Gson gson = new GsonBuilder()
-            .setPrettyPrinting() // 美化输出（便于调试）
-            .create();
+    private static final Gson gson = ControlCodec.GSON;
+
+    /**
+     * 二进制控制消息编码缓冲区，在 sendLock 内复用
+     */
+    private final ControlCodec.Writer controlWriter = new ControlCodec.Writer(256);
+
+    /**
+     * 控制消息接收缓冲区，在 receiveLock 内复用（按需扩容）
+     */
+    private byte[] controlBuffer = new byte[512];
+
+    /**
+     * 最近一次收到的控制消息是否为二进制（接收方据此选择回复的编码）
+     */
+    private volatile boolean lastControlBinary = false;
 
     // ==================== 状态标志 ====================
 
@@ -84,32 +120,64 @@ public class ProtocolHandler implements Closeable {
     // ==================== 构造函数 ====================
     
     /**
-     * 构造函数
+     * 构造函数（使用配置文件中的传输配置档）
      * 
      * @param socket TCP Socket（必须已连接）
      * @throws IOException 初始化失败
      */
     public ProtocolHandler(Socket socket) throws IOException {
+        this(socket, NetworkConfig.getTransportProfile());
+    }
+
+    /**
+     * 构造函数
+     * 
+     * @param socket  TCP Socket（必须已连接）
+     * @param profile 传输配置档
+     * @throws IOException 初始化失败
+     */
+    public ProtocolHandler(Socket socket, TransportProfile profile) throws IOException {
         if (socket == null || !socket.isConnected()) {
             throw new IllegalArgumentException("Socket 必须已连接");
         }
 
         this.socket = socket;
+        this.profile = profile;
 
-        // 设置 TCP 参数
-        socket.setTcpNoDelay(true); // 禁用 Nagle 算法，减少延迟
+        // 设置 TCP 参数（禁用 Nagle、内核缓冲区、流量类别）
+        profile.applyTo(socket);
         socket.setSoTimeout(NetworkConfig.SOCKET_READ_TIMEOUT); // 设置读取超时
 
         // 创建带缓冲的输入输出流
         this.input = new DataInputStream(
-                new BufferedInputStream(socket.getInputStream(), NetworkConfig.TCP_BUFFER_SIZE));
+                new BufferedInputStream(socket.getInputStream(), profile.getStreamBufferSize()));
         this.output = new DataOutputStream(
-                new BufferedOutputStream(socket.getOutputStream(), NetworkConfig.TCP_BUFFER_SIZE));
+                new BufferedOutputStream(socket.getOutputStream(), profile.getStreamBufferSize()));
+        this.channel = socket.getChannel();
 
         logger.info(String.format("ProtocolHandler 已创建: %s:%d",
                 socket.getInetAddress().getHostAddress(), socket.getPort()));
     }
 
+    /**
+     * 建立连接（基于 SocketChannel，分片发送走聚集写路径）
+     *
+     * @param host 目标地址
+     * @param port 目标端口
+     * @return 协议处理器
+     * @throws IOException 连接失败
+     */
+    public static ProtocolHandler connect(String host, int port) throws IOException {
+        TransportProfile profile = NetworkConfig.getTransportProfile();
+        Socket socket = profile.openSocket(host, port);
+        try {
+            return new ProtocolHandler(socket, profile);
+        } catch (IOException | RuntimeException e) {
+            socket.close();
+            throw e;
+        }
+    }
+
     // ==================== JSON 消息收发 ====================
 
     /**
@@ -235,6 +303,106 @@ public class ProtocolHandler implements Closeable {
         }
     }
 
+    // ==================== 控制消息收发（JSON / 二进制自动识别） ====================
+
+    /**
+     * 发送控制消息
+     * 
+     * 格式：[4 bytes 长度][N bytes 数据]，数据为 JSON 或 ControlCodec 二进制编码。
+     * 只有确认对端支持时才应使用二进制（见 ControlCodec.isBinaryPeer / isLastControlBinary）。
+     * 
+     * @param message TransferRequest、TransferResponse 或 ControlMessage
+     * @param binary  是否使用二进制编码
+     * @throws ProtocolException 发送失败
+     */
+    public void sendControl(Object message, boolean binary) throws ProtocolException {
+        if (!binary) {
+            sendMessage(message);
+            return;
+        }
+        checkClosed();
+
+        synchronized (sendLock) {
+            try {
+                controlWriter.reset();
+                ControlCodec.encode(message, controlWriter);
+
+                output.writeInt(controlWriter.size());
+                output.write(controlWriter.array(), 0, controlWriter.size());
+                output.flush();
+
+                if (logger.isLoggable(Level.FINE)) {
+                    logger.fine(String.format("已发送二进制控制消息: %d 字节", controlWriter.size()));
+                }
+
+            } catch (SocketTimeoutException e) {
+                throw new ProtocolException("发送控制消息超时", e);
+            } catch (SocketException e) {
+                throw new ProtocolException("连接已断开", e);
+            } catch (IOException e) {
+                throw new ProtocolException("发送控制消息失败: " + e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * 接收控制消息（按首字节自动识别 JSON 和二进制）
+     * 
+     * @return TransferRequest、TransferResponse 或 ControlMessage
+     * @throws ProtocolException 接收失败或格式错误
+     */
+    public Object receiveControl() throws ProtocolException {
+        checkClosed();
+
+        synchronized (receiveLock) {
+            try {
+                // 读取长度
+                int length = input.readInt();
+
+                // 验证长度
+                if (length <= 0 || length > 10 * 1024 * 1024) { // 最大 10MB
+                    throw new ProtocolException(
+                            String.format("无效的控制消息长度: %d (应该在 1 到 10MB 之间)", length));
+                }
+
+                // 读取数据（复用缓冲区）
+                if (controlBuffer.length < length) {
+                    controlBuffer = new byte[Math.max(length, controlBuffer.length * 2)];
+                }
+                input.readFully(controlBuffer, 0, length);
+
+                if (logger.isLoggable(Level.FINE)) {
+                    logger.fine(String.format("已接收控制消息: %d 字节", length));
+                }
+
+                if (ControlCodec.isBinary(controlBuffer, length)) {
+                    lastControlBinary = true;
+                    return ControlCodec.decode(controlBuffer, 0, length);
+                }
+                lastControlBinary = false;
+                return ControlCodec.fromJson(new String(controlBuffer, 0, length, StandardCharsets.UTF_8));
+
+            } catch (SocketTimeoutException e) {
+                throw new ProtocolException("接收控制消息超时", e);
+            } catch (EOFException e) {
+                throw new ProtocolException("连接已关闭（对方主动断开）", e);
+            } catch (SocketException e) {
+                throw new ProtocolException("连接已断开", e);
+            } catch (IOException e) {
+                throw new ProtocolException("接收控制消息失败: " + e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * 最近一次收到的控制消息是否为二进制编码
+     * 
+     * 接收方用同样的编码回复，保证旧版本对端只收到 JSON。
+     */
+    public boolean isLastControlBinary() {
+        return lastControlBinary;
+    }
+
     // ==================== 二进制分片收发 ====================
 
     /**
@@ -250,37 +418,88 @@ public class ProtocolHandler implements Closeable {
      * @throws ProtocolException 发送失败
      */
     public void sendChunk(FileChunk chunk) throws ProtocolException {
+        if (chunk == null) {
+            throw new ProtocolException("分片不能为空");
+        }
+        sendChunk(chunk.getHeader(), ByteBuffer.wrap(chunk.getData()));
+    }
+
+    /**
+     * 发送文件分片（头部 + 数据缓冲区）
+     *
+     * 格式与 sendChunk(FileChunk) 相同：[4 bytes 长度][头部（v1 64 字节，v2 变长）][N bytes 数据]
+     *
+     * 长度前缀和头部编码进复用的帧头缓冲区，再与数据缓冲区一起做一次聚集写
+     * （GatheringByteChannel.write(ByteBuffer[])），不再分配“头部 + 数据”的拼接数组，
+     * 也不再经过 8KB 的 BufferedOutputStream 分段拷贝。
+     * 没有通道时（例如由 ServerSocket 接受的连接）退回到输出流，线上格式不变。
+     *
+     * 数据缓冲区的 position..limit 为分片数据，发送后 position 会前移到 limit。
+     *
+     * @param header  分片头部（chunkSize 必须等于数据长度）
+     * @param payload 分片数据
+     * @throws ProtocolException 发送失败
+     */
+    public void sendChunk(ChunkHeader header, ByteBuffer payload) throws ProtocolException {
         checkClosed();
 
-        if (chunk == null) {
+        if (header == null || payload == null) {
             throw new ProtocolException("分片不能为空");
         }
+        int dataLength = payload.remaining();
+        if (dataLength != header.getChunkSize()) {
+            throw new ProtocolException(
+                    String.format("数据大小不匹配: 期望 %d 字节, 实际 %d 字节",
+                            header.getChunkSize(), dataLength));
+        }
 
         synchronized (sendLock) {
             try {
-                // 序列化分片（头部 64 bytes + 数据）
-                byte[] data = chunk.toBytes();
-
-                // 发送长度
-                output.writeInt(data.length);
-
-                // 发送数据
-                output.write(data);
-
-                // 立即刷新（重要！确保数据立即发送）
-                output.flush();
+                // 编码帧头：长度 + 头部
+                frameHead.clear();
+                int headerLength = header.getEncodedSize();
+                frameHead.putInt(headerLength + dataLength);
+                header.encodeTo(frameHead);
+                frameHead.flip();
+
+                if (channel != null) {
+                    // 先把流里可能残留的 JSON 刷出去，保证顺序
+                    output.flush();
+                    gather[0] = frameHead;
+                    gather[1] = payload;
+                    try {
+                        while (frameHead.hasRemaining() || payload.hasRemaining()) {
+                            channel.write(gather);
+                        }
+                    } finally {
+                        gather[1] = null;
+                    }
+                } else {
+                    output.write(frameHead.array(), 0, frameHead.limit());
+                    if (payload.hasArray()) {
+                        output.write(payload.array(), payload.arrayOffset() + payload.position(), dataLength);
+                        payload.position(payload.limit());
+                    } else {
+                        while (payload.hasRemaining()) {
+                            output.write(payload.get());
+                        }
+                    }
+                    output.flush();
+                }
 
-                logger.fine(String.format("已发送分片 #%d: %d 字节",
-                        chunk.getChunkIndex(), data.length));
+                if (logger.isLoggable(Level.FINE)) {
+                    logger.fine(String.format("已发送分片 #%d: %d 字节",
+                            header.getChunkIndex(), headerLength + dataLength));
+                }
 
             } catch (SocketTimeoutException e) {
                 throw new ProtocolException(
-                        String.format("发送分片 #%d 超时", chunk.getChunkIndex()), e);
+                        String.format("发送分片 #%d 超时", header.getChunkIndex()), e);
             } catch (SocketException e) {
                 throw new ProtocolException("连接已断开", e);
             } catch (IOException e) {
                 throw new ProtocolException(
-                        String.format("发送分片 #%d 失败: %s", chunk.getChunkIndex(), e.getMessage()), e);
+                        String.format("发送分片 #%d 失败: %s", header.getChunkIndex(), e.getMessage()), e);
             }
         }
     }
@@ -301,10 +520,11 @@ public class ProtocolHandler implements Closeable {
                 // 读取长度
                 int length = input.readInt();
 
-                // 验证长度（头部 64 字节 + 数据，最大 2MB）
-                if (length < ChunkHeader.HEADER_SIZE || length > 2 * 1024 * 1024) {
+                // 验证长度（头部 + 数据，最大 2MB；v1 头部 64 字节，v2 头部变长）
+                if (length < ChunkHeader.MIN_HEADER_SIZE || length > 2 * 1024 * 1024) {
                     throw new ProtocolException(
-                            String.format("无效的分片长度: %d (应该在 64 到 2MB 之间)", length));
+                            String.format("无效的分片长度: %d (应该在 %d 到 2MB 之间)",
+                                    length, ChunkHeader.MIN_HEADER_SIZE));
                 }
 
                 // 读取数据
@@ -331,6 +551,116 @@ public class ProtocolHandler implements Closeable {
         }
     }
 
+    /**
+     * 接收文件分片（零拷贝路径）
+     *
+     * 格式与 receiveChunk 相同，但头部在解码器的复用缓冲区中原地解析，
+     * 数据直接读入缓冲池，稳定状态下每帧零分配。
+     * 返回的帧由解码器复用，下一次调用前必须 detachPayload() 或 release()。
+     *
+     * @param decoder 本连接的解码器
+     * @return 解码后的帧
+     * @throws ProtocolException 接收失败
+     */
+    public ChunkFrame receiveFrame(FrameDecoder decoder) throws ProtocolException {
+        checkClosed();
+
+        synchronized (receiveLock) {
+            try {
+                // 读取长度
+                int length = input.readInt();
+
+                // 验证长度（头部 + 数据，最大 2MB；v1 头部 64 字节，v2 头部变长）
+                if (length < ChunkHeader.MIN_HEADER_SIZE || length > 2 * 1024 * 1024) {
+                    throw new ProtocolException(
+                            String.format("无效的分片长度: %d (应该在 %d 到 2MB 之间)",
+                                    length, ChunkHeader.MIN_HEADER_SIZE));
+                }
+
+                ChunkFrame frame = decoder.decode(input, length);
+
+                if (logger.isLoggable(Level.FINE)) {
+                    logger.fine(String.format("已接收分片 #%d: %d 字节",
+                            frame.getChunkIndex(), length));
+                }
+
+                return frame;
+
+            } catch (SocketTimeoutException e) {
+                throw new ProtocolException("接收分片超时", e);
+            } catch (EOFException e) {
+                throw new ProtocolException("连接已关闭（对方主动断开）", e);
+            } catch (SocketException e) {
+                throw new ProtocolException("连接已断开", e);
+            } catch (IOException e) {
+                throw new ProtocolException("接收分片失败: " + e.getMessage(), e);
+            }
+        }
+    }
+
+    // ==================== 链路探测的突发数据 ====================
+
+    /**
+     * 填充数据（全零，只读，所有连接共用）
+     */
+    private static final byte[] FILLER = new byte[64 * 1024];
+
+    /**
+     * 发送 length 字节的填充数据并刷新（紧跟在 PROBE 消息之后，没有长度前缀）
+     *
+     * @param length 字节数
+     * @throws ProtocolException 发送失败
+     */
+    public void sendFiller(int length) throws ProtocolException {
+        checkClosed();
+
+        synchronized (sendLock) {
+            try {
+                for (int remaining = length; remaining > 0; ) {
+                    int n = Math.min(remaining, FILLER.length);
+                    output.write(FILLER, 0, n);
+                    remaining -= n;
+                }
+                output.flush();
+            } catch (SocketTimeoutException e) {
+                throw new ProtocolException("发送填充数据超时", e);
+            } catch (IOException e) {
+                throw new ProtocolException("发送填充数据失败: " + e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * 读取并丢弃 length 字节（对方 sendFiller 发送的数据）
+     *
+     * @param length 字节数
+     * @throws ProtocolException 接收失败或连接提前关闭
+     */
+    public void discard(int length) throws ProtocolException {
+        checkClosed();
+
+        synchronized (receiveLock) {
+            try {
+                for (int remaining = length; remaining > 0; ) {
+                    int n = input.skipBytes(remaining);
+                    if (n == 0) {
+                        if (input.read() < 0) {
+                            throw new EOFException();
+                        }
+                        n = 1;
+                    }
+                    remaining -= n;
+                }
+            } catch (SocketTimeoutException e) {
+                throw new ProtocolException("接收填充数据超时", e);
+            } catch (EOFException e) {
+                throw new ProtocolException("连接已关闭（填充数据不完整）", e);
+            } catch (IOException e) {
+                throw new ProtocolException("接收填充数据失败: " + e.getMessage(), e);
+            }
+        }
+    }
+
     // ==================== 连接管理 ====================
 
     /**
@@ -1,8 +1,6 @@
 package com.lanshare.network.protocol;
 
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
-
+import com.lanshare.metrics.jfr.ChecksumEvent;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
@@ -18,8 +16,10 @@ public class TransferRequest {
     private int chunkCount;// 数据块数量
     private int chunkSize;// 数据块大小
     private long timestamp;// 请求时间戳
-    // =========================Gson实例
-    private static final Gson gson = new GsonBuilder().setPrettyPrinting().create();
+    private int maxFrameVersion;// 发送方支持的最高分片帧版本（旧版本不带此字段，为 0 即 v1）
+    private String senderDeviceId;// 发送方设备ID（接收策略按此匹配信任设备，旧版本不带此字段）
+    // =========================Gson实例（紧凑输出，与 ControlCodec 共用）
+    private static final com.google.gson.Gson gson = ControlCodec.GSON;
 
     // =========================构造方法
     private TransferRequest() {
@@ -34,6 +34,7 @@ public class TransferRequest {
         this.chunkCount = chunkCount;
         this.chunkSize = chunkSize;
         this.timestamp = System.currentTimeMillis();
+        this.maxFrameVersion = ChunkHeader.CURRENT_VERSION;
     }
 
     // ===================静态工厂方法
@@ -41,7 +42,10 @@ public class TransferRequest {
         String taskId = java.util.UUID.randomUUID().toString();// 生成任务ID
         String fileName = file.getName();// 获取文件名
         long fileSize = file.length();// 获取文件大小
+        ChecksumEvent event = new ChecksumEvent();
+        event.begin();
         String md5 = calculateMD5(file);// 计算文件MD5校验值
+        event.record(taskId, "MD5", -1, fileSize);
         int chunkCount = (int) Math.ceil((double) fileSize / chunkSize);// 计算数据块数量
         return new TransferRequest(taskId, fileName, fileSize, md5, chunkCount, chunkSize);
     }
@@ -85,6 +89,39 @@ public class TransferRequest {
         return gson.fromJson(json, TransferRequest.class);
     }
 
+    // =========================二进制编解码（字段编号一旦发布不能修改）
+    void writeFields(ControlCodec.Writer w) {
+        w.writeString(1, taskId);
+        w.writeString(2, fileName);
+        w.writeLong(3, fileSize);
+        w.writeString(4, md5);
+        w.writeInt(5, chunkCount);
+        w.writeInt(6, chunkSize);
+        w.writeLong(7, timestamp);
+        w.writeInt(8, maxFrameVersion);
+        w.writeString(9, senderDeviceId);
+    }
+
+    static TransferRequest readFields(ControlCodec.Reader r) throws ProtocolException {
+        TransferRequest request = new TransferRequest();
+        int field;
+        while ((field = r.nextField()) != 0) {
+            switch (field) {
+                case 1: request.taskId = r.readString(); break;
+                case 2: request.fileName = r.readString(); break;
+                case 3: request.fileSize = r.readLong(); break;
+                case 4: request.md5 = r.readString(); break;
+                case 5: request.chunkCount = r.readInt(); break;
+                case 6: request.chunkSize = r.readInt(); break;
+                case 7: request.timestamp = r.readLong(); break;
+                case 8: request.maxFrameVersion = r.readInt(); break;
+                case 9: request.senderDeviceId = r.readString(); break;
+                default: r.skipField(); break;
+            }
+        }
+        return request;
+    }
+
     // ========================工具方法
     // 验证请求是否有效
     public boolean isValid() {
@@ -163,6 +200,23 @@ public class TransferRequest {
         return chunkSize;
     }
 
+    // 发送方支持的最高分片帧版本（不带此字段的旧版本视为 v1）
+    public int getMaxFrameVersion() {
+        return maxFrameVersion > 0 ? maxFrameVersion : ChunkHeader.VERSION_1;
+    }
+
+    public void setMaxFrameVersion(int maxFrameVersion) {
+        this.maxFrameVersion = maxFrameVersion;
+    }
+
+    public String getSenderDeviceId() {
+        return senderDeviceId;
+    }
+
+    public void setSenderDeviceId(String senderDeviceId) {
+        this.senderDeviceId = senderDeviceId;
+    }
+
     @Override
     public String toString() {
         return String.format(
@@ -1,8 +1,5 @@
 package com.lanshare.network.protocol;
 
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
-
 //文件传输响应协议
 public class TransferResponse {
     private final String type = "TRANSFER_RESPONSE";
@@ -11,10 +8,12 @@ public class TransferResponse {
     private String savePath;// 保存路径
     private String rejectReason;// 拒绝原因
     private long existingOffset = 0; // 已存在的文件大小（用于断点续传）
+    private int frameVersion; // 协商后的分片帧版本（旧版本不带此字段，为 0 即 v1）
+    private boolean binaryControl; // 接收方是否支持二进制控制消息（见 ControlCodec）
     private long timestamp;// 时间戳
 
-    // ==========================Gsons实例
-    private static final Gson GSON = new GsonBuilder().setPrettyPrinting().create();
+    // ==========================Gsons实例（紧凑输出，与 ControlCodec 共用）
+    private static final com.google.gson.Gson GSON = ControlCodec.GSON;
 
     // ==========================构造方法
     public TransferResponse() {
@@ -63,6 +62,7 @@ public class TransferResponse {
         public static final String FILE_TYPE_NOT_SUPPORTED = "文件类型不支持";
         public static final String BUSY = "正在传输其他文件";
         public static final String DUPLICATE_FILE = "文件已存在";
+        public static final String FILE_TOO_LARGE = "文件超过大小限制";
         public static final String UNKNOWN = "未知原因";
     }
 
@@ -81,6 +81,37 @@ public class TransferResponse {
         return GSON.fromJson(json, TransferResponse.class);
     }
 
+    // ===================二进制编解码（字段编号一旦发布不能修改）
+    void writeFields(ControlCodec.Writer w) {
+        w.writeString(1, taskId);
+        w.writeBoolean(2, accepted);
+        w.writeString(3, savePath);
+        w.writeString(4, rejectReason);
+        w.writeLong(5, existingOffset);
+        w.writeLong(6, timestamp);
+        w.writeInt(7, frameVersion);
+        w.writeBoolean(8, binaryControl);
+    }
+
+    static TransferResponse readFields(ControlCodec.Reader r) throws ProtocolException {
+        TransferResponse response = new TransferResponse();
+        int field;
+        while ((field = r.nextField()) != 0) {
+            switch (field) {
+                case 1: response.taskId = r.readString(); break;
+                case 2: response.accepted = r.readBoolean(); break;
+                case 3: response.savePath = r.readString(); break;
+                case 4: response.rejectReason = r.readString(); break;
+                case 5: response.existingOffset = r.readLong(); break;
+                case 6: response.timestamp = r.readLong(); break;
+                case 7: response.frameVersion = r.readInt(); break;
+                case 8: response.binaryControl = r.readBoolean(); break;
+                default: r.skipField(); break;
+            }
+        }
+        return response;
+    }
+
     // =============================工具方法
     public boolean isValid() {
         if (taskId == null || taskId.isEmpty()) {
@@ -106,6 +137,25 @@ public class TransferResponse {
         return existingOffset;
     }
 
+    // 协商后的分片帧版本（不带此字段的旧版本视为 v1）
+    public int getFrameVersion() {
+        return frameVersion > 0 ? frameVersion : ChunkHeader.VERSION_1;
+    }
+
+    // 接收方是否支持二进制控制消息
+    public boolean isBinaryControl() {
+        return binaryControl;
+    }
+
+    public void setBinaryControl(boolean binaryControl) {
+        this.binaryControl = binaryControl;
+    }
+
+    // 按发送方支持的最高版本和本端能力选择帧版本
+    public void negotiateFrameVersion(int peerMaxVersion) {
+        this.frameVersion = Math.min(Math.max(peerMaxVersion, ChunkHeader.VERSION_1), ChunkHeader.CURRENT_VERSION);
+    }
+
     // ===================Getter
     public String getType() {
         return type;
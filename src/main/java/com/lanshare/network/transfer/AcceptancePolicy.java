@@ -0,0 +1,492 @@
+package com.lanshare.network.transfer;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+import com.lanshare.network.protocol.TransferRequest;
+import com.lanshare.network.protocol.TransferResponse;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Logger;
+
+/**
+ * 接收策略引擎
+ *
+ * 原来每个传输请求都要在工作线程里等待 JavaFX 弹窗（是否接受 + 选择保存位置），
+ * 发送方的连接在此期间空闲，无人值守的接收端永远不会接受。
+ * 策略引擎在收到 TransferRequest 时立即给出结论，不接触 UI 线程；
+ * 只有没有规则匹配时才回退到弹窗询问。
+ *
+ * 配置文件 acceptance-policy.json（程序工作目录，不存在时所有请求都回退到询问）：
+ *
+ * <pre>
+ * {
+ *   "defaultAction": "PROMPT",          // 未匹配信任设备时：PROMPT / ACCEPT / REJECT
+ *   "saveDirectory": "D:/LanShare",     // 自动接受时的默认保存目录（为空时使用 ~/Downloads）
+ *   "autoRename": true,                 // 同名文件自动改名为 "name (1).ext"；false 时拒绝
+ *   "maxFileSize": 0,                   // 全局大小上限（字节），0 表示不限制
+ *   "allowedExtensions": [],            // 全局允许的扩展名，空表示不限制
+ *   "blockedExtensions": ["exe", "bat"],// 全局禁止的扩展名
+ *   "trustedDevices": {
+ *     "a1b2c3...": {                    // 键为发送方设备ID（见 DeviceInfo.getDeviceId）
+ *       "name": "书房台式机",
+ *       "ip": "192.168.1.20",           // 必填：来源 IP 必须一致，设备ID 由发送方自报，任何主机都能冒用
+ *       "saveDirectory": "D:/LanShare/desktop",
+ *       "maxFileSize": 0,
+ *       "allowedExtensions": [],
+ *       "blockedExtensions": []
+ *     }
+ *   }
+ * }
+ * </pre>
+ *
+ * 判定顺序：
+ * 1. 全局大小/类型限制，违反则直接拒绝（对所有设备生效）
+ * 2. 信任设备规则（设备ID 和来源 IP 都匹配）：先检查该设备自己的限制，通过则自动接受到该设备的保存目录；
+ *    没有配置 ip 的规则不生效，只记录警告
+ * 3. 其他请求按 defaultAction 处理
+ *
+ * 自动接受时的保存路径：文件名去掉路径部分；同名文件如果是本次传输的未完成文件（续传标记匹配）则直接续传，
+ * 否则按 autoRename 改名或拒绝。已分配但尚未结束的路径会被占用，并发接收同名文件不会互相覆盖，
+ * 传输结束后调用 release 释放。
+ *
+ * 线程安全：规则加载后只读；路径分配在同一把锁内完成
+ */
+public class AcceptancePolicy {
+    private static final Logger logger = Logger.getLogger(AcceptancePolicy.class.getName());
+    public static final String POLICY_FILE = "acceptance-policy.json";
+    private static AcceptancePolicy instance;
+
+    /**
+     * 判定动作
+     */
+    public enum Action {
+        ACCEPT, // 自动接受，savePath 已分配
+        REJECT, // 直接拒绝，reason 为 TransferResponse.RejectReason 中的原因
+        PROMPT  // 没有规则匹配，交给用户决定
+    }
+
+    /**
+     * 判定结果
+     */
+    public static final class Decision {
+        private final Action action;
+        private final String savePath;
+        private final String reason;
+        private final String rule;
+
+        private Decision(Action action, String savePath, String reason, String rule) {
+            this.action = action;
+            this.savePath = savePath;
+            this.reason = reason;
+            this.rule = rule;
+        }
+
+        static Decision accept(String savePath, String rule) {
+            return new Decision(Action.ACCEPT, savePath, null, rule);
+        }
+
+        static Decision reject(String reason, String rule) {
+            return new Decision(Action.REJECT, null, reason, rule);
+        }
+
+        static Decision prompt() {
+            return new Decision(Action.PROMPT, null, null, null);
+        }
+
+        public Action getAction() {
+            return action;
+        }
+
+        /**
+         * 自动接受时分配的保存路径（绝对路径）
+         */
+        public String getSavePath() {
+            return savePath;
+        }
+
+        public String getReason() {
+            return reason;
+        }
+
+        /**
+         * 命中的规则描述（用于日志）
+         */
+        public String getRule() {
+            return rule;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Decision{action=%s, savePath=%s, reason=%s, rule=%s}",
+                    action, savePath, reason, rule);
+        }
+    }
+
+    /**
+     * 大小与类型限制（全局和信任设备共用）
+     */
+    public static class Limits {
+        long maxFileSize;// 0 表示不限制
+        List<String> allowedExtensions = new ArrayList<>();
+        List<String> blockedExtensions = new ArrayList<>();
+
+        /**
+         * @return 违反限制时返回拒绝原因，否则返回 null
+         */
+        String check(TransferRequest request) {
+            if (maxFileSize > 0 && request.getFileSize() > maxFileSize) {
+                return TransferResponse.RejectReason.FILE_TOO_LARGE;
+            }
+            String ext = extensionOf(request.getFileName());
+            if (containsIgnoreCase(blockedExtensions, ext)) {
+                return TransferResponse.RejectReason.FILE_TYPE_NOT_SUPPORTED;
+            }
+            if (allowedExtensions != null && !allowedExtensions.isEmpty()
+                    && !containsIgnoreCase(allowedExtensions, ext)) {
+                return TransferResponse.RejectReason.FILE_TYPE_NOT_SUPPORTED;
+            }
+            return null;
+        }
+    }
+
+    /**
+     * 信任设备规则
+     */
+    public static class DeviceRule extends Limits {
+        String name;// 备注名
+        String ip;// 必填：要求来源 IP 一致
+        String saveDirectory;// 为空时使用全局目录
+    }
+
+    /**
+     * 配置文件的结构（字段名即 JSON 键名）
+     */
+    static class Config extends Limits {
+        Action defaultAction = Action.PROMPT;
+        String saveDirectory;
+        boolean autoRename = true;
+        Map<String, DeviceRule> trustedDevices = new LinkedHashMap<>();
+    }
+
+    private final Gson gson = new GsonBuilder().setPrettyPrinting().create();
+    private final File configFile;
+    private volatile Config config = new Config();
+    // 已分配给进行中接收任务的路径（规范化后的绝对路径）
+    private final Set<String> claimedPaths = new HashSet<>();
+
+    /**
+     * 使用指定的配置文件创建策略（文件不存在时使用空策略）
+     */
+    public AcceptancePolicy(File configFile) {
+        this.configFile = configFile;
+        reload();
+    }
+
+    public static synchronized AcceptancePolicy getInstance() {
+        if (instance == null) {
+            instance = new AcceptancePolicy(new File(".", POLICY_FILE));
+        }
+        return instance;
+    }
+
+    /**
+     * 重新加载配置文件（格式错误时保留原配置）
+     */
+    public void reload() {
+        if (configFile == null || !configFile.exists()) {
+            logger.info("接收策略文件不存在，所有请求都需要确认");
+            return;
+        }
+        try (Reader reader = new InputStreamReader(new FileInputStream(configFile), StandardCharsets.UTF_8)) {
+            Config loaded = gson.fromJson(reader, Config.class);
+            if (loaded == null) {
+                return;
+            }
+            if (loaded.defaultAction == null) {
+                loaded.defaultAction = Action.PROMPT;
+            }
+            if (loaded.trustedDevices == null) {
+                loaded.trustedDevices = new LinkedHashMap<>();
+            }
+            config = loaded;
+            logger.info("加载接收策略: 信任设备 " + loaded.trustedDevices.size()
+                    + " 个, 默认动作 " + loaded.defaultAction);
+        } catch (IOException | JsonParseException e) {
+            logger.warning("加载接收策略失败: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 保存当前配置
+     */
+    public void save() {
+        if (configFile == null) {
+            return;
+        }
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(configFile), StandardCharsets.UTF_8)) {
+            gson.toJson(config, writer);
+        } catch (IOException e) {
+            logger.warning("保存接收策略失败: " + e.getMessage());
+        }
+    }
+
+    // ==================== 判定 ====================
+
+    /**
+     * 对传输请求给出判定（不阻塞，不接触 UI）
+     *
+     * 返回 ACCEPT 时保存路径已被占用，传输结束后（无论成功与否）必须调用 release(savePath)。
+     *
+     * @param request  传输请求
+     * @param remoteIp 发送方连接的来源 IP
+     * @return 判定结果
+     */
+    public Decision evaluate(TransferRequest request, String remoteIp) {
+        Config c = config;
+
+        String violation = c.check(request);
+        if (violation != null) {
+            return Decision.reject(violation, "全局限制");
+        }
+
+        DeviceRule rule = findTrustedDevice(request.getSenderDeviceId(), remoteIp);
+        if (rule != null) {
+            String ruleName = "信任设备 " + (rule.name != null ? rule.name : request.getSenderDeviceId());
+            violation = rule.check(request);
+            if (violation != null) {
+                return Decision.reject(violation, ruleName);
+            }
+            String dir = rule.saveDirectory != null && !rule.saveDirectory.isEmpty()
+                    ? rule.saveDirectory : c.saveDirectory;
+            return allocate(request, dir, c.autoRename, ruleName);
+        }
+
+        switch (c.defaultAction) {
+            case ACCEPT:
+                return allocate(request, c.saveDirectory, c.autoRename, "默认接受");
+            case REJECT:
+                return Decision.reject(TransferResponse.RejectReason.USER_DECLINED, "默认拒绝");
+            default:
+                return Decision.prompt();
+        }
+    }
+
+    /**
+     * 连接请求（CONNECT）是否可以自动接受：发送方是信任设备
+     */
+    public boolean isTrusted(String deviceId, String remoteIp) {
+        return findTrustedDevice(deviceId, remoteIp) != null;
+    }
+
+    /**
+     * 释放 evaluate 分配的保存路径
+     */
+    public void release(String savePath) {
+        if (savePath == null) {
+            return;
+        }
+        synchronized (claimedPaths) {
+            claimedPaths.remove(canonicalKey(new File(savePath)));
+        }
+    }
+
+    private DeviceRule findTrustedDevice(String deviceId, String remoteIp) {
+        if (deviceId == null || deviceId.isEmpty()) {
+            return null;
+        }
+        DeviceRule rule = config.trustedDevices.get(deviceId);
+        if (rule == null) {
+            return null;
+        }
+        // 设备ID 是请求里发送方自己填的，只凭它自动接受等于对整个局域网开放，必须同时绑定来源 IP
+        if (rule.ip == null || rule.ip.isEmpty()) {
+            logger.warning("信任设备 " + deviceId + " 没有配置 ip，不自动接受（设备ID 可被冒用）");
+            return null;
+        }
+        if (!rule.ip.equals(remoteIp)) {
+            logger.warning("设备ID " + deviceId + " 的来源 IP 不匹配: " + remoteIp);
+            return null;
+        }
+        return rule;
+    }
+
+    /**
+     * 在目录中为文件分配保存路径
+     */
+    private Decision allocate(TransferRequest request, String directory, boolean autoRename, String rule) {
+        File dir = directory != null && !directory.isEmpty() ? new File(directory) : defaultDirectory();
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            logger.warning("无法创建保存目录: " + dir);
+            return Decision.prompt();
+        }
+        String name = new File(request.getFileName()).getName(); // 去掉发送方带来的路径部分
+        if (name.isEmpty() || name.equals(".") || name.equals("..")) {
+            name = request.getTaskId();
+        }
+
+        synchronized (claimedPaths) {
+            File target = new File(dir, name);
+            // 本次传输的未完成文件：直接续传，不改名。
+            // 必须有续传标记且大小 / MD5 一致（resolveResumeOffset 会校验）；没有标记的同名文件是用户自己的文件，
+            // 即使比传入文件小也不能续传进去，按 autoRename 改名或拒绝
+            if (!isClaimed(target) && target.exists() && FilePreallocator.markerOf(target).exists()
+                    && FilePreallocator.resolveResumeOffset(target, request.getFileSize(), request.getMd5()) > 0) {
+                claim(target);
+                return Decision.accept(target.getAbsolutePath(), rule + "（续传）");
+            }
+            if (!isClaimed(target) && !target.exists()) {
+                claim(target);
+                return Decision.accept(target.getAbsolutePath(), rule);
+            }
+            if (!autoRename) {
+                return Decision.reject(TransferResponse.RejectReason.DUPLICATE_FILE, rule);
+            }
+            int dot = name.lastIndexOf('.');
+            String base = dot > 0 ? name.substring(0, dot) : name;
+            String ext = dot > 0 ? name.substring(dot) : "";
+            for (int i = 1; i < 10000; i++) {
+                File candidate = new File(dir, base + " (" + i + ")" + ext);
+                if (!isClaimed(candidate) && !candidate.exists()
+                        && !FilePreallocator.markerOf(candidate).exists()) {
+                    claim(candidate);
+                    return Decision.accept(candidate.getAbsolutePath(), rule + "（重命名）");
+                }
+            }
+        }
+        return Decision.reject(TransferResponse.RejectReason.DUPLICATE_FILE, rule);
+    }
+
+    private boolean isClaimed(File file) {
+        return claimedPaths.contains(canonicalKey(file));
+    }
+
+    private void claim(File file) {
+        claimedPaths.add(canonicalKey(file));
+    }
+
+    private static String canonicalKey(File file) {
+        try {
+            return file.getCanonicalPath();
+        } catch (IOException e) {
+            return file.getAbsolutePath();
+        }
+    }
+
+    private static File defaultDirectory() {
+        File home = new File(System.getProperty("user.home", "."));
+        File downloads = new File(home, "Downloads");
+        return downloads.isDirectory() ? downloads : home;
+    }
+
+    private static String extensionOf(String fileName) {
+        if (fileName == null) {
+            return "";
+        }
+        int dot = fileName.lastIndexOf('.');
+        return dot >= 0 && dot < fileName.length() - 1 ? fileName.substring(dot + 1) : "";
+    }
+
+    private static boolean containsIgnoreCase(List<String> list, String ext) {
+        if (list == null) {
+            return false;
+        }
+        for (String s : list) {
+            if (s != null) {
+                String e = s.startsWith(".") ? s.substring(1) : s;
+                if (e.toLowerCase(Locale.ROOT).equals(ext.toLowerCase(Locale.ROOT))) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    // ==================== 配置修改 ====================
+
+    /**
+     * 添加或更新信任设备（立即生效，需要持久化时调用 save）
+     *
+     * @param deviceId      设备ID
+     * @param name          备注名
+     * @param ip            来源 IP（必填，为空时规则不生效）
+     * @param saveDirectory 保存目录（null 使用全局目录）
+     */
+    public synchronized void trustDevice(String deviceId, String name, String ip, String saveDirectory) {
+        Config copy = copyConfig();
+        DeviceRule rule = new DeviceRule();
+        rule.name = name;
+        rule.ip = ip;
+        rule.saveDirectory = saveDirectory;
+        copy.trustedDevices.put(deviceId, rule);
+        config = copy;
+    }
+
+    public synchronized void untrustDevice(String deviceId) {
+        Config copy = copyConfig();
+        copy.trustedDevices.remove(deviceId);
+        config = copy;
+    }
+
+    public synchronized void setDefaultAction(Action action) {
+        Config copy = copyConfig();
+        copy.defaultAction = action != null ? action : Action.PROMPT;
+        config = copy;
+    }
+
+    public synchronized void setSaveDirectory(String saveDirectory) {
+        Config copy = copyConfig();
+        copy.saveDirectory = saveDirectory;
+        config = copy;
+    }
+
+    public synchronized void setAutoRename(boolean autoRename) {
+        Config copy = copyConfig();
+        copy.autoRename = autoRename;
+        config = copy;
+    }
+
+    /**
+     * 设置全局限制
+     *
+     * @param maxFileSize       大小上限（0 表示不限制）
+     * @param allowedExtensions 允许的扩展名（null 或空表示不限制）
+     * @param blockedExtensions 禁止的扩展名
+     */
+    public synchronized void setLimits(long maxFileSize, List<String> allowedExtensions,
+            List<String> blockedExtensions) {
+        Config copy = copyConfig();
+        copy.maxFileSize = maxFileSize;
+        copy.allowedExtensions = allowedExtensions != null ? new ArrayList<>(allowedExtensions) : new ArrayList<>();
+        copy.blockedExtensions = blockedExtensions != null ? new ArrayList<>(blockedExtensions) : new ArrayList<>();
+        config = copy;
+    }
+
+    public Action getDefaultAction() {
+        return config.defaultAction;
+    }
+
+    public Set<String> getTrustedDeviceIds() {
+        return new HashSet<>(config.trustedDevices.keySet());
+    }
+
+    // 写时复制：判定线程始终看到一份完整的配置
+    private Config copyConfig() {
+        return gson.fromJson(gson.toJson(config), Config.class);
+    }
+}
@@ -0,0 +1,227 @@
+package com.lanshare.network.transfer;
+
+import com.lanshare.metrics.Metrics;
+import com.lanshare.network.protocol.BufferPool;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.NoSuchElementException;
+
+/**
+ * 惰性分片源
+ *
+ * 按需从文件的 [start, 声明大小) 区间读出分片，每次只占用一个缓冲池缓冲区，
+ * 取代旧的 TransferTask.getChunks（一次把整个文件读进 List，多 GB 文件会 OOM）。
+ *
+ * 特点：
+ * - 惰性：next() 时才读盘，内存占用受缓冲池上限约束
+ * - 可续传：可以从任意偏移开始，getPosition() 即下一次要读的位置
+ * - 按声明大小读取：范围和最后一片都以 TransferRequest 里告诉接收方的大小为准，
+ *   文件在请求之后变长时多出的部分不发送，变短时立即失败，不会越界也不会把短文件标记为完成
+ * - 分片索引按文件全局偏移计算（offset / chunkSize），与接收端一致
+ *
+ * 使用示例：
+ *
+ * <pre>
+ * try (ChunkSource source = task.openChunkSource(offset, NetworkConfig.CHUNK_SIZE, pool)) {
+ *     while (source.hasNext()) {
+ *         ChunkSource.Chunk chunk = source.next();
+ *         try {
+ *             handler.sendChunk(header, chunk.getData());
+ *         } finally {
+ *             chunk.release();
+ *         }
+ *     }
+ * }
+ * </pre>
+ *
+ * 非线程安全：一个分片源只由一个线程消费。
+ */
+public class ChunkSource implements Closeable {
+
+    /**
+     * 一个已读出的分片
+     *
+     * 数据缓冲区来自缓冲池，用完后必须 release()。
+     */
+    public static final class Chunk {
+        private final int index;
+        private final long offset;
+        private final boolean lastInFile;
+        private final BufferPool pool;
+        private ByteBuffer data;
+
+        private Chunk(int index, long offset, boolean lastInFile, BufferPool pool, ByteBuffer data) {
+            this.index = index;
+            this.offset = offset;
+            this.lastInFile = lastInFile;
+            this.pool = pool;
+            this.data = data;
+        }
+
+        public int getIndex() {
+            return index;
+        }
+
+        public long getOffset() {
+            return offset;
+        }
+
+        /**
+         * 是否为整个文件的最后一片（按声明的文件大小判断）
+         */
+        public boolean isLastInFile() {
+            return lastInFile;
+        }
+
+        /**
+         * 数据视图（position=0, limit=分片长度）
+         */
+        public ByteBuffer getData() {
+            return data;
+        }
+
+        public int getSize() {
+            return data != null ? data.limit() : 0;
+        }
+
+        /**
+         * 归还缓冲区（多次调用是安全的）
+         */
+        public void release() {
+            if (data != null) {
+                pool.release(data);
+                data = null;
+            }
+        }
+    }
+
+    private final FileChannel channel;
+    private final long fileSize;
+    private final long start;
+    private final int chunkSize;
+    private final BufferPool pool;
+    private long position;
+
+    /**
+     * 打开文件的分片源
+     *
+     * @param filePath  文件路径
+     * @param fileSize  声明的文件大小（TransferRequest.getFileSize，接收方按它校验分片范围和 MD5）
+     * @param start     起始偏移（断点续传时为已传输的字节数）
+     * @param chunkSize 分片大小（不能超过缓冲池的缓冲区大小）
+     * @param pool      缓冲池
+     * @return 覆盖 [start, fileSize) 的分片源
+     * @throws IOException 打开文件失败，或文件已经比声明的大小短
+     */
+    public static ChunkSource open(String filePath, long fileSize, long start, int chunkSize, BufferPool pool)
+            throws IOException {
+        FileChannel channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.READ);
+        try {
+            long actual = channel.size();
+            if (actual < fileSize) {
+                throw new EOFException(String.format("文件在发送请求之后被截断: 声明 %d 字节, 实际 %d 字节",
+                        fileSize, actual));
+            }
+            return new ChunkSource(channel, fileSize, Math.min(start, fileSize), chunkSize, pool);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private ChunkSource(FileChannel channel, long fileSize, long start, int chunkSize, BufferPool pool) {
+        if (chunkSize <= 0 || chunkSize > pool.getBufferSize()) {
+            throw new IllegalArgumentException("分片大小必须在 1 到缓冲区大小之间");
+        }
+        if (start < 0 || start > fileSize) {
+            throw new IllegalArgumentException(String.format("无效的区间: [%d, %d)", start, fileSize));
+        }
+        this.channel = channel;
+        this.fileSize = fileSize;
+        this.start = start;
+        this.chunkSize = chunkSize;
+        this.pool = pool;
+        this.position = start;
+    }
+
+    /**
+     * 是否还有分片
+     */
+    public boolean hasNext() {
+        return position < fileSize;
+    }
+
+    /**
+     * 读出下一个分片
+     *
+     * 分片不会跨越 chunkSize 的整数倍边界，因此从非对齐偏移续传时第一片会短一些，
+     * 之后的分片索引与从头传输时完全一致。
+     * 缓冲池耗尽时阻塞，直到有分片被 release。
+     *
+     * @return 分片（用完后必须 release）
+     * @throws IOException 读取失败或文件被截断
+     */
+    public Chunk next() throws IOException {
+        if (!hasNext()) {
+            throw new NoSuchElementException("分片已读完");
+        }
+        long offset = position;
+        long boundary = (offset / chunkSize + 1) * chunkSize;
+        int size = (int) (Math.min(boundary, fileSize) - offset);
+
+        ByteBuffer buffer = pool.acquire();
+        try {
+            buffer.limit(size);
+            long start = System.nanoTime();
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, offset + buffer.position()) < 0) {
+                    throw new EOFException("文件在传输过程中被截断");
+                }
+            }
+            Metrics.DISK_READ.recordSince(start);
+            buffer.flip();
+        } catch (IOException | RuntimeException e) {
+            pool.release(buffer);
+            throw e;
+        }
+
+        position = offset + size;
+        return new Chunk((int) (offset / chunkSize), offset, position >= fileSize, pool, buffer);
+    }
+
+    /**
+     * 下一次要读取的文件偏移（可用于记录续传位置）
+     */
+    public long getPosition() {
+        return position;
+    }
+
+    public long getStart() {
+        return start;
+    }
+
+    public long getFileSize() {
+        return fileSize;
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("ChunkSource{range=[%d, %d), position=%d, chunkSize=%d}",
+                start, fileSize, position, chunkSize);
+    }
+}
@@ -0,0 +1,440 @@
+package com.lanshare.network.transfer;
+
+import com.lanshare.metrics.Metrics;
+import com.lanshare.metrics.jfr.DiskWriteEvent;
+import com.lanshare.network.config.NetworkConfig;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Logger;
+
+/**
+ * 异步落盘写入器（write-behind）
+ *
+ * 接收端的网络线程只负责把分片放入有界队列，由专门的写线程使用 FileChannel 按位置写入磁盘。
+ * 这样磁盘偶尔的卡顿不会直接堵住 TCP 接收窗口，网络抖动也不会让磁盘空闲。
+ *
+ * 特点：
+ * - 有界队列：队列满时网络线程阻塞，内存占用 = 队列长度 × 分片大小
+ * - 位置写入：每个分片携带文件偏移，支持乱序/并行写
+ * - force 策略：NEVER（交给操作系统）、PERIODIC（定期）、ON_COMPLETE（完成时）
+ * - 零分配：队列是预先分配的环形数组，按顺序到达的分片不产生新对象
+ * - 续传检查点：记录从起点开始连续写完的位置，只有 force 之后的连续位置才算落盘（见 checkpoint）
+ * - 写线程因任何原因退出（IO 错误、运行时异常、中断）都会记录失败并唤醒 submit / finish，不会挂住接收
+ *
+ * 使用示例：
+ *
+ * <pre>
+ * try (ChunkWriter writer = new ChunkWriter(raf.getChannel())) {
+ *     writer.submit(offset, buffer);
+ *     ...
+ *     writer.finish(); // 等待全部写完并按策略 force
+ * }
+ * </pre>
+ */
+public class ChunkWriter implements Closeable {
+    private static final Logger logger = Logger.getLogger(ChunkWriter.class.getName());
+
+    /**
+     * 落盘（force）策略
+     */
+    public enum ForcePolicy {
+        NEVER,       // 从不主动 force，吞吐最高；没有落盘保证，续传检查点也不会前进
+        PERIODIC,    // 每隔一段时间 force 一次，完成时再 force 一次
+        ON_COMPLETE; // 仅在传输完成时 force 一次
+
+        /**
+         * 从配置字符串解析，无法识别时返回 ON_COMPLETE
+         */
+        public static ForcePolicy parse(String value) {
+            if (value != null) {
+                for (ForcePolicy p : values()) {
+                    if (p.name().equalsIgnoreCase(value.trim())) {
+                        return p;
+                    }
+                }
+            }
+            return ON_COMPLETE;
+        }
+    }
+
+    /**
+     * 缓冲区回收回调：分片写完后把缓冲区交还给调用方（例如缓冲池）
+     */
+    @FunctionalInterface
+    public interface BufferRecycler {
+        void recycle(ByteBuffer buffer);
+    }
+
+    private final FileChannel channel;
+    private final ForcePolicy forcePolicy;
+    private final long forceIntervalNanos;
+    private final BufferRecycler recycler;
+
+    // ==================== 环形队列 ====================
+    private final long[] positions;
+    private final ByteBuffer[] buffers;
+    private int head = 0;  // 下一个出队位置
+    private int tail = 0;  // 下一个入队位置
+    private int count = 0;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+    private final Condition drained = lock.newCondition();
+    private boolean inFlight = false; // 写线程是否正在写一个已出队的分片
+
+    private final Thread writerThread;
+    private volatile boolean closed = false;
+    private volatile IOException failure;
+    // 从起点开始连续写完的位置（只由写线程推进）；乱序写完的区间暂存在 pendingRanges 里等待合并
+    private volatile long contiguousOffset = 0;
+    private final TreeMap<Long, Long> pendingRanges = new TreeMap<>();
+    // 最近一次 force 之前已经连续写完的位置，续传标记只能记录这个位置
+    private final AtomicLong durableOffset = new AtomicLong(0);
+    private volatile long writtenBytes = 0;
+    private long lastForceNanos = System.nanoTime();
+    private volatile String taskId; // 只用于诊断事件
+
+    public ChunkWriter(FileChannel channel) {
+        this(channel, NetworkConfig.getWriteQueueSize(),
+                ForcePolicy.parse(NetworkConfig.getDiskForcePolicy()),
+                NetworkConfig.DISK_FORCE_INTERVAL, null);
+    }
+
+    /**
+     * 构造函数
+     *
+     * @param channel         目标文件通道（可写）
+     * @param queueCapacity   队列容量（分片个数）
+     * @param forcePolicy     force 策略
+     * @param forceIntervalMs PERIODIC 策略下的 force 间隔（毫秒）
+     * @param recycler        缓冲区回收回调（可为 null）
+     */
+    public ChunkWriter(FileChannel channel, int queueCapacity, ForcePolicy forcePolicy,
+            long forceIntervalMs, BufferRecycler recycler) {
+        if (queueCapacity <= 0) {
+            throw new IllegalArgumentException("队列容量必须大于0");
+        }
+        this.channel = channel;
+        this.forcePolicy = forcePolicy;
+        this.forceIntervalNanos = TimeUnit.MILLISECONDS.toNanos(forceIntervalMs);
+        this.recycler = recycler;
+        this.positions = new long[queueCapacity];
+        this.buffers = new ByteBuffer[queueCapacity];
+        this.writerThread = new Thread(this::drainLoop, "lanshare-disk-writer");
+        this.writerThread.setDaemon(true);
+        this.writerThread.start();
+    }
+
+    /**
+     * 提交一个分片
+     *
+     * 缓冲区的 position..limit 为要写入的数据；提交后缓冲区归写入器所有，写完后交给 recycler。
+     * 队列满时阻塞，直到写线程腾出位置。
+     *
+     * @param position 文件偏移
+     * @param data     分片数据
+     * @throws IOException 写线程已失败或写入器已关闭
+     */
+    public void submit(long position, ByteBuffer data) throws IOException {
+        checkFailure();
+        lock.lock();
+        try {
+            while (count == buffers.length && !closed && failure == null) {
+                notFull.await();
+            }
+            checkFailure();
+            if (closed) {
+                throw new IOException("写入器已关闭");
+            }
+            positions[tail] = position;
+            buffers[tail] = data;
+            tail = (tail + 1) % buffers.length;
+            count++;
+            Metrics.DISK_WRITE_QUEUE.inc();
+            notEmpty.signal();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("提交写入被中断", e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 等待队列全部写完，并按策略执行 force
+     *
+     * @throws IOException 任意一次写入失败
+     */
+    public void finish() throws IOException {
+        lock.lock();
+        try {
+            while ((count > 0 || inFlight) && failure == null && !closed) {
+                drained.await();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("等待写入完成被中断", e);
+        } finally {
+            lock.unlock();
+        }
+        checkFailure();
+        if (forcePolicy != ForcePolicy.NEVER) {
+            force();
+        }
+    }
+
+    /**
+     * 设置续传起点：起点之前的数据已经在磁盘上，连续位置从这里开始计算
+     *
+     * 必须在第一次 submit 之前调用。
+     *
+     * @param offset 起始偏移
+     */
+    public void setStartOffset(long offset) {
+        contiguousOffset = offset;
+        durableOffset.set(offset);
+    }
+
+    /**
+     * 获取从起点开始连续写完的位置（已交给操作系统，不保证已落盘）
+     */
+    public long getContiguousOffset() {
+        return contiguousOffset;
+    }
+
+    /**
+     * 获取已经落盘的连续位置（最近一次 force 之前连续写完的位置）
+     */
+    public long getDurableOffset() {
+        return durableOffset.get();
+    }
+
+    /**
+     * 续传检查点：force 已写入的数据，返回可以写进续传标记的位置
+     *
+     * 先读连续位置再 force，force 返回时这之前的写入都已落盘。
+     * NEVER 策略不 force，直接返回上一次落盘的位置。
+     *
+     * @return 已落盘的连续位置
+     * @throws IOException force 失败或写线程已失败
+     */
+    public long checkpoint() throws IOException {
+        checkFailure();
+        if (forcePolicy != ForcePolicy.NEVER) {
+            force();
+        }
+        return durableOffset.get();
+    }
+
+    /**
+     * 获取累计写入字节数
+     */
+    public long getWrittenBytes() {
+        return writtenBytes;
+    }
+
+    /**
+     * 设置所属任务（写入 JFR 事件，便于和网络侧的事件对照）
+     */
+    public void setTaskId(String taskId) {
+        this.taskId = taskId;
+    }
+
+    /**
+     * 获取当前排队中的分片数
+     */
+    public int getQueueDepth() {
+        lock.lock();
+        try {
+            return count;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 关闭写入器
+     *
+     * 不等待队列写完（正常结束请先调用 finish），未写入的缓冲区会直接回收。
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        lock.lock();
+        try {
+            closed = true;
+            notEmpty.signalAll();
+            notFull.signalAll();
+            drained.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            writerThread.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        lock.lock();
+        try {
+            while (count > 0) {
+                recycle(buffers[head]);
+                buffers[head] = null;
+                head = (head + 1) % buffers.length;
+                count--;
+                Metrics.DISK_WRITE_QUEUE.dec();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // ==================== 写线程 ====================
+
+    private void drainLoop() {
+        try {
+            drain();
+        } catch (IOException e) {
+            logger.warning("写入磁盘失败: " + e.getMessage());
+            fail(e);
+        } catch (InterruptedException e) {
+            if (!closed) {
+                fail(new IOException("写线程被中断", e));
+            }
+        } catch (RuntimeException | Error e) {
+            logger.warning("写线程异常退出: " + e);
+            fail(new IOException("写线程异常退出: " + e, e));
+            if (e instanceof Error) {
+                throw (Error) e;
+            }
+        }
+    }
+
+    private void drain() throws IOException, InterruptedException {
+        while (true) {
+            long position;
+            ByteBuffer data;
+            int queued;
+            lock.lock();
+            try {
+                while (count == 0 && !closed) {
+                    notEmpty.await();
+                }
+                if (closed || failure != null) {
+                    return;
+                }
+                position = positions[head];
+                data = buffers[head];
+                buffers[head] = null;
+                head = (head + 1) % buffers.length;
+                count--;
+                Metrics.DISK_WRITE_QUEUE.dec();
+                queued = count;
+                inFlight = true;
+                notFull.signal();
+            } finally {
+                lock.unlock();
+            }
+
+            try {
+                int len = data.remaining();
+                long pos = position;
+                DiskWriteEvent event = new DiskWriteEvent();
+                event.begin();
+                long start = System.nanoTime();
+                while (data.hasRemaining()) {
+                    pos += channel.write(data, pos);
+                }
+                Metrics.DISK_WRITE.recordSince(start);
+                event.record(taskId, position, len, queued);
+                writtenBytes += len;
+                advanceContiguous(position, pos);
+                if (forcePolicy == ForcePolicy.PERIODIC) {
+                    long now = System.nanoTime();
+                    if (now - lastForceNanos >= forceIntervalNanos) {
+                        force();
+                        lastForceNanos = now;
+                    }
+                }
+            } finally {
+                recycle(data);
+                lock.lock();
+                try {
+                    inFlight = false;
+                    if (count == 0) {
+                        drained.signalAll();
+                    }
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }
+    }
+
+    /**
+     * 记录一个写完的区间 [start, end)，推进连续位置（只在写线程调用）
+     */
+    private void advanceContiguous(long start, long end) {
+        long contiguous = contiguousOffset;
+        if (start > contiguous) {
+            // 前面还有空洞：暂存区间，和已暂存的同起点区间取较长者
+            pendingRanges.merge(start, end, Math::max);
+            return;
+        }
+        contiguous = Math.max(contiguous, end);
+        Map.Entry<Long, Long> next;
+        while ((next = pendingRanges.firstEntry()) != null && next.getKey() <= contiguous) {
+            contiguous = Math.max(contiguous, next.getValue());
+            pendingRanges.pollFirstEntry();
+        }
+        contiguousOffset = contiguous;
+    }
+
+    /**
+     * force 并推进落盘位置：force 之前读到的连续位置在 force 返回后已落盘
+     */
+    private void force() throws IOException {
+        long contiguous = contiguousOffset;
+        channel.force(false);
+        durableOffset.accumulateAndGet(contiguous, Math::max);
+    }
+
+    /**
+     * 记录写线程失败并唤醒所有等待者：submit 不再等队列腾出位置，finish 不再等队列写完
+     */
+    private void fail(IOException e) {
+        lock.lock();
+        try {
+            if (failure == null) {
+                failure = e;
+            }
+            notFull.signalAll();
+            drained.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void recycle(ByteBuffer buffer) {
+        if (recycler != null && buffer != null) {
+            recycler.recycle(buffer);
+        }
+    }
+
+    private void checkFailure() throws IOException {
+        IOException e = failure;
+        if (e != null) {
+            throw new IOException("写入磁盘失败: " + e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package com.lanshare.network.transfer;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Properties;
+import java.util.logging.Logger;
+
+/**
+ * 接收文件预分配工具
+ *
+ * 1. 接受传输时一次性把目标文件扩展到完整大小（RandomAccessFile.setLength），
+ *    在 NTFS 上会直接分配连续的簇，在 ext4/xfs 等文件系统上至少保证了文件长度，减少边写边扩导致的碎片。
+ * 2. 预分配后文件长度不再等于已接收的字节数，所以用一个旁路的续传标记文件（xxx.lsresume）
+ *    记录已经落盘的连续位置（见 ChunkWriter.checkpoint），断点续传据此确定 existingOffset。
+ *
+ * 标记文件格式（Properties）：
+ * size=文件总大小
+ * md5=文件MD5
+ * offset=从文件开头连续落盘的字节数
+ */
+public final class FilePreallocator {
+    private static final Logger logger = Logger.getLogger(FilePreallocator.class.getName());
+
+    /**
+     * 续传标记文件后缀
+     */
+    public static final String RESUME_MARKER_SUFFIX = ".lsresume";
+
+    /**
+     * 每写入多少字节刷新一次续传标记（64MB）
+     */
+    public static final long MARKER_UPDATE_INTERVAL = 64L * 1024 * 1024;
+
+    private FilePreallocator() {
+        throw new AssertionError("FilePreallocator 是工具类，不能实例化");
+    }
+
+    /**
+     * 预分配文件到指定大小
+     *
+     * Java 没有直接暴露 fallocate，这里使用 setLength：
+     * 文件只会被扩展，不会截断已有内容；失败时只记录日志，不影响后续顺序写入。
+     *
+     * @param raf  已打开（rw）的目标文件
+     * @param size 文件总大小
+     * @return true 如果预分配成功
+     */
+    public static boolean preallocate(RandomAccessFile raf, long size) {
+        try {
+            if (size > 0 && raf.length() < size) {
+                raf.setLength(size);
+            }
+            return true;
+        } catch (IOException e) {
+            logger.warning("预分配文件失败，退化为追加写入: " + e.getMessage());
+            return false;
+        }
+    }
+
+    // ==================== 续传标记 ====================
+
+    /**
+     * 获取文件对应的续传标记文件
+     */
+    public static File markerOf(File target) {
+        return new File(target.getAbsolutePath() + RESUME_MARKER_SUFFIX);
+    }
+
+    /**
+     * 计算续传起点
+     *
+     * 优先读取续传标记（预分配过的文件）；没有标记时兼容旧行为：
+     * 本地文件比远程文件小则从文件末尾续传。
+     *
+     * @param target   目标文件
+     * @param fileSize 远程文件大小
+     * @param md5      远程文件MD5
+     * @return 续传起点（0 表示从头开始）
+     */
+    public static long resolveResumeOffset(File target, long fileSize, String md5) {
+        if (!target.exists()) {
+            clearMarker(target);
+            return 0;
+        }
+        File marker = markerOf(target);
+        if (marker.exists()) {
+            Properties props = new Properties();
+            try (FileInputStream fis = new FileInputStream(marker)) {
+                props.load(fis);
+                long size = Long.parseLong(props.getProperty("size", "-1"));
+                long offset = Long.parseLong(props.getProperty("offset", "0"));
+                if (size == fileSize && md5 != null && md5.equals(props.getProperty("md5"))
+                        && offset > 0 && offset < fileSize && offset <= target.length()) {
+                    return offset;
+                }
+            } catch (IOException | NumberFormatException e) {
+                logger.warning("读取续传标记失败: " + e.getMessage());
+            }
+            // 标记属于另一个文件或已损坏，从头开始
+            return 0;
+        }
+        long len = target.length();
+        return (len > 0 && len < fileSize) ? len : 0;
+    }
+
+    /**
+     * 写入续传标记
+     */
+    public static void writeMarker(File target, long fileSize, String md5, long offset) {
+        Properties props = new Properties();
+        props.setProperty("size", String.valueOf(fileSize));
+        props.setProperty("md5", md5 != null ? md5 : "");
+        props.setProperty("offset", String.valueOf(offset));
+        try (FileOutputStream fos = new FileOutputStream(markerOf(target))) {
+            props.store(fos, "LanShare resume marker");
+        } catch (IOException e) {
+            logger.warning("写入续传标记失败: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 删除续传标记（传输完成后调用）
+     */
+    public static void clearMarker(File target) {
+        File marker = markerOf(target);
+        if (marker.exists() && !marker.delete()) {
+            logger.warning("删除续传标记失败: " + marker.getAbsolutePath());
+        }
+    }
+}
@@ -1,8 +1,11 @@
 package com.lanshare.network.transfer;
 
+import com.lanshare.metrics.Metrics;
 import com.lanshare.network.discovery.DeviceDiscovery;
 import com.lanshare.network.discovery.DeviceRegistry;
 import com.lanshare.network.config.NetworkConfig;
+import com.lanshare.network.model.DeviceInfo;
+import com.lanshare.network.probe.LinkProber;
 import com.lanshare.network.protocol.TransferRequest;
 
 import java.io.File;
@@ -29,12 +32,16 @@ public class FileTransferService {
 
     /** 传输引擎，负责处理实际的文件发送和接收IO操作。 */
     private final TransferEngine transferEngine;
+    /** 接收引擎，负责接收端的连接处理和数据通路。 */
+    private final ReceiveEngine receiveEngine;
     /** 任务队列，用于存储待处理的传输任务，支持优先级排序。 */
     private final BlockingQueue<TransferTask> taskQueue;
     /** 设备发现服务，用于在局域网内发现其他设备。 */
     private final DeviceDiscovery deviceDiscovery;
     /** 设备注册表，存储已发现的设备信息。 */
     private final DeviceRegistry deviceRegistry;
+    /** 链路探测，测量到各设备的 RTT、抖动和吞吐量，没有传输时在后台低频运行。 */
+    private final LinkProber linkProber;
     /** 协议处理器（如需握手，可在外部按需创建并传入）。 */
     // private final ProtocolHandler protocolHandler;
     /** 用于处理任务队列的单线程执行器。 */
@@ -90,10 +97,14 @@ public class FileTransferService {
      */
     public FileTransferService(DeviceDiscovery deviceDiscovery, DeviceRegistry deviceRegistry) {
         this.transferEngine = new TransferEngine(NetworkConfig.DEFAULT_TRANSFER_THREADS);
+        this.receiveEngine = new ReceiveEngine();
         this.taskQueue = new PriorityBlockingQueue<>(); // 使用优先队列，可以根据任务属性（如文件大小）排序
         this.deviceDiscovery = deviceDiscovery;
         this.deviceRegistry = deviceRegistry;
         this.queueProcessor = Executors.newSingleThreadExecutor();
+        this.linkProber = new LinkProber(deviceRegistry);
+        this.linkProber.setBusyCheck(() -> transferEngine.getActiveTaskCount() > 0
+                || !receiveEngine.getActiveTasks().isEmpty());
     }
 
     /**
@@ -109,6 +120,8 @@ public class FileTransferService {
             System.err.println("启动设备发现失败: " + e.getMessage());
         }
         queueProcessor.submit(this::processQueue);
+        linkProber.start();
+        Metrics.startExporters(NetworkConfig.isMetricsJmxEnabled(), NetworkConfig.getMetricsHttpPort());
     }
 
     /**
@@ -117,12 +130,19 @@ public class FileTransferService {
      */
     public void stopService() {
         running = false;
+        linkProber.stop();
         deviceDiscovery.stop();
         queueProcessor.shutdownNow(); // 尝试立即停止所有正在执行的任务
         transferEngine.shutdown();
+        receiveEngine.stop();
+        Metrics.stopExporters();
     }
 
     public void pauseTask(String taskId) {
+        if (receiveEngine.hasTask(taskId)) {
+            receiveEngine.pauseTask(taskId); // 接收任务：同时通知发送方
+            return;
+        }
         TransferTask task = transferEngine.getTask(taskId);
         if (task != null) {
             task.pause();
@@ -131,6 +151,10 @@ public class FileTransferService {
     }
 
     public void resumeTask(String taskId) {
+        if (receiveEngine.hasTask(taskId)) {
+            receiveEngine.resumeTask(taskId);
+            return;
+        }
         TransferTask task = transferEngine.getTask(taskId);
         if (task != null) {
             task.resume();
@@ -139,6 +163,10 @@ public class FileTransferService {
     }
 
     public void cancelTask(String taskId) {
+        if (receiveEngine.hasTask(taskId)) {
+            receiveEngine.cancelTask(taskId);
+            return;
+        }
         TransferTask task = transferEngine.getTask(taskId);
         if (task != null) {
             task.cancel();
@@ -194,9 +222,18 @@ public class FileTransferService {
             return;
         }
 
+        // 探测过的设备用探测选出的最佳地址
+        DeviceInfo target = deviceRegistry != null ? deviceRegistry.findDeviceByIp(targetDeviceIp) : null;
+        if (target != null && target.getPort() == targetPort) {
+            targetDeviceIp = target.getPreferredAddress();
+        }
+
         try {
             // 1. 创建传输请求
             TransferRequest request = TransferRequest.fromFile(file);
+            if (deviceDiscovery != null && deviceDiscovery.getLocalDevice() != null) {
+                request.setSenderDeviceId(deviceDiscovery.getLocalDevice().getDeviceId());
+            }
             // 2. 根据请求创建传输任务（发送）
             TransferTask task = new TransferTask(
                     request.getTaskId(),
@@ -294,6 +331,14 @@ public class FileTransferService {
         }
     }
 
+    public ReceiveEngine getReceiveEngine() {
+        return receiveEngine;
+    }
+
+    public LinkProber getLinkProber() {
+        return linkProber;
+    }
+
     public com.lanshare.network.discovery.DeviceDiscovery getDeviceDiscovery() {
         return deviceDiscovery;
     }
@@ -0,0 +1,711 @@
+package com.lanshare.network.transfer;
+
+import com.lanshare.metrics.Metrics;
+import com.lanshare.metrics.jfr.CallbackEvent;
+import com.lanshare.metrics.jfr.ChecksumEvent;
+import com.lanshare.metrics.jfr.FrameReceiveEvent;
+import com.lanshare.metrics.jfr.HandshakeEvent;
+import com.lanshare.metrics.jfr.PauseEvent;
+import com.lanshare.network.config.NetworkConfig;
+import com.lanshare.network.probe.LinkProber;
+import com.lanshare.network.protocol.BufferPool;
+import com.lanshare.network.protocol.ChunkFrame;
+import com.lanshare.network.protocol.ControlMessage;
+import com.lanshare.network.protocol.FrameDecoder;
+import com.lanshare.network.protocol.ProtocolException;
+import com.lanshare.network.protocol.ProtocolHandler;
+import com.lanshare.network.protocol.TransferRequest;
+import com.lanshare.network.protocol.TransferResponse;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.logging.Logger;
+
+/**
+ * 接收引擎（与 TransferEngine 对应的接收端）
+ *
+ * 原来整条接收链路（握手、续传判断、分片循环、进度计算、MD5 校验）都写在 JavaFX 控制器的
+ * handleClient 里，和 Platform.runLater 交织在一起，无法单独测量、复用或在没有显示器的环境运行。
+ * 接收引擎拥有完整的数据通路，只通过事件向外通知；界面只是订阅者。
+ *
+ * 职责：
+ * - 连接处理：通过 ReceiveServer 接受连接，每个连接在连接线程池中处理
+ * - 控制消息：CONNECT / DISCONNECT，按请求到达的编码（JSON / 二进制）回复；PROBE 交给 LinkProber 应答
+ * - 接收判定：先查 AcceptancePolicy，没有规则匹配时交给 Prompter（界面弹窗或无头模式下拒绝）
+ * - 数据通路：续传偏移、磁盘预留、预分配、FrameDecoder 收包、ChunkWriter 异步落盘、续传标记、MD5 校验
+ * - 任务控制：本地暂停/恢复会通过同一连接通知发送方；取消会关闭连接中断阻塞的读取
+ *
+ * 事件回调在连接线程中执行，订阅者需要自行切换到界面线程，且不能长时间阻塞。
+ */
+public class ReceiveEngine {
+    private static final Logger logger = Logger.getLogger(ReceiveEngine.class.getName());
+
+    /**
+     * 进度事件的最小间隔（毫秒）
+     */
+    public static final long PROGRESS_INTERVAL = 100;
+
+    /**
+     * 没有策略规则匹配时的决定者（界面弹窗，或无头模式下的默认实现）
+     *
+     * 方法在连接线程中调用，可以阻塞等待用户操作。
+     */
+    public interface Prompter {
+        /**
+         * 是否接受某个设备的连接请求
+         */
+        boolean confirmConnect(ControlMessage request, String remoteIp);
+
+        /**
+         * 为传输请求选择保存路径
+         *
+         * @return 保存路径，null 表示拒绝
+         */
+        String chooseSavePath(TransferRequest request, String remoteIp);
+    }
+
+    /**
+     * 无头模式：不信任的连接和未匹配规则的传输一律拒绝
+     */
+    public static final Prompter REJECT_UNMATCHED = new Prompter() {
+        @Override
+        public boolean confirmConnect(ControlMessage request, String remoteIp) {
+            return false;
+        }
+
+        @Override
+        public String chooseSavePath(TransferRequest request, String remoteIp) {
+            return null;
+        }
+    };
+
+    /**
+     * 接收事件监听器（全部为可选实现）
+     */
+    public interface ReceiveListener {
+        /**
+         * 连接请求已处理
+         */
+        default void onConnectRequest(ControlMessage request, String remoteIp, boolean accepted) {
+        }
+
+        /**
+         * 对方断开了连接（DISCONNECT）
+         */
+        default void onDisconnect(ControlMessage message, String remoteIp) {
+        }
+
+        /**
+         * 传输请求被拒绝（策略、用户或磁盘空间）
+         */
+        default void onReceiveRejected(TransferRequest request, String remoteIp, String reason) {
+        }
+
+        /**
+         * 开始接收（已发送接受响应）
+         *
+         * @param resumeOffset 续传起点，0 表示从头接收
+         * @param autoAccepted 是否由接收策略自动接受
+         */
+        default void onReceiveStarted(TransferTask task, long resumeOffset, boolean autoAccepted) {
+        }
+
+        /**
+         * 接收进度（每个任务最多每 PROGRESS_INTERVAL 毫秒一次，最后一片一定会通知）
+         *
+         * @param bytesPerSecond 本次接收的平均速度
+         */
+        default void onReceiveProgress(TransferTask task, long received, long total, double bytesPerSecond) {
+        }
+
+        /**
+         * 发送方暂停或恢复了传输
+         */
+        default void onRemotePauseChanged(TransferTask task, boolean paused) {
+        }
+
+        /**
+         * 接收完成
+         *
+         * @param md5Matched MD5 校验是否通过
+         */
+        default void onReceiveCompleted(TransferTask task, File file, boolean md5Matched) {
+        }
+
+        /**
+         * 接收失败或被取消
+         */
+        default void onReceiveFailed(TransferTask task, String reason, boolean canceled) {
+        }
+    }
+
+    /**
+     * 一个进行中的接收（任务 + 连接）
+     *
+     * task 为 null 表示握手尚未完成：同一 taskId 的槽位已被占用（判定、询问、预留空间期间），
+     * 但还没有注册任务
+     */
+    private static final class ActiveReceive {
+        final TransferTask task;
+        final ProtocolHandler handler;
+        final boolean binaryControl;
+
+        ActiveReceive(TransferTask task, ProtocolHandler handler, boolean binaryControl) {
+            this.task = task;
+            this.handler = handler;
+            this.binaryControl = binaryControl;
+        }
+
+        /**
+         * 通知发送方暂停/恢复（可能与其他线程同时调用，串行化写入）
+         */
+        synchronized void sendControl(ControlMessage message) {
+            try {
+                handler.sendControl(message, binaryControl);
+            } catch (ProtocolException e) {
+                logger.fine("发送控制消息失败: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 已收到的文件区间（只在网络线程中使用）
+     *
+     * v2 分片自带偏移、可以乱序到达，接收完成以“续传起点之后的每个字节都已收到”为准，
+     * 而不是第一个带最后一片标志的分片。相邻区间合并，按顺序到达时始终只有一个区间。
+     */
+    private static final class CoveredRanges {
+        private final TreeMap<Long, Long> ranges = new TreeMap<>(); // 起点 → 终点（不含）
+        private long coveredBytes = 0;
+
+        /**
+         * 记录区间 [start, end)
+         *
+         * @return 与已收到的区间重叠时返回 false，不记录
+         */
+        boolean add(long start, long end) {
+            if (end <= start) {
+                return true;
+            }
+            Map.Entry<Long, Long> before = ranges.floorEntry(start);
+            Map.Entry<Long, Long> after = ranges.ceilingEntry(start);
+            if ((before != null && before.getValue() > start) || (after != null && after.getKey() < end)) {
+                return false;
+            }
+            long mergedStart = start;
+            long mergedEnd = end;
+            if (before != null && before.getValue() == start) {
+                mergedStart = before.getKey();
+            }
+            if (after != null && after.getKey() == end) {
+                mergedEnd = after.getValue();
+                ranges.remove(end);
+            }
+            ranges.put(mergedStart, mergedEnd);
+            coveredBytes += end - start;
+            return true;
+        }
+
+        long getCoveredBytes() {
+            return coveredBytes;
+        }
+    }
+
+    private final AcceptancePolicy policy;
+    private final SpaceReservationManager spaceReservations;
+    private final List<ReceiveListener> listeners = new CopyOnWriteArrayList<>();
+    private final Map<String, ActiveReceive> activeReceives = new ConcurrentHashMap<>();
+    private volatile Prompter prompter = REJECT_UNMATCHED;
+    private ReceiveServer server;
+
+    public ReceiveEngine() {
+        this(AcceptancePolicy.getInstance(), SpaceReservationManager.getInstance());
+    }
+
+    public ReceiveEngine(AcceptancePolicy policy, SpaceReservationManager spaceReservations) {
+        this.policy = policy;
+        this.spaceReservations = spaceReservations;
+    }
+
+    // ==================== 服务器生命周期 ====================
+
+    /**
+     * 使用全局配置启动接收服务器
+     *
+     * @return 实际监听的端口
+     * @throws IOException 绑定失败
+     */
+    public int start() throws IOException {
+        return start(new ReceiveServer(this::handleConnection));
+    }
+
+    /**
+     * 使用指定的服务器启动（服务器的连接处理器应为 this::handleConnection）
+     */
+    public synchronized int start(ReceiveServer receiveServer) throws IOException {
+        stop();
+        server = receiveServer;
+        return server.start();
+    }
+
+    /**
+     * 停止服务器，进行中的接收会因连接关闭而失败
+     */
+    public synchronized void stop() {
+        if (server != null) {
+            server.close();
+            server = null;
+        }
+    }
+
+    public synchronized boolean isRunning() {
+        return server != null && server.isRunning();
+    }
+
+    public synchronized ReceiveServer getServer() {
+        return server;
+    }
+
+    // ==================== 连接处理 ====================
+
+    /**
+     * 处理一个连接（可直接作为 ReceiveServer.ConnectionHandler 使用）
+     */
+    public void handleConnection(Socket socket) {
+        String remoteIp = socket.getInetAddress().getHostAddress();
+        try (ProtocolHandler handler = new ProtocolHandler(socket)) {
+            // 控制消息按首字节自动识别 JSON / 二进制，回复使用同样的编码
+            Object message = handler.receiveControl();
+            boolean binary = handler.isLastControlBinary();
+            if (message instanceof ControlMessage) {
+                handleControl((ControlMessage) message, handler, remoteIp, binary);
+            } else if (message instanceof TransferRequest && ((TransferRequest) message).isValid()) {
+                receive((TransferRequest) message, handler, socket, remoteIp, binary);
+            } else {
+                logger.warning("收到无效的传输请求: " + remoteIp);
+            }
+        } catch (ProtocolException | IOException e) {
+            logger.warning("处理连接异常 " + remoteIp + ": " + e.getMessage());
+        }
+    }
+
+    private void handleControl(ControlMessage control, ProtocolHandler handler, String remoteIp, boolean binary) {
+        ControlMessage.Type type = control.getType();
+        if (type == ControlMessage.Type.CONNECT) {
+            boolean accepted = policy.isTrusted(control.getDeviceId(), remoteIp)
+                    || prompter.confirmConnect(control, remoteIp);
+
+            // 在等待用户确认期间，对方可能已经取消（关闭）了连接
+            if (accepted && !handler.checkConnectionAlive()) {
+                logger.info("对方已取消连接请求: " + remoteIp);
+                return;
+            }
+            try {
+                ControlMessage reply = accepted ? ControlMessage.accept() : ControlMessage.reject();
+                reply.setBinaryControl(true);
+                handler.sendControl(reply, binary);
+            } catch (ProtocolException e) {
+                logger.info("无法发送连接响应，可能对方已取消连接: " + remoteIp);
+                return;
+            }
+            for (ReceiveListener l : listeners) {
+                l.onConnectRequest(control, remoteIp, accepted);
+            }
+        } else if (type == ControlMessage.Type.DISCONNECT) {
+            for (ReceiveListener l : listeners) {
+                l.onDisconnect(control, remoteIp);
+            }
+        } else if (type == ControlMessage.Type.PROBE) {
+            try {
+                LinkProber.serve(control, handler, binary);
+            } catch (ProtocolException e) {
+                logger.fine("链路探测中断 " + remoteIp + ": " + e.getMessage());
+            }
+        } else {
+            logger.fine("忽略连接外的控制消息: " + control);
+        }
+    }
+
+    /**
+     * 接收一个文件（判定、续传、收包、落盘、校验）
+     */
+    private void receive(TransferRequest request, ProtocolHandler handler, Socket socket,
+            String remoteIp, boolean binary) throws ProtocolException {
+        String taskId = request.getTaskId();
+        String claimedPath = null;
+        boolean reserved = false;
+        TransferTask task = null;
+        ActiveReceive active = null;
+        HandshakeEvent handshake = new HandshakeEvent();
+        handshake.begin();
+
+        // 先原子地占住 taskId 的槽位：判定、询问、预留空间可能很慢，发送方重试的第二个连接不能同时通过
+        ActiveReceive pending = new ActiveReceive(null, handler, binary);
+        if (activeReceives.putIfAbsent(taskId, pending) != null) {
+            reject(handler, request, remoteIp, TransferResponse.RejectReason.BUSY, binary, handshake);
+            return;
+        }
+        try {
+            // 1. 判定：策略优先，没有规则匹配时交给 Prompter
+            AcceptancePolicy.Decision decision = policy.evaluate(request, remoteIp);
+            String savePath;
+            if (decision.getAction() == AcceptancePolicy.Action.REJECT) {
+                reject(handler, request, remoteIp, decision.getReason(), binary, handshake);
+                return;
+            } else if (decision.getAction() == AcceptancePolicy.Action.ACCEPT) {
+                savePath = claimedPath = decision.getSavePath();
+                logger.info("按接收策略自动接收（" + decision.getRule() + "）: " + savePath);
+            } else {
+                savePath = prompter.chooseSavePath(request, remoteIp);
+            }
+            if (savePath == null) {
+                reject(handler, request, remoteIp, TransferResponse.RejectReason.USER_DECLINED, binary, handshake);
+                return;
+            }
+            File outFile = new File(savePath);
+            File parent = outFile.getParentFile();
+            if (parent != null) {
+                parent.mkdirs();
+            }
+
+            // 2. 续传与磁盘空间：已经落盘（或已预分配）的部分不需要再预留
+            long existingOffset = FilePreallocator.resolveResumeOffset(outFile, request.getFileSize(), request.getMd5());
+            long allocated = outFile.exists() ? Math.min(outFile.length(), request.getFileSize()) : 0;
+            long need = Math.max(0, request.getFileSize() - allocated);
+            if (!spaceReservations.tryReserve(taskId, outFile, need)) {
+                reject(handler, request, remoteIp, TransferResponse.RejectReason.INSUFFICIENT_SPACE, binary, handshake);
+                return;
+            }
+            reserved = true;
+
+            // 3. 注册任务并接受
+            task = new TransferTask(taskId, savePath, remoteIp, socket.getPort(),
+                    TransferTask.TransferType.RECEIVE, request, null);
+            task.setStatus(TransferTask.TaskStatus.RUNNING);
+            task.setInitialProgress(existingOffset);
+            active = new ActiveReceive(task, handler, binary);
+            activeReceives.replace(taskId, pending, active);
+            Metrics.ACTIVE_RECEIVE_SESSIONS.inc();
+
+            TransferResponse accept = TransferResponse.accept(taskId, savePath, existingOffset);
+            accept.negotiateFrameVersion(request.getMaxFrameVersion());
+            accept.setBinaryControl(true);
+            handler.sendControl(accept, binary);
+            handshake.record(taskId, remoteIp, "RECEIVE", request.getFileSize(), existingOffset, true, binary);
+            for (ReceiveListener l : listeners) {
+                l.onReceiveStarted(task, existingOffset, claimedPath != null);
+            }
+
+            // 4. 数据通路
+            if (request.getFileSize() == 0) {
+                Files.write(outFile.toPath(), new byte[0]); // 空文件只需创建
+            } else {
+                receiveChunks(active, outFile, existingOffset);
+            }
+
+            // 5. 校验：通过后才删除续传标记；不通过时保留，文件仍按未完成的接收处理，不会被当作普通的已有文件续传
+            ChecksumEvent md5Event = new ChecksumEvent();
+            md5Event.begin();
+            boolean ok = md5(outFile).equals(request.getMd5());
+            md5Event.record(taskId, "MD5", -1, request.getFileSize());
+            if (ok) {
+                FilePreallocator.clearMarker(outFile);
+            }
+            task.setStatus(TransferTask.TaskStatus.COMPLETED);
+            activeReceives.remove(taskId, active); // 先注销再通知：监听器看到的活动任务里不再包含它
+            for (ReceiveListener l : listeners) {
+                l.onReceiveCompleted(task, outFile, ok);
+            }
+        } catch (IOException | ProtocolException | InterruptedException e) {
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            if (task == null) {
+                throw e instanceof ProtocolException ? (ProtocolException) e
+                        : new ProtocolException("接收失败: " + e.getMessage(), e);
+            }
+            boolean canceled = task.getStatus() == TransferTask.TaskStatus.CANCELED;
+            if (!canceled) {
+                task.setStatus(TransferTask.TaskStatus.FAILED);
+            }
+            String reason = canceled ? "任务已取消" : e.getMessage();
+            logger.warning("接收失败 " + taskId + ": " + reason);
+            activeReceives.remove(taskId, active);
+            for (ReceiveListener l : listeners) {
+                l.onReceiveFailed(task, reason, canceled);
+            }
+        } finally {
+            activeReceives.remove(taskId, pending); // 任何拒绝或失败路径都要释放占位
+            if (active != null) {
+                activeReceives.remove(taskId, active);
+                Metrics.ACTIVE_RECEIVE_SESSIONS.dec();
+            }
+            if (reserved) {
+                spaceReservations.release(taskId);
+            }
+            policy.release(claimedPath);
+        }
+    }
+
+    /**
+     * 分片循环：网络线程只负责收包，落盘交给 ChunkWriter 的写线程按位置写入
+     *
+     * 分片数据在“网络读 → 落盘写”之间通过缓冲池循环使用，不为每个分片分配数组。
+     * v2 分片按自带的偏移写入，到达顺序不限；续传起点之后的每个字节都收到时接收完成，
+     * 重复或重叠的分片视为协议错误。v1 分片没有偏移，只能按顺序到达。
+     */
+    private void receiveChunks(ActiveReceive active, File outFile, long startOffset)
+            throws IOException, ProtocolException, InterruptedException {
+        TransferTask task = active.task;
+        TransferRequest request = task.getRequest();
+        long fileSize = request.getFileSize();
+
+        int writeQueueSize = NetworkConfig.getWriteQueueSize();
+        BufferPool bufferPool = new BufferPool(NetworkConfig.CHUNK_SIZE, writeQueueSize + 2);
+        FrameDecoder decoder = new FrameDecoder(bufferPool);
+        decoder.setTaskId(task.getTaskId());
+        long received = startOffset; // 起点 + 已收到的字节数（区间不重叠，与到达顺序无关）
+        CoveredRanges covered = new CoveredRanges();
+        long lastMarkerOffset = received;
+        long lastCheckpoint = received;
+        long startTime = System.currentTimeMillis();
+        long lastProgressTs = 0;
+
+        try (RandomAccessFile raf = new RandomAccessFile(outFile, "rw");
+             ChunkWriter writer = new ChunkWriter(raf.getChannel(), writeQueueSize,
+                     ChunkWriter.ForcePolicy.parse(NetworkConfig.getDiskForcePolicy()),
+                     NetworkConfig.DISK_FORCE_INTERVAL, bufferPool::release)) {
+            // 接受时一次性预分配完整大小，续传标记记录真正写入的位置
+            // 预分配已经占用的空间（NTFS 会直接分配簇）从预留中扣掉，否则同一分区的其他接收会被重复扣减
+            long usableBefore = outFile.getUsableSpace();
+            if (FilePreallocator.preallocate(raf, fileSize)) {
+                spaceReservations.consume(task.getTaskId(), usableBefore - outFile.getUsableSpace());
+            }
+            long consumedWrites = 0;
+            FilePreallocator.writeMarker(outFile, fileSize, request.getMd5(), received);
+            writer.setTaskId(task.getTaskId());
+            writer.setStartOffset(startOffset);
+            PauseEvent remotePause = null;
+            while (true) {
+                // 本地暂停：停止读取，TCP 背压会让发送方也停下来
+                task.waitForResume();
+                if (task.getStatus() == TransferTask.TaskStatus.CANCELED) {
+                    throw new IOException("任务已取消");
+                }
+
+                FrameReceiveEvent frameEvent = new FrameReceiveEvent();
+                frameEvent.begin();
+                long frameStart = System.nanoTime();
+                ChunkFrame chunk = active.handler.receiveFrame(decoder);
+
+                // 控制分片（发送方的暂停/恢复）：只通知订阅者，不阻塞读取，否则收不到随后的 RESUME
+                if (chunk.isControlFrame()) {
+                    String cmd = chunk.getControlCommand();
+                    chunk.release();
+                    if ("PAUSE".equals(cmd) || "RESUME".equals(cmd)) {
+                        boolean paused = "PAUSE".equals(cmd);
+                        if (paused && remotePause == null) {
+                            remotePause = new PauseEvent();
+                            remotePause.begin();
+                        } else if (!paused && remotePause != null) {
+                            remotePause.record(task.getTaskId(), task.getType().name(), true);
+                            remotePause = null;
+                        }
+                        for (ReceiveListener l : listeners) {
+                            l.onRemotePauseChanged(task, paused);
+                        }
+                    }
+                    continue;
+                }
+
+                int len = chunk.getPayloadLength();
+                frameEvent.record(task.getTaskId(), chunk.getChunkIndex(), len);
+                // v2 帧自带文件偏移；v1 帧按到达顺序累加
+                long position = chunk.getOffset() >= 0 ? chunk.getOffset() : received;
+                if (position < startOffset || position + len > fileSize) {
+                    chunk.release();
+                    throw new IOException("分片越界: offset=" + position + " len=" + len);
+                }
+                if (!covered.add(position, position + len)) {
+                    chunk.release();
+                    throw new IOException("分片重复: offset=" + position + " len=" + len);
+                }
+                boolean done = covered.getCoveredBytes() == fileSize - startOffset;
+                if (!done && chunk.isLastChunk() && chunk.getOffset() < 0) {
+                    // v1 按顺序发送，最后一片之后不会再有数据
+                    chunk.release();
+                    throw new IOException("发送方提前结束: 收到 " + (received + len) + "/" + fileSize + " 字节");
+                }
+                ByteBuffer payload = chunk.detachPayload();
+                try {
+                    writer.submit(position, payload);
+                } catch (IOException e) {
+                    // 没有进入写入队列的缓冲区仍归本线程所有，归还缓冲池
+                    bufferPool.release(payload);
+                    throw e;
+                }
+                Metrics.CHUNK_RECEIVE_LATENCY.recordSince(frameStart);
+                Metrics.CHUNKS_RECEIVED.inc();
+                Metrics.BYTES_RECEIVED.add(len);
+                received += len;
+                task.updateProgress(len);
+
+                if (received - lastCheckpoint >= FilePreallocator.MARKER_UPDATE_INTERVAL) {
+                    lastCheckpoint = received;
+                    // 稀疏预分配不占空间，写入的部分才真正占用，随写入扣除预留
+                    long written = writer.getWrittenBytes();
+                    spaceReservations.consume(task.getTaskId(), written - consumedWrites);
+                    consumedWrites = written;
+                    // 续传标记只记录 force 之后的连续位置：没落盘或前面还有空洞的数据不能算续传起点
+                    long durable = writer.checkpoint();
+                    if (durable > lastMarkerOffset) {
+                        FilePreallocator.writeMarker(outFile, fileSize, request.getMd5(), durable);
+                        lastMarkerOffset = durable;
+                    }
+                }
+
+                long now = System.currentTimeMillis();
+                if (now - lastProgressTs >= PROGRESS_INTERVAL || done) {
+                    lastProgressTs = now;
+                    long elapsed = now - startTime;
+                    double speed = elapsed > 0 ? (received - startOffset) * 1000.0 / elapsed : 0;
+                    CallbackEvent callbackEvent = new CallbackEvent();
+                    callbackEvent.begin();
+                    for (ReceiveListener l : listeners) {
+                        l.onReceiveProgress(task, received, fileSize, speed);
+                    }
+                    callbackEvent.record(task.getTaskId(), "onReceiveProgress");
+                }
+                if (done) {
+                    break;
+                }
+            }
+            writer.finish();
+        }
+    }
+
+    private void reject(ProtocolHandler handler, TransferRequest request, String remoteIp,
+            String reason, boolean binary, HandshakeEvent handshake) throws ProtocolException {
+        TransferResponse response = TransferResponse.reject(request.getTaskId(), reason);
+        response.setBinaryControl(true);
+        handler.sendControl(response, binary);
+        handshake.record(request.getTaskId(), remoteIp, "RECEIVE", request.getFileSize(), 0, false, binary);
+        logger.info("拒绝接收 " + request.getFileName() + ": " + reason);
+        for (ReceiveListener l : listeners) {
+            l.onReceiveRejected(request, remoteIp, reason);
+        }
+    }
+
+    // ==================== 任务控制 ====================
+
+    /**
+     * 本地暂停：停止读取并通知发送方
+     */
+    public void pauseTask(String taskId) {
+        ActiveReceive active = activeReceives.get(taskId);
+        if (active != null && active.task != null && active.task.getStatus() == TransferTask.TaskStatus.RUNNING) {
+            active.task.pause();
+            active.sendControl(ControlMessage.pause());
+        }
+    }
+
+    /**
+     * 本地恢复：通知发送方继续并恢复读取
+     */
+    public void resumeTask(String taskId) {
+        ActiveReceive active = activeReceives.get(taskId);
+        if (active != null && active.task != null && active.task.getStatus() == TransferTask.TaskStatus.PAUSED) {
+            active.sendControl(ControlMessage.resume());
+            active.task.resume();
+        }
+    }
+
+    /**
+     * 取消接收：关闭连接以中断阻塞的读取，续传标记保留（握手中的连接直接关闭）
+     */
+    public void cancelTask(String taskId) {
+        ActiveReceive active = activeReceives.get(taskId);
+        if (active != null) {
+            if (active.task != null) {
+                active.task.cancel();
+            }
+            active.handler.close();
+        }
+    }
+
+    public TransferTask getTask(String taskId) {
+        ActiveReceive active = activeReceives.get(taskId);
+        return active != null ? active.task : null;
+    }
+
+    public boolean hasTask(String taskId) {
+        return taskId != null && activeReceives.containsKey(taskId);
+    }
+
+    /**
+     * 进行中的接收任务快照
+     */
+    public List<TransferTask> getActiveTasks() {
+        List<TransferTask> tasks = new ArrayList<>();
+        for (ActiveReceive active : activeReceives.values()) {
+            if (active.task != null) {
+                tasks.add(active.task);
+            }
+        }
+        return tasks;
+    }
+
+    // ==================== 订阅与配置 ====================
+
+    public void addListener(ReceiveListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(ReceiveListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * 设置未匹配策略时的决定者（null 表示无头模式，一律拒绝）
+     */
+    public void setPrompter(Prompter prompter) {
+        this.prompter = prompter != null ? prompter : REJECT_UNMATCHED;
+    }
+
+    public AcceptancePolicy getPolicy() {
+        return policy;
+    }
+
+    // ==================== 工具方法 ====================
+
+    private static String md5(File file) throws IOException {
+        try (FileInputStream fis = new FileInputStream(file)) {
+            MessageDigest md = MessageDigest.getInstance("MD5");
+            byte[] buf = new byte[64 * 1024];
+            int n;
+            while ((n = fis.read(buf)) != -1) {
+                md.update(buf, 0, n);
+            }
+            StringBuilder sb = new StringBuilder();
+            for (byte b : md.digest()) {
+                sb.append(String.format("%02x", b));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException("计算文件MD5校验值时发生错误", e);
+        }
+    }
+}
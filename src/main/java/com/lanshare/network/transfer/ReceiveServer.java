@@ -0,0 +1,248 @@
+package com.lanshare.network.transfer;
+
+import com.lanshare.network.config.NetworkConfig;
+import com.lanshare.network.config.TransportProfile;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * 并发接收服务器
+ *
+ * 旧实现用 newFixedThreadPool(2) 同时跑 accept 循环和连接处理，accept 循环本身占掉一个线程，
+ * 接收端同一时间只能处理一个连接：第二个发送方、甚至传输过程中的一次 CONNECT 都要等当前文件传完。
+ *
+ * 现在的结构：
+ * - 独立的 acceptor 线程只负责 accept，不处理任何数据
+ * - 每个连接交给连接线程池处理（阻塞 I/O，一个连接一个线程），线程按需创建、空闲回收
+ * - 并发连接数上限为 max.connections，超出时立即关闭新连接（发送方马上得到失败，而不是无限等待）
+ * - close() 关闭监听 Socket 和所有活动连接，阻塞在读写上的处理线程会随之退出
+ *
+ * 使用示例：
+ *
+ * <pre>
+ * ReceiveServer server = new ReceiveServer(profile, port, NetworkConfig.getMaxConnections(), this::handleClient);
+ * int boundPort = server.start();
+ * ...
+ * server.close();
+ * </pre>
+ */
+public class ReceiveServer implements Closeable {
+    private static final Logger logger = Logger.getLogger(ReceiveServer.class.getName());
+
+    /**
+     * 连接处理器（在连接线程池中执行，返回或抛出异常后连接被关闭）
+     */
+    @FunctionalInterface
+    public interface ConnectionHandler {
+        void handle(Socket socket) throws Exception;
+    }
+
+    private final TransportProfile profile;
+    private final int port;
+    private final int maxConnections;
+    private final ConnectionHandler handler;
+
+    private final Set<Socket> activeSockets = ConcurrentHashMap.newKeySet();
+    private final AtomicLong acceptedCount = new AtomicLong();
+    private final AtomicLong rejectedCount = new AtomicLong();
+
+    private volatile boolean running;
+    private ServerSocket serverSocket;
+    private ThreadPoolExecutor workers;
+    private Thread acceptor;
+
+    /**
+     * @param profile        传输配置档（监听 Socket 的接收缓冲区在 bind 之前设置）
+     * @param port           监听端口（0 表示随机端口）
+     * @param maxConnections 最大并发连接数
+     * @param handler        连接处理器
+     */
+    public ReceiveServer(TransportProfile profile, int port, int maxConnections, ConnectionHandler handler) {
+        if (maxConnections <= 0) {
+            throw new IllegalArgumentException("最大连接数必须大于0");
+        }
+        this.profile = profile;
+        this.port = port;
+        this.maxConnections = maxConnections;
+        this.handler = handler;
+    }
+
+    /**
+     * 使用全局配置创建（传输配置档、TCP 端口、最大连接数）
+     */
+    public ReceiveServer(ConnectionHandler handler) {
+        this(NetworkConfig.getTransportProfile(), NetworkConfig.getTcpPort(), NetworkConfig.getMaxConnections(), handler);
+    }
+
+    /**
+     * 绑定端口并启动 acceptor 线程
+     *
+     * @return 实际监听的端口
+     * @throws IOException 绑定失败
+     */
+    public synchronized int start() throws IOException {
+        if (running) {
+            return serverSocket.getLocalPort();
+        }
+        serverSocket = profile.openServerSocket(port);
+        workers = new ThreadPoolExecutor(
+                Math.min(NetworkConfig.CORE_POOL_SIZE, maxConnections), maxConnections,
+                NetworkConfig.THREAD_KEEP_ALIVE_TIME, TimeUnit.SECONDS,
+                new SynchronousQueue<>(), // 不排队：有空闲线程就交给它，否则新建，到上限则拒绝
+                namedThreads("lanshare-receive-"));
+        running = true;
+        acceptor = new Thread(this::acceptLoop, "lanshare-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+        logger.info("接收服务器启动，端口: " + serverSocket.getLocalPort() + "，最大并发连接: " + maxConnections);
+        return serverSocket.getLocalPort();
+    }
+
+    private void acceptLoop() {
+        while (running) {
+            Socket socket;
+            try {
+                socket = serverSocket.accept();
+            } catch (SocketException e) {
+                if (!running) {
+                    break; // close() 关闭了监听 Socket
+                }
+                logger.warning("接收连接失败: " + e.getMessage());
+                pause(100);
+                continue;
+            } catch (IOException e) {
+                logger.warning("接收连接失败: " + e.getMessage());
+                pause(100); // 例如文件句柄耗尽，避免空转
+                continue;
+            }
+            dispatch(socket);
+        }
+    }
+
+    private void dispatch(Socket socket) {
+        profile.applyTo(socket);
+        activeSockets.add(socket);
+        try {
+            workers.execute(() -> {
+                try {
+                    handler.handle(socket);
+                } catch (Exception e) {
+                    if (running) {
+                        logger.warning("处理连接异常 " + socket.getRemoteSocketAddress() + ": " + e.getMessage());
+                    } // close() 关闭连接导致的异常不需要报告
+                } finally {
+                    activeSockets.remove(socket);
+                    closeQuietly(socket);
+                }
+            });
+            acceptedCount.incrementAndGet();
+        } catch (RejectedExecutionException e) {
+            activeSockets.remove(socket);
+            closeQuietly(socket);
+            rejectedCount.incrementAndGet();
+            if (running) {
+                logger.warning("并发连接已达上限 " + maxConnections + "，拒绝 " + socket.getRemoteSocketAddress());
+            }
+        }
+    }
+
+    /**
+     * 停止服务器：关闭监听 Socket 和所有活动连接
+     */
+    @Override
+    public synchronized void close() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        closeQuietly(serverSocket);
+        for (Socket socket : activeSockets) {
+            closeQuietly(socket);
+        }
+        workers.shutdownNow();
+        try {
+            acceptor.join(1000);
+            workers.awaitTermination(2, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        logger.info("接收服务器已停止");
+    }
+
+    // ==================== 状态查询 ====================
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * 实际监听的端口（未启动时返回 -1）
+     */
+    public synchronized int getPort() {
+        return serverSocket != null ? serverSocket.getLocalPort() : -1;
+    }
+
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    /**
+     * 正在处理的连接数
+     */
+    public int getActiveConnections() {
+        return activeSockets.size();
+    }
+
+    public long getAcceptedCount() {
+        return acceptedCount.get();
+    }
+
+    /**
+     * 因达到并发上限被拒绝的连接数
+     */
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+    // ==================== 工具方法 ====================
+
+    private static ThreadFactory namedThreads(String prefix) {
+        AtomicInteger seq = new AtomicInteger();
+        return r -> {
+            Thread t = new Thread(r, prefix + seq.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+    }
+
+    private static void closeQuietly(Closeable c) {
+        if (c != null) {
+            try {
+                c.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    private static void pause(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package com.lanshare.network.transfer;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * 磁盘空间预留管理器
+ *
+ * 接收端在接受传输时为目标文件预留空间，并在传输结束后释放。
+ * 判断 INSUFFICIENT_SPACE 时会扣除同一磁盘上其他进行中接收任务已预留、但尚未真正写入的空间，
+ * 避免两个并发接收都“看到”足够的空间，最后一起把磁盘写满。
+ *
+ * 预留按 FileStore（磁盘分区）聚合，同一分区上的任务共享同一个额度。
+ *
+ * 已经真正占用磁盘的部分要及时从预留中扣掉（consume），否则 getUsableSpace 已经减少、预留又扣一次，
+ * 其他接收会被误判为空间不足：
+ * - 预分配在 NTFS 上会直接分配簇，预分配后扣掉可用空间实际减少的量
+ * - 稀疏预分配（ext4/xfs）不占空间，随写入逐步扣除
+ *
+ * 线程安全：所有操作在同一把锁内完成（操作很轻，不会成为瓶颈）
+ */
+public class SpaceReservationManager {
+    private static final Logger logger = Logger.getLogger(SpaceReservationManager.class.getName());
+    private static SpaceReservationManager instance;
+
+    /**
+     * 单个任务的预留记录
+     */
+    private static final class Reservation {
+        final Object storeKey;
+        long bytes;
+
+        Reservation(Object storeKey, long bytes) {
+            this.storeKey = storeKey;
+            this.bytes = bytes;
+        }
+    }
+
+    // 任务ID -> 预留记录
+    private final Map<String, Reservation> reservations = new HashMap<>();
+    // 分区 -> 已预留字节数
+    private final Map<Object, Long> reservedByStore = new HashMap<>();
+
+    private SpaceReservationManager() {
+    }
+
+    public static synchronized SpaceReservationManager getInstance() {
+        if (instance == null) {
+            instance = new SpaceReservationManager();
+        }
+        return instance;
+    }
+
+    /**
+     * 尝试为任务预留空间
+     *
+     * @param taskId 任务ID
+     * @param target 目标文件（可以尚不存在）
+     * @param bytes  需要预留的字节数（已存在的部分不需要再预留）
+     * @return true 如果空间足够并已预留；false 表示空间不足
+     */
+    public synchronized boolean tryReserve(String taskId, File target, long bytes) {
+        release(taskId);
+        if (bytes <= 0) {
+            return true;
+        }
+        File dir = existingDirectory(target);
+        Object storeKey = storeKeyOf(dir);
+        long usable = dir.getUsableSpace();
+        long reserved = reservedByStore.getOrDefault(storeKey, 0L);
+        // getUsableSpace 返回 0 通常表示无法获取（如某些网络盘），沿用旧逻辑不做拦截
+        if (usable > 0 && usable - reserved < bytes) {
+            logger.warning(String.format("磁盘空间不足: 需要 %d, 可用 %d, 其他任务已预留 %d",
+                    bytes, usable, reserved));
+            return false;
+        }
+        reservations.put(taskId, new Reservation(storeKey, bytes));
+        reservedByStore.merge(storeKey, bytes, Long::sum);
+        logger.fine("已预留空间: " + taskId + " -> " + bytes + " 字节");
+        return true;
+    }
+
+    /**
+     * 释放任务的预留（任务完成、失败或取消时调用，多次调用是安全的）
+     *
+     * @param taskId 任务ID
+     */
+    public synchronized void release(String taskId) {
+        if (taskId == null) {
+            return;
+        }
+        Reservation r = reservations.remove(taskId);
+        if (r == null) {
+            return;
+        }
+        long left = reservedByStore.getOrDefault(r.storeKey, 0L) - r.bytes;
+        if (left > 0) {
+            reservedByStore.put(r.storeKey, left);
+        } else {
+            reservedByStore.remove(r.storeKey);
+        }
+    }
+
+    /**
+     * 预留的空间已经被实际占用（预分配或写入），从预留中扣除
+     *
+     * 扣到 0 为止，多扣不会影响其他任务的预留。
+     *
+     * @param taskId 任务ID
+     * @param bytes  已占用的字节数
+     */
+    public synchronized void consume(String taskId, long bytes) {
+        Reservation r = taskId != null ? reservations.get(taskId) : null;
+        if (r == null || bytes <= 0) {
+            return;
+        }
+        long taken = Math.min(bytes, r.bytes);
+        r.bytes -= taken;
+        long left = reservedByStore.getOrDefault(r.storeKey, 0L) - taken;
+        if (left > 0) {
+            reservedByStore.put(r.storeKey, left);
+        } else {
+            reservedByStore.remove(r.storeKey);
+        }
+    }
+
+    /**
+     * 获取任务当前仍然预留的字节数（没有预留时返回 0）
+     */
+    public synchronized long getReservedBytes(String taskId) {
+        Reservation r = taskId != null ? reservations.get(taskId) : null;
+        return r != null ? r.bytes : 0;
+    }
+
+    /**
+     * 获取目标文件所在分区上已被预留的总字节数
+     */
+    public synchronized long getReservedBytes(File target) {
+        return reservedByStore.getOrDefault(storeKeyOf(existingDirectory(target)), 0L);
+    }
+
+    // ==================== 工具方法 ====================
+
+    /**
+     * 向上查找第一个存在的目录（目标文件和父目录可能都还没创建）
+     */
+    private static File existingDirectory(File target) {
+        File dir = target.getAbsoluteFile();
+        if (!dir.isDirectory()) {
+            dir = dir.getParentFile();
+        }
+        while (dir != null && !dir.exists()) {
+            dir = dir.getParentFile();
+        }
+        return dir != null ? dir : new File(".").getAbsoluteFile();
+    }
+
+    /**
+     * 以 FileStore 作为分区标识；获取失败时退化为按目录统计
+     */
+    private static Object storeKeyOf(File dir) {
+        Path path = dir.toPath();
+        try {
+            FileStore store = Files.getFileStore(path);
+            return store.name() + "|" + store.toString();
+        } catch (IOException e) {
+            return path.toAbsolutePath().toString();
+        }
+    }
+}
@@ -1,15 +1,21 @@
 package com.lanshare.network.transfer;
 
+import com.lanshare.metrics.Metrics;
+import com.lanshare.metrics.jfr.ChecksumEvent;
+import com.lanshare.metrics.jfr.ChunkReadEvent;
+import com.lanshare.metrics.jfr.FrameSendEvent;
+import com.lanshare.metrics.jfr.HandshakeEvent;
 import com.lanshare.network.config.NetworkConfig;
+import com.lanshare.network.protocol.BufferPool;
+import com.lanshare.network.protocol.ChunkHeader;
+import com.lanshare.network.protocol.ControlCodec;
+import com.lanshare.network.protocol.ControlMessage;
 import com.lanshare.network.protocol.FileChunk;
+import com.lanshare.network.protocol.ProtocolException;
 import com.lanshare.network.protocol.ProtocolHandler;
 import com.lanshare.network.protocol.TransferResponse;
-import com.google.gson.Gson;
-import com.google.gson.JsonObject;
 
 import java.io.IOException;
-import java.io.RandomAccessFile;
-import java.net.Socket;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
@@ -32,10 +38,14 @@ public class TransferEngine {
 
     private static final int DEFAU_CHUNK_SIZE = NetworkConfig.CHUNK_SIZE;
 
+    //发送缓冲池：每个发送任务同一时刻只占用一个缓冲区，总内存 = 线程池大小 × 分片大小
+    private final BufferPool sendBuffers;
+
     public TransferEngine(int poolSize) {
         this.executorService = Executors.newFixedThreadPool(poolSize);
         this.activeTasks = new ConcurrentHashMap<>();
         this.taskFutures = new ConcurrentHashMap<>();
+        this.sendBuffers = new BufferPool(DEFAU_CHUNK_SIZE, poolSize, true);
         System.out.println("【传输引擎】已初始化，线程池大小: " + poolSize);
     }
 
@@ -70,14 +80,12 @@ public class TransferEngine {
         System.out.println("提交新任务: " + task.getTaskId() + "，文件: " + task.getFilePath());
 
         CompletableFuture<Void> future = CompletableFuture.runAsync(() -> {
+            Metrics.ACTIVE_SEND_SESSIONS.inc();
             task.setStatus(TransferTask.TaskStatus.RUNNING);
-            try (Socket socket = new Socket(task.getTargetIp(), task.getTargetPort());
-                 ProtocolHandler handler = new ProtocolHandler(socket);
-                 RandomAccessFile raf = new RandomAccessFile(task.getFilePath(), "r")) {
+            try (ProtocolHandler handler = ProtocolHandler.connect(task.getTargetIp(), task.getTargetPort())) {
 
-                // 握手：发送请求并等待响应
-                handler.sendMessage(task.getRequest());
-                TransferResponse response = handler.receiveMessage(TransferResponse.class);
+                // 握手：发送请求并等待响应（已确认支持的对端用二进制编码，否则 JSON）
+                TransferResponse response = handshake(handler, task);
                 if (response == null || !response.isAccepted()) {
                     task.setStatus(TransferTask.TaskStatus.FAILED);
                     throw new IOException("对方拒绝传输或响应为空");
@@ -85,6 +93,7 @@ public class TransferEngine {
 
                 long fileSize = task.getFileSize();
                 long offset = response.getExistingOffset(); // 支持断点续传
+                int frameVersion = response.getFrameVersion(); // v2 帧携带文件偏移；旧版本接收方为 v1
                 
                 // 如果对方说已经传完了，直接结束
                 if (offset >= fileSize) {
@@ -96,8 +105,6 @@ public class TransferEngine {
                 
                 // 设置初始进度
                 task.setInitialProgress(offset);
-                int chunkIndex = (int) (offset / DEFAU_CHUNK_SIZE); // 简单估算，或者不依赖chunkIndex顺序
-                // 注意：如果chunkSize变了，这里的index可能不准，但只要offset对就行
                 
                 // 启动监听线程处理接收方的控制消息
                 CompletableFuture<Void> listenerFuture = CompletableFuture.runAsync(() -> {
@@ -107,13 +114,12 @@ public class TransferEngine {
                                !task.getStatus().equals(TransferTask.TaskStatus.CANCELED) && 
                                handler.isConnected()) {
                             try {
-                                String json = handler.receiveJson();
-                                JsonObject obj = new Gson().fromJson(json, JsonObject.class);
-                                if (obj.has("type")) {
-                                    String type = obj.get("type").getAsString();
-                                    if ("PAUSE".equals(type)) {
+                                Object message = handler.receiveControl();
+                                if (message instanceof ControlMessage) {
+                                    ControlMessage.Type type = ((ControlMessage) message).getType();
+                                    if (type == ControlMessage.Type.PAUSE) {
                                         task.pause();
-                                    } else if ("RESUME".equals(type)) {
+                                    } else if (type == ControlMessage.Type.RESUME) {
                                         task.resume();
                                     }
                                 }
@@ -129,45 +135,62 @@ public class TransferEngine {
                 
                 System.out.println("开始传输: " + task.getTaskId() + " offset=" + offset);
 
-                boolean lastWasPaused = false;
-                while (offset < fileSize) {
-                    // 检查暂停或取消状态
-                    if (task.getStatus() == TransferTask.TaskStatus.CANCELED) {
-                        listenerFuture.cancel(true);
-                        throw new IOException("任务已取消");
-                    }
-                    
-                    if (task.getStatus() == TransferTask.TaskStatus.PAUSED) {
-                        if (!lastWasPaused) {
-                             // 发送暂停信号
-                             handler.sendChunk(FileChunk.createControlChunk("PAUSE", task.getTaskId()));
-                             lastWasPaused = true;
+                // 分片源按需从缓冲池取直接缓冲区，磁盘读入后直接聚集写到 Socket
+                try (ChunkSource source = task.openChunkSource(offset, DEFAU_CHUNK_SIZE, sendBuffers)) {
+                    boolean lastWasPaused = false;
+                    while (source.hasNext()) {
+                        // 检查暂停或取消状态
+                        if (task.getStatus() == TransferTask.TaskStatus.CANCELED) {
+                            listenerFuture.cancel(true);
+                            throw new IOException("任务已取消");
                         }
-                        task.waitForResume();
+                    
+                        if (task.getStatus() == TransferTask.TaskStatus.PAUSED) {
+                            if (!lastWasPaused) {
+                                 // 发送暂停信号
+                                 handler.sendChunk(FileChunk.createControlChunk("PAUSE", task.getTaskId()));
+                                 lastWasPaused = true;
+                            }
+                            task.waitForResume();
                         
-                        // 唤醒后再次检查
-                        if (task.getStatus() == TransferTask.TaskStatus.RUNNING && lastWasPaused) {
-                             // 发送恢复信号
-                             handler.sendChunk(FileChunk.createControlChunk("RESUME", task.getTaskId()));
-                             lastWasPaused = false;
+                            // 唤醒后再次检查
+                            if (task.getStatus() == TransferTask.TaskStatus.RUNNING && lastWasPaused) {
+                                 // 发送恢复信号
+                                 handler.sendChunk(FileChunk.createControlChunk("RESUME", task.getTaskId()));
+                                 lastWasPaused = false;
+                            }
                         }
-                    }
-
-                    long remaining = fileSize - offset;
-                    int size = (int) Math.min(DEFAU_CHUNK_SIZE, remaining);
-                    byte[] data = new byte[size];
-                    raf.seek(offset);
-                    raf.readFully(data);
 
-                    FileChunk chunk = new FileChunk(chunkIndex, data, task.getTaskId());
-                    if (offset + size >= fileSize) {
-                        chunk.markAsLastChunk();
+                        ChunkReadEvent readEvent = new ChunkReadEvent();
+                        readEvent.begin();
+                        ChunkSource.Chunk chunk = source.next();
+                        readEvent.record(task.getTaskId(), chunk.getIndex(), chunk.getOffset(), chunk.getSize());
+                        try {
+                            long start = System.nanoTime();
+                            ChunkHeader header = new ChunkHeader(chunk.getIndex(), chunk.getSize(), task.getTaskId());
+                            header.setVersion(frameVersion);
+                            header.setOffset(chunk.getOffset());
+                            ChecksumEvent crcEvent = new ChecksumEvent();
+                            crcEvent.begin();
+                            header.calculateCRC32(chunk.getData());
+                            crcEvent.record(task.getTaskId(), "CRC32", chunk.getIndex(), chunk.getSize());
+                            if (chunk.isLastInFile()) {
+                                header.markAsLastChunk();
+                            }
+                            Metrics.FRAME_ENCODE.recordSince(start);
+                            FrameSendEvent sendEvent = new FrameSendEvent();
+                            sendEvent.begin();
+                            start = System.nanoTime();
+                            handler.sendChunk(header, chunk.getData());
+                            Metrics.CHUNK_SEND_LATENCY.recordSince(start);
+                            sendEvent.record(task.getTaskId(), chunk.getIndex(), chunk.getSize());
+                            Metrics.CHUNKS_SENT.inc();
+                            Metrics.BYTES_SENT.add(chunk.getSize());
+                            task.updateProgress(chunk.getSize());
+                        } finally {
+                            chunk.release();
+                        }
                     }
-                    handler.sendChunk(chunk);
-                    task.updateProgress(chunk.getDataSize());
-
-                    offset += size;
-                    chunkIndex++;
                 }
 
                 task.setStatus(TransferTask.TaskStatus.COMPLETED);
@@ -178,6 +201,8 @@ public class TransferEngine {
                     task.setStatus(TransferTask.TaskStatus.FAILED);
                 }
                 throw new CompletionException(e);
+            } finally {
+                Metrics.ACTIVE_SEND_SESSIONS.dec();
             }
         }, executorService);
 
@@ -192,6 +217,38 @@ public class TransferEngine {
         });
     }
 
+    /**
+     * 握手：发送传输请求并等待响应
+     *
+     * 对端在 JSON 响应中声明支持二进制控制消息后会被记住，之后的握手直接用二进制；
+     * 二进制握手失败时忘掉该对端，下次回退到 JSON。
+     */
+    private TransferResponse handshake(ProtocolHandler handler, TransferTask task) throws ProtocolException {
+        String peer = task.getTargetIp();
+        boolean binary = ControlCodec.isBinaryPeer(peer);
+        HandshakeEvent event = new HandshakeEvent();
+        event.begin();
+        try {
+            handler.sendControl(task.getRequest(), binary);
+            Object reply = handler.receiveControl();
+            if (!(reply instanceof TransferResponse)) {
+                throw new ProtocolException("无效的传输响应: " + reply);
+            }
+            TransferResponse response = (TransferResponse) reply;
+            event.record(task.getTaskId(), peer, "SEND", task.getFileSize(), response.getExistingOffset(),
+                    response.isAccepted(), binary);
+            if (response.isBinaryControl()) {
+                ControlCodec.rememberBinaryPeer(peer);
+            }
+            return response;
+        } catch (ProtocolException e) {
+            if (binary) {
+                ControlCodec.forgetBinaryPeer(peer);
+            }
+            throw e;
+        }
+    }
+
     //取消一个任务
     public void cancelTask(String taskId) {
         List<Future<?>> futures = taskFutures.get(taskId);
@@ -205,6 +262,11 @@ public class TransferEngine {
         taskFutures.remove(taskId);
     }
 
+    //进行中的发送任务数
+    public int getActiveTaskCount() {
+        return activeTasks.size();
+    }
+
     //获取任务的当前进度
     public double getTaskProgress(String taskId) {
         TransferTask task = activeTasks.get(taskId);
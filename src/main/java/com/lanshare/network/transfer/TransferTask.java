@@ -1,12 +1,10 @@
 package com.lanshare.network.transfer;
 
+import com.lanshare.metrics.jfr.PauseEvent;
+import com.lanshare.network.protocol.BufferPool;
 import com.lanshare.network.protocol.TransferRequest;
-import com.lanshare.network.protocol.FileChunk;
 import java.io.File;
-import java.io.RandomAccessFile;
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.List;
 import java.util.concurrent.atomic.AtomicLong;
 
 public class TransferTask implements Comparable<TransferTask> {
@@ -70,35 +68,19 @@ public class TransferTask implements Comparable<TransferTask> {
     }
 
     /**
-     * 文档分块
+     * 打开分片源（按需读取，内存占用受缓冲池约束）
      * 
-     * @param chunkSize 分块大小（字节）
-     * @return 分块列表
-     * @throws IOException 文件不存在或大小为0
+     * 范围以传输请求里声明的大小为准（接收方按它校验），文件之后被改动不会越界或提前结束。
+     *
+     * @param startOffset 起始偏移（断点续传时为对方已有的字节数）
+     * @param chunkSize   分块大小（字节）
+     * @param pool        缓冲池
+     * @return 覆盖 [startOffset, 声明大小) 的分片源
+     * @throws IOException 文件无法打开或已比声明的大小短
      */
-    public List<FileChunk> getChunks(int chunkSize) throws IOException {
-        List<FileChunk> chunks = new ArrayList<>();
-        File file = new File(filePath);
-        if (!file.exists() || fileSize == 0) {
-            return chunks;
-        }
-        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
-            long offset = 0;
-            int chunkId = 0;
-            while (offset < fileSize) {
-                long remaining = fileSize - offset;
-                int size = (int) Math.min(chunkSize, remaining);
-                byte[] data = new byte[size];
-                raf.seek(offset);
-                raf.readFully(data);
-
-                FileChunk chunk = new FileChunk(chunkId, data, this.taskId);
-                chunks.add(chunk);
-                offset += size;
-                chunkId++;
-            }
-        }
-        return chunks;
+    public ChunkSource openChunkSource(long startOffset, int chunkSize, BufferPool pool) throws IOException {
+        long declaredSize = request != null ? request.getFileSize() : fileSize;
+        return ChunkSource.open(filePath, declaredSize, startOffset, chunkSize, pool);
     }
 
     // 更新传输进度
@@ -146,8 +128,17 @@ public class TransferTask implements Comparable<TransferTask> {
 
     public void waitForResume() throws InterruptedException {
         synchronized (pauseLock) {
-            while (status == TaskStatus.PAUSED) {
-                pauseLock.wait();
+            if (status != TaskStatus.PAUSED) {
+                return;
+            }
+            PauseEvent event = new PauseEvent();
+            event.begin();
+            try {
+                while (status == TaskStatus.PAUSED) {
+                    pauseLock.wait();
+                }
+            } finally {
+                event.record(taskId, type.name(), false);
             }
         }
     }
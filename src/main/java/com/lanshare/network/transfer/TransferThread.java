@@ -1,5 +1,7 @@
 package com.lanshare.network.transfer;
 
+import com.lanshare.metrics.Metrics;
+import com.lanshare.network.config.NetworkConfig;
 import com.lanshare.network.protocol.FileChunk;
 import com.lanshare.network.protocol.ProtocolException;
 import com.lanshare.network.protocol.ProtocolHandler;
@@ -38,6 +40,7 @@ public class TransferThread implements Runnable {
                 System.err.println(
                         "传输线程" + Thread.currentThread().getName() + "第" + (attempt + 1) + "次重试失败" + e.getMessage());
                 if (attempt < MAX_RETRY_COUNT - 1) {
+                    Metrics.RETRIES.inc();
                     try {
                         Thread.sleep(RETRY_DELAY_MS);
 
@@ -53,12 +56,14 @@ public class TransferThread implements Runnable {
     }
 
     private void executeSend() throws IOException {
-        try (Socket socket = new Socket(task.getTargetIp(), task.getTargetPort())) {
+        try (Socket socket = NetworkConfig.getTransportProfile().openSocket(task.getTargetIp(), task.getTargetPort())) {
             socket.setSoTimeout(10000);// 设置一个合理的超时时间
             // 为每一个线程创建一个独立的ProtoHandler
             ProtocolHandler handler = new ProtocolHandler(socket);
             System.out.printf("正在发送块 #%d...%n", chunk.getChunkIndex());
             handler.sendChunk(chunk);
+            Metrics.CHUNKS_SENT.inc();
+            Metrics.BYTES_SENT.add(chunk.getDataSize());
             // 发送完成即认为成功（TCP可靠传输，服务端会进行CRC验证）
             task.updateProgress(chunk.getDataSize());
             System.out.printf("块 #%d 发送成功，进度: %.2f%%%n",
@@ -0,0 +1,201 @@
+package com.lanshare.test;
+
+import com.lanshare.network.protocol.TransferRequest;
+import com.lanshare.network.protocol.TransferResponse;
+import com.lanshare.network.transfer.AcceptancePolicy;
+import com.lanshare.network.transfer.FilePreallocator;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static com.lanshare.test.TestSupport.check;
+
+/**
+ * 接收策略测试
+ * 1. 配置文件加载：信任设备、IP 绑定、默认动作
+ * 2. 大小与类型限制
+ * 3. 同名文件：续传（必须有匹配的续传标记）、自动改名、并发占用
+ */
+public class AcceptancePolicyTest {
+
+    private static final String TRUSTED_ID = "trusted-device-0001";
+
+    public static void main(String[] args) {
+        System.out.println("========== 接收策略测试 ==========\n");
+
+        try {
+            File dir = Files.createTempDirectory("lanshare-policy").toFile();
+
+            // 测试1：配置文件与信任设备
+            testTrustedDevice(dir);
+
+            // 测试2：大小与类型限制
+            testLimits(dir);
+
+            // 测试3：同名文件
+            testConflicts(dir);
+
+            System.out.println("\n========== 所有测试通过！✅ ==========");
+
+        } catch (Exception e) {
+            System.err.println("\n❌ 测试失败：" + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * 测试1：配置文件与信任设备
+     */
+    private static void testTrustedDevice(File dir) throws IOException {
+        System.out.println("【测试1】配置文件与信任设备");
+
+        File saveDir = new File(dir, "trusted");
+        File config = new File(dir, AcceptancePolicy.POLICY_FILE);
+        String json = "{\n"
+                + "  \"defaultAction\": \"PROMPT\",\n"
+                + "  \"trustedDevices\": {\n"
+                + "    \"" + TRUSTED_ID + "\": {\"name\": \"台式机\", \"ip\": \"192.168.1.20\",\n"
+                + "      \"saveDirectory\": \"" + saveDir.getAbsolutePath().replace("\\", "\\\\") + "\"}\n"
+                + "  }\n"
+                + "}";
+        Files.write(config.toPath(), json.getBytes(StandardCharsets.UTF_8));
+        AcceptancePolicy policy = new AcceptancePolicy(config);
+
+        AcceptancePolicy.Decision d = policy.evaluate(request("a.txt", 10, TRUSTED_ID), "192.168.1.20");
+        check(d.getAction() == AcceptancePolicy.Action.ACCEPT, "信任设备应该自动接受: " + d);
+        check(new File(d.getSavePath()).getParentFile().equals(saveDir), "应该保存到设备目录: " + d.getSavePath());
+        policy.release(d.getSavePath());
+        System.out.println("  " + d);
+
+        d = policy.evaluate(request("a.txt", 10, TRUSTED_ID), "192.168.1.99");
+        check(d.getAction() == AcceptancePolicy.Action.PROMPT, "IP 不一致时应该回退到询问");
+
+        d = policy.evaluate(request("a.txt", 10, null), "192.168.1.20");
+        check(d.getAction() == AcceptancePolicy.Action.PROMPT, "旧版本请求（无设备ID）应该回退到询问");
+
+        check(policy.isTrusted(TRUSTED_ID, "192.168.1.20"), "CONNECT 应该识别信任设备");
+
+        // 设备ID 由发送方自报，没有绑定 ip 的规则不能自动接受
+        policy.trustDevice("unpinned-device", "笔记本", null, null);
+        d = policy.evaluate(request("a.txt", 10, "unpinned-device"), "192.168.1.21");
+        check(d.getAction() == AcceptancePolicy.Action.PROMPT, "没有配置 ip 的信任设备应该回退到询问: " + d);
+        check(!policy.isTrusted("unpinned-device", "192.168.1.21"), "没有配置 ip 的信任设备不应自动接受连接");
+
+        // 编解码保留设备ID
+        TransferRequest decoded = TransferRequest.fromJson(request("a.txt", 10, TRUSTED_ID).toJson());
+        check(TRUSTED_ID.equals(decoded.getSenderDeviceId()), "JSON 应该带上设备ID");
+
+        policy.setDefaultAction(AcceptancePolicy.Action.REJECT);
+        d = policy.evaluate(request("a.txt", 10, "stranger"), "192.168.1.30");
+        check(d.getAction() == AcceptancePolicy.Action.REJECT, "默认拒绝应该生效");
+
+        System.out.println("  ✅ 信任设备规则正常\n");
+    }
+
+    /**
+     * 测试2：大小与类型限制
+     */
+    private static void testLimits(File dir) {
+        System.out.println("【测试2】大小与类型限制");
+
+        AcceptancePolicy policy = new AcceptancePolicy(new File(dir, "missing.json"));
+        check(policy.getDefaultAction() == AcceptancePolicy.Action.PROMPT, "无配置文件时应该询问");
+
+        policy.setSaveDirectory(new File(dir, "limits").getAbsolutePath());
+        policy.setDefaultAction(AcceptancePolicy.Action.ACCEPT);
+        policy.setLimits(1000, null, Arrays.asList(".exe", "BAT"));
+
+        AcceptancePolicy.Decision d = policy.evaluate(request("big.iso", 1001, null), "10.0.0.2");
+        check(d.getAction() == AcceptancePolicy.Action.REJECT
+                && TransferResponse.RejectReason.FILE_TOO_LARGE.equals(d.getReason()), "超过大小上限应该拒绝");
+
+        d = policy.evaluate(request("setup.EXE", 10, null), "10.0.0.2");
+        check(d.getAction() == AcceptancePolicy.Action.REJECT
+                && TransferResponse.RejectReason.FILE_TYPE_NOT_SUPPORTED.equals(d.getReason()), "禁止类型应该拒绝");
+
+        policy.setLimits(0, Collections.singletonList("jpg"), null);
+        check(policy.evaluate(request("doc.pdf", 10, null), "10.0.0.2").getAction()
+                == AcceptancePolicy.Action.REJECT, "不在允许列表中的类型应该拒绝");
+        d = policy.evaluate(request("photo.jpg", 10, null), "10.0.0.2");
+        check(d.getAction() == AcceptancePolicy.Action.ACCEPT, "允许的类型应该接受");
+        policy.release(d.getSavePath());
+
+        // 全局限制对信任设备同样生效
+        policy.trustDevice(TRUSTED_ID, "台式机", "10.0.0.3", null);
+        check(policy.evaluate(request("doc.pdf", 10, TRUSTED_ID), "10.0.0.3").getAction()
+                == AcceptancePolicy.Action.REJECT, "全局限制应该对信任设备生效");
+
+        System.out.println("  ✅ 大小与类型限制正常\n");
+    }
+
+    /**
+     * 测试3：同名文件
+     */
+    private static void testConflicts(File dir) throws IOException {
+        System.out.println("【测试3】同名文件");
+
+        File saveDir = new File(dir, "conflicts");
+        AcceptancePolicy policy = new AcceptancePolicy(null);
+        policy.setSaveDirectory(saveDir.getAbsolutePath());
+        policy.setDefaultAction(AcceptancePolicy.Action.ACCEPT);
+
+        // 发送方带路径的文件名只保留最后一段
+        AcceptancePolicy.Decision first = policy.evaluate(request("../../etc/report.txt", 10, null), "10.0.0.2");
+        check(new File(first.getSavePath()).equals(new File(saveDir, "report.txt")), "路径部分应该被去掉");
+
+        // 路径已被占用：并发接收同名文件应该改名
+        AcceptancePolicy.Decision second = policy.evaluate(request("report.txt", 10, null), "10.0.0.2");
+        check(new File(second.getSavePath()).getName().equals("report (1).txt"), "并发同名应该改名: " + second);
+
+        // 已存在的完整文件：改名
+        policy.release(first.getSavePath());
+        try (FileOutputStream out = new FileOutputStream(first.getSavePath())) {
+            out.write(new byte[10]);
+        }
+        AcceptancePolicy.Decision third = policy.evaluate(request("report.txt", 10, null), "10.0.0.2");
+        check(new File(third.getSavePath()).getName().equals("report (2).txt"), "已存在的文件应该改名: " + third);
+        policy.release(second.getSavePath());
+        policy.release(third.getSavePath());
+
+        // 无关的同名小文件（没有续传标记）：不能当作未完成文件续传覆盖，应该改名
+        AcceptancePolicy.Decision unrelated = policy.evaluate(request("report.txt", 100000, null), "10.0.0.2");
+        check(unrelated.getAction() == AcceptancePolicy.Action.ACCEPT
+                && new File(unrelated.getSavePath()).getName().equals("report (1).txt"),
+                "没有续传标记的同名小文件应该改名: " + unrelated);
+        policy.release(unrelated.getSavePath());
+
+        // 同一文件的未完成副本：续传，不改名
+        TransferRequest resume = request("report.txt", 10, null);
+        FilePreallocator.writeMarker(new File(first.getSavePath()), resume.getFileSize(), resume.getMd5(), 4);
+        AcceptancePolicy.Decision fourth = policy.evaluate(resume, "10.0.0.2");
+        check(fourth.getSavePath().equals(first.getSavePath()), "未完成文件应该续传: " + fourth);
+        policy.release(fourth.getSavePath());
+
+        // 关闭自动改名：拒绝
+        FilePreallocator.clearMarker(new File(first.getSavePath()));
+        policy.setAutoRename(false);
+        AcceptancePolicy.Decision fifth = policy.evaluate(request("report.txt", 10, null), "10.0.0.2");
+        check(fifth.getAction() == AcceptancePolicy.Action.REJECT
+                && TransferResponse.RejectReason.DUPLICATE_FILE.equals(fifth.getReason()), "不改名时应该拒绝");
+        AcceptancePolicy.Decision sixth = policy.evaluate(request("report.txt", 100000, null), "10.0.0.2");
+        check(sixth.getAction() == AcceptancePolicy.Action.REJECT
+                && TransferResponse.RejectReason.DUPLICATE_FILE.equals(sixth.getReason()),
+                "不改名时没有续传标记的同名小文件应该拒绝: " + sixth);
+
+        System.out.println("  ✅ 同名文件处理正常\n");
+    }
+
+    // ==================== 辅助方法 ====================
+
+    private static TransferRequest request(String fileName, long size, String deviceId) {
+        TransferRequest request = new TransferRequest(java.util.UUID.randomUUID().toString(), fileName, size,
+                "0123456789abcdef0123456789abcdef", 1, 1024 * 1024);
+        request.setSenderDeviceId(deviceId);
+        return request;
+    }
+}
@@ -0,0 +1,201 @@
+package com.lanshare.test;
+
+import com.lanshare.network.config.NetworkConfig;
+import com.lanshare.network.discovery.AdaptiveBeacon;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.lanshare.test.TestSupport.check;
+
+/**
+ * 自适应信标测试（时间按比例缩短：实际配置的 1 秒对应这里的 SCALE 毫秒）
+ * 1. 启动后快速发送，成员稳定后退避到最长间隔
+ * 2. 重置后很快重新上线广播
+ * 3. 多台设备同时启动：发送时刻分散，总流量与旧的固定间隔对比
+ * 4. 快速阶段听到足够多的信标后抑制冗余广播，最长间隔的信标不被抑制
+ *
+ * 运行：java com.lanshare.test.AdaptiveBeaconTest
+ */
+public class AdaptiveBeaconTest {
+
+    /** 1 秒实际时间 = 50 毫秒测试时间 */
+    private static final int SCALE = 50;
+    private static final long MIN = NetworkConfig.BEACON_MIN_INTERVAL * SCALE / 1000;
+    private static final long MAX = NetworkConfig.BEACON_MAX_INTERVAL * SCALE / 1000;
+    private static final long ANNOUNCE = NetworkConfig.BEACON_ANNOUNCE_INTERVAL * SCALE / 1000;
+
+    public static void main(String[] args) {
+        System.out.println("========== 自适应信标测试 ==========\n");
+        ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(1);
+
+        try {
+            scheduler.submit(() -> { }).get(); // 先启动调度线程，避免计入第一个信标的延迟
+
+            // 测试1：退避
+            testBackoff(scheduler);
+
+            // 测试2：重置
+            testReset(scheduler);
+
+            // 测试3：多台设备
+            testManyDevices(scheduler);
+
+            // 测试4：抑制
+            testSuppression(scheduler);
+
+            System.out.println("\n========== 所有测试通过！✅ ==========");
+
+        } catch (Exception e) {
+            System.err.println("\n❌ 测试失败：" + e.getMessage());
+            e.printStackTrace();
+        } finally {
+            scheduler.shutdownNow();
+        }
+    }
+
+    /**
+     * 测试1：启动后快速发送，然后退避到最长间隔
+     */
+    private static void testBackoff(ScheduledExecutorService scheduler) throws Exception {
+        System.out.println("【测试1】退避");
+
+        List<Long> times = new ArrayList<>();
+        List<Boolean> kinds = new ArrayList<>();
+        AtomicLong start = new AtomicLong();
+        AdaptiveBeacon beacon = new AdaptiveBeacon(scheduler, MIN, MAX, ANNOUNCE, 3, announce -> {
+            synchronized (times) {
+                times.add((System.nanoTime() - start.get()) / 1_000_000);
+                kinds.add(announce);
+            }
+        });
+        start.set(System.nanoTime());
+        beacon.start();
+        Thread.sleep(MAX * 8);
+        beacon.stop();
+
+        synchronized (times) {
+            check(!times.isEmpty() && times.get(0) <= MIN + 20, "第一个信标应该在最短间隔内发出: " + times);
+            check(beacon.getInterval() == MAX, "应该退避到最长间隔: " + beacon.getInterval());
+            check(kinds.get(0), "第一个信标应该是上线广播");
+            long heartbeats = kinds.stream().filter(k -> !k).count();
+            check(heartbeats > 0, "稳定后应该只发心跳");
+            System.out.println("  发送时刻(ms): " + times);
+            System.out.println("  " + times.size() + " 个信标，其中上线广播 " + (times.size() - heartbeats)
+                    + " 个、心跳 " + heartbeats + " 个");
+        }
+        System.out.println("  ✅ 启动后快速发送，随后退避到 " + NetworkConfig.BEACON_MAX_INTERVAL + "ms\n");
+    }
+
+    /**
+     * 测试2：重置后很快重新上线广播
+     */
+    private static void testReset(ScheduledExecutorService scheduler) throws Exception {
+        System.out.println("【测试2】重置");
+
+        AtomicLong resetAt = new AtomicLong();
+        AtomicLong latency = new AtomicLong(-1);
+        CountDownLatch announced = new CountDownLatch(1);
+        AdaptiveBeacon beacon = new AdaptiveBeacon(scheduler, MIN, MAX, ANNOUNCE, 3, announce -> {
+            long at = resetAt.get();
+            if (at != 0 && announce && latency.get() < 0) {
+                latency.set((System.nanoTime() - at) / 1_000_000);
+                announced.countDown();
+            }
+        });
+        beacon.start();
+        Thread.sleep(MAX * 6); // 退避到最长间隔
+        check(beacon.getInterval() == MAX, "应该已经退避");
+
+        resetAt.set(System.nanoTime());
+        beacon.reset();
+        check(announced.await(MAX, TimeUnit.MILLISECONDS), "重置后应该发送上线广播");
+        beacon.stop();
+        check(latency.get() <= MIN + 20, "重置后应该在最短间隔内广播: " + latency.get() + "ms");
+        System.out.println("  重置后 " + latency.get() + "ms 发出上线广播（最长间隔 " + MAX + "ms）");
+        System.out.println("  ✅ 网络变化、新设备加入时能快速响应\n");
+    }
+
+    /**
+     * 测试3：多台设备同时启动
+     */
+    private static void testManyDevices(ScheduledExecutorService scheduler) throws Exception {
+        System.out.println("【测试3】多台设备");
+
+        int n = 20;
+        long duration = MAX * 10;
+        List<AdaptiveBeacon> beacons = new ArrayList<>();
+        List<Long> firstSend = new ArrayList<>();
+        AtomicInteger packets = new AtomicInteger();
+        long start = System.nanoTime();
+        for (int i = 0; i < n; i++) {
+            AtomicInteger count = new AtomicInteger();
+            AdaptiveBeacon[] self = new AdaptiveBeacon[1];
+            self[0] = new AdaptiveBeacon(scheduler, MIN, MAX, ANNOUNCE, 3, announce -> {
+                packets.incrementAndGet();
+                if (count.getAndIncrement() == 0) {
+                    synchronized (firstSend) {
+                        firstSend.add((System.nanoTime() - start) / 1_000_000);
+                    }
+                }
+                for (AdaptiveBeacon other : beacons) { // 广播：所有其他设备都听到
+                    if (other != self[0]) {
+                        other.heard();
+                    }
+                }
+            });
+            beacons.add(self[0]);
+        }
+        for (AdaptiveBeacon b : beacons) {
+            b.start();
+        }
+        Thread.sleep(duration);
+        for (AdaptiveBeacon b : beacons) {
+            b.stop();
+        }
+
+        long distinct;
+        synchronized (firstSend) {
+            check(firstSend.size() == n, "每台设备都应该发出信标");
+            distinct = firstSend.stream().distinct().count();
+        }
+        check(distinct > 1, "同时启动的设备不应该在同一时刻发送");
+        int oldPackets = (int) (2 * n * (duration / (NetworkConfig.BROADCAST_INTERVAL * SCALE / 1000)));
+        check(packets.get() < oldPackets, "总流量应该低于固定间隔");
+
+        // 稳定状态：每台设备每个最长间隔一个心跳
+        double oldRate = 2.0 * 1000 / NetworkConfig.BROADCAST_INTERVAL;
+        double newRate = 1000.0 / NetworkConfig.BEACON_MAX_INTERVAL;
+        System.out.println("  " + n + " 台设备同时启动，首个信标分布在 " + distinct + " 个不同时刻");
+        System.out.printf("  相当于 %d 秒内共发送 %d 个报文（固定间隔 PRESENCE+HEARTBEAT: %d 个）%n",
+                duration * 1000 / SCALE / 1000, packets.get(), oldPackets);
+        System.out.printf("  稳定状态每台设备: %.2f 个/秒 → %.2f 个/秒%n", oldRate, newRate);
+        System.out.println("  ✅ 启动相位分散，稳定流量大幅下降\n");
+    }
+
+    /**
+     * 测试4：快速阶段抑制冗余广播
+     */
+    private static void testSuppression(ScheduledExecutorService scheduler) throws Exception {
+        System.out.println("【测试4】冗余抑制");
+
+        AtomicInteger sent = new AtomicInteger();
+        AdaptiveBeacon beacon = new AdaptiveBeacon(scheduler, MIN, MAX, ANNOUNCE, 3, announce -> sent.incrementAndGet());
+        // 模拟繁忙的网络：不断听到其他设备的信标
+        scheduler.scheduleAtFixedRate(beacon::heard, 0, 1, TimeUnit.MILLISECONDS);
+        beacon.start();
+        Thread.sleep(MAX * 8);
+        beacon.stop();
+
+        check(beacon.getSuppressedCount() > 0, "快速阶段应该有信标被抑制");
+        check(sent.get() >= 2, "第一个上线广播和最长间隔的信标不应该被抑制: " + sent.get());
+        System.out.println("  发送 " + beacon.getSentCount() + " 个，抑制 " + beacon.getSuppressedCount() + " 个");
+        System.out.println("  ✅ 冗余广播被抑制，心跳照常发送\n");
+    }
+}
@@ -36,6 +36,9 @@ public class BinaryProtocolTest {
             // 测试6：大数据分片
             testLargeChunk();
 
+            // 测试7：v2 变长头部
+            testHeaderV2();
+
             System.out.println("\n========== 所有测试通过！✅ ==========");
 
         } catch (Exception e) {
@@ -271,6 +274,43 @@ public class BinaryProtocolTest {
         System.out.println("  ✅ 大数据分片测试通过\n");
     }
 
+    /**
+     * 测试7：v2 变长头部（64 位偏移、扩展字段、与 v1 共存）
+     */
+    private static void testHeaderV2() throws ProtocolException {
+        System.out.println("【测试7】v2 变长头部");
+
+        byte[] data = { 1, 2, 3, 4, 5 };
+        long offset = 40L * 1024 * 1024 * 1024 + 7; // 超过 int 范围的偏移
+
+        ChunkHeader original = new ChunkHeader(40961, data.length, "v2-task");
+        original.setVersion(ChunkHeader.VERSION_2);
+        original.setOffset(offset);
+        original.calculateCRC32(data);
+        original.putExtension(1, new byte[] { 9, 9 });
+        original.markAsLastChunk();
+
+        byte[] bytes = original.toBytes();
+        System.out.println("  v2 头部大小: " + bytes.length + " 字节（v1 为 " + ChunkHeader.HEADER_SIZE + " 字节）");
+        assert bytes.length == original.getEncodedSize() : "编码长度应该一致";
+        assert bytes.length < ChunkHeader.HEADER_SIZE : "v2 头部应该比 v1 小";
+
+        ChunkHeader deserialized = ChunkHeader.fromBytes(bytes);
+        System.out.println("  反序列化后: " + deserialized);
+        assert deserialized.getVersion() == ChunkHeader.VERSION_2 : "版本不一致";
+        assert deserialized.getOffset() == offset : "偏移不一致";
+        assert deserialized.getChunkIndex() == original.getChunkIndex() : "分片索引不一致";
+        assert deserialized.getCrc32() == original.getCrc32() : "CRC32不一致";
+        assert deserialized.isLastChunk() : "应该是最后一片";
+        assert Arrays.equals(new byte[] { 9, 9 }, deserialized.getExtension(1)) : "扩展字段不一致";
+
+        // v1 头部没有偏移
+        ChunkHeader v1 = ChunkHeader.fromBytes(new ChunkHeader(1, 5, "v1-task").toBytes());
+        assert v1.getVersion() == ChunkHeader.VERSION_1 && v1.getOffset() == -1 : "v1 头部不应该带偏移";
+
+        System.out.println("  ✅ v2 头部测试通过\n");
+    }
+
     // ==================== 辅助方法 ====================
 
     private static String formatBytes(long bytes) {
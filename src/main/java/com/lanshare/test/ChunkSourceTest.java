@@ -0,0 +1,158 @@
+package com.lanshare.test;
+
+import com.lanshare.network.protocol.BufferPool;
+import com.lanshare.network.transfer.ChunkSource;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+
+import static com.lanshare.test.TestSupport.check;
+
+/**
+ * 惰性分片源测试
+ * 1. 顺序读取：分片索引、偏移、最后一片和内容与文件一致，缓冲区全部归还
+ * 2. 续传：从非对齐偏移开始，第一片较短，之后的索引与从头传输一致
+ * 3. 文件在请求之后被改动：变长时只发送声明的大小，变短时立即失败
+ */
+public class ChunkSourceTest {
+
+    private static final int CHUNK = 1000;
+    private static final int FILE_SIZE = 3500;
+
+    public static void main(String[] args) {
+        System.out.println("========== 惰性分片源测试 ==========\n");
+
+        try {
+            File dir = Files.createTempDirectory("lanshare-source").toFile();
+            File file = new File(dir, "source.bin");
+            byte[] content = new byte[FILE_SIZE];
+            new Random(30).nextBytes(content);
+            Files.write(file.toPath(), content);
+
+            // 测试1：顺序读取
+            testSequential(file, content);
+
+            // 测试2：续传
+            testResume(file, content);
+
+            // 测试3：文件在请求之后被改动
+            testChangedFile(file, content);
+
+            System.out.println("\n========== 所有测试通过！✅ ==========");
+
+        } catch (Exception e) {
+            System.err.println("\n❌ 测试失败：" + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * 测试1：顺序读取
+     */
+    private static void testSequential(File file, byte[] content) throws IOException {
+        System.out.println("【测试1】顺序读取");
+
+        BufferPool pool = new BufferPool(CHUNK, 2);
+        byte[] read = readAll(file, FILE_SIZE, 0, pool, new int[]{0, 1, 2, 3}, new int[]{1000, 1000, 1000, 500});
+        check(Arrays.equals(read, content), "读出的内容应该与文件一致");
+        check(pool.getAvailable() == 1, "分片释放后缓冲区应该归还: " + pool.getAvailable());
+
+        // 空文件没有分片
+        File empty = new File(file.getParentFile(), "empty.bin");
+        Files.write(empty.toPath(), new byte[0]);
+        try (ChunkSource source = ChunkSource.open(empty.getPath(), 0, 0, CHUNK, pool)) {
+            check(!source.hasNext(), "空文件不应该有分片");
+        }
+
+        System.out.println("  ✅ 顺序读取正常\n");
+    }
+
+    /**
+     * 测试2：续传
+     */
+    private static void testResume(File file, byte[] content) throws IOException {
+        System.out.println("【测试2】续传");
+
+        BufferPool pool = new BufferPool(CHUNK, 2);
+        // 从 1500 开始：第一片只到 2000 的分片边界，索引仍是 1
+        byte[] read = readAll(file, FILE_SIZE, 1500, pool, new int[]{1, 2, 3}, new int[]{500, 1000, 500});
+        check(Arrays.equals(read, Arrays.copyOfRange(content, 1500, FILE_SIZE)), "续传读出的内容应该与文件一致");
+
+        try (ChunkSource source = ChunkSource.open(file.getPath(), FILE_SIZE, FILE_SIZE + 10, CHUNK, pool)) {
+            check(!source.hasNext(), "起点超过文件大小时不应该有分片");
+        }
+
+        System.out.println("  ✅ 续传正常\n");
+    }
+
+    /**
+     * 测试3：文件在请求之后被改动
+     */
+    private static void testChangedFile(File file, byte[] content) throws IOException {
+        System.out.println("【测试3】文件在请求之后被改动");
+
+        BufferPool pool = new BufferPool(CHUNK, 2);
+
+        // 请求声明 2500 字节之后文件变长：只发送声明的部分，第 2 片就是最后一片
+        byte[] read = readAll(file, 2500, 0, pool, new int[]{0, 1, 2}, new int[]{1000, 1000, 500});
+        check(Arrays.equals(read, Arrays.copyOf(content, 2500)), "只应该发送声明大小内的内容");
+
+        // 请求声明的大小超过文件当前大小：打开时立即失败，不能把短文件标记为完成
+        try (ChunkSource source = ChunkSource.open(file.getPath(), FILE_SIZE + 1, 0, CHUNK, pool)) {
+            throw new AssertionError("文件比声明的大小短时应该失败: " + source);
+        } catch (EOFException expected) {
+            System.out.println("  " + expected.getMessage());
+        }
+
+        // 传输过程中被截断：读到文件末尾时失败，缓冲区归还
+        File truncated = new File(file.getParentFile(), "truncated.bin");
+        Files.write(truncated.toPath(), content);
+        try (ChunkSource source = ChunkSource.open(truncated.getPath(), FILE_SIZE, 0, CHUNK, pool)) {
+            source.next().release();
+            try (RandomAccessFile raf = new RandomAccessFile(truncated, "rw")) {
+                raf.setLength(1500);
+            }
+            source.next().release(); // [1000, 1500) 仍然可读的部分不够一片
+            throw new AssertionError("传输过程中被截断应该失败");
+        } catch (EOFException expected) {
+            check(pool.getAvailable() == 1, "读取失败时缓冲区应该归还: " + pool.getAvailable());
+        }
+
+        System.out.println("  ✅ 按声明大小读取，文件变短时失败\n");
+    }
+
+    // ==================== 辅助方法 ====================
+
+    /**
+     * 读出全部分片，核对索引、长度和最后一片标记
+     */
+    private static byte[] readAll(File file, long fileSize, long start, BufferPool pool,
+            int[] indexes, int[] sizes) throws IOException {
+        ByteBuffer out = ByteBuffer.allocate((int) (fileSize - start));
+        try (ChunkSource source = ChunkSource.open(file.getPath(), fileSize, start, CHUNK, pool)) {
+            for (int i = 0; i < indexes.length; i++) {
+                check(source.hasNext(), "应该还有第 " + i + " 片");
+                ChunkSource.Chunk chunk = source.next();
+                try {
+                    check(chunk.getIndex() == indexes[i], "分片索引不一致: " + chunk.getIndex());
+                    check(chunk.getSize() == sizes[i], "分片长度不一致: " + chunk.getSize());
+                    check(chunk.getOffset() == start + out.position(), "分片偏移不一致: " + chunk.getOffset());
+                    check(chunk.isLastInFile() == (i == indexes.length - 1), "最后一片标记不正确: #" + i);
+                    out.put(chunk.getData());
+                } finally {
+                    chunk.release();
+                    chunk.release(); // 重复释放是安全的
+                }
+            }
+            check(!source.hasNext(), "读完后不应该还有分片");
+            check(source.getPosition() == fileSize, "读完后位置应该在声明大小处: " + source.getPosition());
+        }
+        return out.array();
+    }
+}
@@ -0,0 +1,218 @@
+package com.lanshare.test;
+
+import com.lanshare.network.transfer.ChunkWriter;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static com.lanshare.test.TestSupport.check;
+
+/**
+ * 异步落盘写入器测试
+ * 1. 乱序写入：内容正确，连续位置只在空洞补齐后前进，落盘位置只在 force 后前进
+ * 2. 写线程失败：IO 错误、运行时异常、中断都让 submit / finish 抛出异常，而不是永远阻塞
+ */
+public class ChunkWriterTest {
+
+    private static final int CHUNK = 4096;
+    private static final long TIMEOUT_SECONDS = 5;
+
+    private static final ExecutorService executor = Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r, "chunk-writer-test");
+        t.setDaemon(true);
+        return t;
+    });
+
+    public static void main(String[] args) {
+        System.out.println("========== 异步落盘写入器测试 ==========\n");
+
+        try {
+            File dir = Files.createTempDirectory("lanshare-writer").toFile();
+
+            // 测试1：乱序写入与检查点
+            testOutOfOrder(dir);
+
+            // 测试2：写线程失败
+            testFailure(dir);
+
+            System.out.println("\n========== 所有测试通过！✅ ==========");
+
+        } catch (Exception e) {
+            System.err.println("\n❌ 测试失败：" + e.getMessage());
+            e.printStackTrace();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * 测试1：乱序写入与检查点
+     */
+    private static void testOutOfOrder(File dir) throws Exception {
+        System.out.println("【测试1】乱序写入与检查点");
+
+        File file = new File(dir, "ordered.bin");
+        AtomicInteger recycled = new AtomicInteger();
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw");
+             ChunkWriter writer = new ChunkWriter(raf.getChannel(), 2, ChunkWriter.ForcePolicy.ON_COMPLETE,
+                     1000, b -> recycled.incrementAndGet())) {
+            writer.setStartOffset(CHUNK); // 第 0 片是上次已经收到的
+            // 第 1 片最后到达：之前写完的 2、3 片不能算进连续位置
+            writer.submit(3L * CHUNK, chunk(3));
+            writer.submit(2L * CHUNK, chunk(2));
+            waitFor(() -> writer.getWrittenBytes() == 2L * CHUNK);
+            check(writer.getContiguousOffset() == CHUNK, "有空洞时连续位置不应该前进: " + writer.getContiguousOffset());
+
+            writer.submit(CHUNK, chunk(1));
+            waitFor(() -> writer.getWrittenBytes() == 3L * CHUNK);
+            check(writer.getContiguousOffset() == 4L * CHUNK, "空洞补齐后应该合并: " + writer.getContiguousOffset());
+            check(writer.getDurableOffset() == CHUNK, "force 之前落盘位置不应该前进: " + writer.getDurableOffset());
+
+            check(writer.checkpoint() == 4L * CHUNK, "检查点应该返回 force 后的连续位置");
+            writer.submit(4L * CHUNK, chunk(4));
+            writer.finish();
+            check(writer.getDurableOffset() == 5L * CHUNK, "finish 后应该全部落盘: " + writer.getDurableOffset());
+        }
+        check(recycled.get() == 4, "每个分片写完后都应该回收缓冲区: " + recycled.get());
+
+        byte[] data = Files.readAllBytes(file.toPath());
+        for (int i = 1; i <= 4; i++) {
+            byte[] expected = new byte[CHUNK];
+            Arrays.fill(expected, (byte) i);
+            check(Arrays.equals(Arrays.copyOfRange(data, i * CHUNK, (i + 1) * CHUNK), expected),
+                    "第 " + i + " 片内容不正确");
+        }
+
+        // NEVER 策略不 force，检查点不前进
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw");
+             ChunkWriter writer = new ChunkWriter(raf.getChannel(), 2, ChunkWriter.ForcePolicy.NEVER, 1000, null)) {
+            writer.submit(0, chunk(9));
+            writer.finish();
+            check(writer.getContiguousOffset() == CHUNK, "NEVER 策略也应该记录连续位置");
+            check(writer.checkpoint() == 0, "NEVER 策略的检查点不应该前进");
+        }
+
+        System.out.println("  ✅ 乱序写入与检查点正常\n");
+    }
+
+    /**
+     * 测试2：写线程失败
+     */
+    private static void testFailure(File dir) throws Exception {
+        System.out.println("【测试2】写线程失败");
+
+        File file = new File(dir, "failure.bin");
+        Files.write(file.toPath(), new byte[0]);
+
+        // IO 错误：只读通道写入失败（NonWritableChannelException 是运行时异常）
+        try (FileChannel readOnly = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+             ChunkWriter writer = new ChunkWriter(readOnly, 2, ChunkWriter.ForcePolicy.NEVER, 1000, null)) {
+            expectFailure(writer, "只读通道");
+        }
+
+        // 运行时异常：回收回调第一次调用时抛出异常（只抛一次，close 回收剩余缓冲区时不再抛）
+        AtomicBoolean thrown = new AtomicBoolean();
+        ChunkWriter.BufferRecycler failing = b -> {
+            if (thrown.compareAndSet(false, true)) {
+                throw new IllegalStateException("回收失败");
+            }
+        };
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw");
+             ChunkWriter writer = new ChunkWriter(raf.getChannel(), 2, ChunkWriter.ForcePolicy.NEVER, 1000, failing)) {
+            expectFailure(writer, "回收回调异常");
+        }
+
+        // 中断：写线程在等待分片时被中断
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw");
+             ChunkWriter writer = new ChunkWriter(raf.getChannel(), 2, ChunkWriter.ForcePolicy.NEVER, 1000, null)) {
+            Thread writerThread = findWriterThread();
+            writerThread.interrupt();
+            writerThread.join(TimeUnit.SECONDS.toMillis(TIMEOUT_SECONDS));
+            check(!writerThread.isAlive(), "被中断的写线程应该退出");
+            expectFailure(writer, "写线程中断");
+        }
+
+        System.out.println("  ✅ 写线程失败时 submit / finish 立即报错\n");
+    }
+
+    /**
+     * 持续提交直到报错（队列容量 2，写线程已失败时第 3 次提交之前必须报错），finish 也必须报错
+     */
+    private static void expectFailure(ChunkWriter writer, String name) throws Exception {
+        Future<Boolean> submits = executor.submit(() -> {
+            try {
+                for (int i = 0; i < 100; i++) {
+                    writer.submit((long) i * CHUNK, chunk(i));
+                }
+                return false;
+            } catch (IOException e) {
+                return true;
+            }
+        });
+        check(await(submits, name + "：submit 不应该阻塞"), name + "：submit 应该报错");
+
+        Future<Boolean> finish = executor.submit(() -> {
+            try {
+                writer.finish();
+                return false;
+            } catch (IOException e) {
+                return true;
+            }
+        });
+        check(await(finish, name + "：finish 不应该阻塞"), name + "：finish 应该报错");
+        System.out.println("  " + name + "：submit / finish 已报错");
+    }
+
+    private static boolean await(Future<Boolean> future, String message) throws Exception {
+        try {
+            return future.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            throw new AssertionError(message);
+        }
+    }
+
+    private static Thread findWriterThread() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(TIMEOUT_SECONDS);
+        while (System.currentTimeMillis() < deadline) {
+            for (Thread t : Thread.getAllStackTraces().keySet()) {
+                if ("lanshare-disk-writer".equals(t.getName()) && t.isAlive()
+                        && t.getState() == Thread.State.WAITING) {
+                    return t;
+                }
+            }
+            Thread.sleep(10);
+        }
+        throw new AssertionError("找不到等待中的写线程");
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(TIMEOUT_SECONDS);
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new AssertionError("等待写线程超时");
+            }
+            Thread.sleep(5);
+        }
+    }
+
+    private static ByteBuffer chunk(int value) {
+        byte[] data = new byte[CHUNK];
+        Arrays.fill(data, (byte) value);
+        return ByteBuffer.wrap(data);
+    }
+}
@@ -0,0 +1,244 @@
+package com.lanshare.test;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.lanshare.network.protocol.ControlCodec;
+import com.lanshare.network.protocol.ControlMessage;
+import com.lanshare.network.protocol.ProtocolException;
+import com.lanshare.network.protocol.ProtocolHandler;
+import com.lanshare.network.protocol.TransferRequest;
+import com.lanshare.network.protocol.TransferResponse;
+
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+
+import static com.lanshare.test.TestSupport.check;
+
+/**
+ * 控制消息编解码测试
+ * 1. 二进制编码的正确性（与 JSON 的互通、未知字段跳过）
+ * 2. 编解码耗时与每次分配的字节数：旧的美化 JSON、紧凑 JSON、二进制
+ * 3. 回环连接上的握手往返延迟：JSON 与二进制
+ *
+ * 运行：java com.lanshare.test.ControlCodecTest [迭代次数]
+ */
+public class ControlCodecTest {
+
+    private static final Gson PRETTY = new GsonBuilder().setPrettyPrinting().create(); // 旧实现
+
+    public static void main(String[] args) {
+        System.out.println("========== 控制消息编解码测试 ==========\n");
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+
+        try {
+            // 测试1：二进制往返
+            testRoundTrip();
+
+            // 测试2：JSON 兼容
+            testJsonCompatibility();
+
+            // 测试3：编解码耗时与分配
+            testCodecCost(iterations);
+
+            // 测试4：握手往返延迟
+            testHandshakeLatency(iterations / 10);
+
+            System.out.println("\n========== 所有测试通过！✅ ==========");
+
+        } catch (Exception e) {
+            System.err.println("\n❌ 测试失败：" + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * 测试1：二进制编码往返
+     */
+    private static void testRoundTrip() throws ProtocolException {
+        System.out.println("【测试1】二进制编码往返");
+
+        TransferRequest request = sampleRequest();
+        byte[] bytes = ControlCodec.encode(request);
+        TransferRequest decoded = (TransferRequest) ControlCodec.decode(bytes, 0, bytes.length);
+        check(request.getTaskId().equals(decoded.getTaskId()), "任务ID不一致");
+        check(request.getFileName().equals(decoded.getFileName()), "文件名不一致");
+        check(request.getFileSize() == decoded.getFileSize(), "文件大小不一致");
+        check(request.getMd5().equals(decoded.getMd5()), "MD5不一致");
+        check(request.getMaxFrameVersion() == decoded.getMaxFrameVersion(), "帧版本不一致");
+        check(decoded.isValid(), "解码后的请求应该有效");
+
+        TransferResponse response = TransferResponse.accept(request.getTaskId(), "/tmp/a.bin", 12345);
+        response.setBinaryControl(true);
+        bytes = ControlCodec.encode(response);
+        TransferResponse r = (TransferResponse) ControlCodec.decode(bytes, 0, bytes.length);
+        check(r.isAccepted() && r.getExistingOffset() == 12345 && r.isBinaryControl(), "响应字段不一致");
+
+        ControlMessage connect = ControlMessage.connect("192.168.1.2", "设备", "用户");
+        bytes = ControlCodec.encode(connect);
+        ControlMessage c = (ControlMessage) ControlCodec.decode(bytes, 0, bytes.length);
+        check(c.getType() == ControlMessage.Type.CONNECT && "用户".equals(c.getUserName()), "CONNECT 字段不一致");
+
+        // 未知字段（编号 15，字符串）应被跳过
+        byte[] withUnknown = new byte[bytes.length + 4];
+        System.arraycopy(bytes, 0, withUnknown, 0, bytes.length);
+        withUnknown[bytes.length] = (byte) (15 << 3 | 2);
+        withUnknown[bytes.length + 1] = 2;
+        withUnknown[bytes.length + 2] = 'x';
+        withUnknown[bytes.length + 3] = 'y';
+        c = (ControlMessage) ControlCodec.decode(withUnknown, 0, withUnknown.length);
+        check("设备".equals(c.getDeviceName()), "跳过未知字段后应该能正常解析");
+
+        System.out.println("  ✅ 二进制往返正常\n");
+    }
+
+    /**
+     * 测试2：与旧版本 JSON 互通
+     */
+    private static void testJsonCompatibility() throws ProtocolException {
+        System.out.println("【测试2】JSON 兼容");
+
+        Object pause = ControlCodec.fromJson("{\"type\":\"PAUSE\"}");
+        check(pause instanceof ControlMessage && ((ControlMessage) pause).getType() == ControlMessage.Type.PAUSE,
+                "旧版本 PAUSE 应该能解析");
+
+        Object request = ControlCodec.fromJson(PRETTY.toJson(sampleRequest()));
+        check(request instanceof TransferRequest, "美化 JSON 的请求应该能解析");
+        check(((TransferRequest) request).getMaxFrameVersion() >= 1, "帧版本应该有默认值");
+
+        String legacy = "{\"type\":\"TRANSFER_REQUEST\",\"taskId\":\"t\",\"fileName\":\"f\",\"fileSize\":1,"
+                + "\"md5\":\"m\",\"chunkCount\":1,\"chunkSize\":1}";
+        check(((TransferRequest) ControlCodec.fromJson(legacy)).getMaxFrameVersion() == 1, "旧版本请求应该视为 v1");
+
+        String connectJson = ControlCodec.GSON.toJson(ControlMessage.connect("1.2.3.4", "d", "u"));
+        check(!connectJson.contains("binaryControl"), "未声明的能力字段不应出现在 JSON 中");
+
+        System.out.println("  ✅ JSON 兼容正常\n");
+    }
+
+    /**
+     * 测试3：编解码耗时与分配
+     */
+    private static void testCodecCost(int iterations) throws ProtocolException {
+        System.out.println("【测试3】编解码耗时与分配（" + iterations + " 次）");
+
+        TransferRequest request = sampleRequest();
+        ControlCodec.Writer writer = new ControlCodec.Writer(256);
+
+        System.out.printf("  %-10s %8s %12s %14s%n", "编码", "大小", "ns/往返", "分配 B/往返");
+        for (int round = 0; round < 2; round++) { // 第一轮预热
+            boolean print = round == 1;
+
+            long[] pretty = measure(iterations, () -> {
+                String json = PRETTY.toJson(request);
+                PRETTY.fromJson(json, TransferRequest.class);
+            });
+            long[] compact = measure(iterations, () -> {
+                String json = ControlCodec.GSON.toJson(request);
+                ControlCodec.fromJson(json);
+            });
+            long[] binary = measure(iterations, () -> {
+                writer.reset();
+                ControlCodec.encode(request, writer);
+                ControlCodec.decode(writer.array(), 0, writer.size());
+            });
+
+            if (print) {
+                report("美化JSON", PRETTY.toJson(request).getBytes().length, pretty, iterations);
+                report("紧凑JSON", ControlCodec.GSON.toJson(request).getBytes().length, compact, iterations);
+                report("二进制", ControlCodec.encode(request).length, binary, iterations);
+            }
+        }
+        System.out.println("  ✅ 测量完成\n");
+    }
+
+    /**
+     * 测试4：回环连接上的握手往返延迟
+     */
+    private static void testHandshakeLatency(int iterations) throws Exception {
+        System.out.println("【测试4】握手往返延迟（回环，" + iterations + " 次）");
+
+        try (ServerSocket server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            Thread responder = new Thread(() -> {
+                try (Socket s = server.accept(); ProtocolHandler h = new ProtocolHandler(s)) {
+                    while (true) {
+                        Object msg = h.receiveControl();
+                        TransferRequest req = (TransferRequest) msg;
+                        TransferResponse resp = TransferResponse.accept(req.getTaskId(), "/tmp/x", 0);
+                        resp.setBinaryControl(true);
+                        h.sendControl(resp, h.isLastControlBinary());
+                    }
+                } catch (Exception ignored) {
+                    // 客户端关闭连接后退出
+                }
+            }, "handshake-responder");
+            responder.setDaemon(true);
+            responder.start();
+
+            try (ProtocolHandler client = ProtocolHandler.connect("127.0.0.1", server.getLocalPort())) {
+                TransferRequest request = sampleRequest();
+                System.out.printf("  %-10s %12s %14s%n", "编码", "us/握手", "分配 B/握手");
+                for (int round = 0; round < 2; round++) {
+                    for (boolean binary : new boolean[] { false, true }) {
+                        long[] r = measure(iterations, () -> {
+                            client.sendControl(request, binary);
+                            client.receiveControl();
+                        });
+                        if (round == 1) {
+                            System.out.printf("  %-10s %12.1f %14d%n", binary ? "二进制" : "JSON",
+                                    r[0] / 1000.0 / iterations, r[1] / iterations);
+                        }
+                    }
+                }
+            }
+        }
+        System.out.println("  说明：分配只统计发起方线程");
+        System.out.println("  ✅ 测量完成\n");
+    }
+
+    // ==================== 辅助方法 ====================
+
+    @FunctionalInterface
+    private interface Action {
+        void run() throws Exception;
+    }
+
+    /**
+     * @return {总耗时 ns, 当前线程总分配字节（不支持时为 -1）}
+     */
+    private static long[] measure(int iterations, Action action) throws ProtocolException {
+        long allocBefore = allocatedBytes();
+        long start = System.nanoTime();
+        try {
+            for (int i = 0; i < iterations; i++) {
+                action.run();
+            }
+        } catch (ProtocolException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new ProtocolException("测量失败: " + e.getMessage(), e);
+        }
+        long elapsed = System.nanoTime() - start;
+        long allocAfter = allocatedBytes();
+        return new long[] { elapsed, allocBefore < 0 ? -1 : allocAfter - allocBefore };
+    }
+
+    private static long allocatedBytes() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean).getCurrentThreadAllocatedBytes();
+        }
+        return -1;
+    }
+
+    private static void report(String name, int size, long[] r, int iterations) {
+        System.out.printf("  %-10s %8d %12d %14d%n", name, size, r[0] / iterations,
+                r[1] < 0 ? -1 : r[1] / iterations);
+    }
+
+    private static TransferRequest sampleRequest() {
+        return new TransferRequest("3f2b8c1e-6a1d-4f6e-9a51-0c1d2e3f4a5b", "holiday-photo-0001.jpg",
+                3_456_789L, "9e107d9d372bb6826bd81d3542a419d6", 4, 1024 * 1024);
+    }
+}
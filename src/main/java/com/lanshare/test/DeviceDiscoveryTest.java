@@ -2,6 +2,7 @@ package com.lanshare.test;
 
 import com.lanshare.network.discovery.DeviceDiscovery;
 import com.lanshare.network.model.DeviceInfo;
+import com.lanshare.test.ui.FxDeviceList;
 import javafx.application.Application;
 import javafx.application.Platform;
 import javafx.collections.ListChangeListener;
@@ -134,9 +135,8 @@ public class DeviceDiscoveryTest extends Application {
         discovery.initialize();
 
         // 2. 设置设备列表监听器
-        discovery.getDeviceList().addListener((ListChangeListener<DeviceInfo>) change -> {
-            Platform.runLater(() -> updateDeviceList());
-        });
+        new FxDeviceList(discovery.getDeviceRegistry()).getItems()
+                .addListener((ListChangeListener<DeviceInfo>) change -> updateDeviceList());
 
         // 3. 启动服务
         discovery.start();
@@ -0,0 +1,220 @@
+package com.lanshare.test;
+
+import com.lanshare.network.config.NetworkConfig;
+import com.lanshare.network.discovery.DeviceExpiry;
+import com.lanshare.network.discovery.DeviceRegistry;
+import com.lanshare.network.discovery.TimerWheel;
+import com.lanshare.network.model.DeviceInfo;
+import com.lanshare.network.model.DeviceStatus;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.lanshare.test.TestSupport.check;
+
+/**
+ * 设备超时测试（时间按比例缩短：超时 300ms，删除 900ms，时间轮每格 10ms）
+ * 1. 设备在超时时间准时离线、在删除时间准时删除
+ * 2. 持续心跳的设备不会离线
+ * 3. 恢复在线后再次沉默：按新的最后在线时间离线
+ * 4. 大量设备：心跳和推进时间轮的成本与旧的全量扫描对比
+ *
+ * 运行：java com.lanshare.test.DeviceExpiryTest
+ */
+public class DeviceExpiryTest {
+
+    private static final long TIMEOUT = 300;
+    private static final long CLEANUP = 900;
+    private static final long TICK = 10;
+
+    public static void main(String[] args) {
+        System.out.println("========== 设备超时测试 ==========\n");
+        ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(1);
+
+        try {
+            scheduler.submit(() -> { }).get(); // 先启动调度线程
+
+            // 测试1：准时离线和删除
+            testPrecision(scheduler);
+
+            // 测试2：心跳保持在线
+            testHeartbeat(scheduler);
+
+            // 测试3：恢复在线
+            testBackOnline(scheduler);
+
+            // 测试4：大量设备
+            testScale();
+
+            System.out.println("\n========== 所有测试通过！✅ ==========");
+
+        } catch (Exception e) {
+            System.err.println("\n❌ 测试失败：" + e.getMessage());
+            e.printStackTrace();
+        } finally {
+            scheduler.shutdownNow();
+        }
+    }
+
+    /**
+     * 测试1：离线和删除发生在截止时间之后一格之内
+     */
+    private static void testPrecision(ScheduledExecutorService scheduler) throws Exception {
+        System.out.println("【测试1】准时离线和删除");
+
+        DeviceRegistry registry = new DeviceRegistry(0);
+        AtomicLong offlineAt = new AtomicLong();
+        AtomicLong removedAt = new AtomicLong();
+        registry.addListener(batch -> {
+            long now = System.nanoTime();
+            if (!batch.getStatusChanged().isEmpty()) {
+                offlineAt.compareAndSet(0, now);
+            }
+            if (!batch.getRemoved().isEmpty()) {
+                removedAt.compareAndSet(0, now);
+            }
+        });
+        DeviceExpiry expiry = new DeviceExpiry(registry, TIMEOUT, CLEANUP, TICK);
+        expiry.start(scheduler);
+        DeviceInfo device = device(1);
+        registry.registerOrUpdate(device);
+        long seen = device.getLastSeenNanos();
+        Thread.sleep(CLEANUP + 200);
+        expiry.stop();
+
+        check(offlineAt.get() != 0 && removedAt.get() != 0, "设备应该先离线再被删除");
+        long offline = (offlineAt.get() - seen) / 1_000_000;
+        long removed = (removedAt.get() - seen) / 1_000_000;
+        check(offline >= TIMEOUT && offline <= TIMEOUT + TICK + 20, "离线时间不准: " + offline + "ms");
+        check(removed >= CLEANUP && removed <= CLEANUP + TICK + 20, "删除时间不准: " + removed + "ms");
+        check(registry.getDeviceCount() == 0 && expiry.getTrackedCount() == 0, "删除后不应该再跟踪");
+        System.out.println("  超时 " + TIMEOUT + "ms → " + offline + "ms 离线；删除 " + CLEANUP + "ms → " + removed + "ms 删除");
+        System.out.println("  （旧做法每 " + NetworkConfig.DEVICE_CHECK_INTERVAL + "ms 扫描一次，最多晚一个扫描间隔）");
+        System.out.println("  ✅ 在截止时间之后一格之内处理\n");
+    }
+
+    /**
+     * 测试2：持续心跳的设备不会离线
+     */
+    private static void testHeartbeat(ScheduledExecutorService scheduler) throws Exception {
+        System.out.println("【测试2】心跳保持在线");
+
+        DeviceRegistry registry = new DeviceRegistry(0);
+        AtomicInteger changes = new AtomicInteger();
+        registry.addListener(batch -> changes.addAndGet(batch.getStatusChanged().size() + batch.getRemoved().size()));
+        DeviceExpiry expiry = new DeviceExpiry(registry, TIMEOUT, CLEANUP, TICK);
+        expiry.start(scheduler);
+        DeviceInfo device = device(1);
+        registry.registerOrUpdate(device);
+        for (int i = 0; i < 15; i++) { // 1.5 秒，远超超时时间
+            Thread.sleep(TIMEOUT / 3);
+            device.updateLastSeen();
+        }
+        expiry.stop();
+        check(changes.get() == 0, "持续心跳的设备不应该离线");
+        check(device.getStatus() == DeviceStatus.ONLINE, "设备应该在线");
+        System.out.println("  1.5 秒内每 " + TIMEOUT / 3 + "ms 一次心跳，设备一直在线");
+        System.out.println("  ✅ 心跳只更新时间戳，到期检查时顺延\n");
+    }
+
+    /**
+     * 测试3：离线后恢复在线，再次沉默时按新的最后在线时间离线（而不是等到旧的删除时间）
+     */
+    private static void testBackOnline(ScheduledExecutorService scheduler) throws Exception {
+        System.out.println("【测试3】恢复在线");
+
+        DeviceRegistry registry = new DeviceRegistry(0);
+        List<Long> offline = new ArrayList<>();
+        registry.addListener(batch -> {
+            for (DeviceInfo d : batch.getStatusChanged()) {
+                if (d.getStatus() == DeviceStatus.OFFLINE) {
+                    synchronized (offline) {
+                        offline.add(System.nanoTime());
+                    }
+                }
+            }
+        });
+        DeviceExpiry expiry = new DeviceExpiry(registry, TIMEOUT, CLEANUP, TICK);
+        expiry.start(scheduler);
+        DeviceInfo device = device(1);
+        registry.registerOrUpdate(device);
+        Thread.sleep(TIMEOUT + 50);
+        check(device.getStatus() == DeviceStatus.OFFLINE, "应该已经离线");
+
+        registry.touch(com.lanshare.network.protocol.DiscoveryCodec.deviceKey(device.getDeviceId())); // 恢复在线
+        long back = device.getLastSeenNanos();
+        Thread.sleep(TIMEOUT + 100);
+        expiry.stop();
+
+        synchronized (offline) {
+            check(offline.size() == 2, "应该离线两次: " + offline.size());
+            long second = (offline.get(1) - back) / 1_000_000;
+            check(second >= TIMEOUT && second <= TIMEOUT + TICK + 20, "恢复后再次离线的时间不准: " + second + "ms");
+            System.out.println("  恢复在线后 " + second + "ms 再次离线");
+        }
+        System.out.println("  ✅ 恢复在线的设备按新的最后在线时间超时\n");
+    }
+
+    /**
+     * 测试4：大量设备时心跳和时间轮推进的成本
+     */
+    private static void testScale() {
+        System.out.println("【测试4】大量设备");
+
+        int n = 10_000;
+        TimerWheel<DeviceInfo> wheel = new TimerWheel<>(TICK * 1_000_000, 512);
+        List<DeviceInfo> devices = new ArrayList<>(n);
+        long base = System.nanoTime();
+        for (int i = 0; i < n; i++) {
+            DeviceInfo d = device(i);
+            devices.add(d);
+            wheel.schedule(d, base + NetworkConfig.DEVICE_TIMEOUT * 1_000_000L); // 都在 30 秒后
+        }
+
+        // 没有设备到期时推进时间轮（每格一次）
+        int rounds = 1000;
+        long start = System.nanoTime();
+        int due = 0;
+        for (int i = 0; i < rounds; i++) {
+            due += wheel.advance(base + i * TICK * 1_000_000L, d -> { });
+        }
+        double wheelNanos = (System.nanoTime() - start) / (double) rounds;
+        check(due == 0 && wheel.size() == n, "不应该有设备到期");
+
+        // 旧做法：每次检查扫描所有设备
+        start = System.nanoTime();
+        int timedOut = 0;
+        for (int i = 0; i < rounds / 10; i++) {
+            for (DeviceInfo d : devices) {
+                if (d.isTimeout(NetworkConfig.DEVICE_TIMEOUT)) {
+                    timedOut++;
+                }
+            }
+        }
+        double scanNanos = (System.nanoTime() - start) / (double) (rounds / 10);
+        check(timedOut == 0, "不应该有设备超时");
+
+        // 心跳：只更新时间戳
+        start = System.nanoTime();
+        for (int r = 0; r < 100; r++) {
+            for (DeviceInfo d : devices) {
+                d.updateLastSeen();
+            }
+        }
+        double heartbeatNanos = (System.nanoTime() - start) / (100.0 * n);
+
+        System.out.printf("  %d 个设备：推进一格 %.0f ns，旧的全量扫描一次 %.0f µs，心跳 %.0f ns/次%n",
+                n, wheelNanos, scanNanos / 1000, heartbeatNanos);
+        System.out.println("  ✅ 没有设备到期时检查几乎没有开销，心跳 O(1)\n");
+    }
+
+    // ==================== 辅助方法 ====================
+
+    private static DeviceInfo device(int i) {
+        return new DeviceInfo("dev-" + i, "D" + i, "u", "10.0." + (i >> 8 & 255) + "." + (i & 255), 9999);
+    }
+}
@@ -0,0 +1,248 @@
+package com.lanshare.test;
+
+import com.lanshare.network.discovery.DeviceRegistry;
+import com.lanshare.network.model.DeviceInfo;
+import com.lanshare.network.model.DeviceStatus;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.lanshare.test.TestSupport.check;
+
+/**
+ * 设备注册表测试
+ * 1. 合并窗口内的变化合并成一批，先加后删的设备不出现
+ * 2. 状态变化、地址变化
+ * 3. 多线程并发注册，监听器维护的副本与快照一致
+ * 4. 心跳开销（与逐个 indexOf 查找的旧做法对比）
+ *
+ * 运行：java com.lanshare.test.DeviceRegistryTest [设备数]
+ */
+public class DeviceRegistryTest {
+
+    public static void main(String[] args) {
+        System.out.println("========== 设备注册表测试 ==========\n");
+        int devices = args.length > 0 ? Integer.parseInt(args[0]) : 500;
+
+        try {
+            // 测试1：批量合并
+            testCoalescing();
+
+            // 测试2：状态与地址变化
+            testStatusAndEndpoint();
+
+            // 测试3：并发注册
+            testConcurrentRegistration();
+
+            // 测试4：心跳开销
+            testHeartbeatCost(devices);
+
+            System.out.println("\n========== 所有测试通过！✅ ==========");
+
+        } catch (Exception e) {
+            System.err.println("\n❌ 测试失败：" + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * 测试1：合并窗口内的变化合并成一批
+     */
+    private static void testCoalescing() throws Exception {
+        System.out.println("【测试1】批量合并");
+
+        DeviceRegistry registry = new DeviceRegistry(200);
+        List<DeviceRegistry.ChangeBatch> batches = new ArrayList<>();
+        CountDownLatch delivered = new CountDownLatch(1);
+        registry.addListener(batch -> {
+            synchronized (batches) {
+                batches.add(batch);
+            }
+            delivered.countDown();
+        });
+
+        for (int i = 0; i < 300; i++) {
+            registry.registerOrUpdate(device(i));
+        }
+        registry.registerOrUpdate(new DeviceInfo("transient", "T", "u", "10.9.9.9", 9999));
+        registry.removeDevice("transient"); // 窗口内先加后删
+        for (int i = 0; i < 300; i++) {
+            registry.registerOrUpdate(device(i)); // 心跳
+        }
+
+        check(delivered.await(2, TimeUnit.SECONDS), "应该收到变化批次");
+        Thread.sleep(300);
+        synchronized (batches) {
+            int added = 0;
+            for (DeviceRegistry.ChangeBatch batch : batches) {
+                added += batch.getAdded().size();
+                check(batch.getRemoved().isEmpty() && batch.getStatusChanged().isEmpty(), "批次内容不对: " + batch);
+                for (DeviceInfo d : batch.getAdded()) {
+                    check(!d.getDeviceId().equals("transient"), "窗口内先加后删的设备不应该出现");
+                }
+            }
+            check(added == 300, "应该新增 300 个设备，实际 " + added);
+            check(batches.size() <= 3, "600 次操作应该合并成很少几批，实际 " + batches.size());
+            System.out.println("  600 次注册/心跳 + 1 个临时设备 → " + batches);
+        }
+        System.out.println("  ✅ 批量合并正常\n");
+    }
+
+    /**
+     * 测试2：状态变化与地址变化
+     */
+    private static void testStatusAndEndpoint() {
+        System.out.println("【测试2】状态与地址变化");
+
+        DeviceRegistry registry = new DeviceRegistry(0);
+        List<String> events = new ArrayList<>();
+        registry.addListener(batch -> events.add(describe(batch)));
+
+        registry.registerOrUpdate(device(1));
+        check(registry.updateStatus("dev-1", DeviceStatus.OFFLINE), "应该标记为离线");
+        check(!registry.updateStatus("dev-1", DeviceStatus.OFFLINE), "重复标记不算变化");
+        registry.registerOrUpdate(device(1)); // 离线后又收到心跳
+        registry.registerOrUpdate(new DeviceInfo("dev-1", "设备1", "u", "10.0.0.1", 7777)); // 端口变了
+        check(registry.findDevice("dev-1").getPort() == 7777, "端口应该更新");
+        check(registry.findDeviceByIp("10.0.0.1") == registry.findDevice("dev-1"), "IP 索引应该指向新对象");
+
+        String expected = "[+dev-1, ~dev-1, ~dev-1, -dev-1+dev-1]";
+        check(events.toString().equals(expected), "事件不对: " + events);
+        System.out.println("  事件: " + events);
+
+        check(registry.updateStatus("dev-1", DeviceStatus.OFFLINE), "应该标记为离线");
+        check(registry.removeOfflineDevices() == 1 && registry.getDeviceCount() == 0, "离线设备应该被移除");
+        System.out.println("  ✅ 状态与地址变化正常\n");
+    }
+
+    /**
+     * 测试3：多线程并发注册
+     */
+    private static void testConcurrentRegistration() throws Exception {
+        System.out.println("【测试3】并发注册");
+
+        DeviceRegistry registry = new DeviceRegistry(20);
+        Map<String, DeviceInfo> replica = new LinkedHashMap<>();
+        AtomicInteger batchCount = new AtomicInteger();
+        registry.addListener(batch -> {
+            batchCount.incrementAndGet();
+            for (DeviceInfo d : batch.getRemoved()) {
+                replica.remove(d.getDeviceId());
+            }
+            for (DeviceInfo d : batch.getAdded()) {
+                replica.put(d.getDeviceId(), d);
+            }
+        });
+
+        int threads = 4;
+        int perThread = 250;
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int base = t * perThread;
+            Thread w = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < perThread; i++) {
+                    registry.registerOrUpdate(device(base + i));
+                    if (i % 5 == 0) {
+                        registry.removeDevice("dev-" + (base + i)); // 一部分注册后马上移除
+                    }
+                }
+            });
+            w.start();
+            workers.add(w);
+        }
+        start.countDown();
+        for (Thread w : workers) {
+            w.join();
+        }
+        registry.flush();
+
+        int expected = threads * perThread * 4 / 5;
+        check(registry.getDeviceCount() == expected, "设备数不对: " + registry.getDeviceCount());
+        for (DeviceInfo d : registry.getAllDevices()) {
+            check(registry.findDeviceByIp(d.getIpAddress()) == d, "IP 索引不一致: " + d);
+        }
+        check(replica.size() == expected && replica.keySet().containsAll(
+                registry.getSnapshot().getDevices().stream().map(DeviceInfo::getDeviceId).toList()),
+                "监听器副本与快照不一致: " + replica.size());
+        System.out.println("  " + threads + " 个线程各注册 " + perThread + " 个设备，最终 " + expected
+                + " 个，收到 " + batchCount.get() + " 批通知");
+        System.out.println("  ✅ 并发注册正常\n");
+    }
+
+    /**
+     * 测试4：心跳开销
+     */
+    private static void testHeartbeatCost(int n) {
+        System.out.println("【测试4】心跳开销（" + n + " 个设备）");
+
+        DeviceRegistry registry = new DeviceRegistry(50);
+        AtomicInteger batches = new AtomicInteger();
+        registry.addListener(batch -> batches.incrementAndGet());
+        List<DeviceInfo> beacons = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            registry.registerOrUpdate(device(i));
+            beacons.add(device(i)); // 每条心跳都是新解析出的对象
+        }
+        registry.flush();
+        batches.set(0);
+
+        // 旧做法：每次心跳在列表里 indexOf 再 set
+        List<DeviceInfo> list = new ArrayList<>(registry.getAllDevices());
+        int rounds = 200;
+        long start = System.nanoTime();
+        for (int r = 0; r < rounds; r++) {
+            for (DeviceInfo beacon : beacons) {
+                int idx = list.indexOf(beacon);
+                if (idx >= 0) {
+                    list.set(idx, list.get(idx));
+                }
+            }
+        }
+        double oldNs = (System.nanoTime() - start) / (double) (rounds * n);
+
+        start = System.nanoTime();
+        for (int r = 0; r < rounds; r++) {
+            for (DeviceInfo beacon : beacons) {
+                registry.registerOrUpdate(beacon);
+            }
+        }
+        double newNs = (System.nanoTime() - start) / (double) (rounds * n);
+        registry.flush();
+
+        check(batches.get() == 0, "心跳不应该产生变化通知: " + batches.get());
+        System.out.printf("  每次心跳: indexOf 查找 %.0f ns，快照索引 %.0f ns；%d 轮心跳产生 %d 批通知%n",
+                oldNs, newNs, rounds, batches.get());
+        System.out.println("  ✅ 心跳不再随设备数线性增长，也不产生界面事件\n");
+    }
+
+    // ==================== 辅助方法 ====================
+
+    private static DeviceInfo device(int i) {
+        return new DeviceInfo("dev-" + i, "设备" + i, "u", "10.0." + (i / 250) + "." + (i % 250 + 1), 9999);
+    }
+
+    private static String describe(DeviceRegistry.ChangeBatch batch) {
+        StringBuilder sb = new StringBuilder();
+        for (DeviceInfo d : batch.getRemoved()) {
+            sb.append('-').append(d.getDeviceId());
+        }
+        for (DeviceInfo d : batch.getAdded()) {
+            sb.append('+').append(d.getDeviceId());
+        }
+        for (DeviceInfo d : batch.getStatusChanged()) {
+            sb.append('~').append(d.getDeviceId());
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,206 @@
+package com.lanshare.test;
+
+import com.lanshare.network.discovery.DeviceDiscovery;
+import com.lanshare.network.discovery.DeviceRegistry;
+import com.lanshare.network.model.DeviceInfo;
+import com.lanshare.network.model.DeviceStatus;
+import com.lanshare.network.protocol.DiscoveryCodec;
+import com.lanshare.network.protocol.DiscoveryMessage;
+import com.lanshare.network.protocol.ProtocolException;
+
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static com.lanshare.test.TestSupport.check;
+
+/**
+ * 二进制发现报文测试
+ * 1. 报文大小（与 JSON 对比）
+ * 2. 编解码往返、跳过未知字段、拒绝错误报文
+ * 3. 二进制心跳刷新已知设备，两种格式都能识别
+ * 4. 每个心跳的内存分配（与 JSON 路径对比）
+ *
+ * 运行：java com.lanshare.test.DiscoveryCodecTest
+ */
+public class DiscoveryCodecTest {
+
+    private static final DeviceInfo REMOTE = new DeviceInfo(
+            "5f0c2a9e-3b1d-3c44-9a51-7d0e3f6b8c21", "DESKTOP-远程", "alice", "192.168.1.23", 8888);
+
+    public static void main(String[] args) {
+        System.out.println("========== 二进制发现报文测试 ==========\n");
+
+        try {
+            // 测试1：报文大小
+            testSize();
+
+            // 测试2：编解码
+            testRoundTrip();
+
+            // 测试3：接收处理
+            testIngest();
+
+            // 测试4：心跳内存分配
+            testHeartbeatAllocation();
+
+            System.out.println("\n========== 所有测试通过！✅ ==========");
+
+        } catch (Exception e) {
+            System.err.println("\n❌ 测试失败：" + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * 测试1：报文大小
+     */
+    private static void testSize() {
+        System.out.println("【测试1】报文大小");
+
+        int jsonPresence = json(DiscoveryMessage.MessageType.PRESENCE).length;
+        int jsonHeartbeat = json(DiscoveryMessage.MessageType.HEARTBEAT).length;
+        int binPresence = binary(DiscoveryMessage.MessageType.PRESENCE).length;
+        int binHeartbeat = binary(DiscoveryMessage.MessageType.HEARTBEAT).length;
+
+        check(binHeartbeat == DiscoveryCodec.HEADER_LENGTH, "二进制心跳应该只有头部: " + binHeartbeat);
+        check(binPresence < jsonPresence, "二进制上线报文应该比 JSON 小");
+        System.out.println("  上线报文: JSON " + jsonPresence + " 字节，二进制 " + binPresence + " 字节");
+        System.out.println("  心跳报文: JSON " + jsonHeartbeat + " 字节，二进制 " + binHeartbeat + " 字节");
+        System.out.println("  ✅ 报文大小正常\n");
+    }
+
+    /**
+     * 测试2：编解码往返、未知字段、错误报文
+     */
+    private static void testRoundTrip() throws Exception {
+        System.out.println("【测试2】编解码");
+
+        byte[] presence = binary(DiscoveryMessage.MessageType.PRESENCE);
+        DiscoveryMessage decoded = DiscoveryCodec.decode(presence, presence.length);
+        check(decoded.getType() == DiscoveryMessage.MessageType.PRESENCE, "类型不对");
+        check(decoded.getDeviceId().equals(REMOTE.getDeviceId()), "设备ID不对");
+        check(decoded.getDeviceName().equals(REMOTE.getDeviceName()), "设备名不对（中文）");
+        check(decoded.getUserName().equals(REMOTE.getUserName()), "用户名不对");
+        check(decoded.getPort() == REMOTE.getPort(), "端口不对");
+
+        // 新版本追加的字段：field 9，字节串 "abc"
+        byte[] extended = Arrays.copyOf(presence, presence.length + 5);
+        extended[presence.length] = (byte) (9 << 3 | 2);
+        extended[presence.length + 1] = 3;
+        extended[presence.length + 2] = 'a';
+        extended[presence.length + 3] = 'b';
+        extended[presence.length + 4] = 'c';
+        check(DiscoveryCodec.decode(extended, extended.length).getPort() == REMOTE.getPort(), "未知字段应该被跳过");
+
+        byte[] future = presence.clone();
+        future[2] = (byte) (DiscoveryCodec.VERSION + 1);
+        check(DiscoveryCodec.peekType(future, future.length) == null, "不支持的版本应该被拒绝");
+        expectProtocolException(future, "不支持的版本");
+
+        byte[] tampered = presence.clone();
+        tampered[11] ^= 1;
+        expectProtocolException(tampered, "设备键与设备ID不一致");
+
+        byte[] heartbeat = binary(DiscoveryMessage.MessageType.HEARTBEAT);
+        expectProtocolException(heartbeat, "心跳不带身份信息");
+        check(DiscoveryCodec.peekDeviceKey(heartbeat) == DiscoveryCodec.deviceKey(REMOTE.getDeviceId()), "心跳设备键不对");
+
+        byte[] json = json(DiscoveryMessage.MessageType.PRESENCE);
+        check(!DiscoveryCodec.isBinary(json, json.length), "JSON 不应该被识别为二进制");
+        System.out.println("  ✅ 编解码正常\n");
+    }
+
+    /**
+     * 测试3：两种格式的接收处理
+     */
+    private static void testIngest() throws Exception {
+        System.out.println("【测试3】接收处理");
+
+        DeviceRegistry registry = new DeviceRegistry(0);
+        DeviceDiscovery discovery = new DeviceDiscovery(registry);
+        discovery.initialize();
+        InetAddress sender = InetAddress.getByName(REMOTE.getIpAddress());
+
+        byte[] heartbeat = binary(DiscoveryMessage.MessageType.HEARTBEAT);
+        discovery.handlePacket(heartbeat, heartbeat.length, sender);
+        check(registry.getDeviceCount() == 0, "未知设备的心跳不应该注册设备");
+
+        byte[] presence = binary(DiscoveryMessage.MessageType.PRESENCE);
+        discovery.handlePacket(presence, presence.length, sender);
+        DeviceInfo device = registry.findDevice(REMOTE.getDeviceId());
+        check(device != null && device.getPort() == REMOTE.getPort(), "二进制上线报文应该注册设备");
+
+        registry.updateStatus(device.getDeviceId(), DeviceStatus.OFFLINE);
+        discovery.handlePacket(heartbeat, heartbeat.length, sender);
+        check(device.getStatus() == DeviceStatus.ONLINE, "二进制心跳应该让设备恢复在线");
+
+        byte[] own = DiscoveryCodec.encode(new DiscoveryMessage(DiscoveryMessage.MessageType.PRESENCE,
+                discovery.getLocalDevice()));
+        discovery.handlePacket(own, own.length, sender);
+        check(registry.getDeviceCount() == 1, "自己的报文应该被忽略");
+
+        byte[] goodbye = json(DiscoveryMessage.MessageType.GOODBYE);
+        discovery.handlePacket(goodbye, goodbye.length, sender);
+        check(registry.getDeviceCount() == 0, "旧版本的 JSON 下线报文也应该能处理");
+        System.out.println("  ✅ 二进制与 JSON 报文都能正确处理\n");
+    }
+
+    /**
+     * 测试4：每个心跳的内存分配
+     */
+    private static void testHeartbeatAllocation() throws Exception {
+        System.out.println("【测试4】心跳内存分配");
+
+        DeviceRegistry registry = new DeviceRegistry(0);
+        DeviceDiscovery discovery = new DeviceDiscovery(registry);
+        discovery.initialize();
+        InetAddress sender = InetAddress.getByName(REMOTE.getIpAddress());
+        byte[] presence = binary(DiscoveryMessage.MessageType.PRESENCE);
+        discovery.handlePacket(presence, presence.length, sender);
+
+        byte[] binary = binary(DiscoveryMessage.MessageType.HEARTBEAT);
+        byte[] json = json(DiscoveryMessage.MessageType.HEARTBEAT);
+        int n = 200_000;
+        double binaryBytes = allocationPerPacket(discovery, binary, sender, n);
+        double jsonBytes = allocationPerPacket(discovery, json, sender, n / 10);
+        check(registry.getDeviceCount() == 1, "心跳不应该改变设备数");
+
+        System.out.printf("  每个心跳分配: JSON %.0f 字节，二进制 %.1f 字节%n", jsonBytes, binaryBytes);
+        check(binaryBytes < 1, "二进制心跳不应该分配内存: " + binaryBytes);
+        System.out.println("  ✅ 二进制心跳处理不分配内存\n");
+    }
+
+    // ==================== 辅助方法 ====================
+
+    private static double allocationPerPacket(DeviceDiscovery discovery, byte[] packet, InetAddress sender, int n) {
+        for (int i = 0; i < n; i++) {
+            discovery.handlePacket(packet, packet.length, sender); // 预热
+        }
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long id = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(id);
+        for (int i = 0; i < n; i++) {
+            discovery.handlePacket(packet, packet.length, sender);
+        }
+        return (threads.getThreadAllocatedBytes(id) - before) / (double) n;
+    }
+
+    private static byte[] json(DiscoveryMessage.MessageType type) {
+        return new DiscoveryMessage(type, REMOTE).toJson().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] binary(DiscoveryMessage.MessageType type) {
+        return DiscoveryCodec.encode(new DiscoveryMessage(type, REMOTE));
+    }
+
+    private static void expectProtocolException(byte[] packet, String what) {
+        try {
+            DiscoveryCodec.decode(packet, packet.length);
+        } catch (ProtocolException e) {
+            return;
+        }
+        throw new AssertionError(what + "：应该抛出 ProtocolException");
+    }
+}
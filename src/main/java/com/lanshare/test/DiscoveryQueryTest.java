@@ -0,0 +1,153 @@
+package com.lanshare.test;
+
+import com.lanshare.network.config.NetworkConfig;
+import com.lanshare.network.discovery.DeviceDiscovery;
+import com.lanshare.network.discovery.DeviceRegistry;
+import com.lanshare.network.model.DeviceInfo;
+import com.lanshare.network.protocol.DiscoveryCodec;
+import com.lanshare.network.protocol.DiscoveryMessage;
+
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static com.lanshare.test.TestSupport.check;
+
+/**
+ * 主动询问测试（真实 UDP：本机启动一个 DeviceDiscovery，测试端用临时端口询问它）
+ * 1. QUERY 得到单播 PRESENCE 回复，询问方被登记；重复的询问只回复一次
+ * 2. 许多询问方同时询问：回复按随机延迟错开
+ * 3. 收到未知设备的心跳时单播询问对方
+ *
+ * 运行：java com.lanshare.test.DiscoveryQueryTest
+ */
+public class DiscoveryQueryTest {
+
+    public static void main(String[] args) {
+        System.out.println("========== 主动询问测试 ==========\n");
+
+        DeviceRegistry registry = new DeviceRegistry(0);
+        DeviceDiscovery responder = new DeviceDiscovery(registry);
+        try (DatagramSocket client = new DatagramSocket(0, InetAddress.getLoopbackAddress())) {
+            responder.initialize();
+            responder.start();
+            client.setSoTimeout(1000);
+            InetAddress target = InetAddress.getLoopbackAddress();
+            int port = NetworkConfig.getUdpPort();
+
+            // 测试1：询问与回复
+            testQueryReply(client, target, port, responder, registry);
+
+            // 测试2：回复错开
+            testReplyJitter(client, target, port);
+
+            // 测试3：未知设备的心跳
+            testUnknownHeartbeat(client, target, port);
+
+            System.out.println("\n========== 所有测试通过！✅ ==========");
+
+        } catch (Exception e) {
+            System.err.println("\n❌ 测试失败：" + e.getMessage());
+            e.printStackTrace();
+        } finally {
+            responder.stop();
+        }
+    }
+
+    /**
+     * 测试1：QUERY 得到单播回复
+     */
+    private static void testQueryReply(DatagramSocket client, InetAddress target, int port,
+                                       DeviceDiscovery responder, DeviceRegistry registry) throws Exception {
+        System.out.println("【测试1】询问与回复");
+
+        byte[] query = query("querier-1");
+        long start = System.nanoTime();
+        for (int i = 0; i < 3; i++) { // 多网卡收到多份 / 重传
+            client.send(new DatagramPacket(query, query.length, target, port));
+        }
+        DiscoveryMessage reply = receive(client);
+        double ms = (System.nanoTime() - start) / 1e6;
+        check(reply != null && reply.getType() == DiscoveryMessage.MessageType.PRESENCE, "应该收到 PRESENCE 回复");
+        check(reply.getDeviceId().equals(responder.getLocalDevice().getDeviceId()), "回复应该是对方的上线信息");
+        check(registry.findDevice("querier-1") != null, "询问方应该被登记");
+
+        client.setSoTimeout(300);
+        int duplicates = 0;
+        while (receive(client) != null) {
+            duplicates++;
+        }
+        client.setSoTimeout(1000);
+        check(duplicates == 0, "重复的询问只应该回复一次，多回复了 " + duplicates + " 次");
+        System.out.printf("  %.1f ms 收到回复（旧做法要等对方下一次广播，最长 %d ms）%n", ms,
+                NetworkConfig.BROADCAST_INTERVAL);
+        System.out.println("  ✅ 询问得到单播回复，重复询问不重复回复\n");
+    }
+
+    /**
+     * 测试2：许多询问方同时询问，回复按随机延迟错开
+     */
+    private static void testReplyJitter(DatagramSocket client, InetAddress target, int port) throws Exception {
+        System.out.println("【测试2】回复错开");
+
+        int n = 20;
+        long start = System.nanoTime();
+        for (int i = 0; i < n; i++) {
+            byte[] query = query("burst-" + i);
+            client.send(new DatagramPacket(query, query.length, target, port));
+        }
+        List<Double> arrivals = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            check(receive(client) != null, "第 " + (i + 1) + " 个回复没有收到");
+            arrivals.add((System.nanoTime() - start) / 1e6);
+        }
+        Collections.sort(arrivals);
+        double spread = arrivals.get(n - 1) - arrivals.get(0);
+        check(spread > 1, "回复应该错开: " + spread + "ms");
+        System.out.printf("  %d 个询问的回复分布在 %.1f ms 内（随机延迟上限 %d ms）%n", n, spread,
+                NetworkConfig.QUERY_RESPONSE_JITTER);
+        System.out.println("  ✅ 回复按随机延迟错开\n");
+    }
+
+    /**
+     * 测试3：收到未知设备的心跳时单播询问对方
+     */
+    private static void testUnknownHeartbeat(DatagramSocket client, InetAddress target, int port) throws Exception {
+        System.out.println("【测试3】未知设备的心跳");
+
+        byte[] heartbeat = DiscoveryCodec.encode(new DiscoveryMessage(DiscoveryMessage.MessageType.HEARTBEAT,
+                new DeviceInfo("stranger", "S", "u", "127.0.0.1", 1)));
+        client.send(new DatagramPacket(heartbeat, heartbeat.length, target, port));
+        DiscoveryMessage ask = receive(client);
+        check(ask != null && ask.getType() == DiscoveryMessage.MessageType.QUERY, "应该收到单播询问");
+        System.out.println("  ✅ 错过上线信息的设备被单播询问\n");
+    }
+
+    // ==================== 辅助方法 ====================
+
+    private static byte[] query(String deviceId) {
+        DeviceInfo self = new DeviceInfo(deviceId, "Q", "u", "127.0.0.1", 9999);
+        return DiscoveryCodec.encode(new DiscoveryMessage(DiscoveryMessage.MessageType.QUERY, self));
+    }
+
+    /**
+     * 接收一个发现报文，超时返回 null
+     */
+    private static DiscoveryMessage receive(DatagramSocket socket) throws Exception {
+        byte[] buffer = new byte[NetworkConfig.UDP_BUFFER_SIZE];
+        DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+        try {
+            socket.receive(packet);
+        } catch (SocketTimeoutException e) {
+            return null;
+        }
+        if (DiscoveryCodec.isBinary(buffer, packet.getLength())) {
+            return DiscoveryCodec.decode(buffer, packet.getLength());
+        }
+        return DiscoveryMessage.fromJson(new String(buffer, 0, packet.getLength(), "UTF-8"));
+    }
+}
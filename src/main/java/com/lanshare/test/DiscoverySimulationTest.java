@@ -0,0 +1,105 @@
+package com.lanshare.test;
+
+import com.lanshare.network.config.NetworkConfig;
+import com.lanshare.network.discovery.sim.DiscoverySimulation;
+
+import static com.lanshare.test.TestSupport.check;
+
+/**
+ * 发现协议规模模拟（内存中的虚拟网络，真实的 DeviceDiscovery / DeviceRegistry）
+ * 1. 理想网络：所有节点收敛
+ * 2. 丢包和延迟：仍然收敛
+ * 3. 稳定阶段：信标退避后的流量低于旧的固定间隔
+ *
+ * 运行：java com.lanshare.test.DiscoverySimulationTest
+ * 自定义规模：java -Xmx2g com.lanshare.test.DiscoverySimulationTest 节点数 [丢包率] [最小延迟ms] [最大延迟ms] [稳定阶段秒]
+ * 例如 1000 0.01 1 5 10
+ */
+public class DiscoverySimulationTest {
+
+    public static void main(String[] args) {
+        if (args.length > 0) {
+            runCustom(args);
+            return;
+        }
+        System.out.println("========== 发现协议规模模拟 ==========\n");
+
+        try {
+            // 测试1：理想网络
+            testIdealNetwork();
+
+            // 测试2：丢包和延迟
+            testLossyNetwork();
+
+            // 测试3：稳定阶段
+            testSteadyState();
+
+            System.out.println("\n========== 所有测试通过！✅ ==========");
+
+        } catch (Exception e) {
+            System.err.println("\n❌ 测试失败：" + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * 测试1：理想网络上所有节点收敛
+     */
+    private static void testIdealNetwork() throws Exception {
+        System.out.println("【测试1】理想网络");
+
+        DiscoverySimulation.Report report = new DiscoverySimulation(100, 0, 0, 0).run(30_000, 0, 0);
+        System.out.print(report);
+        check(report.isConverged(), "100 个节点应该收敛");
+        check(report.getConvergenceMillis() < NetworkConfig.BEACON_MAX_INTERVAL,
+                "询问应该让设备列表在一个信标周期内填满: " + report.getConvergenceMillis() + "ms");
+        System.out.println("  ✅ 所有节点互相发现\n");
+    }
+
+    /**
+     * 测试2：5% 丢包、1-20ms 延迟
+     */
+    private static void testLossyNetwork() throws Exception {
+        System.out.println("【测试2】丢包和延迟");
+
+        DiscoverySimulation.Report report = new DiscoverySimulation(100, 0.05, 1, 20).run(60_000, 0, 0);
+        System.out.print(report);
+        check(report.isConverged(), "有丢包时也应该收敛");
+        System.out.println("  ✅ 丢失的报文由重发的询问和信标补上\n");
+    }
+
+    /**
+     * 测试3：稳定阶段的流量
+     */
+    private static void testSteadyState() throws Exception {
+        System.out.println("【测试3】稳定阶段");
+
+        DiscoverySimulation.Report report = new DiscoverySimulation(50, 0, 0, 0).run(30_000, 16_000, 10_000);
+        System.out.print(report);
+        double oldRate = 2.0 * 1000 / NetworkConfig.BROADCAST_INTERVAL; // 固定间隔的 PRESENCE + HEARTBEAT
+        check(report.getSteadyPacketsPerNodeSecond() < oldRate,
+                "稳定阶段流量应该低于固定间隔: " + report.getSteadyPacketsPerNodeSecond());
+        System.out.printf("  每节点每秒 %.3f 个报文（固定间隔 %.2f 个）%n", report.getSteadyPacketsPerNodeSecond(), oldRate);
+        System.out.println("  ✅ 成员稳定后流量很低\n");
+    }
+
+    /**
+     * 按命令行参数跑一次模拟，只输出报告
+     */
+    private static void runCustom(String[] args) {
+        try {
+            int nodes = Integer.parseInt(args[0]);
+            double loss = args.length > 1 ? Double.parseDouble(args[1]) : 0;
+            long minDelay = args.length > 2 ? Long.parseLong(args[2]) : 0;
+            long maxDelay = args.length > 3 ? Long.parseLong(args[3]) : minDelay;
+            long steady = args.length > 4 ? Long.parseLong(args[4]) * 1000 : 0;
+            System.out.println("========== 发现协议规模模拟 ==========\n");
+            DiscoverySimulation.Report report = new DiscoverySimulation(nodes, loss, minDelay, maxDelay)
+                    .run(300_000, steady > 0 ? 16_000 : 0, steady);
+            System.out.print(report);
+        } catch (Exception e) {
+            System.err.println("\n❌ 模拟失败：" + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package com.lanshare.test;
+
+import com.lanshare.network.transfer.FilePreallocator;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import static com.lanshare.test.TestSupport.check;
+
+/**
+ * 接收文件预分配测试
+ * 1. 预分配：扩展到完整大小，不截断已有内容
+ * 2. 续传标记：大小 / MD5 / 偏移都匹配才续传，损坏或不匹配时从头开始
+ * 3. 没有标记的旧文件：按文件长度续传
+ */
+public class FilePreallocatorTest {
+
+    private static final String MD5 = "9e107d9d372bb6826bd81d3542a419d6";
+
+    public static void main(String[] args) {
+        System.out.println("========== 接收文件预分配测试 ==========\n");
+
+        try {
+            File dir = Files.createTempDirectory("lanshare-prealloc").toFile();
+
+            // 测试1：预分配
+            testPreallocate(dir);
+
+            // 测试2：续传标记
+            testMarker(dir);
+
+            // 测试3：没有标记的旧文件
+            testLegacyResume(dir);
+
+            System.out.println("\n========== 所有测试通过！✅ ==========");
+
+        } catch (Exception e) {
+            System.err.println("\n❌ 测试失败：" + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * 测试1：预分配
+     */
+    private static void testPreallocate(File dir) throws IOException {
+        System.out.println("【测试1】预分配");
+
+        File file = new File(dir, "prealloc.bin");
+        byte[] head = "已经写入的内容".getBytes(StandardCharsets.UTF_8);
+        Files.write(file.toPath(), head);
+
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            check(FilePreallocator.preallocate(raf, 1024 * 1024), "预分配应该成功");
+            check(raf.length() == 1024 * 1024, "应该扩展到完整大小: " + raf.length());
+
+            // 已经比目标大的文件不截断
+            check(FilePreallocator.preallocate(raf, 10), "预分配应该成功");
+            check(raf.length() == 1024 * 1024, "预分配不应该截断文件: " + raf.length());
+        }
+        byte[] read = Arrays.copyOf(Files.readAllBytes(file.toPath()), head.length);
+        check(Arrays.equals(read, head), "预分配不应该改动已有内容");
+
+        System.out.println("  ✅ 预分配正常\n");
+    }
+
+    /**
+     * 测试2：续传标记
+     */
+    private static void testMarker(File dir) throws IOException {
+        System.out.println("【测试2】续传标记");
+
+        long size = 1024 * 1024;
+        File file = new File(dir, "marked.bin");
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            FilePreallocator.preallocate(raf, size);
+        }
+
+        FilePreallocator.writeMarker(file, size, MD5, 4096);
+        check(FilePreallocator.markerOf(file).exists(), "应该写出续传标记");
+        check(FilePreallocator.resolveResumeOffset(file, size, MD5) == 4096, "标记匹配时应该从标记偏移续传");
+
+        // 预分配后文件长度等于总大小，只能靠标记判断，不匹配的标记不能续传
+        check(FilePreallocator.resolveResumeOffset(file, size, "0123456789abcdef0123456789abcdef") == 0,
+                "MD5 不一致时应该从头开始");
+        check(FilePreallocator.resolveResumeOffset(file, size + 1, MD5) == 0, "大小不一致时应该从头开始");
+
+        FilePreallocator.writeMarker(file, size, MD5, size);
+        check(FilePreallocator.resolveResumeOffset(file, size, MD5) == 0, "偏移不小于文件大小时应该从头开始");
+
+        Files.write(FilePreallocator.markerOf(file).toPath(), "offset=abc".getBytes(StandardCharsets.UTF_8));
+        check(FilePreallocator.resolveResumeOffset(file, size, MD5) == 0, "损坏的标记应该从头开始");
+
+        FilePreallocator.clearMarker(file);
+        check(!FilePreallocator.markerOf(file).exists(), "应该删除续传标记");
+        FilePreallocator.clearMarker(file); // 重复删除是安全的
+
+        System.out.println("  ✅ 续传标记正常\n");
+    }
+
+    /**
+     * 测试3：没有标记的旧文件
+     */
+    private static void testLegacyResume(File dir) throws IOException {
+        System.out.println("【测试3】没有标记的旧文件");
+
+        File file = new File(dir, "legacy.bin");
+        check(FilePreallocator.resolveResumeOffset(file, 100, MD5) == 0, "文件不存在时应该从头开始");
+
+        Files.write(file.toPath(), new byte[40]);
+        check(FilePreallocator.resolveResumeOffset(file, 100, MD5) == 40, "比远程文件小时应该从文件末尾续传");
+        check(FilePreallocator.resolveResumeOffset(file, 40, MD5) == 0, "大小相同时应该从头开始");
+
+        System.out.println("  ✅ 旧文件续传正常\n");
+    }
+}
@@ -0,0 +1,250 @@
+package com.lanshare.test;
+
+import com.lanshare.network.protocol.BufferPool;
+import com.lanshare.network.protocol.ChunkFrame;
+import com.lanshare.network.protocol.ChunkHeader;
+import com.lanshare.network.protocol.FileChunk;
+import com.lanshare.network.protocol.FrameDecoder;
+import com.lanshare.network.protocol.ProtocolException;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static com.lanshare.test.TestSupport.check;
+
+/**
+ * 零拷贝分片解码测试（FrameDecoder / ChunkFrame / BufferPool）
+ * 1. 往返：v1、v2（64 位偏移、扩展字段）和控制帧在同一个流上混合解码
+ * 2. 校验失败：CRC32 不一致、长度不一致时报错，缓冲区归还缓冲池
+ * 3. 缓冲区回收：release / detachPayload 的所有权、超大分片、数量上限
+ */
+public class FrameDecoderTest {
+
+    private static final String TASK_ID = "3f2b6c1e-8a4d-4e59-9a77-0c2f5e1d7b90";
+    private static final int BUFFER_SIZE = 8192;
+
+    public static void main(String[] args) {
+        System.out.println("========== 零拷贝分片解码测试 ==========\n");
+
+        try {
+            // 测试1：往返
+            testRoundTrip();
+
+            // 测试2：校验失败
+            testCorruptFrames();
+
+            // 测试3：缓冲区回收
+            testRecycling();
+
+            System.out.println("\n========== 所有测试通过！✅ ==========");
+
+        } catch (Exception e) {
+            System.err.println("\n❌ 测试失败：" + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * 测试1：往返
+     */
+    private static void testRoundTrip() throws IOException, ProtocolException {
+        System.out.println("【测试1】v1 / v2 / 控制帧往返");
+
+        byte[] first = data(1000, 1);
+        byte[] second = data(BUFFER_SIZE, 2);
+        byte[] third = data(1, 3);
+        long bigOffset = 5_000_000_000L; // 超过 int 范围
+
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        ChunkHeader v1 = header(ChunkHeader.VERSION_1, 0, first, -1);
+        writeFrame(stream, v1, first);
+        ChunkHeader v2 = header(ChunkHeader.VERSION_2, 4769, second, bigOffset);
+        v2.putExtension(7, "ext".getBytes(StandardCharsets.UTF_8));
+        writeFrame(stream, v2, second);
+        byte[] pause = "PAUSE".getBytes(StandardCharsets.UTF_8);
+        writeFrame(stream, header(ChunkHeader.VERSION_2, FileChunk.INDEX_CONTROL, pause, -1), pause);
+        ChunkHeader last = header(ChunkHeader.VERSION_1, 2, third, -1);
+        last.markAsLastChunk();
+        writeFrame(stream, last, third);
+
+        BufferPool pool = new BufferPool(BUFFER_SIZE, 2);
+        FrameDecoder decoder = new FrameDecoder(pool);
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(stream.toByteArray()));
+
+        ChunkFrame frame = decoder.decode(in, in.readInt());
+        check(frame.getHeader().getVersion() == ChunkHeader.VERSION_1, "第一帧应该是 v1");
+        check(frame.getChunkIndex() == 0 && frame.getOffset() == -1, "v1 帧没有偏移: " + frame);
+        check(payloadEquals(frame.getPayload(), first), "v1 数据不一致");
+        check(frame.getHeader().matchesTask(TASK_ID), "任务哈希应该一致");
+        check(!frame.isLastChunk() && !frame.isControlFrame(), "v1 标志位不正确");
+
+        frame = decoder.decode(in, in.readInt());
+        check(frame.getHeader().getVersion() == ChunkHeader.VERSION_2, "第二帧应该是 v2");
+        check(frame.getChunkIndex() == 4769, "v2 分片索引不一致: " + frame.getChunkIndex());
+        check(frame.getOffset() == bigOffset, "v2 应该带 64 位偏移: " + frame.getOffset());
+        check("ext".equals(new String(frame.getHeader().getExtension(7), StandardCharsets.UTF_8)), "扩展字段应该保留");
+        check(payloadEquals(frame.getPayload(), second), "v2 数据不一致");
+
+        frame = decoder.decode(in, in.readInt());
+        check(frame.isControlFrame() && "PAUSE".equals(frame.getControlCommand()), "控制帧命令不一致");
+
+        frame = decoder.decode(in, in.readInt());
+        check(frame.isLastChunk() && payloadEquals(frame.getPayload(), third), "最后一帧不一致");
+        frame.release();
+        // 每次解码先归还上一帧，整个流只用到一个缓冲区
+        check(pool.getAvailable() == 1, "解码完成后缓冲区应该归还: " + pool.getAvailable());
+
+        System.out.println("  ✅ v1 / v2 / 控制帧往返正常\n");
+    }
+
+    /**
+     * 测试2：校验失败
+     */
+    private static void testCorruptFrames() throws IOException {
+        System.out.println("【测试2】校验失败");
+
+        BufferPool pool = new BufferPool(BUFFER_SIZE, 1);
+        FrameDecoder decoder = new FrameDecoder(pool);
+        byte[] payload = data(512, 5);
+
+        for (int version : new int[]{ChunkHeader.VERSION_1, ChunkHeader.VERSION_2}) {
+            ByteArrayOutputStream stream = new ByteArrayOutputStream();
+            writeFrame(stream, header(version, 9, payload, version == ChunkHeader.VERSION_2 ? 4608 : -1), payload);
+            byte[] bytes = stream.toByteArray();
+            bytes[bytes.length - 1] ^= 0x5A; // 破坏最后一个数据字节
+
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+            try {
+                decoder.decode(in, in.readInt());
+                throw new AssertionError("v" + version + " CRC32 不一致应该报错");
+            } catch (ProtocolException e) {
+                check(e.getMessage().contains("CRC32"), "应该是 CRC32 错误: " + e.getMessage());
+            }
+            // 失败的帧不能占住缓冲区（池里只有一个缓冲区，泄漏的话下一帧会一直阻塞）
+            check(pool.getAvailable() == 1, "CRC32 失败后缓冲区应该归还: " + pool.getAvailable());
+        }
+
+        // 长度前缀与头部里的分片大小不一致
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        writeFrame(stream, header(ChunkHeader.VERSION_2, 1, payload, 0), payload);
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(stream.toByteArray()));
+        try {
+            decoder.decode(in, in.readInt() - 1);
+            throw new AssertionError("长度不一致应该报错");
+        } catch (ProtocolException e) {
+            check(e.getMessage().contains("数据大小不匹配"), "应该是长度错误: " + e.getMessage());
+        }
+
+        System.out.println("  ✅ 校验失败时报错并归还缓冲区\n");
+    }
+
+    /**
+     * 测试3：缓冲区回收
+     */
+    private static void testRecycling() throws Exception {
+        System.out.println("【测试3】缓冲区回收");
+
+        BufferPool pool = new BufferPool(BUFFER_SIZE, 2);
+        FrameDecoder decoder = new FrameDecoder(pool);
+        byte[] payload = data(BUFFER_SIZE, 7);
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        for (int i = 0; i < 4; i++) {
+            writeFrame(stream, header(ChunkHeader.VERSION_2, i, payload, (long) i * BUFFER_SIZE), payload);
+        }
+        byte[] oversized = data(BUFFER_SIZE * 2, 8);
+        writeFrame(stream, header(ChunkHeader.VERSION_2, 4, oversized, 4L * BUFFER_SIZE), oversized);
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(stream.toByteArray()));
+
+        // 没有取走的数据在下一次解码时自动归还：连续解码也只用一个缓冲区
+        ChunkFrame frame = decoder.decode(in, in.readInt());
+        ByteBuffer firstBuffer = frame.getPayload();
+        frame = decoder.decode(in, in.readInt());
+        check(frame.getPayload() == firstBuffer, "未取走的缓冲区应该被下一帧复用");
+
+        // detachPayload 转移所有权：解码器不再归还，调用方归还后才能复用
+        ByteBuffer detached = frame.detachPayload();
+        check(frame.getPayload() == null && frame.getPayloadLength() == 0, "取走后帧里不应该再有数据");
+        frame = decoder.decode(in, in.readInt());
+        check(frame.getPayload() != detached, "取走的缓冲区不应该被解码器复用");
+        ByteBuffer held = frame.detachPayload();
+        check(pool.getAvailable() == 0, "两个缓冲区都被取走时池应该为空");
+
+        // 达到上限后 acquire 阻塞，直到有缓冲区归还
+        CompletableFuture<ByteBuffer> waiting = CompletableFuture.supplyAsync(() -> {
+            try {
+                return pool.acquire();
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        try {
+            waiting.get(200, TimeUnit.MILLISECONDS);
+            throw new AssertionError("达到上限后 acquire 应该阻塞");
+        } catch (TimeoutException expected) {
+            // 正常：仍在等待
+        }
+        pool.release(detached);
+        ByteBuffer reused = waiting.get(5, TimeUnit.SECONDS);
+        check(reused == detached, "归还的缓冲区应该交给等待者");
+        check(reused.position() == 0 && reused.limit() == BUFFER_SIZE, "复用的缓冲区应该已清空");
+        pool.release(reused);
+        pool.release(held);
+
+        frame = decoder.decode(in, in.readInt());
+        frame.release();
+        check(pool.getAvailable() == 2, "释放后缓冲区应该回到池中: " + pool.getAvailable());
+
+        // 超过池缓冲区大小的分片临时分配，归还时直接丢弃
+        frame = decoder.decode(in, in.readInt());
+        check(frame.getPayloadLength() == oversized.length && payloadEquals(frame.getPayload(), oversized),
+                "超大分片数据不一致");
+        check(pool.getAvailable() == 2, "超大分片不应该占用池中的缓冲区");
+        frame.release();
+        check(pool.getAvailable() == 2, "超大分片的缓冲区不应该进入池");
+
+        pool.release(ByteBuffer.allocate(16));
+        pool.release(ByteBuffer.allocateDirect(BUFFER_SIZE));
+        check(pool.getAvailable() == 2, "大小或类型不符的缓冲区应该丢弃");
+
+        System.out.println("  ✅ 缓冲区回收正常\n");
+    }
+
+    // ==================== 辅助方法 ====================
+
+    private static ChunkHeader header(int version, int index, byte[] payload, long offset) {
+        ChunkHeader header = new ChunkHeader(index, payload.length, TASK_ID);
+        header.setVersion(version);
+        header.setOffset(offset);
+        header.calculateCRC32(payload);
+        return header;
+    }
+
+    /**
+     * 按线上格式写一帧：[4 字节长度][头部][数据]
+     */
+    private static void writeFrame(ByteArrayOutputStream out, ChunkHeader header, byte[] payload) {
+        byte[] head = header.toBytes();
+        ByteBuffer length = ByteBuffer.allocate(4).putInt(head.length + payload.length);
+        out.write(length.array(), 0, 4);
+        out.write(head, 0, head.length);
+        out.write(payload, 0, payload.length);
+    }
+
+    private static byte[] data(int size, long seed) {
+        byte[] data = new byte[size];
+        new Random(seed).nextBytes(data);
+        return data;
+    }
+
+    private static boolean payloadEquals(ByteBuffer payload, byte[] expected) {
+        return payload != null && payload.equals(ByteBuffer.wrap(expected));
+    }
+}
@@ -0,0 +1,312 @@
+package com.lanshare.test;
+
+import com.lanshare.metrics.jfr.CallbackEvent;
+import com.lanshare.metrics.jfr.ChecksumEvent;
+import com.lanshare.metrics.jfr.ChunkReadEvent;
+import com.lanshare.metrics.jfr.DiscoveryPacketEvent;
+import com.lanshare.metrics.jfr.DiskWriteEvent;
+import com.lanshare.metrics.jfr.FrameReceiveEvent;
+import com.lanshare.metrics.jfr.FrameSendEvent;
+import com.lanshare.metrics.jfr.HandshakeEvent;
+import com.lanshare.metrics.jfr.PauseEvent;
+import com.lanshare.network.config.NetworkConfig;
+import com.lanshare.network.config.TransportProfile;
+import com.lanshare.network.discovery.UdpBrodcaster;
+import com.lanshare.network.protocol.TransferRequest;
+import com.lanshare.network.transfer.AcceptancePolicy;
+import com.lanshare.network.transfer.ReceiveEngine;
+import com.lanshare.network.transfer.ReceiveServer;
+import com.lanshare.network.transfer.SpaceReservationManager;
+import com.lanshare.network.transfer.TransferEngine;
+import com.lanshare.network.transfer.TransferTask;
+import jdk.jfr.Event;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static com.lanshare.test.TestSupport.check;
+
+/**
+ * JFR 事件测试
+ * 1. 没有录制时事件不启用，热路径上的开销可以忽略
+ * 2. 阈值为 0 录制一次带暂停的回环传输：每一步都有事件，字段完整，任务ID一致
+ * 3. 默认阈值：握手总是记录，快速完成的分片级事件被过滤
+ * 4. 发现报文处理事件
+ *
+ * 运行：java com.lanshare.test.JfrEventsTest
+ */
+public class JfrEventsTest {
+
+    private static final List<Class<? extends Event>> EVENTS = List.of(
+            HandshakeEvent.class, ChunkReadEvent.class, ChecksumEvent.class, FrameSendEvent.class,
+            FrameReceiveEvent.class, DiskWriteEvent.class, PauseEvent.class, CallbackEvent.class,
+            DiscoveryPacketEvent.class);
+
+    private static final long FILE_SIZE = 8L * 1024 * 1024 + 123; // 9 个分片
+
+    public static void main(String[] args) {
+        System.out.println("========== JFR 事件测试 ==========\n");
+
+        try {
+            File dir = Files.createTempDirectory("jfr-test").toFile();
+            File source = createFile(new File(dir, "data.bin"), FILE_SIZE);
+
+            // 测试1：未录制
+            testDisabled();
+
+            // 测试2：阈值为 0 的完整录制
+            testFullRecording(dir, source);
+
+            // 测试3：默认阈值
+            testDefaultThresholds(dir, source);
+
+            // 测试4：发现报文
+            testDiscovery(dir);
+
+            System.out.println("\n========== 所有测试通过！✅ ==========");
+
+        } catch (Exception e) {
+            System.err.println("\n❌ 测试失败：" + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * 测试1：没有录制时 begin / record 不提交，单次开销在纳秒级
+     */
+    private static void testDisabled() {
+        System.out.println("【测试1】未录制");
+
+        check(!new ChunkReadEvent().isEnabled(), "没有录制时事件不应该启用");
+        int rounds = 5_000_000;
+        long start = System.nanoTime();
+        for (int round = 0; round < 3; round++) { // 前两轮预热
+            start = System.nanoTime();
+            for (int i = 0; i < rounds; i++) {
+                ChunkReadEvent event = new ChunkReadEvent();
+                event.begin();
+                event.record("task", i, i, 1024);
+            }
+        }
+        double perEvent = (System.nanoTime() - start) / (double) rounds;
+        check(perEvent < 200, String.format("未录制时单个事件开销过大: %.1f ns", perEvent));
+        System.out.printf("  未录制时每个事件 %.1f ns%n", perEvent);
+        System.out.println("  ✅ 未录制时开销可以忽略\n");
+    }
+
+    /**
+     * 测试2：发送端在第一片之后暂停 200ms 再恢复
+     */
+    private static void testFullRecording(File dir, File source) throws Exception {
+        System.out.println("【测试2】完整录制（阈值 0）");
+
+        Path jfr = dir.toPath().resolve("full.jfr");
+        String taskId;
+        try (Recording recording = new Recording()) {
+            for (Class<? extends Event> type : EVENTS) {
+                recording.enable(type).withThreshold(Duration.ZERO);
+            }
+            recording.start();
+            check(new ChunkReadEvent().isEnabled(), "录制中事件应该启用");
+            taskId = transfer(new File(dir, "full"), source, true);
+            recording.stop();
+            recording.dump(jfr);
+        }
+
+        List<RecordedEvent> events = RecordingFile.readAllEvents(jfr);
+        Map<String, Integer> counts = new HashMap<>();
+        for (RecordedEvent e : events) {
+            String name = e.getEventType().getName();
+            counts.merge(name, 1, Integer::sum);
+            if (e.hasField("taskId") && !name.equals("com.lanshare.DiscoveryPacket")) {
+                check(taskId.equals(e.getString("taskId")), name + " 的任务ID不对: " + e.getString("taskId"));
+            }
+        }
+        check(count(counts, "Handshake") == 2, "两端各一个握手事件: " + counts);
+        check(count(counts, "ChunkRead") == 9, "应该读取 9 个分片: " + counts);
+        check(count(counts, "FrameSend") == 9, "应该发送 9 帧: " + counts);
+        check(count(counts, "FrameReceive") == 9, "应该接收 9 帧: " + counts);
+        check(count(counts, "DiskWrite") == 9, "应该写盘 9 次: " + counts);
+        // 两端各 9 次 CRC32、接收端对暂停/恢复两个控制帧的 CRC32、两端各一次 MD5
+        check(count(counts, "Checksum") == 9 * 2 + 2 + 2, "校验事件数不对: " + counts);
+        check(count(counts, "Callback") >= 1, "应该有回调事件: " + counts);
+        check(count(counts, "Pause") == 2, "发送端本地暂停和接收端收到的暂停: " + counts);
+
+        boolean remotePause = false;
+        long bytes = 0;
+        for (RecordedEvent e : events) {
+            String name = e.getEventType().getName();
+            if (name.equals("com.lanshare.Pause")) {
+                // 发送 PAUSE 帧本身可能被背压阻塞一段时间，两端的区间都短于 200ms，只要求非空
+                check(!e.getDuration().isZero() && e.getDuration().toMillis() < 1000, "暂停时长不对: " + e.getDuration());
+                remotePause |= e.getBoolean("remote");
+            } else if (name.equals("com.lanshare.Handshake")) {
+                check(e.getBoolean("accepted") && e.getLong("fileSize") == FILE_SIZE, "握手字段不对: " + e);
+            } else if (name.equals("com.lanshare.DiskWrite")) {
+                bytes += e.getInt("bytes");
+            } else if (name.equals("com.lanshare.Checksum") && "MD5".equals(e.getString("algorithm"))) {
+                check(e.getInt("chunkIndex") == -1 && e.getLong("bytes") == FILE_SIZE, "MD5 事件字段不对: " + e);
+            }
+        }
+        check(remotePause, "接收端应该记录发送方发来的暂停");
+        check(bytes == FILE_SIZE, "写盘字节数之和不对: " + bytes);
+        System.out.println("  " + new java.util.TreeMap<>(counts));
+        System.out.println("  ✅ 每一步都有事件\n");
+    }
+
+    /**
+     * 测试3：默认阈值下只保留超过阈值的事件
+     */
+    private static void testDefaultThresholds(File dir, File source) throws Exception {
+        System.out.println("【测试3】默认阈值");
+
+        Path jfr = dir.toPath().resolve("default.jfr");
+        try (Recording recording = new Recording()) {
+            for (Class<? extends Event> type : EVENTS) {
+                recording.enable(type);
+            }
+            recording.start();
+            transfer(new File(dir, "default"), source, false);
+            recording.stop();
+            recording.dump(jfr);
+        }
+
+        int handshakes = 0;
+        int chunkEvents = 0;
+        for (RecordedEvent e : RecordingFile.readAllEvents(jfr)) {
+            String name = e.getEventType().getName();
+            if (name.equals("com.lanshare.Handshake")) {
+                handshakes++;
+            } else if (name.equals("com.lanshare.ChunkRead") || name.equals("com.lanshare.FrameSend")
+                    || name.equals("com.lanshare.FrameReceive") || name.equals("com.lanshare.DiskWrite")) {
+                chunkEvents++;
+                check(e.getDuration().toMillis() >= 10, name + " 低于阈值却被记录: " + e.getDuration());
+            }
+        }
+        check(handshakes == 2, "握手阈值为 0，应该总是记录: " + handshakes);
+        System.out.println("  分片级事件 " + chunkEvents + " 个（共 36 步，只保留 10ms 以上的）");
+        System.out.println("  ✅ 阈值过滤正常\n");
+    }
+
+    /**
+     * 测试4：向发现端口发一个报文
+     */
+    private static void testDiscovery(File dir) throws Exception {
+        System.out.println("【测试4】发现报文");
+
+        Path jfr = dir.toPath().resolve("discovery.jfr");
+        UdpBrodcaster broadcaster = new UdpBrodcaster();
+        CountDownLatch handled = new CountDownLatch(1);
+        broadcaster.setMessageListener((message, address) -> handled.countDown());
+        try (Recording recording = new Recording();
+             DatagramSocket client = new DatagramSocket(0, InetAddress.getLoopbackAddress())) {
+            recording.enable(DiscoveryPacketEvent.class).withThreshold(Duration.ZERO);
+            recording.start();
+            broadcaster.start();
+            byte[] data = new byte[300];
+            client.send(new DatagramPacket(data, data.length, InetAddress.getLoopbackAddress(), NetworkConfig.getUdpPort()));
+            check(handled.await(5, TimeUnit.SECONDS), "报文应该被处理");
+            Thread.sleep(50); // 事件在回调返回后提交
+            recording.stop();
+            recording.dump(jfr);
+        } finally {
+            broadcaster.stop();
+        }
+
+        List<RecordedEvent> events = RecordingFile.readAllEvents(jfr);
+        check(events.size() == 1, "应该有一个发现报文事件: " + events.size());
+        RecordedEvent e = events.get(0);
+        check(e.getInt("bytes") == 300, "报文长度不对: " + e.getInt("bytes"));
+        check(InetAddress.getLoopbackAddress().getHostAddress().equals(e.getString("source")), "来源不对: " + e.getString("source"));
+        System.out.println("  ✅ 发现报文事件正常\n");
+    }
+
+    // ==================== 辅助方法 ====================
+
+    /**
+     * 回环传输一个文件，返回任务ID
+     *
+     * @param pause 发送端发出第一片后暂停 200ms
+     */
+    private static String transfer(File saveDir, File source, boolean pause) throws Exception {
+        AcceptancePolicy policy = new AcceptancePolicy(null);
+        policy.setDefaultAction(AcceptancePolicy.Action.ACCEPT);
+        policy.setSaveDirectory(saveDir.getAbsolutePath());
+        ReceiveEngine engine = new ReceiveEngine(policy, SpaceReservationManager.getInstance());
+        CountDownLatch done = new CountDownLatch(1);
+        AtomicBoolean ok = new AtomicBoolean();
+        engine.addListener(new ReceiveEngine.ReceiveListener() {
+            @Override
+            public void onReceiveCompleted(TransferTask task, File file, boolean md5Matched) {
+                ok.set(md5Matched);
+                done.countDown();
+            }
+
+            @Override
+            public void onReceiveFailed(TransferTask task, String reason, boolean canceled) {
+                done.countDown();
+            }
+        });
+        int port = engine.start(new ReceiveServer(TransportProfile.GIGABIT_WIRED, 0, 4, engine::handleConnection));
+        TransferEngine sender = new TransferEngine(2);
+        try {
+            TransferRequest request = TransferRequest.fromFile(source);
+            AtomicBoolean paused = new AtomicBoolean(!pause);
+            TransferTask[] holder = new TransferTask[1];
+            TransferTask task = new TransferTask(request.getTaskId(), source.getAbsolutePath(), "127.0.0.1", port,
+                    TransferTask.TransferType.SEND, request, (id, sent, total) -> {
+                        // 在发送线程上调用：暂停在发下一片之前生效
+                        if (paused.compareAndSet(false, true)) {
+                            holder[0].pause();
+                            new Thread(() -> {
+                                try {
+                                    Thread.sleep(200);
+                                } catch (InterruptedException ignored) {
+                                    return;
+                                }
+                                holder[0].resume();
+                            }).start();
+                        }
+                    });
+            holder[0] = task;
+            sender.submitTask(task).get(2, TimeUnit.MINUTES);
+            check(done.await(60, TimeUnit.SECONDS) && ok.get(), "传输应该成功");
+            return request.getTaskId();
+        } finally {
+            sender.shutdown();
+            engine.stop();
+        }
+    }
+
+    private static int count(Map<String, Integer> counts, String event) {
+        return counts.getOrDefault("com.lanshare." + event, 0);
+    }
+
+    private static File createFile(File file, long size) throws Exception {
+        Random random = new Random(42);
+        byte[] block = new byte[1024 * 1024];
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            for (long written = 0; written < size; written += block.length) {
+                random.nextBytes(block);
+                raf.write(block, 0, (int) Math.min(block.length, size - written));
+            }
+        }
+        return file;
+    }
+}
@@ -0,0 +1,158 @@
+package com.lanshare.test;
+
+import com.lanshare.cli.LanShareCli;
+import com.lanshare.network.config.TransportProfile;
+import com.lanshare.network.discovery.DeviceRegistry;
+import com.lanshare.network.model.DeviceInfo;
+import com.lanshare.network.transfer.AcceptancePolicy;
+import com.lanshare.network.transfer.ReceiveEngine;
+import com.lanshare.network.transfer.ReceiveServer;
+import com.lanshare.network.transfer.SpaceReservationManager;
+import com.lanshare.network.transfer.TransferTask;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static com.lanshare.test.TestSupport.check;
+
+/**
+ * 无界面模式测试
+ * 1. DeviceRegistry 不依赖 JavaFX，变化通过监听器通知
+ * 2. lanshare send 按 IP 发送到无界面接收引擎
+ * 3. 参数错误返回用法退出码
+ *
+ * 运行（classpath 中不需要 JavaFX）：java -cp classes:gson.jar com.lanshare.test.LanShareCliTest
+ */
+public class LanShareCliTest {
+
+    public static void main(String[] args) {
+        System.out.println("========== 无界面模式测试 ==========\n");
+
+        try {
+            // 测试1：注册表
+            testRegistry();
+
+            // 测试2：命令行发送
+            testSend();
+
+            // 测试3：参数错误
+            testUsage();
+
+            System.out.println("\n========== 所有测试通过！✅ ==========");
+
+        } catch (Exception e) {
+            System.err.println("\n❌ 测试失败：" + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * 测试1：注册表不依赖 JavaFX
+     */
+    private static void testRegistry() {
+        System.out.println("【测试1】无界面注册表");
+
+        DeviceRegistry registry = new DeviceRegistry(0); // 不合并，同步通知
+        List<String> events = new ArrayList<>();
+        registry.addListener(batch -> {
+            for (DeviceInfo d : batch.getRemoved()) {
+                events.add("-" + d.getDeviceId());
+            }
+            for (DeviceInfo d : batch.getAdded()) {
+                events.add("+" + d.getDeviceId());
+            }
+        });
+
+        registry.registerOrUpdate(new DeviceInfo("a", "A", "u", "10.0.0.1", 8888));
+        registry.registerOrUpdate(new DeviceInfo("a", "A", "u", "10.0.0.1", 8888)); // 心跳不产生事件
+        registry.registerOrUpdate(new DeviceInfo("b", "B", "u", "10.0.0.1", 8888)); // 同 IP 新设备替换旧设备
+        registry.clear();
+        check(events.toString().equals("[+a, -a, +b, -b]"), "事件顺序不对: " + events);
+        check(registry.getDeviceCount() == 0, "清空后应该没有设备");
+        System.out.println("  事件: " + events);
+
+        boolean fxLoaded = isLoadable("javafx.application.Platform");
+        System.out.println("  classpath 中" + (fxLoaded ? "有" : "没有") + " JavaFX");
+        System.out.println("  ✅ 注册表正常\n");
+    }
+
+    /**
+     * 测试2：lanshare send 按 IP 发送
+     */
+    private static void testSend() throws Exception {
+        System.out.println("【测试2】命令行发送");
+
+        File dir = Files.createTempDirectory("lanshare-cli").toFile();
+        File source = new File(dir, "artifact.bin");
+        byte[] data = new byte[8 * 1024 * 1024];
+        new Random(7).nextBytes(data);
+        Files.write(source.toPath(), data);
+
+        File saveDir = new File(dir, "inbox");
+        AcceptancePolicy policy = new AcceptancePolicy(null);
+        policy.setDefaultAction(AcceptancePolicy.Action.ACCEPT);
+        policy.setSaveDirectory(saveDir.getAbsolutePath());
+        ReceiveEngine engine = new ReceiveEngine(policy, SpaceReservationManager.getInstance());
+        AtomicBoolean md5Ok = new AtomicBoolean();
+        CountDownLatch done = new CountDownLatch(1);
+        engine.addListener(new ReceiveEngine.ReceiveListener() {
+            @Override
+            public void onReceiveCompleted(TransferTask task, File file, boolean md5Matched) {
+                md5Ok.set(md5Matched);
+                done.countDown();
+            }
+        });
+        int port = engine.start(new ReceiveServer(TransportProfile.GIGABIT_WIRED, 0, 4, engine::handleConnection));
+
+        try {
+            long start = System.nanoTime();
+            int code = LanShareCli.run(new String[] { "send", source.getPath(), "--to", "127.0.0.1:" + port });
+            double ms = (System.nanoTime() - start) / 1e6;
+            check(code == LanShareCli.EXIT_OK, "send 应该成功，退出码 " + code);
+            check(done.await(10, TimeUnit.SECONDS) && md5Ok.get(), "接收端 MD5 应该一致");
+            check(new File(saveDir, source.getName()).length() == data.length, "文件大小不一致");
+
+            Runtime rt = Runtime.getRuntime();
+            System.gc();
+            System.out.printf("  发送 8 MB 用时 %.0f ms；JVM 启动至今 %d ms，已加载类 %d 个，堆占用 %d MB%n", ms,
+                    ManagementFactory.getRuntimeMXBean().getUptime(),
+                    ManagementFactory.getClassLoadingMXBean().getLoadedClassCount(),
+                    (rt.totalMemory() - rt.freeMemory()) / (1024 * 1024));
+
+            code = LanShareCli.run(new String[] { "send", new File(dir, "missing").getPath(), "--to", "127.0.0.1:" + port });
+            check(code == LanShareCli.EXIT_FAILED, "文件不存在应该失败");
+        } finally {
+            engine.stop();
+        }
+        System.out.println("  ✅ 命令行发送正常\n");
+    }
+
+    /**
+     * 测试3：参数错误
+     */
+    private static void testUsage() {
+        System.out.println("【测试3】参数错误");
+        check(LanShareCli.run(new String[0]) == LanShareCli.EXIT_USAGE, "没有命令应该返回用法错误");
+        check(LanShareCli.run(new String[] { "send", "--to" }) == LanShareCli.EXIT_USAGE, "缺少参数应该返回用法错误");
+        check(LanShareCli.run(new String[] { "bogus" }) == LanShareCli.EXIT_USAGE, "未知命令应该返回用法错误");
+        System.out.println("  ✅ 参数错误处理正常\n");
+    }
+
+    // ==================== 辅助方法 ====================
+
+    private static boolean isLoadable(String className) {
+        try {
+            Class.forName(className, false, LanShareCliTest.class.getClassLoader());
+            return true;
+        } catch (ClassNotFoundException e) {
+            return false;
+        }
+    }
+}
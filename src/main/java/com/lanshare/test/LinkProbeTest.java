@@ -0,0 +1,217 @@
+package com.lanshare.test;
+
+import com.lanshare.network.config.TransportProfile;
+import com.lanshare.network.discovery.DeviceRegistry;
+import com.lanshare.network.model.DeviceInfo;
+import com.lanshare.network.model.LinkProfile;
+import com.lanshare.network.probe.LinkProber;
+import com.lanshare.network.protocol.ControlCodec;
+import com.lanshare.network.protocol.ControlMessage;
+import com.lanshare.network.transfer.ReceiveEngine;
+import com.lanshare.network.transfer.ReceiveServer;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static com.lanshare.test.TestSupport.check;
+
+/**
+ * 链路探测测试（本机回环，探测 ReceiveEngine 的 TCP 端口）
+ * 1. 按需探测：测得 RTT、抖动和吞吐量，画像保存在注册表的设备上，给出传输前的建议
+ * 2. 多地址设备：选出能连通且最快的地址
+ * 3. 不支持探测的对端记为失败，排序时排在后面
+ * 4. 多次探测平滑合并
+ * 5. 后台探测：有传输时跳过，空闲时探测没有画像的设备
+ *
+ * 运行：java com.lanshare.test.LinkProbeTest
+ */
+public class LinkProbeTest {
+
+    private static final TransportProfile PROFILE = TransportProfile.GIGABIT_WIRED;
+    private static final int BURST = 1024 * 1024;
+
+    public static void main(String[] args) {
+        System.out.println("========== 链路探测测试 ==========\n");
+
+        ReceiveEngine engine = new ReceiveEngine();
+        try (ReceiveServer silent = new ReceiveServer(PROFILE, 0, 4, socket -> { })) {
+            int port = engine.start(new ReceiveServer(PROFILE, 0, 4, engine::handleConnection));
+            int silentPort = silent.start(); // 模拟旧版本：收到不认识的消息直接断开
+
+            // 测试1：按需探测
+            testProbe(port);
+
+            // 测试2：多地址
+            testMultiAddress(port);
+
+            // 测试3：不支持探测的对端
+            testUnsupported(port, silentPort);
+
+            // 测试4：平滑合并
+            testRolling(port);
+
+            // 测试5：后台探测
+            testBackground(port);
+
+            System.out.println("\n========== 所有测试通过！✅ ==========");
+
+        } catch (Exception e) {
+            System.err.println("\n❌ 测试失败：" + e.getMessage());
+            e.printStackTrace();
+        } finally {
+            engine.stop();
+        }
+    }
+
+    /**
+     * 测试1：探测一个设备，画像写入注册表
+     */
+    private static void testProbe(int port) throws Exception {
+        System.out.println("【测试1】按需探测");
+
+        DeviceRegistry registry = new DeviceRegistry(0);
+        registry.registerOrUpdate(new DeviceInfo("dev-1", "D1", "u", "127.0.0.1", port));
+        LinkProber prober = prober(registry, 0);
+
+        LinkProfile link = prober.probeAsync(registry.findDevice("dev-1")).get();
+        prober.stop();
+        check(link.isReachable(), "回环应该能连通: " + link);
+        check(link.getRttMicros() > 0 && link.getMinRttMicros() <= link.getRttMicros(), "RTT 不合理: " + link);
+        check(link.getThroughput() > 0, "应该测得吞吐量: " + link);
+        check(registry.findDevice("dev-1").getLinkProfile() == link, "画像应该保存在注册表的设备上");
+        check("127.0.0.1".equals(link.getAddress()), "地址不对: " + link.getAddress());
+
+        // JSON 形式的其他控制消息不受新增字段影响
+        String json = ControlCodec.GSON.toJson(ControlMessage.connect("1.2.3.4", "D", "u"));
+        check(!json.contains("probeSeq") && !json.contains("burstBytes"), "CONNECT 的 JSON 不应该带探测字段: " + json);
+
+        System.out.printf("  RTT %.3fms（最小 %.3fms），抖动 %.3fms，吞吐量 %.0f MB/s%n",
+                link.getRttMicros() / 1000.0, link.getMinRttMicros() / 1000.0, link.getJitterMicros() / 1000.0,
+                link.getThroughput() / 1024 / 1024);
+        System.out.println("  建议: 配置档 " + link.suggestTransportProfile().name() + "，分片 "
+                + link.suggestChunkSize() / 1024 + "KB，" + link.suggestStreams() + " 个连接");
+        System.out.println("  ✅ 探测结果保存在设备上\n");
+    }
+
+    /**
+     * 测试2：设备有多个地址时选出最快的（不可达的地址被跳过）
+     */
+    private static void testMultiAddress(int port) throws Exception {
+        System.out.println("【测试2】多地址");
+
+        DeviceRegistry registry = new DeviceRegistry(0);
+        // 192.0.2.1 是文档保留地址（TEST-NET-1），连接会超时
+        DeviceInfo device = new DeviceInfo("dev-2", "D2", "u", "192.0.2.1", port, List.of("192.0.2.1", "127.0.0.1"));
+        registry.registerOrUpdate(device);
+        LinkProber prober = prober(registry, 0);
+
+        long start = System.nanoTime();
+        LinkProfile link = prober.probe(device);
+        long millis = (System.nanoTime() - start) / 1_000_000;
+        check(link.isReachable(), "应该有一个地址能连通: " + link);
+        check("127.0.0.1".equals(link.getAddress()), "应该选出能连通的地址: " + link.getAddress());
+        check("127.0.0.1".equals(device.getPreferredAddress()), "首选地址应该是探测选出的地址");
+        check("192.0.2.1".equals(device.getIpAddress()), "通告的地址不变");
+        System.out.println("  通告地址 " + device.getIpAddress() + "，探测选出 " + device.getPreferredAddress()
+                + "（耗时 " + millis + "ms）");
+        System.out.println("  ✅ 选出能连通且最快的路径\n");
+    }
+
+    /**
+     * 测试3：旧版本对端（直接断开）记为失败，排序时排在能连通的设备之后，没有画像的设备最后
+     */
+    private static void testUnsupported(int port, int silentPort) throws Exception {
+        System.out.println("【测试3】不支持探测的对端");
+
+        DeviceRegistry registry = new DeviceRegistry(0);
+        DeviceInfo old = new DeviceInfo("old", "Old", "u", "127.0.0.1", silentPort);
+        DeviceInfo fresh = new DeviceInfo("new", "New", "u", "127.0.0.2", port);
+        DeviceInfo unknown = new DeviceInfo("unknown", "Unknown", "u", "127.0.0.3", port);
+        registry.registerOrUpdate(old);
+        registry.registerOrUpdate(unknown);
+        registry.registerOrUpdate(fresh);
+        LinkProber prober = prober(registry, 0);
+
+        LinkProfile failed = prober.probe(old);
+        check(!failed.isReachable() && failed.getFailures() == 1, "应该记为失败: " + failed);
+        check(prober.probe(fresh).isReachable(), "新版本设备应该能连通");
+        check(prober.getFailureCount() == 1, "失败次数不对: " + prober.getFailureCount());
+        check(registry.findDevice("old").getLinkProfile() == failed, "失败也应该记录画像");
+
+        List<DeviceInfo> ranked = registry.getDevicesByLinkQuality();
+        check(ranked.size() == 3, "应该有 3 个在线设备");
+        check(ranked.get(0) == fresh && ranked.get(1) == old && ranked.get(2) == unknown,
+                "排序不对: " + ranked.get(0).getDeviceId() + ", " + ranked.get(1).getDeviceId() + ", "
+                        + ranked.get(2).getDeviceId());
+        System.out.println("  排序: " + ranked.get(0).getDeviceId() + " → " + ranked.get(1).getDeviceId()
+                + "（" + failed + "）→ " + ranked.get(2).getDeviceId());
+        System.out.println("  ✅ 不支持探测的设备不影响其他设备\n");
+    }
+
+    /**
+     * 测试4：多次探测平滑合并，设备信息变化时画像保留
+     */
+    private static void testRolling(int port) throws Exception {
+        System.out.println("【测试4】平滑合并");
+
+        DeviceRegistry registry = new DeviceRegistry(0);
+        registry.registerOrUpdate(new DeviceInfo("dev-4", "D4", "u", "127.0.0.1", port));
+        LinkProber prober = prober(registry, 0);
+        for (int i = 0; i < 5; i++) {
+            prober.probe(registry.findDevice("dev-4"));
+        }
+        LinkProfile link = registry.findDevice("dev-4").getLinkProfile();
+        check(link.getSamples() == 5, "应该合并 5 次探测: " + link.getSamples());
+
+        // 改名产生新的 DeviceInfo，画像保留
+        registry.registerOrUpdate(new DeviceInfo("dev-4", "Renamed", "u", "127.0.0.1", port));
+        check(registry.findDevice("dev-4").getLinkProfile() == link, "设备信息变化时应该保留画像");
+
+        // 同一地址上的新样本平滑合并，不会被一次异常值拉走
+        LinkProfile spike = LinkProfile.record(link, "127.0.0.1", link.getRttMicros() + 80_000,
+                link.getMinRttMicros(), link.getJitterMicros(), 0);
+        check(spike.getRttMicros() - link.getRttMicros() == 10_000, "RTT 应该按 1/8 平滑");
+        check(spike.getThroughput() == link.getThroughput(), "没有测吞吐量时应该保留原值");
+        System.out.println("  " + link);
+        System.out.println("  ✅ 画像是多次探测的平滑值\n");
+    }
+
+    /**
+     * 测试5：后台探测在有传输时跳过
+     */
+    private static void testBackground(int port) throws Exception {
+        System.out.println("【测试5】后台探测");
+
+        DeviceRegistry registry = new DeviceRegistry(0);
+        for (int i = 0; i < 3; i++) {
+            registry.registerOrUpdate(new DeviceInfo("bg-" + i, "B" + i, "u", "127.0.0." + (i + 1), port));
+        }
+        AtomicBoolean busy = new AtomicBoolean(true);
+        LinkProber prober = prober(registry, 50);
+        prober.setBusyCheck(busy::get);
+        prober.start();
+        try {
+            Thread.sleep(300);
+            check(prober.getProbeCount() == 0, "有传输时不应该探测");
+            busy.set(false);
+            long deadline = System.currentTimeMillis() + 3000;
+            while (prober.getProbeCount() < 3 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(20);
+            }
+        } finally {
+            prober.stop();
+        }
+        for (DeviceInfo d : registry.getAllDevices()) {
+            check(d.getLinkProfile() != null && d.getLinkProfile().isReachable(), "每个设备都应该被探测: " + d);
+        }
+        System.out.println("  有传输时 0 次；空闲后探测 " + prober.getProbeCount() + " 次，突发数据共 "
+                + prober.getBurstBytesSent() / 1024 + "KB");
+        System.out.println("  ✅ 后台探测只在空闲时进行\n");
+    }
+
+    // ==================== 辅助方法 ====================
+
+    private static LinkProber prober(DeviceRegistry registry, long intervalMillis) {
+        return new LinkProber(registry, PROFILE, 5, BURST, 500, intervalMillis, 60_000);
+    }
+}
@@ -0,0 +1,303 @@
+package com.lanshare.test;
+
+import com.lanshare.metrics.Counter;
+import com.lanshare.metrics.Gauge;
+import com.lanshare.metrics.Histogram;
+import com.lanshare.metrics.Metrics;
+import com.lanshare.metrics.MetricsHttpServer;
+import com.lanshare.metrics.MetricsRegistry;
+import com.lanshare.network.config.TransportProfile;
+import com.lanshare.network.protocol.TransferRequest;
+import com.lanshare.network.transfer.AcceptancePolicy;
+import com.lanshare.network.transfer.ReceiveEngine;
+import com.lanshare.network.transfer.ReceiveServer;
+import com.lanshare.network.transfer.SpaceReservationManager;
+import com.lanshare.network.transfer.TransferEngine;
+import com.lanshare.network.transfer.TransferTask;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.lang.management.ManagementFactory;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static com.lanshare.test.TestSupport.check;
+
+/**
+ * 指标测试
+ * 1. 直方图：分位数相对误差不超过分桶精度（约 3%），计数、总和、最大值准确
+ * 2. 计数器与仪表：多线程累加不丢失，绑定取值函数，同名重复注册返回同一实例
+ * 3. JMX：通过平台 MBeanServer 读到属性
+ * 4. HTTP：回环地址上抓取 /metrics，内容为 Prometheus 文本格式
+ * 5. 端到端：一次回环传输之后，字节数、分片数、耗时分布都有变化，活动会话归零
+ *
+ * 运行：java com.lanshare.test.MetricsTest
+ */
+public class MetricsTest {
+
+    private static final MetricsRegistry REGISTRY = MetricsRegistry.getInstance();
+
+    public static void main(String[] args) {
+        System.out.println("========== 指标测试 ==========\n");
+
+        try {
+            // 测试1：直方图精度
+            testHistogram();
+
+            // 测试2：计数器与仪表
+            testCounterAndGauge();
+
+            // 测试3：JMX
+            testJmx();
+
+            // 测试4：HTTP 端点
+            testHttp();
+
+            // 测试5：端到端
+            testTransfer();
+
+            System.out.println("\n========== 所有测试通过！✅ ==========");
+
+        } catch (Exception e) {
+            System.err.println("\n❌ 测试失败：" + e.getMessage());
+            e.printStackTrace();
+        } finally {
+            Metrics.stopExporters();
+        }
+    }
+
+    /**
+     * 测试1：1..100000 微秒均匀分布，分位数与精确值比较
+     */
+    private static void testHistogram() {
+        System.out.println("【测试1】直方图精度");
+
+        Histogram h = REGISTRY.histogram("lanshare_test_latency_seconds", "测试用");
+        h.reset();
+        int n = 100_000;
+        long sum = 0;
+        for (int i = 1; i <= n; i++) {
+            long nanos = i * 1000L;
+            h.record(nanos);
+            sum += nanos;
+        }
+        check(h.getCount() == n, "计数不对: " + h.getCount());
+        check(h.getSum() == sum, "总和不对: " + h.getSum());
+        check(h.getMax() == n * 1000L, "最大值不对: " + h.getMax());
+
+        double[] qs = {0.5, 0.9, 0.99, 0.999};
+        long[] values = h.percentiles(qs);
+        for (int i = 0; i < qs.length; i++) {
+            long exact = (long) Math.ceil(qs[i] * n) * 1000L;
+            double error = Math.abs(values[i] - exact) / (double) exact;
+            check(error <= 1.0 / 32, String.format("p%s 误差过大: %d vs %d", qs[i] * 100, values[i], exact));
+            check(values[i] >= exact, "分位数应该取桶上界（不低估）: " + values[i] + " < " + exact);
+        }
+        check(h.percentile(1.0) == h.getMax(), "p100 应该等于最大值");
+
+        // 小数值精确，极大值不越界
+        Histogram small = REGISTRY.histogram("lanshare_test_small_seconds", "测试用");
+        small.reset();
+        small.record(7);
+        small.record(-5);
+        check(small.percentile(1.0) == 7 && small.percentile(0.0) == 0, "小数值应该精确");
+        small.record(Long.MAX_VALUE);
+        check(small.percentile(1.0) == Long.MAX_VALUE, "极大值应该落在最后一个桶");
+
+        h.reset();
+        check(h.getCount() == 0 && h.percentile(0.5) == 0, "reset 之后应该清空");
+        System.out.printf("  p50=%dµs p90=%dµs p99=%dµs p999=%dµs%n",
+                values[0] / 1000, values[1] / 1000, values[2] / 1000, values[3] / 1000);
+        System.out.println("  ✅ 直方图精度正常\n");
+    }
+
+    /**
+     * 测试2：4 个线程各累加 100000 次
+     */
+    private static void testCounterAndGauge() throws Exception {
+        System.out.println("【测试2】计数器与仪表");
+
+        Counter counter = REGISTRY.counter("lanshare_test_events_total", "测试用");
+        Gauge gauge = REGISTRY.gauge("lanshare_test_depth", "测试用");
+        long before = counter.getCount();
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 100_000; i++) {
+                    counter.inc();
+                    gauge.inc();
+                    gauge.dec();
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+        check(counter.getCount() - before == 400_000, "计数丢失: " + (counter.getCount() - before));
+        check(gauge.getValue() == 0, "仪表应该回到 0: " + gauge.getValue());
+
+        gauge.bind(() -> 42);
+        check(gauge.getValue() == 42, "绑定取值函数后应该读到 42");
+        gauge.bind(null);
+
+        check(REGISTRY.counter("lanshare_test_events_total", null) == counter, "同名注册应该返回同一实例");
+        boolean rejected = false;
+        try {
+            REGISTRY.gauge("lanshare_test_events_total", null);
+        } catch (IllegalArgumentException e) {
+            rejected = true;
+        }
+        check(rejected, "同名不同类型应该抛出异常");
+        rejected = false;
+        try {
+            REGISTRY.counter("lanshare-bad name", null);
+        } catch (IllegalArgumentException e) {
+            rejected = true;
+        }
+        check(rejected, "非法名称应该抛出异常");
+        System.out.println("  ✅ 计数器与仪表正常\n");
+    }
+
+    /**
+     * 测试3：启用 JMX 后读取属性；之后新注册的指标也能读到
+     */
+    private static void testJmx() throws Exception {
+        System.out.println("【测试3】JMX");
+
+        Metrics.startExporters(true, 0);
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+
+        Counter counter = REGISTRY.counter("lanshare_test_events_total", null);
+        Object count = server.getAttribute(new ObjectName("com.lanshare:type=Metrics,name=lanshare_test_events_total"), "Count");
+        check(count instanceof Long && (Long) count == counter.getCount(), "JMX 计数不一致: " + count);
+
+        Histogram late = REGISTRY.histogram("lanshare_test_late_seconds", "启用 JMX 之后注册");
+        late.record(2_000_000);
+        ObjectName lateName = new ObjectName("com.lanshare:type=Metrics,name=lanshare_test_late_seconds");
+        check(server.isRegistered(lateName), "启用后新注册的指标也应该注册到 JMX");
+        Object p99 = server.getAttribute(lateName, "P99Micros");
+        check(p99 instanceof Double && Math.abs((Double) p99 - 2000) <= 2000.0 / 32, "P99Micros 不对: " + p99);
+        check(server.isRegistered(new ObjectName("com.lanshare:type=Metrics,name=lanshare_bytes_sent_total")),
+                "内置指标应该注册到 JMX");
+        System.out.println("  ✅ JMX 正常\n");
+    }
+
+    /**
+     * 测试4：在系统分配的端口上抓取 /metrics
+     */
+    private static void testHttp() throws Exception {
+        System.out.println("【测试4】HTTP /metrics");
+
+        MetricsHttpServer server = new MetricsHttpServer(REGISTRY, 0);
+        server.start();
+        try {
+            HttpURLConnection conn = (HttpURLConnection) new URL("http://127.0.0.1:" + server.getPort()
+                    + MetricsHttpServer.PATH).openConnection();
+            check(conn.getResponseCode() == 200, "状态码不对: " + conn.getResponseCode());
+            check(conn.getContentType().startsWith("text/plain; version=0.0.4"), "Content-Type 不对: " + conn.getContentType());
+            String body;
+            try (InputStream in = conn.getInputStream()) {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                in.transferTo(out);
+                body = out.toString(StandardCharsets.UTF_8);
+            }
+            check(body.contains("# TYPE lanshare_bytes_sent_total counter\nlanshare_bytes_sent_total "), "缺少计数器");
+            check(body.contains("# TYPE lanshare_active_send_sessions gauge"), "缺少仪表");
+            check(body.contains("lanshare_test_late_seconds{quantile=\"0.99\"} "), "缺少分位数");
+            check(body.contains("lanshare_test_late_seconds_count 1"), "缺少 _count");
+            check(body.contains("# HELP lanshare_chunk_send_seconds "), "缺少 HELP");
+
+            HttpURLConnection post = (HttpURLConnection) new URL("http://127.0.0.1:" + server.getPort()
+                    + MetricsHttpServer.PATH).openConnection();
+            post.setRequestMethod("POST");
+            check(post.getResponseCode() == 405, "POST 应该返回 405");
+            System.out.println("  抓取 " + body.length() + " 字节，" + REGISTRY.getMetrics().size() + " 个指标");
+        } finally {
+            server.stop();
+        }
+        System.out.println("  ✅ HTTP 端点正常\n");
+    }
+
+    /**
+     * 测试5：回环传输 8MB，检查各环节的指标
+     */
+    private static void testTransfer() throws Exception {
+        System.out.println("【测试5】端到端");
+
+        File dir = Files.createTempDirectory("metrics-test").toFile();
+        File source = new File(dir, "data.bin");
+        long size = 8L * 1024 * 1024 + 123;
+        byte[] block = new byte[1024 * 1024];
+        Random random = new Random(42);
+        try (RandomAccessFile raf = new RandomAccessFile(source, "rw")) {
+            for (long written = 0; written < size; written += block.length) {
+                random.nextBytes(block);
+                raf.write(block, 0, (int) Math.min(block.length, size - written));
+            }
+        }
+
+        long sent = Metrics.BYTES_SENT.getCount();
+        long received = Metrics.BYTES_RECEIVED.getCount();
+        long chunks = Metrics.CHUNKS_RECEIVED.getCount();
+        long reads = Metrics.DISK_READ.getCount();
+        long writes = Metrics.DISK_WRITE.getCount();
+        long decodes = Metrics.FRAME_DECODE.getCount();
+
+        AcceptancePolicy policy = new AcceptancePolicy(null);
+        policy.setDefaultAction(AcceptancePolicy.Action.ACCEPT);
+        policy.setSaveDirectory(new File(dir, "recv").getAbsolutePath());
+        ReceiveEngine engine = new ReceiveEngine(policy, SpaceReservationManager.getInstance());
+        CountDownLatch done = new CountDownLatch(1);
+        AtomicBoolean ok = new AtomicBoolean();
+        engine.addListener(new ReceiveEngine.ReceiveListener() {
+            @Override
+            public void onReceiveCompleted(TransferTask task, File file, boolean md5Matched) {
+                ok.set(md5Matched);
+                done.countDown();
+            }
+
+            @Override
+            public void onReceiveFailed(TransferTask task, String reason, boolean canceled) {
+                done.countDown();
+            }
+        });
+        int port = engine.start(new ReceiveServer(TransportProfile.GIGABIT_WIRED, 0, 4, engine::handleConnection));
+        TransferEngine sender = new TransferEngine(2);
+        try {
+            TransferRequest request = TransferRequest.fromFile(source);
+            TransferTask task = new TransferTask(request.getTaskId(), source.getAbsolutePath(), "127.0.0.1", port,
+                    TransferTask.TransferType.SEND, request);
+            sender.submitTask(task).get(2, TimeUnit.MINUTES);
+            check(done.await(60, TimeUnit.SECONDS) && ok.get(), "传输应该成功");
+        } finally {
+            sender.shutdown();
+            engine.stop();
+        }
+
+        check(Metrics.BYTES_SENT.getCount() - sent == size, "发送字节数不对: " + (Metrics.BYTES_SENT.getCount() - sent));
+        check(Metrics.BYTES_RECEIVED.getCount() - received == size, "接收字节数不对");
+        check(Metrics.CHUNKS_RECEIVED.getCount() - chunks == 9, "应该收到 9 个分片: " + (Metrics.CHUNKS_RECEIVED.getCount() - chunks));
+        check(Metrics.DISK_READ.getCount() - reads == 9, "应该读盘 9 次");
+        check(Metrics.DISK_WRITE.getCount() - writes == 9, "应该写盘 9 次");
+        check(Metrics.FRAME_DECODE.getCount() - decodes >= 9, "应该解码至少 9 帧");
+        check(Metrics.ACTIVE_SEND_SESSIONS.getValue() == 0, "发送会话应该归零: " + Metrics.ACTIVE_SEND_SESSIONS.getValue());
+        check(Metrics.ACTIVE_RECEIVE_SESSIONS.getValue() == 0, "接收会话应该归零");
+        check(Metrics.DISK_WRITE_QUEUE.getValue() == 0, "写盘队列应该归零");
+        System.out.printf("  分片发送 p99=%dµs，写盘 p99=%dµs，帧解码 p99=%dµs%n",
+                Metrics.CHUNK_SEND_LATENCY.percentile(0.99) / 1000,
+                Metrics.DISK_WRITE.percentile(0.99) / 1000,
+                Metrics.FRAME_DECODE.percentile(0.99) / 1000);
+        System.out.println("  ✅ 传输指标正常\n");
+    }
+}
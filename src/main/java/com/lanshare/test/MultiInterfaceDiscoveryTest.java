@@ -0,0 +1,201 @@
+package com.lanshare.test;
+
+import com.lanshare.network.discovery.DeviceDiscovery;
+import com.lanshare.network.discovery.DeviceRegistry;
+import com.lanshare.network.discovery.LocalInterfaces;
+import com.lanshare.network.discovery.UdpBrodcaster;
+import com.lanshare.network.model.DeviceInfo;
+import com.lanshare.network.protocol.DiscoveryCodec;
+import com.lanshare.network.protocol.DiscoveryMessage;
+
+import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.lanshare.test.TestSupport.check;
+
+/**
+ * 多网卡发现测试
+ * 1. 子网判断与连接地址选择（有线 + 无线 + VPN 的模拟网卡）
+ * 2. 上线消息携带所有地址（二进制与 JSON），旧版本消息没有地址列表
+ * 3. 同一设备的报文从两个网卡到达：连接地址稳定，不产生重复事件
+ * 4. 本机网卡扫描，组播收发（本机组播回环）
+ *
+ * 运行：java com.lanshare.test.MultiInterfaceDiscoveryTest
+ */
+public class MultiInterfaceDiscoveryTest {
+
+    public static void main(String[] args) {
+        System.out.println("========== 多网卡发现测试 ==========\n");
+
+        try {
+            // 测试1：地址选择
+            testAddressSelection();
+
+            // 测试2：地址通告
+            testAdvertisedAddresses();
+
+            // 测试3：多网卡接收
+            testMultiPathIngest();
+
+            // 测试4：本机网卡
+            testLocalInterfaces();
+
+            System.out.println("\n========== 所有测试通过！✅ ==========");
+
+        } catch (Exception e) {
+            System.err.println("\n❌ 测试失败：" + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * 模拟一台同时有有线、无线和 VPN 的机器
+     */
+    private static LocalInterfaces simulated() throws Exception {
+        return LocalInterfaces.of(List.of(
+                new LocalInterfaces.Subnet("eth0", ip("192.168.1.10"), 24, ip("192.168.1.255")),
+                new LocalInterfaces.Subnet("wlan0", ip("10.0.0.5"), 24, ip("10.0.0.255")),
+                new LocalInterfaces.Subnet("wlan0", ip("fd00:1::5"), 64, null),
+                new LocalInterfaces.Subnet("tun0", ip("100.64.0.2"), 32, null)));
+    }
+
+    /**
+     * 测试1：子网判断与连接地址选择
+     */
+    private static void testAddressSelection() throws Exception {
+        System.out.println("【测试1】地址选择");
+
+        LocalInterfaces local = simulated();
+        check(local.isOnLink(ip("192.168.1.77")) && !local.isOnLink(ip("192.168.2.77")), "IPv4 子网判断不对");
+        check(local.isOnLink(ip("fd00:1::9")) && !local.isOnLink(ip("fd00:2::9")), "IPv6 子网判断不对");
+        check(local.getAdvertisedAddresses().get(0).equals("192.168.1.10"), "首选地址不对");
+
+        String picked = local.selectAddress(List.of("172.16.0.9", "10.0.0.8", "192.168.1.20"), "10.0.0.8");
+        check(picked.equals("10.0.0.8"), "应该按对方的顺序选第一个同子网地址: " + picked);
+        picked = local.selectAddress(List.of("172.16.0.9"), "192.168.1.20");
+        check(picked.equals("192.168.1.20"), "没有同子网地址时应该用来源地址: " + picked);
+        picked = local.selectAddress(List.of("192.168.1.10", "10.0.0.8"), null);
+        check(picked.equals("10.0.0.8"), "对方通告的本机地址应该被忽略: " + picked);
+        picked = local.selectAddress(List.of("printer.local", "fd00:1::9"), null);
+        check(picked.equals("fd00:1::9"), "主机名不应该被解析: " + picked);
+        check(local.selectAddress(List.of(), "10.0.0.8").equals("10.0.0.8"), "旧版本设备应该用来源地址");
+        System.out.println("  本机: " + local);
+        System.out.println("  ✅ 选出与本机同子网的地址，来源地址作为回退\n");
+    }
+
+    /**
+     * 测试2：上线消息携带所有地址
+     */
+    private static void testAdvertisedAddresses() throws Exception {
+        System.out.println("【测试2】地址通告");
+
+        DeviceInfo remote = new DeviceInfo("remote-1", "Laptop", "bob", "192.168.1.20", 9999,
+                List.of("192.168.1.20", "10.0.0.8", "fd00:1::8"));
+
+        byte[] binary = DiscoveryCodec.encode(new DiscoveryMessage(DiscoveryMessage.MessageType.PRESENCE, remote));
+        DiscoveryMessage decoded = DiscoveryCodec.decode(binary, binary.length);
+        check(decoded.getAddresses().equals(remote.getAddresses()), "二进制地址列表不对: " + decoded.getAddresses());
+
+        String json = new DiscoveryMessage(DiscoveryMessage.MessageType.PRESENCE, remote).toJson();
+        check(DiscoveryMessage.fromJson(json).getAddresses().equals(remote.getAddresses()), "JSON 地址列表不对");
+
+        String legacy = "{\"type\":\"PRESENCE\",\"deviceId\":\"old\",\"deviceName\":\"Old\",\"ipAddress\":\"10.0.0.3\",\"port\":9999}";
+        check(DiscoveryMessage.fromJson(legacy).getAddresses().isEmpty(), "旧版本消息不应该有地址列表");
+        check(new DeviceInfo("old", "Old", "u", "10.0.0.3", 9999).getAddresses().equals(List.of("10.0.0.3")),
+                "旧版本设备的地址列表应该只有 ipAddress");
+
+        System.out.println("  3 个地址的上线报文: 二进制 " + binary.length + " 字节，JSON "
+                + json.getBytes(StandardCharsets.UTF_8).length + " 字节");
+        System.out.println("  ✅ 所有地址都通告给对方\n");
+    }
+
+    /**
+     * 测试3：同一设备的报文从两个网卡到达
+     */
+    private static void testMultiPathIngest() throws Exception {
+        System.out.println("【测试3】多网卡接收");
+
+        DeviceRegistry registry = new DeviceRegistry(0);
+        AtomicInteger events = new AtomicInteger();
+        registry.addListener(batch -> events.addAndGet(batch.getAdded().size() + batch.getRemoved().size()));
+        DeviceDiscovery discovery = new DeviceDiscovery(registry);
+        discovery.initialize();
+        discovery.setLocalInterfaces(simulated());
+
+        DeviceInfo remote = new DeviceInfo("remote-1", "Laptop", "bob", "10.0.0.8", 9999,
+                List.of("10.0.0.8", "192.168.1.20"));
+        byte[] presence = DiscoveryCodec.encode(new DiscoveryMessage(DiscoveryMessage.MessageType.PRESENCE, remote));
+        for (int i = 0; i < 10; i++) {
+            // 有线和无线交替收到同一台设备的报文
+            String via = i % 2 == 0 ? "192.168.1.20" : "10.0.0.8";
+            discovery.handlePacket(presence, presence.length, ip(via));
+        }
+        DeviceInfo device = registry.findDevice("remote-1");
+        check(device.getIpAddress().equals("10.0.0.8"), "连接地址应该是对方首选的同子网地址: " + device.getIpAddress());
+        check(events.get() == 1, "从两个网卡收到报文不应该反复替换设备: " + events.get() + " 个事件");
+        check(registry.findDeviceByIp("192.168.1.20") == device, "其他通告地址也应该能找到设备");
+
+        byte[] legacy = ("{\"type\":\"PRESENCE\",\"deviceId\":\"old\",\"deviceName\":\"Old\",\"UserName\":\"u\","
+                + "\"ipAddress\":\"192.168.1.10\",\"port\":9999}").getBytes(StandardCharsets.UTF_8);
+        discovery.handlePacket(legacy, legacy.length, ip("192.168.1.30"));
+        check(registry.findDevice("old").getIpAddress().equals("192.168.1.30"), "旧版本设备应该使用来源地址");
+
+        System.out.println("  10 个报文交替从两个网卡到达 → 1 个事件，连接地址 " + device.getIpAddress());
+        System.out.println("  ✅ 多网卡接收稳定\n");
+    }
+
+    /**
+     * 测试4：本机网卡扫描与组播收发
+     */
+    private static void testLocalInterfaces() throws Exception {
+        System.out.println("【测试4】本机网卡");
+
+        LocalInterfaces local = LocalInterfaces.scan();
+        System.out.println("  子网: " + local.getSubnets());
+        System.out.println("  可组播网卡: " + local.getMulticastInterfaces().size() + " 个，通告地址: "
+                + local.getAdvertisedAddresses());
+        check(local.equals(LocalInterfaces.scan()), "连续两次扫描应该相同");
+
+        UdpBrodcaster broadcaster = new UdpBrodcaster();
+        CountDownLatch received = new CountDownLatch(1);
+        byte[] probe = DiscoveryCodec.encode(new DiscoveryMessage(DiscoveryMessage.MessageType.HEARTBEAT,
+                new DeviceInfo("probe", "P", "u", "127.0.0.1", 1)));
+        broadcaster.setMessageListener(new UdpBrodcaster.UdpMessageListener() {
+            @Override
+            public void onMessage(String message, InetAddress senderAddress) {
+            }
+
+            @Override
+            public void onPacket(byte[] data, int length, InetAddress senderAddress, int senderPort) {
+                if (length == probe.length && DiscoveryCodec.peekDeviceKey(data) == DiscoveryCodec.peekDeviceKey(probe)) {
+                    received.countDown();
+                }
+            }
+        });
+        broadcaster.setInterfaces(local);
+        try {
+            broadcaster.start();
+        } catch (Exception e) {
+            System.out.println("  ⚠️ 无法绑定发现端口，跳过收发: " + e.getMessage());
+            return;
+        }
+        try {
+            broadcaster.sendBroadcast(probe);
+            boolean looped = received.await(2, TimeUnit.SECONDS);
+            System.out.println("  组播回环" + (looped ? "收到" : "未收到（环境不支持组播）") + "自己的报文");
+        } finally {
+            broadcaster.stop();
+        }
+        System.out.println("  ✅ 本机网卡扫描正常\n");
+    }
+
+    // ==================== 辅助方法 ====================
+
+    private static InetAddress ip(String literal) throws Exception {
+        return InetAddress.getByName(literal);
+    }
+}
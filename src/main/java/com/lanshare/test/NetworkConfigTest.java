@@ -2,6 +2,13 @@ package com.lanshare.test;
 
 import com.lanshare.network.config.NetworkConfig;
 
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.Properties;
+
+import static com.lanshare.test.TestSupport.check;
+
 /**
  * NetworkConfig 测试类
  *
@@ -50,13 +57,25 @@ public class NetworkConfigTest {
         System.out.println();
 
         // ===== 测试5：创建并保存配置文件 =====
+        // 写到临时文件：工作目录下的 lansshare.properties 会被后续启动读取，测试不能留下它
         System.out.println("【测试5】创建配置文件：");
         try {
+            File file = File.createTempFile("lansshare", ".properties");
+            file.deleteOnExit();
             System.out.println("创建默认配置文件...");
-            NetworkConfig.createDefaultConfig();
-            System.out.println("配置文件已保存到：lanshare.properties");
-            System.out.println("可以手动编辑该文件来修改配置");
-        } catch (Exception e) {
+            NetworkConfig.createDefaultConfig(file);
+            System.out.println("配置文件已保存到：" + file);
+
+            Properties saved = new Properties();
+            try (FileInputStream in = new FileInputStream(file)) {
+                saved.load(in);
+            }
+            // 默认配置不写死 discovery.broadcast，JSON 格式下应该发送子网定向广播
+            check(!saved.containsKey("discovery.broadcast"), "默认配置不应该写入 discovery.broadcast");
+            check("JSON".equals(saved.getProperty("discovery.format")), "默认发现报文格式应该是 JSON: "
+                    + saved.getProperty("discovery.format"));
+            System.out.println("✅ 默认配置不覆盖子网定向广播，发现报文格式为 JSON");
+        } catch (IOException e) {
             System.err.println("创建配置文件失败：" + e.getMessage());
         }
         System.out.println();
@@ -0,0 +1,379 @@
+package com.lanshare.test;
+
+import com.lanshare.network.config.NetworkConfig;
+import com.lanshare.network.config.TransportProfile;
+import com.lanshare.network.protocol.ChunkHeader;
+import com.lanshare.network.protocol.ControlMessage;
+import com.lanshare.network.protocol.ProtocolHandler;
+import com.lanshare.network.protocol.TransferRequest;
+import com.lanshare.network.protocol.TransferResponse;
+import com.lanshare.network.transfer.AcceptancePolicy;
+import com.lanshare.network.transfer.FilePreallocator;
+import com.lanshare.network.transfer.ReceiveEngine;
+import com.lanshare.network.transfer.ReceiveServer;
+import com.lanshare.network.transfer.SpaceReservationManager;
+import com.lanshare.network.transfer.TransferEngine;
+import com.lanshare.network.transfer.TransferTask;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static com.lanshare.test.TestSupport.check;
+
+/**
+ * 接收引擎测试（无界面，回环端到端）
+ * 1. TransferEngine → ReceiveEngine 完整接收，统计吞吐量并检查事件
+ * 2. 策略拒绝、无头模式下的未匹配请求、同一任务的重复连接（BUSY）
+ * 3. 断点续传：接收端已有一半文件
+ * 4. v2 分片乱序到达（最后一片先到）时收齐才完成，重复的分片报错；MD5 通过后才删除续传标记
+ *
+ * 运行：java com.lanshare.test.ReceiveEngineTest [文件MB数]
+ */
+public class ReceiveEngineTest {
+
+    private static final TransportProfile PROFILE = TransportProfile.GIGABIT_WIRED;
+
+    public static void main(String[] args) {
+        System.out.println("========== 接收引擎测试 ==========\n");
+        int megabytes = args.length > 0 ? Integer.parseInt(args[0]) : 128;
+
+        try {
+            File dir = Files.createTempDirectory("lanshare-receive").toFile();
+            File source = createFile(new File(dir, "source.bin"), (long) megabytes * 1024 * 1024);
+
+            // 测试1：完整接收
+            testReceive(dir, source);
+
+            // 测试2：拒绝
+            testReject(dir, source);
+
+            // 测试3：断点续传
+            testResume(dir, source);
+
+            // 测试4：乱序分片
+            testOutOfOrder(dir);
+
+            System.out.println("\n========== 所有测试通过！✅ ==========");
+
+        } catch (Exception e) {
+            System.err.println("\n❌ 测试失败：" + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * 测试1：完整接收（吞吐量与事件）
+     */
+    private static void testReceive(File dir, File source) throws Exception {
+        System.out.println("【测试1】完整接收（" + source.length() / (1024 * 1024) + " MB）");
+
+        File saveDir = new File(dir, "full");
+        ReceiveEngine engine = new ReceiveEngine(acceptAll(saveDir), SpaceReservationManager.getInstance());
+
+        AtomicInteger progressEvents = new AtomicInteger();
+        AtomicReference<File> completedFile = new AtomicReference<>();
+        AtomicBoolean md5Ok = new AtomicBoolean();
+        CountDownLatch done = new CountDownLatch(1);
+        engine.addListener(new ReceiveEngine.ReceiveListener() {
+            @Override
+            public void onReceiveProgress(TransferTask task, long received, long total, double bytesPerSecond) {
+                progressEvents.incrementAndGet();
+            }
+
+            @Override
+            public void onReceiveCompleted(TransferTask task, File file, boolean md5Matched) {
+                completedFile.set(file);
+                md5Ok.set(md5Matched);
+                done.countDown();
+            }
+
+            @Override
+            public void onReceiveFailed(TransferTask task, String reason, boolean canceled) {
+                done.countDown();
+            }
+        });
+
+        int port = engine.start(new ReceiveServer(PROFILE, 0, 4, engine::handleConnection));
+        TransferEngine sender = new TransferEngine(2);
+        try {
+            long start = System.nanoTime();
+            send(sender, source, port).get(5, TimeUnit.MINUTES);
+            check(done.await(60, TimeUnit.SECONDS), "应该收到完成事件");
+            double seconds = (System.nanoTime() - start) / 1e9;
+
+            check(completedFile.get() != null, "接收失败");
+            check(md5Ok.get(), "MD5 校验应该通过");
+            check(completedFile.get().length() == source.length(), "文件大小不一致");
+            check(progressEvents.get() > 0, "应该有进度事件");
+            check(engine.getActiveTasks().isEmpty(), "完成后不应该有活动任务");
+            System.out.printf("  端到端 %.0f MB/s（含双方 MD5），进度事件 %d 次%n",
+                    source.length() / seconds / (1024 * 1024), progressEvents.get());
+        } finally {
+            sender.shutdown();
+            engine.stop();
+        }
+        System.out.println("  ✅ 完整接收正常\n");
+    }
+
+    /**
+     * 测试2：策略拒绝与无头模式
+     */
+    private static void testReject(File dir, File source) throws Exception {
+        System.out.println("【测试2】拒绝");
+
+        AcceptancePolicy policy = acceptAll(new File(dir, "reject"));
+        policy.setLimits(1024, null, null);
+        ReceiveEngine engine = new ReceiveEngine(policy, SpaceReservationManager.getInstance());
+        AtomicReference<String> reason = new AtomicReference<>();
+        engine.addListener(new ReceiveEngine.ReceiveListener() {
+            @Override
+            public void onReceiveRejected(TransferRequest request, String remoteIp, String r) {
+                reason.set(r);
+            }
+        });
+
+        int port = engine.start(new ReceiveServer(PROFILE, 0, 4, engine::handleConnection));
+        TransferEngine sender = new TransferEngine(2);
+        try {
+            check(failed(send(sender, source, port)), "超过大小上限应该被拒绝");
+            System.out.println("  策略拒绝: " + reason.get());
+
+            // 无头模式：没有规则匹配、也没有 Prompter 时拒绝
+            policy.setLimits(0, null, null);
+            policy.setDefaultAction(AcceptancePolicy.Action.PROMPT);
+            reason.set(null);
+            check(failed(send(sender, source, port)), "无头模式下未匹配的请求应该被拒绝");
+            System.out.println("  无头模式拒绝: " + reason.get());
+
+            // 同一任务的第二个连接（发送方重试）在第一个连接等待询问期间到达：应该 BUSY
+            CountDownLatch prompting = new CountDownLatch(1);
+            CountDownLatch answer = new CountDownLatch(1);
+            engine.setPrompter(new ReceiveEngine.Prompter() {
+                @Override
+                public boolean confirmConnect(ControlMessage request, String remoteIp) {
+                    return false;
+                }
+
+                @Override
+                public String chooseSavePath(TransferRequest request, String remoteIp) {
+                    prompting.countDown();
+                    try {
+                        answer.await(30, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return null;
+                }
+            });
+            TransferRequest request = TransferRequest.fromFile(source);
+            try (ProtocolHandler first = ProtocolHandler.connect("127.0.0.1", port);
+                 ProtocolHandler second = ProtocolHandler.connect("127.0.0.1", port)) {
+                first.sendControl(request, false);
+                check(prompting.await(10, TimeUnit.SECONDS), "第一个连接应该进入询问");
+                second.sendControl(request, false);
+                TransferResponse busy = (TransferResponse) second.receiveControl();
+                check(!busy.isAccepted() && TransferResponse.RejectReason.BUSY.equals(busy.getRejectReason()),
+                        "重复的任务应该 BUSY: " + busy.getRejectReason());
+                answer.countDown();
+                TransferResponse declined = (TransferResponse) first.receiveControl();
+                check(!declined.isAccepted(), "询问拒绝后第一个连接应该收到拒绝");
+            }
+            // 占位在拒绝后释放：同一任务可以再次请求
+            try (ProtocolHandler third = ProtocolHandler.connect("127.0.0.1", port)) {
+                third.sendControl(request, false);
+                TransferResponse again = (TransferResponse) third.receiveControl();
+                check(TransferResponse.RejectReason.USER_DECLINED.equals(again.getRejectReason()),
+                        "拒绝后占位应该释放: " + again.getRejectReason());
+            }
+            System.out.println("  重复任务: " + TransferResponse.RejectReason.BUSY);
+        } finally {
+            sender.shutdown();
+            engine.stop();
+        }
+        System.out.println("  ✅ 拒绝正常\n");
+    }
+
+    /**
+     * 测试3：断点续传（接收端已有前一半）
+     */
+    private static void testResume(File dir, File source) throws Exception {
+        System.out.println("【测试3】断点续传");
+
+        File saveDir = new File(dir, "resume");
+        saveDir.mkdirs();
+        File partial = new File(saveDir, source.getName());
+        long half = source.length() / 2;
+        Files.copy(source.toPath(), partial.toPath());
+        try (RandomAccessFile raf = new RandomAccessFile(partial, "rw")) {
+            raf.setLength(half);
+        }
+        // 上次未完成的接收会留下续传标记；没有标记的同名文件不会被续传
+        TransferRequest previous = TransferRequest.fromFile(source);
+        FilePreallocator.writeMarker(partial, previous.getFileSize(), previous.getMd5(), half);
+
+        ReceiveEngine engine = new ReceiveEngine(acceptAll(saveDir), SpaceReservationManager.getInstance());
+        AtomicReference<Long> offset = new AtomicReference<>();
+        AtomicBoolean md5Ok = new AtomicBoolean();
+        CountDownLatch done = new CountDownLatch(1);
+        engine.addListener(new ReceiveEngine.ReceiveListener() {
+            @Override
+            public void onReceiveStarted(TransferTask task, long resumeOffset, boolean autoAccepted) {
+                offset.set(resumeOffset);
+            }
+
+            @Override
+            public void onReceiveCompleted(TransferTask task, File file, boolean md5Matched) {
+                md5Ok.set(md5Matched);
+                done.countDown();
+            }
+        });
+
+        int port = engine.start(new ReceiveServer(PROFILE, 0, 4, engine::handleConnection));
+        TransferEngine sender = new TransferEngine(2);
+        try {
+            send(sender, source, port).get(5, TimeUnit.MINUTES);
+            check(done.await(60, TimeUnit.SECONDS), "应该收到完成事件");
+            check(offset.get() != null && offset.get() == half, "续传起点应该是已有长度: " + offset.get());
+            check(md5Ok.get(), "续传后 MD5 应该一致");
+            System.out.println("  从 " + half + " 字节处续传");
+        } finally {
+            sender.shutdown();
+            engine.stop();
+        }
+        System.out.println("  ✅ 断点续传正常\n");
+    }
+
+    /**
+     * 测试4：v2 分片乱序到达
+     */
+    private static void testOutOfOrder(File dir) throws Exception {
+        System.out.println("【测试4】乱序分片（v2）");
+
+        int chunkSize = NetworkConfig.CHUNK_SIZE;
+        File source = createFile(new File(dir, "unordered.bin"), 3L * chunkSize + chunkSize / 2);
+        byte[] content = Files.readAllBytes(source.toPath());
+        File saveDir = new File(dir, "unordered");
+        ReceiveEngine engine = new ReceiveEngine(acceptAll(saveDir), SpaceReservationManager.getInstance());
+        BlockingQueue<String> results = new LinkedBlockingQueue<>();
+        engine.addListener(new ReceiveEngine.ReceiveListener() {
+            @Override
+            public void onReceiveCompleted(TransferTask task, File file, boolean md5Matched) {
+                results.add(md5Matched ? "完成" : "MD5 不一致");
+            }
+
+            @Override
+            public void onReceiveFailed(TransferTask task, String reason, boolean canceled) {
+                results.add(reason);
+            }
+        });
+
+        int port = engine.start(new ReceiveServer(PROFILE, 0, 4, engine::handleConnection));
+        try {
+            // 最后一片先到：不能在这里结束，要等前面的分片都收到
+            sendFrames(port, TransferRequest.fromFile(source), content, 3, 1, 0, 2);
+            String result = results.poll(60, TimeUnit.SECONDS);
+            check("完成".equals(result), "乱序分片收齐后应该完成: " + result);
+            File saved = new File(saveDir, source.getName());
+            check(Arrays.equals(Files.readAllBytes(saved.toPath()), content), "乱序写入的内容应该与源文件一致");
+            check(!FilePreallocator.markerOf(saved).exists(), "MD5 通过后应该删除续传标记");
+            System.out.println("  分片顺序 3, 1, 0, 2：收齐后完成");
+
+            // MD5 不一致：文件不算完成，续传标记保留
+            File mismatchDir = new File(dir, "mismatch");
+            engine.getPolicy().setSaveDirectory(mismatchDir.getAbsolutePath());
+            TransferRequest mismatch = TransferRequest.fromFile(source);
+            mismatch.setMd5("0123456789abcdef0123456789abcdef");
+            sendFrames(port, mismatch, content, 0, 1, 2, 3);
+            result = results.poll(60, TimeUnit.SECONDS);
+            check("MD5 不一致".equals(result), "MD5 不一致时应该报告校验失败: " + result);
+            check(FilePreallocator.markerOf(new File(mismatchDir, source.getName())).exists(),
+                    "MD5 不一致时应该保留续传标记");
+            System.out.println("  MD5 不一致：保留续传标记");
+
+            // 重复的分片会让已收到的字节数虚高，必须报错
+            engine.getPolicy().setSaveDirectory(new File(dir, "duplicate").getAbsolutePath());
+            sendFrames(port, TransferRequest.fromFile(source), content, 1, 1);
+            result = results.poll(60, TimeUnit.SECONDS);
+            check(result != null && result.contains("分片重复"), "重复的分片应该报错: " + result);
+            System.out.println("  重复分片: " + result);
+        } finally {
+            engine.stop();
+        }
+        System.out.println("  ✅ 乱序分片正常\n");
+    }
+
+    // ==================== 辅助方法 ====================
+
+    /**
+     * 手动握手，然后按给定顺序发送 v2 分片（带偏移）
+     */
+    private static void sendFrames(int port, TransferRequest request, byte[] content, int... order) throws Exception {
+        int chunkSize = NetworkConfig.CHUNK_SIZE;
+        int lastIndex = (content.length - 1) / chunkSize;
+        try (ProtocolHandler handler = ProtocolHandler.connect("127.0.0.1", port)) {
+            handler.sendControl(request, false);
+            TransferResponse response = (TransferResponse) handler.receiveControl();
+            check(response.isAccepted(), "请求应该被接受: " + response.getRejectReason());
+            for (int index : order) {
+                int offset = index * chunkSize;
+                byte[] data = Arrays.copyOfRange(content, offset, Math.min(content.length, offset + chunkSize));
+                ChunkHeader header = new ChunkHeader(index, data.length, request.getTaskId());
+                header.setVersion(ChunkHeader.VERSION_2);
+                header.setOffset(offset);
+                header.calculateCRC32(data);
+                if (index == lastIndex) {
+                    header.markAsLastChunk();
+                }
+                handler.sendChunk(header, ByteBuffer.wrap(data));
+            }
+        }
+    }
+
+
+    private static AcceptancePolicy acceptAll(File saveDir) {
+        AcceptancePolicy policy = new AcceptancePolicy(null);
+        policy.setDefaultAction(AcceptancePolicy.Action.ACCEPT);
+        policy.setSaveDirectory(saveDir.getAbsolutePath());
+        return policy;
+    }
+
+    private static CompletableFuture<Void> send(TransferEngine sender, File file, int port) throws Exception {
+        TransferRequest request = TransferRequest.fromFile(file);
+        TransferTask task = new TransferTask(request.getTaskId(), file.getAbsolutePath(), "127.0.0.1", port,
+                TransferTask.TransferType.SEND, request);
+        return sender.submitTask(task);
+    }
+
+    private static boolean failed(CompletableFuture<Void> future) throws InterruptedException {
+        try {
+            future.get(30, TimeUnit.SECONDS);
+            return false;
+        } catch (java.util.concurrent.ExecutionException | java.util.concurrent.TimeoutException e) {
+            return true;
+        }
+    }
+
+    private static File createFile(File file, long size) throws Exception {
+        Random random = new Random(42);
+        byte[] block = new byte[1024 * 1024];
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            for (long written = 0; written < size; written += block.length) {
+                random.nextBytes(block);
+                raf.write(block, 0, (int) Math.min(block.length, size - written));
+            }
+        }
+        return file;
+    }
+}
@@ -0,0 +1,280 @@
+package com.lanshare.test;
+
+import com.lanshare.network.config.TransportProfile;
+import com.lanshare.network.protocol.BufferPool;
+import com.lanshare.network.protocol.ChunkFrame;
+import com.lanshare.network.protocol.ChunkHeader;
+import com.lanshare.network.protocol.ControlMessage;
+import com.lanshare.network.protocol.FrameDecoder;
+import com.lanshare.network.protocol.ProtocolHandler;
+import com.lanshare.network.transfer.ReceiveServer;
+
+import java.io.InputStream;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.lanshare.test.TestSupport.check;
+
+/**
+ * 并发接收服务器测试（回环负载测试）
+ * 1. N 个发送方同时发送，统计聚合吞吐量
+ * 2. 传输进行中 CONNECT 仍能立即得到应答
+ * 3. 超过并发上限的连接被立即关闭
+ * 4. close() 能中断所有活动连接
+ *
+ * 运行：java com.lanshare.test.ReceiveServerTest [每个发送方的MB数]
+ */
+public class ReceiveServerTest {
+
+    private static final int CHUNK = 1024 * 1024;
+    private static final TransportProfile PROFILE = TransportProfile.GIGABIT_WIRED;
+
+    public static void main(String[] args) {
+        System.out.println("========== 并发接收服务器测试 ==========\n");
+        int megabytes = args.length > 0 ? Integer.parseInt(args[0]) : 128;
+
+        try {
+            // 测试1：聚合吞吐量
+            testAggregateThroughput(megabytes);
+
+            // 测试2：传输中的 CONNECT
+            testConnectDuringTransfer();
+
+            // 测试3：并发上限
+            testConnectionLimit();
+
+            // 测试4：停止服务器
+            testClose();
+
+            System.out.println("\n========== 所有测试通过！✅ ==========");
+
+        } catch (Exception e) {
+            System.err.println("\n❌ 测试失败：" + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * 测试1：N 个发送方同时发送的聚合吞吐量
+     */
+    private static void testAggregateThroughput(int megabytes) throws Exception {
+        System.out.println("【测试1】聚合吞吐量（每个发送方 " + megabytes + " MB）");
+
+        AtomicLong received = new AtomicLong();
+        try (ReceiveServer server = new ReceiveServer(PROFILE, 0, 16, socket -> sink(socket, received))) {
+            int port = server.start();
+            System.out.printf("  %-8s %12s %12s%n", "发送方", "聚合 MB/s", "每个 MB/s");
+            for (int senders : new int[] { 1, 2, 4, 8 }) {
+                received.set(0);
+                ExecutorService pool = Executors.newFixedThreadPool(senders);
+                long start = System.nanoTime();
+                List<Future<?>> futures = new ArrayList<>();
+                for (int i = 0; i < senders; i++) {
+                    futures.add(pool.submit(() -> {
+                        send(port, (long) megabytes * CHUNK);
+                        return null;
+                    }));
+                }
+                for (Future<?> f : futures) {
+                    f.get(5, TimeUnit.MINUTES);
+                }
+                double seconds = (System.nanoTime() - start) / 1e9;
+                pool.shutdown();
+
+                long expected = (long) senders * megabytes * CHUNK;
+                check(received.get() == expected, "接收字节数不一致: " + received.get() + " != " + expected);
+                double aggregate = expected / seconds / (1024 * 1024);
+                System.out.printf("  %-8d %12.0f %12.0f%n", senders, aggregate, aggregate / senders);
+            }
+        }
+        System.out.println("  ✅ 所有发送方的数据都已完整接收\n");
+    }
+
+    /**
+     * 测试2：传输进行中 CONNECT 仍能立即得到应答
+     */
+    private static void testConnectDuringTransfer() throws Exception {
+        System.out.println("【测试2】传输中的 CONNECT");
+
+        CountDownLatch transferring = new CountDownLatch(2);
+        CountDownLatch release = new CountDownLatch(1);
+        try (ReceiveServer server = new ReceiveServer(PROFILE, 0, 8, socket -> {
+            try (ProtocolHandler h = new ProtocolHandler(socket, PROFILE)) {
+                Object msg = h.receiveControl();
+                if (msg instanceof ControlMessage
+                        && ((ControlMessage) msg).getType() == ControlMessage.Type.CONNECT) {
+                    h.sendControl(ControlMessage.accept(), h.isLastControlBinary());
+                    return;
+                }
+                // 模拟一个很长的文件传输：占住连接直到测试结束
+                transferring.countDown();
+                release.await();
+            }
+        })) {
+            int port = server.start();
+            List<ProtocolHandler> busy = new ArrayList<>();
+            for (int i = 0; i < 2; i++) {
+                ProtocolHandler h = ProtocolHandler.connect("127.0.0.1", port);
+                h.sendControl(ControlMessage.pause(), false);
+                busy.add(h);
+            }
+            check(transferring.await(5, TimeUnit.SECONDS), "传输连接没有被处理");
+
+            long start = System.nanoTime();
+            try (ProtocolHandler ping = ProtocolHandler.connect("127.0.0.1", port)) {
+                ping.setReadTimeout(3000);
+                ping.sendControl(ControlMessage.connect("127.0.0.1", "test", "test"), false);
+                Object reply = ping.receiveControl();
+                check(reply instanceof ControlMessage
+                        && ((ControlMessage) reply).getType() == ControlMessage.Type.ACCEPT, "应该收到 ACCEPT");
+            }
+            System.out.printf("  两个传输进行中，CONNECT 往返 %.2f ms%n", (System.nanoTime() - start) / 1e6);
+
+            release.countDown();
+            for (ProtocolHandler h : busy) {
+                h.close();
+            }
+        }
+        System.out.println("  ✅ 传输不再阻塞新连接\n");
+    }
+
+    /**
+     * 测试3：超过并发上限的连接被立即关闭
+     */
+    private static void testConnectionLimit() throws Exception {
+        System.out.println("【测试3】并发上限");
+
+        CountDownLatch release = new CountDownLatch(1);
+        try (ReceiveServer server = new ReceiveServer(PROFILE, 0, 2, socket -> release.await())) {
+            int port = server.start();
+            List<Socket> held = new ArrayList<>();
+            for (int i = 0; i < 2; i++) {
+                held.add(PROFILE.openSocket("127.0.0.1", port));
+            }
+            waitFor(() -> server.getActiveConnections() == 2, "前两个连接应该被接受");
+
+            try (Socket extra = PROFILE.openSocket("127.0.0.1", port)) {
+                extra.setSoTimeout(3000);
+                InputStream in = extra.getInputStream();
+                int r;
+                try {
+                    r = in.read();
+                } catch (java.net.SocketException reset) {
+                    r = -1;
+                }
+                check(r == -1, "超过上限的连接应该被关闭");
+            }
+            waitFor(() -> server.getRejectedCount() == 1, "应该记录一次拒绝");
+            System.out.println("  活动 " + server.getActiveConnections() + "，拒绝 " + server.getRejectedCount());
+
+            release.countDown();
+            for (Socket s : held) {
+                s.close();
+            }
+        }
+        System.out.println("  ✅ 并发上限生效\n");
+    }
+
+    /**
+     * 测试4：close() 能中断所有活动连接
+     */
+    private static void testClose() throws Exception {
+        System.out.println("【测试4】停止服务器");
+
+        CountDownLatch exited = new CountDownLatch(3);
+        ReceiveServer server = new ReceiveServer(PROFILE, 0, 4, socket -> {
+            try {
+                socket.getInputStream().read(); // 阻塞读取，直到连接被关闭
+            } finally {
+                exited.countDown();
+            }
+        });
+        int port = server.start();
+        List<Socket> clients = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            clients.add(PROFILE.openSocket("127.0.0.1", port));
+        }
+        waitFor(() -> server.getActiveConnections() == 3, "三个连接应该都在处理中");
+
+        server.close();
+        check(exited.await(3, TimeUnit.SECONDS), "处理线程应该随 close() 退出");
+        check(!server.isRunning(), "服务器应该已停止");
+        for (Socket s : clients) {
+            s.close();
+        }
+        System.out.println("  ✅ 停止服务器正常\n");
+    }
+
+    // ==================== 辅助方法 ====================
+
+    /**
+     * 接收端：收下所有分片并丢弃，结束后回一个 ACCEPT 作为确认
+     */
+    private static void sink(Socket socket, AtomicLong received) throws Exception {
+        BufferPool pool = new BufferPool(CHUNK, 2);
+        FrameDecoder decoder = new FrameDecoder(pool);
+        try (ProtocolHandler h = new ProtocolHandler(socket, PROFILE)) {
+            while (true) {
+                ChunkFrame frame = h.receiveFrame(decoder);
+                received.addAndGet(frame.getPayloadLength());
+                boolean last = frame.isLastChunk();
+                frame.release();
+                if (last) {
+                    break;
+                }
+            }
+            h.sendControl(ControlMessage.accept(), true);
+        }
+    }
+
+    /**
+     * 发送端：发送 total 字节的分片并等待确认
+     */
+    private static void send(int port, long total) throws Exception {
+        ByteBuffer data = ByteBuffer.allocateDirect(CHUNK);
+        while (data.hasRemaining()) {
+            data.put((byte) data.position());
+        }
+        String taskId = java.util.UUID.randomUUID().toString();
+        try (ProtocolHandler h = new ProtocolHandler(PROFILE.openSocket("127.0.0.1", port), PROFILE)) {
+            long offset = 0;
+            int index = 0;
+            while (offset < total) {
+                data.clear();
+                ChunkHeader header = new ChunkHeader(index++, CHUNK, taskId);
+                header.setVersion(ChunkHeader.VERSION_2);
+                header.setOffset(offset);
+                header.calculateCRC32(data);
+                offset += CHUNK;
+                if (offset >= total) {
+                    header.markAsLastChunk();
+                }
+                h.sendChunk(header, data);
+            }
+            Object ack = h.receiveControl();
+            check(ack instanceof ControlMessage, "应该收到确认");
+        }
+    }
+
+    private interface Condition {
+        boolean met();
+    }
+
+    private static void waitFor(Condition condition, String message) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 3000;
+        while (!condition.met()) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new AssertionError(message);
+            }
+            Thread.sleep(10);
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package com.lanshare.test;
+
+import com.lanshare.network.transfer.SpaceReservationManager;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import static com.lanshare.test.TestSupport.check;
+
+/**
+ * 磁盘空间预留测试（按临时目录所在分区的真实可用空间计算，不实际写入）
+ * 1. 并发预留：已预留的空间对其他任务不可用，释放后恢复
+ * 2. 扣除已占用的部分：预分配或写入后从预留中扣掉，不再重复计算
+ */
+public class SpaceReservationManagerTest {
+
+    public static void main(String[] args) {
+        System.out.println("========== 磁盘空间预留测试 ==========\n");
+
+        try {
+            File dir = Files.createTempDirectory("lanshare-space").toFile();
+            if (dir.getUsableSpace() <= 0) {
+                System.out.println("无法获取可用空间，跳过测试");
+                return;
+            }
+
+            // 测试1：并发预留
+            testConcurrentReserve(dir);
+
+            // 测试2：扣除已占用的部分
+            testConsume(dir);
+
+            System.out.println("\n========== 所有测试通过！✅ ==========");
+
+        } catch (Exception e) {
+            System.err.println("\n❌ 测试失败：" + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * 测试1：并发预留
+     */
+    private static void testConcurrentReserve(File dir) throws IOException {
+        System.out.println("【测试1】并发预留");
+
+        SpaceReservationManager manager = SpaceReservationManager.getInstance();
+        File a = new File(dir, "a.bin");
+        File b = new File(new File(dir, "not-yet-created"), "b.bin");
+        long bytes = dir.getUsableSpace() / 5 * 3;
+
+        check(manager.tryReserve("space-a", a, bytes), "第一个任务应该预留成功");
+        check(manager.getReservedBytes(a) == bytes, "分区上应该记录预留: " + manager.getReservedBytes(a));
+        // 目录还不存在时按最近的已存在目录所在分区计算
+        check(!manager.tryReserve("space-b", b, bytes), "扣除已预留后空间不足，第二个任务应该失败");
+        check(manager.getReservedBytes("space-b") == 0, "失败的预留不应该留下记录");
+
+        manager.release("space-a");
+        manager.release("space-a"); // 重复释放是安全的
+        check(manager.getReservedBytes(a) == 0, "释放后分区上不应该再有预留");
+        check(manager.tryReserve("space-b", b, bytes), "释放后第二个任务应该预留成功");
+        manager.release("space-b");
+
+        check(manager.tryReserve("space-empty", a, 0), "不需要空间时应该直接成功");
+        manager.release("space-empty");
+
+        System.out.println("  ✅ 并发预留正常\n");
+    }
+
+    /**
+     * 测试2：扣除已占用的部分
+     */
+    private static void testConsume(File dir) {
+        System.out.println("【测试2】扣除已占用的部分");
+
+        SpaceReservationManager manager = SpaceReservationManager.getInstance();
+        File a = new File(dir, "a.bin");
+        File b = new File(dir, "b.bin");
+        long bytes = dir.getUsableSpace() / 5 * 3;
+
+        check(manager.tryReserve("space-a", a, bytes), "第一个任务应该预留成功");
+        check(manager.tryReserve("space-small", b, 1000), "小任务应该预留成功");
+
+        // 预分配已经从可用空间里扣掉了这部分，预留里也要扣掉，否则会重复计算
+        manager.consume("space-a", bytes / 2);
+        check(manager.getReservedBytes("space-a") == bytes - bytes / 2,
+                "扣除后任务预留应该减少: " + manager.getReservedBytes("space-a"));
+        check(manager.getReservedBytes(a) == bytes - bytes / 2 + 1000,
+                "扣除后分区预留应该减少: " + manager.getReservedBytes(a));
+
+        // 多扣只扣到 0，不影响其他任务的预留
+        manager.consume("space-a", bytes);
+        check(manager.getReservedBytes("space-a") == 0, "预留应该扣到 0");
+        check(manager.getReservedBytes(a) == 1000, "其他任务的预留不应该受影响: " + manager.getReservedBytes(a));
+        check(manager.tryReserve("space-b", b, bytes), "已占用的部分不再重复计算，第二个任务应该预留成功");
+
+        manager.consume("unknown-task", 100); // 没有预留的任务直接忽略
+        manager.release("space-a");
+        manager.release("space-b");
+        manager.release("space-small");
+        check(manager.getReservedBytes(a) == 0, "全部释放后分区上不应该再有预留");
+
+        System.out.println("  ✅ 扣除已占用部分正常\n");
+    }
+}
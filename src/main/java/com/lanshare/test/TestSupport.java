@@ -0,0 +1,25 @@
+package com.lanshare.test;
+
+/**
+ * 测试辅助方法
+ *
+ * 测试类都是独立的 main 程序，不依赖测试框架；断言失败抛出 AssertionError，
+ * 由各测试的 main 捕获并打印"❌ 测试失败"。
+ */
+public final class TestSupport {
+
+    private TestSupport() {
+    }
+
+    /**
+     * 断言条件成立
+     *
+     * @param condition 条件
+     * @param message   失败时的说明
+     */
+    public static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new AssertionError(message);
+        }
+    }
+}
@@ -21,6 +21,7 @@ import javafx.scene.layout.HBox;
 import javafx.scene.layout.VBox;
 import javafx.stage.FileChooser;
 import javafx.stage.Stage;
+import com.lanshare.test.ui.FxDeviceList;
 import com.lanshare.test.ui.TransferDiscoveryController;
 
 import java.io.File;
@@ -83,9 +84,10 @@ public class TransferDiscoveryFX extends Application {
         try {
             if (!discovery.isRunning()) {
                 discovery.initialize();
-                deviceList.setItems(discovery.getDeviceList());
-                discovery.getDeviceList()
-                        .addListener((ListChangeListener<DeviceInfo>) change -> Platform.runLater(deviceList::refresh));
+                FxDeviceList fxDevices = new FxDeviceList(discovery.getDeviceRegistry());
+                deviceList.setItems(fxDevices.getItems());
+                fxDevices.getItems()
+                        .addListener((ListChangeListener<DeviceInfo>) change -> deviceList.refresh());
                 discovery.start();
                 appendLog("设备发现已启动");
                 // TransferDiscoveryFX.java 里 startDiscovery() 加两行
@@ -131,7 +133,7 @@ public class TransferDiscoveryFX extends Application {
             appendLog("请先选择目标设备");
             return;
         }
-        try (Socket socket = new Socket(target.getIpAddress(), target.getPort());
+        try (Socket socket = NetworkConfig.getTransportProfile().openSocket(target.getIpAddress(), target.getPort());
                 ProtocolHandler handler = new ProtocolHandler(socket)) {
             String hello = "{\"type\":\"CONNECT\",\"from\":\"" + discovery.getLocalDevice().getIpAddress() + "\"}";
             handler.sendJson(hello);
@@ -162,7 +164,7 @@ public class TransferDiscoveryFX extends Application {
         serverRunning = true;
         serverExecutor = Executors.newFixedThreadPool(2);
         serverExecutor.submit(() -> {
-            try (ServerSocket server = new ServerSocket(NetworkConfig.getTcpPort())) {
+            try (ServerSocket server = NetworkConfig.getTransportProfile().openServerSocket(NetworkConfig.getTcpPort())) {
                 appendLog("接收端启动，监听: " + NetworkConfig.getTcpPort());
                 while (serverRunning) {
                     Socket client = server.accept();
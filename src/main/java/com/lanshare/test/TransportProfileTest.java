@@ -0,0 +1,175 @@
+package com.lanshare.test;
+
+import com.lanshare.network.config.NetworkConfig;
+import com.lanshare.network.config.TransportProfile;
+import com.lanshare.network.protocol.FileChunk;
+import com.lanshare.network.protocol.ProtocolHandler;
+
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static com.lanshare.test.TestSupport.check;
+
+/**
+ * 传输配置档测试
+ * 1. 解析：名称忽略大小写，支持别名，无法识别时返回 null
+ * 2. Socket 创建：openSocket 基于 SocketChannel，监听端的 SO_RCVBUF 在 bind 之前生效
+ * 3. 分片收发：每个配置档下，通道聚集写和流回退两条路径的每一帧都立即到达对端
+ */
+public class TransportProfileTest {
+
+    private static final String TASK_ID = "7c1d2e3f-4a5b-4c6d-8e9f-0a1b2c3d4e5f";
+    private static final long TIMEOUT_SECONDS = 5;
+
+    private static final ExecutorService executor = Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r, "transport-profile-test");
+        t.setDaemon(true);
+        return t;
+    });
+
+    public static void main(String[] args) {
+        System.out.println("========== 传输配置档测试 ==========\n");
+
+        try {
+            // 测试1：解析
+            testParse();
+
+            // 测试2：Socket 创建
+            testOpenSockets();
+
+            // 测试3：分片收发
+            testChunkDelivery();
+
+            System.out.println("\n========== 所有测试通过！✅ ==========");
+
+        } catch (Exception e) {
+            System.err.println("\n❌ 测试失败：" + e.getMessage());
+            e.printStackTrace();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * 测试1：解析
+     */
+    private static void testParse() {
+        System.out.println("【测试1】解析配置字符串");
+
+        check(TransportProfile.parse("gigabit_wired") == TransportProfile.GIGABIT_WIRED, "名称应该忽略大小写");
+        check(TransportProfile.parse(" gigabit-wired ") == TransportProfile.GIGABIT_WIRED, "应该忽略空白并接受连字符");
+        check(TransportProfile.parse("gigabit") == TransportProfile.GIGABIT_WIRED, "gigabit 是千兆有线的别名");
+        check(TransportProfile.parse("10gbe") == TransportProfile.TEN_GIGABIT, "10gbe 是万兆的别名");
+        check(TransportProfile.parse("wireless") == TransportProfile.WIFI, "wireless 是无线的别名");
+        check(TransportProfile.parse("Default") == TransportProfile.DEFAULT, "default 应该解析为 DEFAULT");
+        check(TransportProfile.parse("fast") == null, "无法识别时应该返回 null");
+        check(TransportProfile.parse(null) == null, "null 应该返回 null");
+
+        // 没有配置时保持旧行为：8KB 流缓冲，内核缓冲区交给系统
+        TransportProfile profile = TransportProfile.DEFAULT;
+        check(profile.getStreamBufferSize() == NetworkConfig.TCP_BUFFER_SIZE, "DEFAULT 应该沿用旧的流缓冲大小");
+        check(profile.getSendBufferSize() == 0 && profile.getReceiveBufferSize() == 0,
+                "DEFAULT 不应该设置内核缓冲区");
+
+        System.out.println("  ✅ 解析正常\n");
+    }
+
+    /**
+     * 测试2：Socket 创建
+     */
+    private static void testOpenSockets() throws Exception {
+        System.out.println("【测试2】Socket 创建");
+
+        int systemDefault;
+        try (ServerSocket plain = new ServerSocket(0)) {
+            systemDefault = plain.getReceiveBufferSize();
+        }
+
+        for (TransportProfile profile : TransportProfile.values()) {
+            try (ServerSocket server = profile.openServerSocket(0);
+                 Socket client = profile.openSocket("127.0.0.1", server.getLocalPort());
+                 Socket accepted = server.accept()) {
+                check(server.isBound(), profile + "：监听 Socket 应该已绑定");
+                check(client.getChannel() != null, profile + "：openSocket 应该基于 SocketChannel");
+                check(client.isConnected() && client.getTcpNoDelay(), profile + "：应该已连接并禁用 Nagle");
+                if (profile.getReceiveBufferSize() > 0) {
+                    // 内核可能按上限截断，但不应该小于系统默认值
+                    check(server.getReceiveBufferSize() >= systemDefault,
+                            profile + "：SO_RCVBUF 应该在 bind 之前设置: " + server.getReceiveBufferSize());
+                }
+                check(accepted.isConnected(), profile + "：监听端应该接受连接");
+                System.out.println("  " + profile);
+            }
+        }
+
+        System.out.println("  ✅ Socket 创建正常\n");
+    }
+
+    /**
+     * 测试3：分片收发
+     */
+    private static void testChunkDelivery() throws Exception {
+        System.out.println("【测试3】分片收发");
+
+        byte[] first = data(100 * 1024, 1);
+        byte[] second = data(3000, 2);
+
+        for (TransportProfile profile : TransportProfile.values()) {
+            for (boolean gathering : new boolean[]{true, false}) {
+                String name = profile.name() + (gathering ? " / 聚集写" : " / 流");
+                try (ServerSocket server = profile.openServerSocket(0)) {
+                    Socket client = gathering
+                            ? profile.openSocket("127.0.0.1", server.getLocalPort())
+                            : new Socket("127.0.0.1", server.getLocalPort());
+                    ProtocolHandler sender = new ProtocolHandler(client, profile);
+                    ProtocolHandler receiver = new ProtocolHandler(server.accept(), profile);
+                    try {
+                        // 非最后一片也必须立即到达，不能积攒在发送端的缓冲区里
+                        sender.sendChunk(new FileChunk(0, first, TASK_ID));
+                        FileChunk chunk = receive(receiver, name);
+                        check(Arrays.equals(chunk.getData(), first) && !chunk.isLastChunk(),
+                                name + "：第一片数据不一致");
+
+                        FileChunk last = new FileChunk(1, second, TASK_ID);
+                        last.markAsLastChunk();
+                        sender.sendChunk(last);
+                        chunk = receive(receiver, name);
+                        check(Arrays.equals(chunk.getData(), second) && chunk.isLastChunk(),
+                                name + "：最后一片数据不一致");
+                    } finally {
+                        sender.close();
+                        receiver.close();
+                    }
+                }
+                System.out.println("  " + name + "：逐帧到达");
+            }
+        }
+
+        System.out.println("  ✅ 分片收发正常\n");
+    }
+
+    // ==================== 辅助方法 ====================
+
+    private static FileChunk receive(ProtocolHandler receiver, String name) throws Exception {
+        Future<FileChunk> future = executor.submit(receiver::receiveChunk);
+        try {
+            return future.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            throw new AssertionError(name + "：分片没有及时到达");
+        }
+    }
+
+    private static byte[] data(int size, long seed) {
+        byte[] data = new byte[size];
+        new Random(seed).nextBytes(data);
+        return data;
+    }
+}
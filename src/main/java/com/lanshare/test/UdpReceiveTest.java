@@ -0,0 +1,167 @@
+package com.lanshare.test;
+
+import com.lanshare.network.config.NetworkConfig;
+import com.lanshare.network.discovery.UdpBrodcaster;
+
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.lanshare.test.TestSupport.check;
+
+/**
+ * UDP 接收测试（本机回环，向发现端口单播）
+ * 1. 大报文不再被截断
+ * 2. 同一来源的报文按顺序处理
+ * 3. 处理缓慢时突发报文被接收队列吸收，处理不过来的计入溢出数
+ *
+ * 运行：java com.lanshare.test.UdpReceiveTest
+ */
+public class UdpReceiveTest {
+
+    public static void main(String[] args) {
+        System.out.println("========== UDP 接收测试 ==========\n");
+
+        UdpBrodcaster broadcaster = new UdpBrodcaster();
+        Handler handler = new Handler();
+        broadcaster.setMessageListener(handler);
+        try (DatagramSocket client = new DatagramSocket(0, InetAddress.getLoopbackAddress())) {
+            broadcaster.start();
+            InetAddress target = InetAddress.getLoopbackAddress();
+            int port = NetworkConfig.getUdpPort();
+
+            // 测试1：大报文
+            testLargePacket(client, target, port, handler);
+
+            // 测试2：顺序
+            testOrdering(client, target, port, handler);
+
+            // 测试3：突发
+            testBurst(client, target, port, handler, broadcaster);
+
+            System.out.println("\n========== 所有测试通过！✅ ==========");
+
+        } catch (Exception e) {
+            System.err.println("\n❌ 测试失败：" + e.getMessage());
+            e.printStackTrace();
+        } finally {
+            broadcaster.stop();
+        }
+    }
+
+    /**
+     * 测试监听器：报文前 4 字节是序号
+     */
+    private static class Handler implements UdpBrodcaster.UdpMessageListener {
+        volatile CountDownLatch latch = new CountDownLatch(0);
+        volatile int lastLength;
+        volatile long delayNanos;
+        final AtomicInteger count = new AtomicInteger();
+        final AtomicInteger lastSeq = new AtomicInteger(-1);
+        final AtomicBoolean outOfOrder = new AtomicBoolean();
+
+        @Override
+        public void onMessage(String message, InetAddress senderAddress) {
+        }
+
+        @Override
+        public void onPacket(byte[] data, int length, InetAddress senderAddress, int senderPort) {
+            lastLength = length;
+            int seq = ByteBuffer.wrap(data, 0, 4).getInt();
+            if (seq <= lastSeq.getAndSet(seq)) {
+                outOfOrder.set(true);
+            }
+            long until = System.nanoTime() + delayNanos;
+            while (System.nanoTime() < until) {
+                Thread.onSpinWait();
+            }
+            count.incrementAndGet();
+            latch.countDown();
+        }
+
+        void reset(int expected) {
+            count.set(0);
+            lastSeq.set(-1);
+            outOfOrder.set(false);
+            latch = new CountDownLatch(expected);
+        }
+    }
+
+    /**
+     * 测试1：超过原来 1024 字节缓冲区的报文完整收到
+     */
+    private static void testLargePacket(DatagramSocket client, InetAddress target, int port, Handler handler) throws Exception {
+        System.out.println("【测试1】大报文");
+
+        handler.reset(1);
+        byte[] big = packet(0, 3000);
+        client.send(new DatagramPacket(big, big.length, target, port));
+        check(handler.latch.await(2, TimeUnit.SECONDS), "应该收到报文");
+        check(handler.lastLength == 3000, "报文被截断: " + handler.lastLength);
+        System.out.println("  3000 字节的报文完整收到");
+        System.out.println("  ✅ 大报文不再被截断\n");
+    }
+
+    /**
+     * 测试2：同一来源的报文按发送顺序处理（多个工作线程时也一样）
+     */
+    private static void testOrdering(DatagramSocket client, InetAddress target, int port, Handler handler) throws Exception {
+        System.out.println("【测试2】顺序");
+
+        int n = 500;
+        handler.reset(n);
+        for (int i = 0; i < n; i++) {
+            byte[] data = packet(i, 16);
+            client.send(new DatagramPacket(data, data.length, target, port));
+        }
+        handler.latch.await(5, TimeUnit.SECONDS);
+        check(!handler.outOfOrder.get(), "同一来源的报文被乱序处理");
+        System.out.println("  " + handler.count.get() + "/" + n + " 个报文按顺序处理（" + NetworkConfig.getUdpWorkerThreads()
+                + " 个工作线程）");
+        System.out.println("  ✅ 同一来源的报文保持顺序\n");
+    }
+
+    /**
+     * 测试3：处理缓慢时的突发报文
+     */
+    private static void testBurst(DatagramSocket client, InetAddress target, int port, Handler handler,
+                                  UdpBrodcaster broadcaster) throws Exception {
+        System.out.println("【测试3】突发");
+
+        int n = NetworkConfig.getUdpReceiveQueue() * 3;
+        handler.reset(n);
+        handler.delayNanos = 200_000; // 每个报文处理 0.2ms
+        long receivedBefore = broadcaster.getReceivedCount();
+        long overflowBefore = broadcaster.getOverflowCount();
+        for (int i = 0; i < n; i++) {
+            byte[] data = packet(i, 40);
+            client.send(new DatagramPacket(data, data.length, target, port));
+        }
+        handler.latch.await(10, TimeUnit.SECONDS);
+        Thread.sleep(300);
+        handler.delayNanos = 0;
+
+        long received = broadcaster.getReceivedCount() - receivedBefore;
+        long overflow = broadcaster.getOverflowCount() - overflowBefore;
+        int handled = handler.count.get();
+        check(handled >= NetworkConfig.getUdpReceiveQueue(), "接收队列应该吸收突发: 只处理了 " + handled);
+        check(received == handled + overflow, "收到的报文应该要么被处理要么计入溢出: " + received + " != "
+                + handled + " + " + overflow);
+        System.out.printf("  发送 %d 个，收到 %d 个（内核丢弃 %d 个），处理 %d 个，溢出 %d 个%n",
+                n, received, n - received, handled, overflow);
+        System.out.println("  ✅ 突发报文被缓冲，丢弃的报文有计数\n");
+    }
+
+    // ==================== 辅助方法 ====================
+
+    private static byte[] packet(int seq, int length) {
+        byte[] data = new byte[length];
+        ByteBuffer.wrap(data).putInt(seq);
+        return data;
+    }
+}
@@ -0,0 +1,73 @@
+package com.lanshare.test.ui;
+
+import com.lanshare.network.discovery.DeviceRegistry;
+import com.lanshare.network.model.DeviceInfo;
+import javafx.application.Platform;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+
+/**
+ * 设备注册表的 JavaFX 适配器
+ *
+ * 注册表本身不依赖 JavaFX，这里订阅它合并后的变化批次，在 FX 线程中维护一个可绑定到 ListView 的 ObservableList。
+ */
+public class FxDeviceList implements DeviceRegistry.DeviceListener {
+
+    private final DeviceRegistry registry;
+    private final ObservableList<DeviceInfo> items = FXCollections.observableArrayList();
+
+    public FxDeviceList(DeviceRegistry registry) {
+        this.registry = registry;
+        registry.addListener(this); // 先订阅再取快照，之间的变化由下面的去重处理
+        runOnFx(() -> {
+            for (DeviceInfo device : registry.getAllDevices()) {
+                if (!items.contains(device)) {
+                    items.add(device);
+                }
+            }
+        });
+    }
+
+    /**
+     * 可绑定到 ListView 的设备列表（只能在 FX 线程中访问）
+     */
+    public ObservableList<DeviceInfo> getItems() {
+        return items;
+    }
+
+    /**
+     * 取消订阅
+     */
+    public void dispose() {
+        registry.removeListener(this);
+    }
+
+    /**
+     * 一批变化只切换一次 FX 线程；心跳不会产生事件
+     */
+    @Override
+    public void onDevicesChanged(DeviceRegistry.ChangeBatch batch) {
+        runOnFx(() -> {
+            items.removeAll(batch.getRemoved());
+            for (DeviceInfo device : batch.getAdded()) {
+                if (!items.contains(device)) {
+                    items.add(device);
+                }
+            }
+            for (DeviceInfo device : batch.getStatusChanged()) {
+                int idx = items.indexOf(device);
+                if (idx >= 0) {
+                    items.set(idx, device); // 触发列表刷新
+                }
+            }
+        });
+    }
+
+    private static void runOnFx(Runnable action) {
+        if (Platform.isFxApplicationThread()) {
+            action.run();
+        } else {
+            Platform.runLater(action);
+        }
+    }
+}
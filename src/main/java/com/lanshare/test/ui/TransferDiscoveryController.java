@@ -4,15 +4,13 @@ import com.lanshare.network.config.NetworkConfig;
 import com.lanshare.network.config.DeviceNicknameManager;
 import com.lanshare.network.discovery.DeviceDiscovery;
 import com.lanshare.network.model.DeviceInfo;
-import com.lanshare.network.protocol.FileChunk;
-import com.lanshare.network.protocol.ProtocolException;
+import com.lanshare.network.protocol.ControlCodec;
+import com.lanshare.network.protocol.ControlMessage;
 import com.lanshare.network.protocol.ProtocolHandler;
 import com.lanshare.network.protocol.TransferRequest;
-import com.lanshare.network.protocol.TransferResponse;
 import com.lanshare.network.transfer.FileTransferService;
+import com.lanshare.network.transfer.ReceiveEngine;
 import com.lanshare.network.transfer.TransferTask;
-import com.google.gson.Gson;
-import com.google.gson.JsonObject;
 import javafx.animation.FadeTransition;
 import javafx.animation.ScaleTransition;
 import javafx.animation.TranslateTransition;
@@ -43,13 +41,7 @@ import javafx.stage.Modality;
 import javafx.stage.Stage;
 
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
-import java.net.ServerSocket;
 import java.net.Socket;
-import java.security.MessageDigest;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 
 public class TransferDiscoveryController {
     @FXML
@@ -104,20 +96,24 @@ public class TransferDiscoveryController {
     private final FileChooser chooser = new FileChooser();
     private File selectedFile;
     private File lastSaveDir;
-    private ExecutorService serverExecutor;
-    private volatile boolean serverRunning = false;
+    private ReceiveEngine receiveEngine;
     private volatile long lastProgressUpdateTs = 0L;
     private volatile long lastBytesTransferred = 0L;
     private volatile long speedUpdateTs = 0L;
     private volatile boolean transferPaused = false;
-    private String currentTaskId = null;
+    private volatile String currentTaskId = null;// 界面按钮和进度条所跟踪的任务
     private DeviceNicknameManager nicknameManager;
+    private FxDeviceList fxDevices;
 
     @FXML
     public void initialize() {
-        service = new FileTransferService(new com.lanshare.network.discovery.DeviceDiscovery(),
-                new com.lanshare.network.discovery.DeviceRegistry());
+        com.lanshare.network.discovery.DeviceRegistry registry = new com.lanshare.network.discovery.DeviceRegistry();
+        service = new FileTransferService(new com.lanshare.network.discovery.DeviceDiscovery(registry), registry);
         discovery = service.getDeviceDiscovery();
+        receiveEngine = service.getReceiveEngine();
+        receiveEngine.setPrompter(new DialogPrompter());
+        receiveEngine.addListener(new ReceiveUiListener());
+        service.getLinkProber().addListener((device, link) -> Platform.runLater(listDevices::refresh));
         nicknameManager = DeviceNicknameManager.getInstance();
 
         javafx.collections.ObservableList<LogItem> logItems = javafx.collections.FXCollections.observableArrayList();
@@ -168,8 +164,16 @@ public class TransferDiscoveryController {
                             item.getIpAddress(),
                             item.getUserName() + "(" + item.getDeviceName() + ")"
                     );
-                    setText(String.format("[%s] %s - %s:%d",
-                            item.getStatus(), displayName, item.getIpAddress(), item.getPort()));
+                    String text = String.format("[%s] %s - %s:%d",
+                            item.getStatus(), displayName, item.getIpAddress(), item.getPort());
+                    com.lanshare.network.model.LinkProfile link = item.getLinkProfile();
+                    if (link != null) {
+                        text += link.isReachable()
+                                ? String.format("  RTT %.1fms, %.0fMB/s", link.getRttMicros() / 1000.0,
+                                        link.getThroughput() / 1024 / 1024)
+                                : "  不可达";
+                    }
+                    setText(text);
                     
                     // 添加右键菜单
                     setContextMenu(createDeviceContextMenu(item));
@@ -264,7 +268,9 @@ public class TransferDiscoveryController {
 
             @Override
             public void onTaskCompleted(String taskId) {
-                currentTaskId = null;
+                if (taskId.equals(currentTaskId)) {
+                    currentTaskId = null;
+                }
                 Platform.runLater(() -> {
                     progressBar.setProgress(1.0);
                     lblProgress.setText("100%");
@@ -277,7 +283,9 @@ public class TransferDiscoveryController {
 
             @Override
             public void onTaskFailed(String taskId, String reason) {
-                currentTaskId = null;
+                if (taskId.equals(currentTaskId)) {
+                    currentTaskId = null;
+                }
                 Platform.runLater(() -> {
                     progressBar.setProgress(0);
                     lblProgress.setText("失败");
@@ -400,9 +408,12 @@ public class TransferDiscoveryController {
         try {
             if (!discovery.isRunning()) {
                 discovery.initialize();
-                listDevices.setItems(discovery.getDeviceList());
-                discovery.getDeviceList().addListener(
-                        (ListChangeListener<DeviceInfo>) change -> Platform.runLater(listDevices::refresh));
+                if (fxDevices == null) {
+                    fxDevices = new FxDeviceList(discovery.getDeviceRegistry());
+                    listDevices.setItems(fxDevices.getItems());
+                    fxDevices.getItems().addListener(
+                            (ListChangeListener<DeviceInfo>) change -> listDevices.refresh());
+                }
                 discovery.start();
                 appendLog("设备发现已启动");
                 discovery.printDevices();
@@ -595,22 +606,25 @@ public class TransferDiscoveryController {
         
         new Thread(() -> {
             try {
-                Socket socket = new Socket(target.getIpAddress(), target.getPort());
+                Socket socket = NetworkConfig.getTransportProfile().openSocket(target.getIpAddress(), target.getPort());
                 connectingSocket = socket; // 保存引用以便取消
                 
                 try (ProtocolHandler handler = new ProtocolHandler(socket)) {
                     DeviceInfo local = discovery.getLocalDevice();
-                    JsonObject connectMsg = new JsonObject();
-                    connectMsg.addProperty("type", "CONNECT");
-                    connectMsg.addProperty("from", local.getIpAddress());
-                    connectMsg.addProperty("deviceName", local.getDeviceName());
-                    connectMsg.addProperty("userName", local.getUserName());
-                    String hello = new Gson().toJson(connectMsg);
-                    handler.sendJson(hello);
-                    String resp = handler.receiveJson();
+                    String peer = target.getIpAddress();
+                    handler.sendControl(
+                            ControlMessage.connect(local.getIpAddress(), local.getDeviceName(), local.getUserName(),
+                                    local.getDeviceId()),
+                            ControlCodec.isBinaryPeer(peer));
+                    Object resp = handler.receiveControl();
+                    boolean accepted = resp instanceof ControlMessage
+                            && ((ControlMessage) resp).getType() == ControlMessage.Type.ACCEPT;
+                    if (resp instanceof ControlMessage && ((ControlMessage) resp).isBinaryControl()) {
+                        ControlCodec.rememberBinaryPeer(peer);
+                    }
                     
                     Platform.runLater(() -> {
-                        if (resp != null && resp.contains("ACCEPT")) {
+                        if (accepted) {
                             appendLog("连接请求已被接受");
                             connectedDevice = target;
                             updateTargetInfoBox();
@@ -739,10 +753,10 @@ public class TransferDiscoveryController {
         if (wasConnected && target != null) {
             final DeviceInfo finalTarget = target;
             new Thread(() -> {
-                try (Socket socket = new Socket(finalTarget.getIpAddress(), finalTarget.getPort());
+                try (Socket socket = NetworkConfig.getTransportProfile().openSocket(finalTarget.getIpAddress(), finalTarget.getPort());
                      ProtocolHandler handler = new ProtocolHandler(socket)) {
-                    String msg = "{\"type\":\"DISCONNECT\",\"from\":\"" + discovery.getLocalDevice().getIpAddress() + "\"}";
-                    handler.sendJson(msg);
+                    handler.sendControl(ControlMessage.disconnect(discovery.getLocalDevice().getIpAddress()),
+                            ControlCodec.isBinaryPeer(finalTarget.getIpAddress()));
                 } catch (Exception e) {
                     // 忽略发送失败
                 }
@@ -764,308 +778,175 @@ public class TransferDiscoveryController {
     }
 
     private void startServer() {
-        if (serverRunning)
+        if (receiveEngine.isRunning())
             return;
-        serverRunning = true;
-        serverExecutor = Executors.newFixedThreadPool(2);
-        serverExecutor.submit(() -> {
-            try (ServerSocket server = new ServerSocket(NetworkConfig.getTcpPort())) {
-                int port = server.getLocalPort();
-                appendLog("接收端启动，监听: " + port);
-                if (discovery != null) {
-                    discovery.updateLocalPort(port);
-                }
-                while (serverRunning) {
-                    Socket client = server.accept();
-                    serverExecutor.submit(() -> handleClient(client));
-                }
-            } catch (Exception ex) {
-                appendLog("接收端异常: " + ex.getMessage());
+        // 接收链路全部在 ReceiveEngine 中，界面只订阅事件（见 ReceiveUiListener）
+        try {
+            int port = receiveEngine.start();
+            appendLog("接收端启动，监听: " + port + "，最大并发连接: " + receiveEngine.getServer().getMaxConnections());
+            if (discovery != null) {
+                discovery.updateLocalPort(port);
             }
-        });
+        } catch (Exception ex) {
+            appendLog("接收端异常: " + ex.getMessage());
+        }
     }
 
     private void stopServer() {
-        serverRunning = false;
-        if (serverExecutor != null)
-            serverExecutor.shutdownNow();
+        receiveEngine.stop();
         appendLog("接收端已停止");
     }
 
-    private void handleClient(Socket client) {
-        try (ProtocolHandler handler = new ProtocolHandler(client)) {
-            String json = handler.receiveJson();
-            if (json != null) {
-                // 尝试解析为JSON对象以检查类型
-                JsonObject jsonObj = null;
-                try {
-                    jsonObj = new Gson().fromJson(json, JsonObject.class);
-                } catch (Exception e) {
-                    // 忽略解析错误
-                }
+    /**
+     * 接收引擎没有策略规则匹配时，弹窗询问用户
+     */
+    private final class DialogPrompter implements ReceiveEngine.Prompter {
+        @Override
+        public boolean confirmConnect(ControlMessage request, String remoteIp) {
+            String userName = request.getUserName() != null ? request.getUserName() : "Unknown User";
+            return askUserAccept("来自 " + userName + " (" + remoteIp + ") 的连接请求，是否接受？");
+        }
 
-                if (jsonObj != null && jsonObj.has("type")) {
-                    String type = jsonObj.get("type").getAsString();
-                    
-                    if ("CONNECT".equals(type)) {
-                        String remoteIp = client.getInetAddress().getHostAddress();
-                        
-                        String remoteDeviceName = jsonObj.has("deviceName") ? jsonObj.get("deviceName").getAsString() : "Unknown Device";
-                        String remoteUserName = jsonObj.has("userName") ? jsonObj.get("userName").getAsString() : "Unknown User";
-                        
-                        final String finalDeviceName = remoteDeviceName;
-                        final String finalUserName = remoteUserName;
-
-                    boolean accepted = false;
-                    try {
-                        accepted = askUserAccept("来自 " + finalUserName + " (" + remoteIp + ") 的连接请求，是否接受？");
-                    } catch (Exception e) {
-                        appendLog("连接请求处理中断");
-                        return;
-                    }
-                    
-                    // 在发送响应前再次检查连接状态
-                    // 因为在等待用户确认期间，对方可能已经取消（关闭）了连接
-                    if (accepted && !handler.checkConnectionAlive()) {
-                        appendLog("对方已取消连接请求");
-                        return;
-                    }
-                    
-                    try {
-                        handler.sendJson(accepted ? "{\"type\":\"ACCEPT\"}" : "{\"type\":\"REJECT\"}");
-                    } catch (Exception e) {
-                        appendLog("无法发送响应，可能对方已取消连接");
-                        return;
-                    }
-                    
-                    appendLog("连接请求" + (accepted ? "已接受" : "已拒绝"));
-                        
-                        if (accepted) {
-                            Platform.runLater(() -> {
-                                DeviceInfo sender = null;
-                                if (discovery != null && discovery.getDeviceList() != null) {
-                                    for (DeviceInfo d : discovery.getDeviceList()) {
-                                        if (d.getIpAddress().equals(remoteIp)) {
-                                            sender = d;
-                                            break;
-                                        }
-                                    }
-                                }
-                                
-                                if (sender == null) {
-                                    sender = new DeviceInfo("unknown-" + remoteIp, finalDeviceName, finalUserName, remoteIp, NetworkConfig.getTcpPort());
-                                }
-                                
-                                connectedDevice = sender;
-                                updateTargetInfoBox();
-                                updateActionButtons();
-                            });
-                        }
-                        return;
-                    } else if ("DISCONNECT".equals(type)) {
-                        Platform.runLater(() -> {
-                            appendLog("对方已断开连接");
-                            connectedDevice = null;
-                            listDevices.getSelectionModel().clearSelection();
-                            updateTargetInfoBox();
-                            updateActionButtons();
-                        });
-                        return;
-                    }
-                }
-            }
+        @Override
+        public String chooseSavePath(TransferRequest request, String remoteIp) {
+            return TransferDiscoveryController.this.chooseSavePath(request.getFileName());
+        }
+    }
 
-            TransferRequest request = TransferRequest.fromJson(json);
-            if (request == null || !request.isValid()) {
-                appendLog("收到无效的传输请求");
-                return;
-            }
+    /**
+     * 接收事件订阅者：只负责界面更新
+     *
+     * 界面只跟踪一个任务（currentTaskId），同时进行的其他接收只记录日志。
+     */
+    private final class ReceiveUiListener implements ReceiveEngine.ReceiveListener {
 
-            String savePath = chooseSavePath(request.getFileName());
-            if (savePath == null) {
-                handler.sendMessage(
-                        TransferResponse.reject(request.getTaskId(), TransferResponse.RejectReason.USER_DECLINED));
-                appendLog("用户拒绝接收文件");
-                return;
-            }
-            File outFile = new File(savePath);
-            File parent = outFile.getParentFile();
-            if (parent != null)
-                parent.mkdirs();
-            long need = Math.max(0, request.getFileSize());
-            long usable = parent != null ? parent.getUsableSpace() : new File(".").getUsableSpace();
-            if (usable > 0 && need > 0 && usable < need) {
-                handler.sendMessage(
-                        TransferResponse.reject(request.getTaskId(), TransferResponse.RejectReason.INSUFFICIENT_SPACE));
-                appendLog("磁盘空间不足，已拒绝接收");
+        @Override
+        public void onConnectRequest(ControlMessage request, String remoteIp, boolean accepted) {
+            appendLog("连接请求" + (accepted ? "已接受" : "已拒绝"));
+            if (!accepted) {
                 return;
             }
+            String deviceName = request.getDeviceName() != null ? request.getDeviceName() : "Unknown Device";
+            String userName = request.getUserName() != null ? request.getUserName() : "Unknown User";
+            Platform.runLater(() -> {
+                DeviceInfo sender = discovery != null ? discovery.findDeviceByIp(remoteIp) : null;
 
-            // 注册接收任务以便控制
-            TransferTask task = new TransferTask(
-                    request.getTaskId(),
-                    savePath,
-                    client.getInetAddress().getHostAddress(),
-                    client.getPort(),
-                    TransferTask.TransferType.RECEIVE,
-                    request,
-                    null);
-            task.setStatus(TransferTask.TaskStatus.RUNNING);
-            service.registerActiveTask(task);
-            currentTaskId = task.getTaskId();
-            transferPaused = false;
-            Platform.runLater(() -> updateTransferButtons(true));
-
-            // 启动监控线程，同步本地暂停/恢复状态给发送方
-            new Thread(() -> {
-                boolean lastWasPaused = false;
-                while (!task.getStatus().equals(TransferTask.TaskStatus.COMPLETED) && 
-                       !task.getStatus().equals(TransferTask.TaskStatus.FAILED) && 
-                       !task.getStatus().equals(TransferTask.TaskStatus.CANCELED)) {
-                    
-                    if (task.getStatus() == TransferTask.TaskStatus.PAUSED) {
-                        if (!lastWasPaused) {
-                             try {
-                                 JsonObject controlMsg = new JsonObject();
-                                 controlMsg.addProperty("type", "PAUSE");
-                                 handler.sendJson(new Gson().toJson(controlMsg));
-                                 lastWasPaused = true;
-                             } catch (Exception e) {}
-                        }
-                    } else if (task.getStatus() == TransferTask.TaskStatus.RUNNING) {
-                         if (lastWasPaused) {
-                             try {
-                                 JsonObject controlMsg = new JsonObject();
-                                 controlMsg.addProperty("type", "RESUME");
-                                 handler.sendJson(new Gson().toJson(controlMsg));
-                                 lastWasPaused = false;
-                             } catch (Exception e) {}
-                         }
-                    }
-                    try { Thread.sleep(200); } catch (InterruptedException e) { break; }
+                if (sender == null) {
+                    sender = new DeviceInfo("unknown-" + remoteIp, deviceName, userName, remoteIp, NetworkConfig.getTcpPort());
                 }
-            }).start();
 
-            long existingOffset = 0;
-            if (outFile.exists()) {
-                long len = outFile.length();
-                // 如果本地文件存在且小于远程文件，尝试续传
-                if (len < request.getFileSize() && len > 0) {
-                    existingOffset = len;
-                    appendLog("发现未完成文件，准备从 " + formatSpeed(existingOffset) + " 处续传");
-                }
-            }
+                connectedDevice = sender;
+                updateTargetInfoBox();
+                updateActionButtons();
+            });
+        }
 
-            handler.sendMessage(TransferResponse.accept(request.getTaskId(), savePath, existingOffset));
+        @Override
+        public void onDisconnect(ControlMessage message, String remoteIp) {
             Platform.runLater(() -> {
+                appendLog("对方已断开连接");
+                connectedDevice = null;
+                listDevices.getSelectionModel().clearSelection();
+                updateTargetInfoBox();
+                updateActionButtons();
+            });
+        }
+
+        @Override
+        public void onReceiveRejected(TransferRequest request, String remoteIp, String reason) {
+            appendLog("已拒绝接收 " + request.getFileName() + ": " + reason);
+        }
+
+        @Override
+        public void onReceiveStarted(TransferTask task, long resumeOffset, boolean autoAccepted) {
+            if (autoAccepted) {
+                appendLog("按接收策略自动接收: " + task.getFilePath());
+            }
+            if (resumeOffset > 0) {
+                appendLog("发现未完成文件，准备从 " + formatSpeed(resumeOffset) + " 处续传");
+            }
+            if (currentTaskId != null) {
+                return; // 已经在跟踪其他任务
+            }
+            currentTaskId = task.getTaskId();
+            transferPaused = false;
+            Platform.runLater(() -> {
+                updateTransferButtons(true);
                 progressBar.setProgress(0);
                 lblProgress.setText("0%");
                 lblSpeed.setText("速度: --");
                 lblTimeRemaining.setText("剩余时间: --");
             });
-            long receiveStartTime = System.currentTimeMillis();
-            long lastReceivedBytes = existingOffset; // 初始已接收量
-            if (request.getFileSize() == 0) {
-                try (FileOutputStream fos = new FileOutputStream(outFile)) {
-                }
-                appendLog("收到空文件，已创建: " + outFile.getAbsolutePath());
-            } else {
-                long received = existingOffset;
-                // 使用 RandomAccessFile 支持断点写入
-                try (java.io.RandomAccessFile raf = new java.io.RandomAccessFile(outFile, "rw")) {
-                    raf.seek(received);
-                    while (true) {
-                        if (task.getStatus() == TransferTask.TaskStatus.CANCELED) {
-                            throw new java.io.IOException("任务已取消");
-                        }
-                        task.waitForResume();
-                        
-                        FileChunk chunk = handler.receiveChunk();
-                        
-                        // 处理控制分片（来自发送方的暂停/恢复信号）
-                        if (chunk.isControlChunk()) {
-                            String cmd = chunk.getControlCommand();
-                            if ("PAUSE".equals(cmd)) {
-                                task.pause();
-                                transferPaused = true;
-                                Platform.runLater(() -> {
-                                    btnPause.setDisable(true);
-                                    btnResume.setDisable(false);
-                                    lblSpeed.setText("速度: 对方已暂停");
-                                });
-                            } else if ("RESUME".equals(cmd)) {
-                                task.resume();
-                                transferPaused = false;
-                                Platform.runLater(() -> {
-                                    btnPause.setDisable(false);
-                                    btnResume.setDisable(true);
-                                    lblSpeed.setText("速度: 恢复中...");
-                                });
-                            }
-                            continue;
-                        }
+        }
 
-                        byte[] data = chunk.getData();
-                        int len = chunk.getDataSize();
-                        raf.write(data, 0, len);
-                        received += len;
-                        // appendLog("收到分片 #" + chunk.getChunkIndex() + " 长度=" + len);
-                        long now = System.currentTimeMillis();
-                        if (now - lastProgressUpdateTs >= 100 || received >= request.getFileSize()) {
-                            lastProgressUpdateTs = now;
-                            double p = request.getFileSize() > 0 ? (received * 1.0 / request.getFileSize()) : 0.0;
-                            
-                            // 计算接收速度
-                            long timeDelta = now - receiveStartTime;
-                            long bytesDelta = received - lastReceivedBytes;
-                            String speedText = "速度: --";
-                            String timeText = "剩余时间: --";
-                            
-                            if (timeDelta > 0) {
-                                double speed = (received * 1000.0) / timeDelta; // 平均速度
-                                speedText = "速度: " + formatSpeed(speed);
-                                
-                                long remaining = request.getFileSize() - received;
-                                if (speed > 0 && remaining > 0) {
-                                    long secondsRemaining = (long) (remaining / speed);
-                                    timeText = "剩余时间: " + formatTime(secondsRemaining);
-                                }
-                            }
-                            
-                            lastReceivedBytes = received;
-                            String finalSpeedText = speedText;
-                            String finalTimeText = timeText;
-                            
-                            Platform.runLater(() -> {
-                                progressBar.setProgress(p);
-                                lblProgress.setText(String.format("%d%%", (int) Math.round(p * 100)));
-                                lblSpeed.setText(finalSpeedText);
-                                lblTimeRemaining.setText(finalTimeText);
-                            });
-                        }
-                        if (chunk.isLastChunk())
-                            break;
-                    }
+        @Override
+        public void onReceiveProgress(TransferTask task, long received, long total, double bytesPerSecond) {
+            if (!task.getTaskId().equals(currentTaskId)) {
+                return;
+            }
+            double p = total > 0 ? (received * 1.0 / total) : 0.0;
+            String speedText = "速度: --";
+            String timeText = "剩余时间: --";
+            if (bytesPerSecond > 0) {
+                speedText = "速度: " + formatSpeed(bytesPerSecond);
+                long remaining = total - received;
+                if (remaining > 0) {
+                    timeText = "剩余时间: " + formatTime((long) (remaining / bytesPerSecond));
                 }
             }
-            boolean ok = md5(outFile).equals(request.getMd5());
-            task.setStatus(TransferTask.TaskStatus.COMPLETED);
-            appendLog("接收完成: " + outFile.getAbsolutePath() + " MD5校验: " + (ok ? "通过" : "失败"));
-        } catch (ProtocolException pe) {
-            appendLog("协议错误: " + pe.getMessage());
-        } catch (Exception e) {
-            boolean isCancel = e.getMessage() != null && e.getMessage().contains("任务已取消");
-            if (isCancel) {
-                appendLog("接收已取消");
-            } else {
-                appendLog("处理连接异常: " + e.getMessage());
+            String finalSpeedText = speedText;
+            String finalTimeText = timeText;
+            Platform.runLater(() -> {
+                progressBar.setProgress(p);
+                lblProgress.setText(String.format("%d%%", (int) Math.round(p * 100)));
+                lblSpeed.setText(finalSpeedText);
+                lblTimeRemaining.setText(finalTimeText);
+            });
+        }
+
+        @Override
+        public void onRemotePauseChanged(TransferTask task, boolean paused) {
+            if (!task.getTaskId().equals(currentTaskId)) {
+                return;
             }
-        } finally {
-            if (currentTaskId != null) {
-                service.removeActiveTask(currentTaskId);
-                currentTaskId = null;
-                Platform.runLater(() -> updateTransferButtons(false));
+            transferPaused = paused;
+            Platform.runLater(() -> {
+                btnPause.setDisable(paused);
+                btnResume.setDisable(!paused);
+                lblSpeed.setText(paused ? "速度: 对方已暂停" : "速度: 恢复中...");
+            });
+        }
+
+        @Override
+        public void onReceiveCompleted(TransferTask task, File file, boolean md5Matched) {
+            appendLog("接收完成: " + file.getAbsolutePath() + " MD5校验: " + (md5Matched ? "通过" : "失败"));
+            release(task.getTaskId());
+        }
+
+        @Override
+        public void onReceiveFailed(TransferTask task, String reason, boolean canceled) {
+            appendLog(canceled ? "接收已取消" : "处理连接异常: " + reason);
+            release(task.getTaskId());
+        }
+
+        /**
+         * 任务结束：界面切换到仍在进行的其他接收任务
+         */
+        private void release(String taskId) {
+            if (!taskId.equals(currentTaskId)) {
+                return;
+            }
+            String next = null;
+            for (TransferTask other : receiveEngine.getActiveTasks()) {
+                if (!other.getTaskId().equals(taskId)) {
+                    next = other.getTaskId();
+                    break;
+                }
             }
+            currentTaskId = next;
+            transferPaused = false;
+            boolean stillActive = next != null;
+            Platform.runLater(() -> updateTransferButtons(stillActive));
         }
     }
 
@@ -1142,23 +1023,6 @@ public class TransferDiscoveryController {
         return path[0];
     }
 
-    private static String md5(File file) {
-        try (FileInputStream fis = new FileInputStream(file)) {
-            MessageDigest md = MessageDigest.getInstance("MD5");
-            byte[] buf = new byte[8192];
-            int n;
-            while ((n = fis.read(buf)) != -1) {
-                md.update(buf, 0, n);
-            }
-            StringBuilder sb = new StringBuilder();
-            for (byte b : md.digest())
-                sb.append(String.format("%02x", b));
-            return sb.toString();
-        } catch (Exception e) {
-            throw new RuntimeException(e);
-        }
-    }
-
     private void appendLog(String s) {
         String time = new java.text.SimpleDateFormat("HH:mm:ss").format(new java.util.Date());
         LogItem item = new LogItem(time, s);